@@ -1,6 +1,12 @@
 package edu.unl.knorth.historical_fault_localization;
 
 import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.proximity_based_weighting.ThresholdType;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.spectrum_formulas.SpectrumFormula;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.CheckoutStrategy;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor.HarnessOutputMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Keeps track of the configuration values gathered from the configuration file.
@@ -11,6 +17,7 @@ public class Configuration {
     private String targetProgramDirectory;
     private long testTimeout;
     private String suspiciousnessAlgorithm;
+    private List<SpectrumFormula> suspiciousnessFormulas;
     private ThresholdType lowerBound;
     private ThresholdType upperBound;
     private int statementHeight;
@@ -19,6 +26,31 @@ public class Configuration {
     private int fileFontSize;
     private String imageOutputDirectory;
     private String testHarnessOutput;
+    private int calculationThreads;
+    private int scoringThreads;
+    private int visualizationThreads;
+    private int worktreeCount;
+    private String coverageCacheDirectory;
+    private boolean invalidateCoverageCache;
+    private boolean incrementalScoring;
+    private boolean regressionTestSelection;
+    private CheckoutStrategy checkoutStrategy;
+    private long checkoutTimeout;
+    private long gitLogTimeout;
+    private List<String> sparseCheckoutPaths;
+    private int testShards;
+    private HarnessOutputMode testHarnessOutputMode;
+    private String testHarnessLogDirectory;
+    private int consoleSampleRate;
+    private int harnessServers;
+    private double adaptiveTimeoutFactor;
+    private long stallTimeout;
+    private int prefetchDepth;
+    private String dependencyCacheDirectory;
+    private List<String> dependencyFiles;
+    private long dependencyCacheSize;
+    private String scoreOutputDirectory;
+    private boolean translateScores;
 
     public Configuration() {
         gitArguments = null;
@@ -26,6 +58,7 @@ public class Configuration {
         targetProgramDirectory = null;
         testTimeout = -1;
         suspiciousnessAlgorithm = null;
+        suspiciousnessFormulas = null;
         lowerBound = null;
         upperBound = null;
         statementHeight = -1;
@@ -34,6 +67,32 @@ public class Configuration {
         fileFontSize = -1;
         imageOutputDirectory = null;
         testHarnessOutput = null;
+        calculationThreads = 1;
+        scoringThreads = 1;
+        visualizationThreads = 1;
+        worktreeCount = 0;
+        coverageCacheDirectory = null;
+        invalidateCoverageCache = false;
+        incrementalScoring = false;
+        regressionTestSelection = false;
+        checkoutStrategy = CheckoutStrategy.CHECKOUT;
+        checkoutTimeout = 30;
+        gitLogTimeout = 0;
+        sparseCheckoutPaths = Collections.emptyList();
+        testShards = 1;
+        testHarnessOutputMode = HarnessOutputMode.FILE;
+        testHarnessLogDirectory = null;
+        consoleSampleRate = 1;
+        harnessServers = 0;
+        adaptiveTimeoutFactor = 0;
+        stallTimeout = 0;
+        prefetchDepth = 0;
+        dependencyCacheDirectory = null;
+        dependencyFiles = Arrays.asList("Gemfile.lock", "pom.xml",
+                "package-lock.json");
+        dependencyCacheSize = 10240;
+        scoreOutputDirectory = null;
+        translateScores = false;
     }
     
     public boolean areMandatoryValuesSet() {
@@ -63,6 +122,19 @@ public class Configuration {
                 && (fileMargin >= 0)
                 && (fileFontSize >= 0)
                 && (imageOutputDirectory != null);
+        } else if(suspiciousnessAlgorithm.equals("formulas")) {
+            return (gitArguments != null)
+                && (testHarnessPath != null)
+                && (targetProgramDirectory != null)
+                && (testTimeout >= 0)
+                && (suspiciousnessFormulas != null)
+                && (!suspiciousnessFormulas.isEmpty())
+                && (statementHeight >= 0)
+                && (statementWidth >= 0)
+                && (fileMargin >= 0)
+                && (fileFontSize >= 0)
+                && (imageOutputDirectory != null);
+            // lowerBound and upperBound not required with formulas
         } else {
             return false;
         }
@@ -108,6 +180,15 @@ public class Configuration {
         this.suspiciousnessAlgorithm = suspiciousnessAlgorithm;
     }
 
+    public List<SpectrumFormula> getSuspiciousnessFormulas() {
+        return suspiciousnessFormulas;
+    }
+
+    public void setSuspiciousnessFormulas(
+            List<SpectrumFormula> suspiciousnessFormulas) {
+        this.suspiciousnessFormulas = suspiciousnessFormulas;
+    }
+
     public ThresholdType getLowerBound() {
         return lowerBound;
     }
@@ -171,4 +252,208 @@ public class Configuration {
     public void setTestHarnessOutput(String testHarnessOutput) {
         this.testHarnessOutput = testHarnessOutput;
     }
-}
\ No newline at end of file
+
+    public int getCalculationThreads() {
+        return calculationThreads;
+    }
+
+    public void setCalculationThreads(int calculationThreads) {
+        this.calculationThreads = calculationThreads;
+    }
+
+    public int getScoringThreads() {
+        return scoringThreads;
+    }
+
+    public void setScoringThreads(int scoringThreads) {
+        this.scoringThreads = scoringThreads;
+    }
+
+    public int getVisualizationThreads() {
+        return visualizationThreads;
+    }
+
+    public void setVisualizationThreads(int visualizationThreads) {
+        this.visualizationThreads = visualizationThreads;
+    }
+
+    public int getWorktreeCount() {
+        return worktreeCount;
+    }
+
+    public void setWorktreeCount(int worktreeCount) {
+        this.worktreeCount = worktreeCount;
+    }
+
+    public String getCoverageCacheDirectory() {
+        return coverageCacheDirectory;
+    }
+
+    public void setCoverageCacheDirectory(String coverageCacheDirectory) {
+        this.coverageCacheDirectory = coverageCacheDirectory;
+    }
+
+    public boolean getInvalidateCoverageCache() {
+        return invalidateCoverageCache;
+    }
+
+    public void setInvalidateCoverageCache(boolean invalidateCoverageCache) {
+        this.invalidateCoverageCache = invalidateCoverageCache;
+    }
+
+    public boolean getIncrementalScoring() {
+        return incrementalScoring;
+    }
+
+    public void setIncrementalScoring(boolean incrementalScoring) {
+        this.incrementalScoring = incrementalScoring;
+    }
+
+    public boolean getRegressionTestSelection() {
+        return regressionTestSelection;
+    }
+
+    public void setRegressionTestSelection(boolean regressionTestSelection) {
+        this.regressionTestSelection = regressionTestSelection;
+    }
+
+    public CheckoutStrategy getCheckoutStrategy() {
+        return checkoutStrategy;
+    }
+
+    public void setCheckoutStrategy(CheckoutStrategy checkoutStrategy) {
+        this.checkoutStrategy = checkoutStrategy;
+    }
+
+    public long getCheckoutTimeout() {
+        return checkoutTimeout;
+    }
+
+    public void setCheckoutTimeout(long checkoutTimeout) {
+        this.checkoutTimeout = checkoutTimeout;
+    }
+
+    public long getGitLogTimeout() {
+        return gitLogTimeout;
+    }
+
+    public void setGitLogTimeout(long gitLogTimeout) {
+        this.gitLogTimeout = gitLogTimeout;
+    }
+
+    public List<String> getSparseCheckoutPaths() {
+        return sparseCheckoutPaths;
+    }
+
+    public void setSparseCheckoutPaths(List<String> sparseCheckoutPaths) {
+        this.sparseCheckoutPaths = sparseCheckoutPaths;
+    }
+
+    public int getTestShards() {
+        return testShards;
+    }
+
+    public void setTestShards(int testShards) {
+        this.testShards = testShards;
+    }
+
+    public HarnessOutputMode getTestHarnessOutputMode() {
+        return testHarnessOutputMode;
+    }
+
+    public void setTestHarnessOutputMode(
+            HarnessOutputMode testHarnessOutputMode) {
+        this.testHarnessOutputMode = testHarnessOutputMode;
+    }
+
+    public String getTestHarnessLogDirectory() {
+        return testHarnessLogDirectory;
+    }
+
+    public void setTestHarnessLogDirectory(String testHarnessLogDirectory) {
+        this.testHarnessLogDirectory = testHarnessLogDirectory;
+    }
+
+    public int getConsoleSampleRate() {
+        return consoleSampleRate;
+    }
+
+    public void setConsoleSampleRate(int consoleSampleRate) {
+        this.consoleSampleRate = consoleSampleRate;
+    }
+
+    public int getHarnessServers() {
+        return harnessServers;
+    }
+
+    public void setHarnessServers(int harnessServers) {
+        this.harnessServers = harnessServers;
+    }
+
+    public double getAdaptiveTimeoutFactor() {
+        return adaptiveTimeoutFactor;
+    }
+
+    public void setAdaptiveTimeoutFactor(double adaptiveTimeoutFactor) {
+        this.adaptiveTimeoutFactor = adaptiveTimeoutFactor;
+    }
+
+    public long getStallTimeout() {
+        return stallTimeout;
+    }
+
+    public void setStallTimeout(long stallTimeout) {
+        this.stallTimeout = stallTimeout;
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    public String getDependencyCacheDirectory() {
+        return dependencyCacheDirectory;
+    }
+
+    public void setDependencyCacheDirectory(String dependencyCacheDirectory) {
+        this.dependencyCacheDirectory = dependencyCacheDirectory;
+    }
+
+    public List<String> getDependencyFiles() {
+        return dependencyFiles;
+    }
+
+    public void setDependencyFiles(List<String> dependencyFiles) {
+        this.dependencyFiles = dependencyFiles;
+    }
+
+    /**
+     * @return The dependency cache's size limit, in megabytes.
+     */
+    public long getDependencyCacheSize() {
+        return dependencyCacheSize;
+    }
+
+    public void setDependencyCacheSize(long dependencyCacheSize) {
+        this.dependencyCacheSize = dependencyCacheSize;
+    }
+
+    public String getScoreOutputDirectory() {
+        return scoreOutputDirectory;
+    }
+
+    public void setScoreOutputDirectory(String scoreOutputDirectory) {
+        this.scoreOutputDirectory = scoreOutputDirectory;
+    }
+
+    public boolean getTranslateScores() {
+        return translateScores;
+    }
+
+    public void setTranslateScores(boolean translateScores) {
+        this.translateScores = translateScores;
+    }
+}
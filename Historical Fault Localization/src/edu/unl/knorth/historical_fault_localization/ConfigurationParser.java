@@ -1,10 +1,14 @@
 package edu.unl.knorth.historical_fault_localization;
 
 import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.proximity_based_weighting.ThresholdType;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.spectrum_formulas.SpectrumFormula;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.CheckoutStrategy;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor.HarnessOutputMode;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -46,13 +50,29 @@ public class ConfigurationParser {
                         break;
                     case "suspiciousnessAlgorithm":
                         if(split[1].equals("ochiai")
-                                || split[1].equals("proximity")) {
+                                || split[1].equals("proximity")
+                                || split[1].equals("formulas")) {
                             config.setSuspiciousnessAlgorithm(split[1]);
                         } else {
                             throw new IOException("suspiciousnessAlgorithm of " +
                                     split[1] + " is invalid.");
                         }
                         break;
+                    case "suspiciousnessFormulas":
+                        List<SpectrumFormula> formulas = new ArrayList<>();
+                        for(String name : split[1].split("[\\s,]+")) {
+                            SpectrumFormula formula =
+                                    SpectrumFormula.fromConfigurationName(name);
+                            if(formula == null) {
+                                throw new IOException("suspiciousnessFormulas "
+                                        + "entry of " + name + " is invalid.");
+                            }
+                            if(!formulas.contains(formula)) {
+                                formulas.add(formula);
+                            }
+                        }
+                        config.setSuspiciousnessFormulas(formulas);
+                        break;
                     case "lowerBound":
                         switch(split[1]) {
                             case "none":
@@ -113,6 +133,213 @@ public class ConfigurationParser {
                     case "testHarnessOutput":
                         config.setTestHarnessOutput(split[1]);
                         break;
+                    case "calculationThreads":
+                        int calculationThreads = Integer.parseInt(split[1]);
+                        if(calculationThreads < 1) {
+                            throw new IOException("calculationThreads value "
+                                    + "of " + split[1] + " is less than 1.");
+                        }
+                        config.setCalculationThreads(calculationThreads);
+                        break;
+                    case "scoringThreads":
+                        int scoringThreads = Integer.parseInt(split[1]);
+                        if(scoringThreads < 1) {
+                            throw new IOException("scoringThreads value "
+                                    + "of " + split[1] + " is less than 1.");
+                        }
+                        config.setScoringThreads(scoringThreads);
+                        break;
+                    case "visualizationThreads":
+                        int visualizationThreads = Integer.parseInt(split[1]);
+                        if(visualizationThreads < 1) {
+                            throw new IOException("visualizationThreads value "
+                                    + "of " + split[1] + " is less than 1.");
+                        }
+                        config.setVisualizationThreads(visualizationThreads);
+                        break;
+                    case "worktreeCount":
+                        int worktreeCount = Integer.parseInt(split[1]);
+                        if(worktreeCount < 0) {
+                            throw new IOException("worktreeCount value "
+                                    + "of " + split[1] + " is negative.");
+                        }
+                        config.setWorktreeCount(worktreeCount);
+                        break;
+                    case "coverageCacheDirectory":
+                        config.setCoverageCacheDirectory(split[1]);
+                        break;
+                    case "invalidateCoverageCache":
+                        if(split[1].equals("true")) {
+                            config.setInvalidateCoverageCache(true);
+                        } else if(split[1].equals("false")) {
+                            config.setInvalidateCoverageCache(false);
+                        } else {
+                            throw new IOException("invalidateCoverageCache "
+                                    + "value of " + split[1] + " is not "
+                                    + "\"true\" or \"false\".");
+                        }
+                        break;
+                    case "translateScores":
+                        if(split[1].equals("true")) {
+                            config.setTranslateScores(true);
+                        } else if(split[1].equals("false")) {
+                            config.setTranslateScores(false);
+                        } else {
+                            throw new IOException("translateScores value "
+                                    + "of " + split[1] + " is not \"true\" "
+                                    + "or \"false\".");
+                        }
+                        break;
+                    case "incrementalScoring":
+                        if(split[1].equals("true")) {
+                            config.setIncrementalScoring(true);
+                        } else if(split[1].equals("false")) {
+                            config.setIncrementalScoring(false);
+                        } else {
+                            throw new IOException("incrementalScoring value "
+                                    + "of " + split[1] + " is not \"true\" "
+                                    + "or \"false\".");
+                        }
+                        break;
+                    case "regressionTestSelection":
+                        if(split[1].equals("true")) {
+                            config.setRegressionTestSelection(true);
+                        } else if(split[1].equals("false")) {
+                            config.setRegressionTestSelection(false);
+                        } else {
+                            throw new IOException("regressionTestSelection "
+                                    + "value of " + split[1] + " is not "
+                                    + "\"true\" or \"false\".");
+                        }
+                        break;
+                    case "checkoutStrategy":
+                        CheckoutStrategy checkoutStrategy = CheckoutStrategy
+                                .fromConfigurationName(split[1]);
+                        if(checkoutStrategy == null) {
+                            throw new IOException("checkoutStrategy value of "
+                                    + split[1] + " is invalid.");
+                        }
+                        config.setCheckoutStrategy(checkoutStrategy);
+                        break;
+                    case "checkoutTimeout":
+                        long checkoutTimeout = Long.parseLong(split[1]);
+                        if(checkoutTimeout < 1) {
+                            throw new IOException("checkoutTimeout value "
+                                    + "of " + split[1] + " is less than 1.");
+                        }
+                        config.setCheckoutTimeout(checkoutTimeout);
+                        break;
+                    case "gitLogTimeout":
+                        long gitLogTimeout = Long.parseLong(split[1]);
+                        if(gitLogTimeout < 0) {
+                            throw new IOException("gitLogTimeout value of "
+                                    + split[1] + " is negative.");
+                        }
+                        config.setGitLogTimeout(gitLogTimeout);
+                        break;
+                    case "sparseCheckoutPaths":
+                        List<String> sparseCheckoutPaths = new ArrayList<>();
+                        for(String path : split[1].split("[\\s,]+")) {
+                            if(!path.isEmpty()) {
+                                sparseCheckoutPaths.add(path);
+                            }
+                        }
+                        config.setSparseCheckoutPaths(sparseCheckoutPaths);
+                        break;
+                    case "testShards":
+                        int testShards = Integer.parseInt(split[1]);
+                        if(testShards < 1) {
+                            throw new IOException("testShards value "
+                                    + "of " + split[1] + " is less than 1.");
+                        }
+                        config.setTestShards(testShards);
+                        break;
+                    case "testHarnessOutputMode":
+                        HarnessOutputMode testHarnessOutputMode =
+                                HarnessOutputMode.fromConfigurationName(
+                                        split[1]);
+                        if(testHarnessOutputMode == null) {
+                            throw new IOException("testHarnessOutputMode "
+                                    + "value of " + split[1]
+                                    + " is invalid.");
+                        }
+                        config.setTestHarnessOutputMode(testHarnessOutputMode);
+                        break;
+                    case "testHarnessLogDirectory":
+                        config.setTestHarnessLogDirectory(split[1]);
+                        break;
+                    case "consoleSampleRate":
+                        int consoleSampleRate = Integer.parseInt(split[1]);
+                        if(consoleSampleRate < 0) {
+                            throw new IOException("consoleSampleRate value "
+                                    + "of " + split[1] + " is negative.");
+                        }
+                        config.setConsoleSampleRate(consoleSampleRate);
+                        break;
+                    case "harnessServers":
+                        int harnessServers = Integer.parseInt(split[1]);
+                        if(harnessServers < 0) {
+                            throw new IOException("harnessServers value "
+                                    + "of " + split[1] + " is negative.");
+                        }
+                        config.setHarnessServers(harnessServers);
+                        break;
+                    case "adaptiveTimeoutFactor":
+                        double adaptiveTimeoutFactor =
+                                Double.parseDouble(split[1]);
+                        if(adaptiveTimeoutFactor != 0
+                                && !(adaptiveTimeoutFactor >= 1)) {
+                            throw new IOException("adaptiveTimeoutFactor "
+                                    + "value of " + split[1] + " is not 0 "
+                                    + "or at least 1.");
+                        }
+                        config.setAdaptiveTimeoutFactor(adaptiveTimeoutFactor);
+                        break;
+                    case "stallTimeout":
+                        long stallTimeout = Long.parseLong(split[1]);
+                        if(stallTimeout < 0) {
+                            throw new IOException("stallTimeout value "
+                                    + "of " + split[1] + " is negative.");
+                        }
+                        config.setStallTimeout(stallTimeout);
+                        break;
+                    case "prefetchDepth":
+                        int prefetchDepth = Integer.parseInt(split[1]);
+                        if(prefetchDepth < 0) {
+                            throw new IOException("prefetchDepth value "
+                                    + "of " + split[1] + " is negative.");
+                        }
+                        config.setPrefetchDepth(prefetchDepth);
+                        break;
+                    case "dependencyCacheDirectory":
+                        config.setDependencyCacheDirectory(split[1]);
+                        break;
+                    case "dependencyFiles":
+                        List<String> dependencyFiles = new ArrayList<>();
+                        for(String path : split[1].split("[\\s,]+")) {
+                            if(!path.isEmpty()) {
+                                dependencyFiles.add(path);
+                            }
+                        }
+                        config.setDependencyFiles(dependencyFiles);
+                        break;
+                    case "dependencyCacheSize":
+                        long dependencyCacheSize = Long.parseLong(split[1]);
+                        if(dependencyCacheSize < 0) {
+                            throw new IOException("dependencyCacheSize value "
+                                    + "of " + split[1] + " is negative.");
+                        }
+                        config.setDependencyCacheSize(dependencyCacheSize);
+                        break;
+                    case "scoreOutputDirectory":
+                        if(split[1].endsWith("/")) {
+                            config.setScoreOutputDirectory(split[1]);
+                        } else {
+                            throw new IOException("scoreOutputDirectory value "
+                                    + "of \"" + split[1] + "\" does not end in"
+                                    + " a \"/\".");
+                        }
+                        break;
                 }
             }
         } catch(IOException err) {
@@ -125,6 +352,50 @@ public class ConfigurationParser {
             return null;
         }
         
+        if(config.getHarnessServers() > 0 && config.getTestShards() > 1) {
+            System.out.println("Could not read configuration file:");
+            System.out.println("harnessServers and testShards can't be used "
+                    + "together.");
+            return null;
+        }
+        
+        // The incremental calculator compares each commit with the one scored
+        // before it, so it needs the commits one at a time and in order
+        if(config.getIncrementalScoring() && (config.getScoringThreads() > 1
+                || config.getWorktreeCount() > 0)) {
+            System.out.println("Could not read configuration file:");
+            System.out.println("incrementalScoring can't be used with "
+                    + "scoringThreads above 1 or worktreeCount above 0.");
+            return null;
+        }
+        
+        // The other algorithms don't have an incremental version
+        if(config.getIncrementalScoring()
+                && config.getSuspiciousnessAlgorithm() != null
+                && !config.getSuspiciousnessAlgorithm().equals("ochiai")) {
+            System.out.println("Could not read configuration file:");
+            System.out.println("incrementalScoring can only be used with the "
+                    + "ochiai suspiciousnessAlgorithm.");
+            return null;
+        }
+        
+        // Each commit's scores are translated into the line numbers of the
+        // commit scored after it, so translating needs the same order
+        if(config.getTranslateScores() && (config.getScoringThreads() > 1
+                || config.getWorktreeCount() > 0)) {
+            System.out.println("Could not read configuration file:");
+            System.out.println("translateScores can't be used with "
+                    + "scoringThreads above 1 or worktreeCount above 0.");
+            return null;
+        }
+        if(config.getTranslateScores()
+                && config.getScoreOutputDirectory() == null) {
+            System.out.println("Could not read configuration file:");
+            System.out.println("translateScores needs scoreOutputDirectory "
+                    + "to be set.");
+            return null;
+        }
+        
         if(config.areMandatoryValuesSet()) {
             return config;
         } else {
@@ -5,16 +5,34 @@
  */
 package edu.unl.knorth.historical_fault_localization;
 
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
 import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessCalculator;
 import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.ochiai.IncrementalOchiaiSuspiciousnessCalculator;
 import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.ochiai.OchiaiSuspiciousnessCalculator;
 import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.proximity_based_weighting.ProximityBasedWeightingSuspiciousnessCalculator;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.spectrum_formulas.MultiFormulaSuspiciousnessCalculator;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.spectrum_formulas.SpectrumFormula;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.ScoreTranslator;
 import edu.unl.knorth.historical_fault_localization.target_program_handler.TargetProgramHandler;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.TargetProgramHandlerOptions;
 import edu.unl.knorth.historical_fault_localization.target_program_handler.TestExecutionDataFromCommit;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.coverage_cache.CoverageCache;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.dependency_cache.DependencyCache;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor.TestExecutor;
+import edu.unl.knorth.historical_fault_localization.utility.PipelineStage;
+import edu.unl.knorth.historical_fault_localization.visualizer.SuspiciousnessScoreWriter;
 import edu.unl.knorth.historical_fault_localization.visualizer.SuspiciousnessScoresFromCommit;
 import edu.unl.knorth.historical_fault_localization.visualizer.SuspiciousnessVisualizer;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  *
@@ -36,58 +54,451 @@ public class Main {
         }
         
         // Parse config file
-        Configuration config =
+        final Configuration config =
                 new ConfigurationParser().parseConfigurationFile(args[0]);
         if(config == null) {
             return;
         }
 
-        // Run target program tests to get test coverage data
-        List<TestExecutionDataFromCommit> coverageData;
-        if(config.getTestHarnessOutput() == null) {
-            coverageData =
-                new TargetProgramHandler().handleProgram(
-                        config.getGitArguments(),
+        // Scoring and visualization run in their own pipeline stages, so that
+        // each commit is scored and visualized while the test harness runs on
+        // the next one. The bounded queues between the stages keep only a few
+        // commits' worth of data in memory at once. Once a commit's scores
+        // have been saved and visualized, nothing refers to them anymore, so
+        // memory use doesn't grow with the number of commits.
+        final SuspiciousnessVisualizer visualizer =
+                new SuspiciousnessVisualizer();
+        final SuspiciousnessScoreWriter scoreWriter =
+                new SuspiciousnessScoreWriter();
+        final PipelineStage<VisualizationJob> visualizationStage =
+                new PipelineStage<>("Visualization",
+                        config.getVisualizationThreads(),
+                        getQueueCapacity(config.getVisualizationThreads()),
+                        job -> {
+                            saveScores(scoreWriter, job);
+                            visualize(config, visualizer, job);
+                        });
+        
+        final Scorer scorer = createScorer(config);
+        final ScoreTranslator scoreTranslator = config.getTranslateScores()
+                ? new ScoreTranslator(config.getTargetProgramDirectory())
+                : null;
+        final PipelineStage<TestExecutionDataFromCommit> scoringStage =
+                new PipelineStage<>("Scoring", config.getScoringThreads(),
+                        getQueueCapacity(config.getScoringThreads()),
+                        result -> {
+                            List<VisualizationJob> jobs = scorer.score(result);
+                            if(scoreTranslator != null) {
+                                saveTranslatedScores(scoreTranslator,
+                                        scoreWriter, result, jobs);
+                            }
+                            for(VisualizationJob job : jobs) {
+                                submit(visualizationStage, job);
+                            }
+                        });
+        
+        visualizationStage.start();
+        scoringStage.start();
+
+        // The stages' worker threads keep the program running until the
+        // stages are finished, so they're finished even if collecting the
+        // coverage data fails
+        try {
+            collectCoverage(config, scoringStage);
+        } finally {
+            finishStages(scoringStage, visualizationStage);
+            scorer.close();
+        }
+    }
+    
+    /**
+     * Runs the target program's tests to get test coverage data, handing each
+     * commit's data to the scoring stage as soon as it's collected.
+     */
+    private static void collectCoverage(Configuration config,
+            PipelineStage<TestExecutionDataFromCommit> scoringStage) {
+        String testHarnessOutput = config.getTestHarnessOutput();
+        if(testHarnessOutput == null) {
+            testHarnessOutput = TestExecutor.DEFAULT_OUTPUT_FILE_LOCATION;
+        }
+        try(TestExecutor testExecutor = new TestExecutor(
+                config.getTestShards(), config.getTestHarnessOutputMode(),
+                config.getTestHarnessLogDirectory(),
+                config.getConsoleSampleRate(), config.getHarnessServers(),
+                config.getAdaptiveTimeoutFactor(), config.getStallTimeout())) {
+            TargetProgramHandlerOptions options =
+                    new TargetProgramHandlerOptions();
+            options.setCoverageCache(createCoverageCache(config));
+            options.setSelectTests(config.getRegressionTestSelection());
+            options.setCheckoutStrategy(config.getCheckoutStrategy());
+            options.setCheckoutTimeoutSeconds(config.getCheckoutTimeout());
+            options.setGitLogTimeoutSeconds(config.getGitLogTimeout());
+            options.setSparseCheckoutPaths(config.getSparseCheckoutPaths());
+            options.setTestExecutor(testExecutor);
+            options.setPrefetchDepth(config.getPrefetchDepth());
+            options.setDependencyCache(createDependencyCache(config));
+            options.setDependencyFiles(config.getDependencyFiles());
+            TargetProgramHandler targetProgramHandler =
+                    new TargetProgramHandler(options);
+            if(config.getWorktreeCount() > 0) {
+                targetProgramHandler.handleProgram(config.getGitArguments(),
                         config.getTestHarnessPath(),
                         config.getTargetProgramDirectory(),
-                        config.getTestTimeout());
-        } else {
-            coverageData =
-                new TargetProgramHandler().handleProgram(
-                        config.getGitArguments(),
+                        config.getTestTimeout(), testHarnessOutput,
+                        config.getWorktreeCount(),
+                        result -> submit(scoringStage, result));
+            } else {
+                targetProgramHandler.handleProgram(config.getGitArguments(),
                         config.getTestHarnessPath(),
                         config.getTargetProgramDirectory(),
-                        config.getTestTimeout(),
-                        config.getTestHarnessOutput());
+                        config.getTestTimeout(), testHarnessOutput,
+                        result -> submit(scoringStage, result));
+            }
         }
-
+    }
+    
+    /**
+     * Finishes each pipeline stage in turn, waiting for the items already
+     * submitted to be processed. If interrupted while waiting, the stages that
+     * haven't finished are aborted instead, dropping their remaining items.
+     */
+    private static void finishStages(PipelineStage<?>... stages) {
+        for(int i = 0; i < stages.length; i++) {
+            try {
+                stages[i].finish();
+            } catch(InterruptedException err) {
+                System.out.println("Interrupted while waiting for the "
+                        + "remaining commits to be scored and visualized.");
+                Thread.currentThread().interrupt();
+                for(int j = i; j < stages.length; j++) {
+                    stages[j].abort();
+                }
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Opens the dependency cache, if one is configured.
+     * @return The dependency cache, or <code>null</code> if there isn't one or
+     * it couldn't be opened. In that case, the test harness isn't passed the
+     * dependency flags.
+     */
+    private static DependencyCache createDependencyCache(
+            Configuration config) {
+        if(config.getDependencyCacheDirectory() == null) {
+            return null;
+        }
+        
+        try {
+            return new DependencyCache(config.getDependencyCacheDirectory(),
+                    config.getDependencyCacheSize() * 1024 * 1024);
+        } catch(IOException err) {
+            System.out.println("Could not open the dependency cache. The "
+                    + "test harness won't be given dependency directories:");
+            System.out.println(err.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Opens the coverage cache, if one is configured, and empties it first if
+     * the configuration asks for that.
+     * @return The coverage cache, or <code>null</code> if there isn't one or
+     * it couldn't be opened. In that case, every commit is tested.
+     */
+    private static CoverageCache createCoverageCache(Configuration config) {
+        if(config.getCoverageCacheDirectory() == null) {
+            return null;
+        }
+        
+        try {
+            CoverageCache cache = new CoverageCache(
+                    config.getCoverageCacheDirectory(),
+                    config.getTestHarnessPath());
+            if(config.getInvalidateCoverageCache()) {
+                System.out.println("Emptying the coverage cache...");
+                cache.invalidate();
+            }
+            return cache;
+        } catch(IOException err) {
+            System.out.println("Could not open the coverage cache. Every "
+                    + "commit will be tested:");
+            System.out.println(err.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Creates the scorer that the scoring stage uses to turn a commit's test
+     * coverage data into the images that should be made from it. The scorer
+     * is called from several threads at once, so it must be thread-safe.
+     */
+    private static Scorer createScorer(Configuration config) {
+        final String imageOutputDirectory = config.getImageOutputDirectory();
+        final String scoreOutputDirectory = config.getScoreOutputDirectory();
+        
+        if(config.getSuspiciousnessAlgorithm().equals("formulas")) {
+            return createAllFormulasScorer(config);
+        }
+        
         // Prepare the calculator based on the configuration
-        SuspiciousnessCalculator calculator;
-        if(config.getSuspiciousnessAlgorithm().equals("ochiai")) {
-            calculator = new OchiaiSuspiciousnessCalculator();
+        final Function<TestExecutionData, List<SuspiciousnessScore>> calculator;
+        if(config.getSuspiciousnessAlgorithm().equals("ochiai")
+                && config.getIncrementalScoring()) {
+            // ConfigurationParser only allows this with one scoring thread and
+            // commits tested in order, so each commit is compared with the one
+            // before it
+            IncrementalOchiaiSuspiciousnessCalculator incrementalCalculator =
+                    new IncrementalOchiaiSuspiciousnessCalculator();
+            calculator = incrementalCalculator::calculateSuspiciousness;
+        } else if(config.getSuspiciousnessAlgorithm().equals("ochiai")) {
+            SuspiciousnessCalculator fullCalculator =
+                    new OchiaiSuspiciousnessCalculator();
+            calculator = fullCalculator::calculateSuspiciousness;
         } else {
-            calculator = new ProximityBasedWeightingSuspiciousnessCalculator(
-                        config.getLowerBound(), config.getUpperBound());            
+            // The proximity-based weighting calculator has its own threads,
+            // which are stopped once every commit has been scored
+            final ProximityBasedWeightingSuspiciousnessCalculator
+                    proximityCalculator =
+                            new ProximityBasedWeightingSuspiciousnessCalculator(
+                                    config.getLowerBound(),
+                                    config.getUpperBound(),
+                                    config.getCalculationThreads());
+            return new Scorer() {
+                @Override
+                public List<VisualizationJob> score(
+                        TestExecutionDataFromCommit result) {
+                    return createJob(imageOutputDirectory,
+                            scoreOutputDirectory, result, proximityCalculator
+                                    .calculateSuspiciousness(
+                                            result.getTestExecutionData()));
+                }
+
+                @Override
+                public void close() {
+                    proximityCalculator.close();
+                }
+            };
+        }
+        
+        return result -> createJob(imageOutputDirectory, scoreOutputDirectory,
+                result, calculator.apply(result.getTestExecutionData()));
+    }
+    
+    /**
+     * Wraps the scores of a commit calculated by a single algorithm in the
+     * one visualization job made from them.
+     */
+    private static List<VisualizationJob> createJob(
+            String imageOutputDirectory, String scoreOutputDirectory,
+            TestExecutionDataFromCommit result,
+            List<SuspiciousnessScore> suspiciousnessScores) {
+        return Collections.singletonList(new VisualizationJob(
+                imageOutputDirectory, scoreOutputDirectory,
+                new SuspiciousnessScoresFromCommit(result.getCommitHash(),
+                        result.getOrderProcessed(), suspiciousnessScores)));
+    }
+    
+    /**
+     * Creates a scoring function that calculates the suspiciousness scores of
+     * every configured formula in one pass per commit. Each formula gets a
+     * separate set of visualizations in a subdirectory of the image output
+     * directory named after the formula.
+     */
+    private static Scorer createAllFormulasScorer(Configuration config) {
+        final MultiFormulaSuspiciousnessCalculator calculator =
+                new MultiFormulaSuspiciousnessCalculator(
+                        config.getSuspiciousnessFormulas());
+        
+        final Map<SpectrumFormula, String> outputDirectories =
+                new EnumMap<>(SpectrumFormula.class);
+        final Map<SpectrumFormula, String> scoreDirectories =
+                new EnumMap<>(SpectrumFormula.class);
+        for(SpectrumFormula formula : calculator.getFormulas()) {
+            String outputDirectory = config.getImageOutputDirectory()
+                    + formula.getConfigurationName() + "/";
+            new File(outputDirectory).mkdirs();
+            outputDirectories.put(formula, outputDirectory);
+            if(config.getScoreOutputDirectory() != null) {
+                scoreDirectories.put(formula, config.getScoreOutputDirectory()
+                        + formula.getConfigurationName() + "/");
+            }
         }
         
-        // Calcualte suspiciousness scores
-        List<SuspiciousnessScoresFromCommit> allSuspiciousnessScores =
-                new ArrayList<>();
-        for(TestExecutionDataFromCommit result : coverageData) {    
-            List<SuspiciousnessScore> suspiciousnessScores = 
-                    calculator.calculateSuspiciousness(
+        return result -> {
+            Map<SpectrumFormula, List<SuspiciousnessScore>> scoresByFormula =
+                    calculator.calculateSuspiciousnessForAllFormulas(
                             result.getTestExecutionData());
             
-            allSuspiciousnessScores.add(new SuspiciousnessScoresFromCommit(
-                    result.getCommitHash(), result.getOrderProcessed(),
-                    suspiciousnessScores));
+            List<VisualizationJob> jobs = new ArrayList<>();
+            for(Map.Entry<SpectrumFormula, List<SuspiciousnessScore>> entry
+                    : scoresByFormula.entrySet()) {
+                List<SuspiciousnessScore> scores = entry.getValue();
+                if(!entry.getKey().isBounded()) {
+                    scores = MultiFormulaSuspiciousnessCalculator
+                            .normalizeScores(scores);
+                }
+                
+                jobs.add(new VisualizationJob(
+                        outputDirectories.get(entry.getKey()),
+                        scoreDirectories.get(entry.getKey()),
+                        new SuspiciousnessScoresFromCommit(
+                                result.getCommitHash(),
+                                result.getOrderProcessed(), scores)));
+            }
+            return jobs;
+        };
+    }
+    
+    /**
+     * Saves the scores of one visualization job to a CSV file, if a score
+     * output directory is configured. If the file can't be saved, the error is
+     * printed and the pipeline moves on.
+     */
+    private static void saveScores(SuspiciousnessScoreWriter scoreWriter,
+            VisualizationJob job) {
+        if(job.getScoreDirectory() == null) {
+            return;
+        }
+        
+        SuspiciousnessScoresFromCommit scores = job.getScores();
+        try {
+            scoreWriter.writeScoresForOneCommit(job.getScoreDirectory(),
+                    scores);
+        } catch(IOException err) {
+            System.out.println("Could not save the scores of commit #"
+                    + scores.getOrderProcessed() + " (hash: "
+                    + scores.getCommitHash() + ") due to error:");
+            err.printStackTrace(System.out);
+        }
+    }
+    
+    /**
+     * Hands a commit's scores to the score translator, and saves the previous
+     * commit's scores translated into this commit's line numbers next to the
+     * previous commit's own score files. Called before the jobs are handed to
+     * the visualization stage, so the translator gets scores that nothing
+     * else is using. If the scores can't be translated or saved, the error is
+     * printed and the pipeline moves on.
+     */
+    private static void saveTranslatedScores(ScoreTranslator scoreTranslator,
+            SuspiciousnessScoreWriter scoreWriter,
+            TestExecutionDataFromCommit result, List<VisualizationJob> jobs) {
+        Map<String, List<SuspiciousnessScore>> scoresByDirectory =
+                new LinkedHashMap<>();
+        for(VisualizationJob job : jobs) {
+            if(job.getScoreDirectory() != null) {
+                scoresByDirectory.put(job.getScoreDirectory(),
+                        new ArrayList<>(job.getScores()
+                                .getSuspiciousnessScores()));
+            }
+        }
+
+        // The previous commit is the one before this one in the list of
+        // commits, since the translator only translates into the next commit
+        int previousOrder = result.getOrderProcessed() - 1;
+        try {
+            for(Map.Entry<String, List<SuspiciousnessScore>> entry
+                    : scoreTranslator.next(result, scoresByDirectory)
+                            .entrySet()) {
+                scoreWriter.writeTranslatedScoresForOneCommit(entry.getKey(),
+                        new SuspiciousnessScoresFromCommit(
+                                result.getPreviousCommitHash(), previousOrder,
+                                entry.getValue()), result.getCommitHash());
+            }
+        } catch(IOException err) {
+            System.out.println("Could not translate the scores of commit #"
+                    + previousOrder + " (hash: "
+                    + result.getPreviousCommitHash() + ") into the line "
+                    + "numbers of commit " + result.getCommitHash()
+                    + " due to error:");
+            err.printStackTrace(System.out);
+        }
+    }
+    
+    /**
+     * Creates the image for one visualization job. If the image can't be
+     * saved, the error is printed and the pipeline moves on.
+     */
+    private static void visualize(Configuration config,
+            SuspiciousnessVisualizer visualizer, VisualizationJob job) {
+        SuspiciousnessScoresFromCommit scores = job.getScores();
+        try {
+            visualizer.visualizeSuspicousnessForOneCommit(
+                    config.getStatementHeight(), config.getStatementWidth(),
+                    config.getFileMargin(), config.getFileFontSize(),
+                    job.getOutputDirectory(), scores);
+        } catch(IOException err) {
+            System.out.println("Could not visualize commit #"
+                    + scores.getOrderProcessed() + " (hash: "
+                    + scores.getCommitHash() + ") due to error:");
+            err.printStackTrace(System.out);
+        }
+    }
+    
+    /**
+     * Hands an item to a pipeline stage, waiting for room in its queue if
+     * necessary. If interrupted while waiting, the item is dropped.
+     */
+    private static <T> void submit(PipelineStage<T> stage, T item) {
+        try {
+            stage.submit(item);
+        } catch(InterruptedException err) {
+            System.out.println("Interrupted while handing an item to the "
+                    + stage.getName() + " stage; the item was dropped.");
+            Thread.currentThread().interrupt();
         }
+    }
+    
+    /**
+     * Lets each worker have one item waiting while it works on another, so
+     * that workers don't sit idle between items.
+     */
+    private static int getQueueCapacity(int workerCount) {
+        return workerCount * 2;
+    }
+    
+    /**
+     * Turns a commit's test coverage data into the visualization jobs made
+     * from its suspiciousness scores. <code>close()</code> is called once
+     * every commit has been scored.
+     */
+    private interface Scorer extends AutoCloseable {
+        List<VisualizationJob> score(TestExecutionDataFromCommit result);
         
-        // Create visualizations
-        SuspiciousnessVisualizer visualizer = new SuspiciousnessVisualizer();
-        visualizer.visualizeSuspiciousnessForAllCommits(
-                config.getStatementHeight(), config.getStatementWidth(),
-                config.getFileMargin(), config.getFileFontSize(),
-                config.getImageOutputDirectory(), allSuspiciousnessScores);
+        @Override
+        default void close() {
+        }
+    }
+    
+    /**
+     * A set of suspiciousness scores waiting to be visualized, along with the
+     * directory the image should be saved to and the directory the scores
+     * should be saved to, if any.
+     */
+    private static class VisualizationJob {
+        private final String outputDirectory;
+        private final String scoreDirectory;
+        private final SuspiciousnessScoresFromCommit scores;
+
+        public VisualizationJob(String outputDirectory, String scoreDirectory,
+                SuspiciousnessScoresFromCommit scores) {
+            this.outputDirectory = outputDirectory;
+            this.scoreDirectory = scoreDirectory;
+            this.scores = scores;
+        }
+
+        public String getOutputDirectory() {
+            return outputDirectory;
+        }
+
+        public String getScoreDirectory() {
+            return scoreDirectory;
+        }
+
+        public SuspiciousnessScoresFromCommit getScores() {
+            return scores;
+        }
     }
 }
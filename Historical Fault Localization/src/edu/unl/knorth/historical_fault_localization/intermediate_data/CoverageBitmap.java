@@ -0,0 +1,377 @@
+package edu.unl.knorth.historical_fault_localization.intermediate_data;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable set of statement IDs (see <code>StatementIndex</code>)
+ * recording which statements a single test executed.
+ * <p/>
+ * Depending on which is smaller, the IDs are stored either as a
+ * <code>long[]</code> bitset, one bit per statement, or as a sorted
+ * <code>int[]</code> when a test only executes a few statements spread across
+ * a large program. Either way, the size of intersections and unions with other
+ * bitmaps can be counted without allocating anything.
+ * <p/>
+ * Each bitmap also has a 128-bit fingerprint of its IDs, worked out once when
+ * it is created, so that bitmaps can be hashed by their IDs and most bitmaps
+ * with different IDs can be told apart without comparing them ID by ID.
+ */
+public final class CoverageBitmap {
+    private static final long[] NO_WORDS = new long[0];
+    // The starting values of the two halves of the fingerprint
+    private static final long FINGERPRINT_SEED_1 = 0x6a09e667f3bcc909L;
+    private static final long FINGERPRINT_SEED_2 = 0xbb67ae8584caa73bL;
+
+    // Exactly one of words and sortedIds is non-null
+    private final long[] words;
+    private final int[] sortedIds;
+    private final int cardinality;
+    private final long fingerprint1;
+    private final long fingerprint2;
+
+    private CoverageBitmap(long[] words, int[] sortedIds, int cardinality,
+            long fingerprint1, long fingerprint2) {
+        this.words = words;
+        this.sortedIds = sortedIds;
+        this.cardinality = cardinality;
+        this.fingerprint1 = fingerprint1;
+        this.fingerprint2 = fingerprint2;
+    }
+
+    /**
+     * Creates a bitmap containing the specified IDs.
+     * @param ids The IDs to put in the bitmap. They may be in any order and may
+     * contain duplicates. This array is not modified.
+     * @param length How many elements at the start of <code>ids</code> to use.
+     * @return A bitmap containing each of the IDs.
+     */
+    public static CoverageBitmap fromIds(int[] ids, int length) {
+        int[] sorted = Arrays.copyOf(ids, length);
+        Arrays.sort(sorted);
+
+        int distinct = 0;
+        long fingerprint1 = FINGERPRINT_SEED_1;
+        long fingerprint2 = FINGERPRINT_SEED_2;
+        for(int i = 0; i < sorted.length; i++) {
+            if(sorted[i] < 0) {
+                throw new IllegalArgumentException("Negative statement ID "
+                        + sorted[i]);
+            }
+            if(distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+                sorted[distinct] = sorted[i];
+                distinct++;
+                fingerprint1 = mix(fingerprint1 ^ sorted[i]);
+                fingerprint2 = mix(fingerprint2 + sorted[i]);
+            }
+        }
+
+        if(distinct == 0) {
+            return new CoverageBitmap(NO_WORDS, null, 0, fingerprint1,
+                    fingerprint2);
+        }
+
+        int numWords = (sorted[distinct - 1] >>> 6) + 1;
+        // A bitset costs 8 bytes per word, a sorted array 4 bytes per ID
+        if(distinct < numWords * 2) {
+            return new CoverageBitmap(null, Arrays.copyOf(sorted, distinct),
+                    distinct, fingerprint1, fingerprint2);
+        }
+
+        long[] words = new long[numWords];
+        for(int i = 0; i < distinct; i++) {
+            words[sorted[i] >>> 6] |= 1L << sorted[i];
+        }
+        return new CoverageBitmap(words, null, distinct, fingerprint1,
+                fingerprint2);
+    }
+
+    /**
+     * Scrambles the bits of a fingerprint after each ID is added to it, so
+     * that different sets of IDs end up with unrelated fingerprints. This is
+     * the finalizer of the SplitMix64 random number generator.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * @param id A statement ID.
+     * @return <code>true</code> if this bitmap contains the ID.
+     */
+    public boolean contains(int id) {
+        if(id < 0) {
+            return false;
+        } else if(words != null) {
+            int wordIndex = id >>> 6;
+            return wordIndex < words.length
+                    && (words[wordIndex] & (1L << id)) != 0;
+        } else {
+            return Arrays.binarySearch(sortedIds, id) >= 0;
+        }
+    }
+
+    /**
+     * @return How many IDs are in this bitmap.
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @param other Another bitmap.
+     * @return How many IDs are in both this bitmap and <code>other</code>.
+     */
+    public int intersectionSize(CoverageBitmap other) {
+        if(words != null && other.words != null) {
+            int numWords = Math.min(words.length, other.words.length);
+            int count = 0;
+            for(int i = 0; i < numWords; i++) {
+                count += Long.bitCount(words[i] & other.words[i]);
+            }
+            return count;
+        } else if(words != null) {
+            return other.intersectionSize(this);
+        } else if(other.words != null) {
+            int count = 0;
+            for(int id : sortedIds) {
+                if(other.contains(id)) {
+                    count++;
+                }
+            }
+            return count;
+        } else {
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while(i < sortedIds.length && j < other.sortedIds.length) {
+                if(sortedIds[i] < other.sortedIds[j]) {
+                    i++;
+                } else if(sortedIds[i] > other.sortedIds[j]) {
+                    j++;
+                } else {
+                    count++;
+                    i++;
+                    j++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Compares the fingerprints of two bitmaps. Bitmaps with the same IDs
+     * always have the same fingerprint, and bitmaps with different IDs almost
+     * never do, but the fingerprint isn't built to resist collisions, so a
+     * match doesn't prove the IDs are the same. Use <code>hasSameIds()</code>
+     * for that.
+     * @param other Another bitmap.
+     * @return <code>true</code> if this bitmap and <code>other</code> have the
+     * same fingerprint and the same number of IDs.
+     */
+    public boolean hasSameFingerprint(CoverageBitmap other) {
+        return fingerprint1 == other.fingerprint1
+                && fingerprint2 == other.fingerprint2
+                && cardinality == other.cardinality;
+    }
+
+    /**
+     * Checks whether two bitmaps contain exactly the same IDs. The
+     * fingerprints are compared first, so bitmaps with different IDs are
+     * almost always told apart without looking at the IDs. Bitmaps with the
+     * same IDs are always stored the same way, so a match is confirmed by
+     * comparing their arrays.
+     * @param other Another bitmap.
+     * @return <code>true</code> if this bitmap and <code>other</code> contain
+     * the same IDs.
+     */
+    public boolean hasSameIds(CoverageBitmap other) {
+        if(!hasSameFingerprint(other)) {
+            return false;
+        } else if(words != null && other.words != null) {
+            return Arrays.equals(words, other.words);
+        } else if(sortedIds != null && other.sortedIds != null) {
+            return Arrays.equals(sortedIds, other.sortedIds);
+        } else {
+            return intersectionSize(other) == cardinality;
+        }
+    }
+
+    /**
+     * @return A hash code derived from the fingerprint, for keeping bitmaps in
+     * hash tables keyed by their fingerprints.
+     */
+    public int getFingerprintHash() {
+        return (int) (fingerprint1 ^ (fingerprint1 >>> 32));
+    }
+
+    /**
+     * Finds the IDs that are in only one of two bitmaps. When both bitmaps are
+     * bitsets, they are compared a word at a time, and only the words that
+     * differ are looked at ID by ID, so two bitmaps that are nearly the same
+     * are compared in time proportional to their number of words, not IDs.
+     * @param other Another bitmap.
+     * @param onlyInThis Called, in increasing order, with each ID that is in
+     * this bitmap but not in <code>other</code>.
+     * @param onlyInOther Called, in increasing order, with each ID that is in
+     * <code>other</code> but not in this bitmap.
+     */
+    public void forEachDifference(CoverageBitmap other, IntConsumer onlyInThis,
+            IntConsumer onlyInOther) {
+        if(words != null && other.words != null) {
+            int numWords = Math.max(words.length, other.words.length);
+            for(int i = 0; i < numWords; i++) {
+                long word = (i < words.length) ? words[i] : 0L;
+                long otherWord = (i < other.words.length) ? other.words[i] : 0L;
+                long difference = word ^ otherWord;
+                if(difference == 0) {
+                    continue;
+                }
+                forEachBit(i, difference & word, onlyInThis);
+                forEachBit(i, difference & otherWord, onlyInOther);
+            }
+            return;
+        }
+
+        PrimitiveIterator.OfInt ids = idIterator();
+        PrimitiveIterator.OfInt otherIds = other.idIterator();
+        int id = ids.hasNext() ? ids.nextInt() : -1;
+        int otherId = otherIds.hasNext() ? otherIds.nextInt() : -1;
+        while(id != -1 || otherId != -1) {
+            if(otherId == -1 || (id != -1 && id < otherId)) {
+                onlyInThis.accept(id);
+                id = ids.hasNext() ? ids.nextInt() : -1;
+            } else if(id == -1 || otherId < id) {
+                onlyInOther.accept(otherId);
+                otherId = otherIds.hasNext() ? otherIds.nextInt() : -1;
+            } else {
+                id = ids.hasNext() ? ids.nextInt() : -1;
+                otherId = otherIds.hasNext() ? otherIds.nextInt() : -1;
+            }
+        }
+    }
+
+    private static void forEachBit(int wordIndex, long word,
+            IntConsumer consumer) {
+        while(word != 0) {
+            consumer.accept((wordIndex << 6) + Long.numberOfTrailingZeros(word));
+            word &= word - 1;
+        }
+    }
+
+    /**
+     * @param other Another bitmap.
+     * @return How many IDs are in this bitmap, <code>other</code>, or both.
+     */
+    public int unionSize(CoverageBitmap other) {
+        return cardinality + other.cardinality - intersectionSize(other);
+    }
+
+    /**
+     * Sets the bit for every ID in this bitmap in a <code>long[]</code> bitset.
+     * @param target The bitset to add to. It must have at least
+     * <code>getRequiredWords()</code> elements.
+     */
+    public void orInto(long[] target) {
+        if(words != null) {
+            for(int i = 0; i < words.length; i++) {
+                target[i] |= words[i];
+            }
+        } else {
+            for(int id : sortedIds) {
+                target[id >>> 6] |= 1L << id;
+            }
+        }
+    }
+
+    /**
+     * @return How many words a <code>long[]</code> bitset needs to have room
+     * for every ID in this bitmap.
+     */
+    public int getRequiredWords() {
+        if(words != null) {
+            return words.length;
+        } else if(sortedIds.length == 0) {
+            return 0;
+        } else {
+            return (sortedIds[sortedIds.length - 1] >>> 6) + 1;
+        }
+    }
+
+    /**
+     * @return An iterator over the IDs in this bitmap in increasing order.
+     */
+    public PrimitiveIterator.OfInt idIterator() {
+        if(words != null) {
+            return iterateWords(words);
+        }
+
+        return new PrimitiveIterator.OfInt() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < sortedIds.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return sortedIds[position++];
+            }
+        };
+    }
+
+    /**
+     * @param words A <code>long[]</code> bitset.
+     * @return An iterator over the indexes of the bits that are set in
+     * <code>words</code>, in increasing order.
+     */
+    static PrimitiveIterator.OfInt iterateWords(final long[] words) {
+        return new PrimitiveIterator.OfInt() {
+            private int wordIndex = 0;
+            private long remaining = (words.length == 0) ? 0L : words[0];
+
+            @Override
+            public boolean hasNext() {
+                while(remaining == 0) {
+                    wordIndex++;
+                    if(wordIndex >= words.length) {
+                        return false;
+                    }
+                    remaining = words[wordIndex];
+                }
+                return true;
+            }
+
+            @Override
+            public int nextInt() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int bit = Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                return (wordIndex << 6) + bit;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CoverageBitmap{");
+        PrimitiveIterator.OfInt iterator = idIterator();
+        while(iterator.hasNext()) {
+            builder.append(iterator.nextInt());
+            if(iterator.hasNext()) {
+                builder.append(", ");
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,99 @@
+package edu.unl.knorth.historical_fault_localization.intermediate_data;
+
+import java.util.Arrays;
+
+/**
+ * Maps each statement to the positions of the tests that executed it, in
+ * the order the tests were added. The positions are stored in plain
+ * <code>int[]</code>s so that the index costs about four bytes per
+ * (test, statement) pair.
+ * <p/>
+ * Statements are identified by their number within a single
+ * <code>TestExecutionData</code>, not by their ID in the shared
+ * <code>StatementIndex</code>, so the index only grows with the statements of
+ * one revision.
+ */
+final class InvertedCoverageIndex {
+    private static final int[] NO_TESTS = new int[0];
+
+    private int[][] testsByStatement;
+    private int[] counts;
+
+    InvertedCoverageIndex() {
+        testsByStatement = new int[0][];
+        counts = new int[0];
+    }
+
+    /**
+     * Records that a test executed a statement. Tests must be added in
+     * increasing order of position.
+     * @param statementId The statement's number.
+     * @param testPosition The test's position in its TestExecutionData.
+     */
+    void add(int statementId, int testPosition) {
+        if(statementId >= counts.length) {
+            int newLength = Math.max(statementId + 1, counts.length * 2);
+            testsByStatement = Arrays.copyOf(testsByStatement, newLength);
+            counts = Arrays.copyOf(counts, newLength);
+        }
+
+        int[] tests = testsByStatement[statementId];
+        int count = counts[statementId];
+        if(tests == null) {
+            tests = new int[4];
+            testsByStatement[statementId] = tests;
+        } else if(count == tests.length) {
+            tests = Arrays.copyOf(tests, count * 2);
+            testsByStatement[statementId] = tests;
+        }
+
+        tests[count] = testPosition;
+        counts[statementId] = count + 1;
+    }
+
+    /**
+     * @param statementId A statement's number.
+     * @return How many tests executed the statement.
+     */
+    int count(int statementId) {
+        if(statementId < 0 || statementId >= counts.length) {
+            return 0;
+        }
+        return counts[statementId];
+    }
+
+    /**
+     * @param statementId A statement's number.
+     * @return The positions of the tests that executed the statement, in
+     * increasing order. The caller may modify the returned array.
+     */
+    int[] getTestPositions(int statementId) {
+        int count = count(statementId);
+        if(count == 0) {
+            return NO_TESTS;
+        }
+        return Arrays.copyOf(testsByStatement[statementId], count);
+    }
+
+    /**
+     * Adds up the weights of the tests that executed a statement without
+     * copying their positions. The weights are added in increasing order of
+     * test position.
+     * @param statementId A statement's number.
+     * @param weightsByPosition Each test's weight, indexed by its position.
+     * @return The sum of the weights of the tests that executed the statement.
+     */
+    double sumWeights(int statementId, double[] weightsByPosition) {
+        int count = count(statementId);
+        if(count == 0) {
+            return 0D;
+        }
+
+        int[] tests = testsByStatement[statementId];
+        double sum = 0D;
+        for(int i = 0; i < count; i++) {
+            sum += weightsByPosition[tests[i]];
+        }
+        return sum;
+    }
+}
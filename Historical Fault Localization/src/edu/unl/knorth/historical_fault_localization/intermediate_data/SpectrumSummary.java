@@ -0,0 +1,126 @@
+package edu.unl.knorth.historical_fault_localization.intermediate_data;
+
+/**
+ * The program spectrum of a <code>TestExecutionData</code> boiled down to the
+ * four counts most spectrum-based fault localization formulas need for each
+ * statement:
+ * <ul>
+ * <li><code>ef</code> - the number of failing tests that executed the
+ * statement</li>
+ * <li><code>ep</code> - the number of passing tests that executed the
+ * statement</li>
+ * <li><code>nf</code> - the number of failing tests that did not execute the
+ * statement</li>
+ * <li><code>np</code> - the number of passing tests that did not execute the
+ * statement</li>
+ * </ul>
+ * The counts for every statement are computed at once and stored in primitive
+ * arrays, so suspiciousness can be calculated with a single linear sweep over
+ * the statements instead of looking up tests statement by statement.
+ * <p/>
+ * Statements are referred to by their position in the summary, from 0 to
+ * <code>getNumStatements() - 1</code>.
+ */
+public final class SpectrumSummary {
+    private final int[] statementIds;
+    private final int[] executedFailing;
+    private final int[] executedPassing;
+    private final int numFailingTests;
+    private final int numPassingTests;
+    private final StatementIndex index;
+
+    /**
+     * @param statementIds The IDs of the statements, from
+     * <code>index</code>, in the order they appear in the summary.
+     * @param executedFailing The <code>ef</code> count for each statement.
+     * @param executedPassing The <code>ep</code> count for each statement.
+     * @param numFailingTests The total number of failing tests.
+     * @param numPassingTests The total number of passing tests.
+     * @param index The index the statement IDs come from.
+     */
+    public SpectrumSummary(int[] statementIds, int[] executedFailing,
+            int[] executedPassing, int numFailingTests, int numPassingTests,
+            StatementIndex index) {
+        if(statementIds.length != executedFailing.length
+                || statementIds.length != executedPassing.length) {
+            throw new IllegalArgumentException("Every statement must have "
+                    + "exactly one ef and ep count.");
+        }
+
+        this.statementIds = statementIds;
+        this.executedFailing = executedFailing;
+        this.executedPassing = executedPassing;
+        this.numFailingTests = numFailingTests;
+        this.numPassingTests = numPassingTests;
+        this.index = index;
+    }
+
+    /**
+     * @return How many statements are in the summary.
+     */
+    public int getNumStatements() {
+        return statementIds.length;
+    }
+
+    /**
+     * @param position The statement's position in the summary.
+     * @return The statement at that position.
+     */
+    public StatementData getStatement(int position) {
+        return index.getStatement(statementIds[position]);
+    }
+
+    /**
+     * @param position The statement's position in the summary.
+     * @return The ID of the statement at that position.
+     */
+    public int getStatementId(int position) {
+        return statementIds[position];
+    }
+
+    /**
+     * @param position The statement's position in the summary.
+     * @return The number of failing tests that executed the statement.
+     */
+    public int getExecutedFailing(int position) {
+        return executedFailing[position];
+    }
+
+    /**
+     * @param position The statement's position in the summary.
+     * @return The number of passing tests that executed the statement.
+     */
+    public int getExecutedPassing(int position) {
+        return executedPassing[position];
+    }
+
+    /**
+     * @param position The statement's position in the summary.
+     * @return The number of failing tests that did not execute the statement.
+     */
+    public int getNotExecutedFailing(int position) {
+        return numFailingTests - executedFailing[position];
+    }
+
+    /**
+     * @param position The statement's position in the summary.
+     * @return The number of passing tests that did not execute the statement.
+     */
+    public int getNotExecutedPassing(int position) {
+        return numPassingTests - executedPassing[position];
+    }
+
+    /**
+     * @return The total number of failing tests.
+     */
+    public int getNumFailingTests() {
+        return numFailingTests;
+    }
+
+    /**
+     * @return The total number of passing tests.
+     */
+    public int getNumPassingTests() {
+        return numPassingTests;
+    }
+}
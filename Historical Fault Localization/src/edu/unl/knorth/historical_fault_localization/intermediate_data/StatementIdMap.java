@@ -0,0 +1,125 @@
+package edu.unl.knorth.historical_fault_localization.intermediate_data;
+
+import java.util.Arrays;
+
+/**
+ * Maps statement IDs from the shared <code>StatementIndex</code> to
+ * non-negative <code>int</code>s, such as a statement's number within a
+ * single commit.
+ * <p/>
+ * The shared index hands out a new ID every time a statement is seen at a new
+ * line, so its IDs keep growing over the history of the target program. This
+ * map is an open-addressing hash table, so its size depends only on how many
+ * IDs are put in it, not on how large the IDs are. Nothing is boxed.
+ */
+public final class StatementIdMap {
+    private static final int EMPTY = -1;
+
+    // keys[i] is EMPTY if slot i is unused
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    public StatementIdMap() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize How many IDs are expected to be put in the map. The
+     * map still grows past this if needed.
+     */
+    public StatementIdMap(int expectedSize) {
+        int capacity = 16;
+        while(capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        size = 0;
+    }
+
+    /**
+     * @param id A statement ID.
+     * @return The value the ID is mapped to, or -1 if it isn't in the map.
+     */
+    public int get(int id) {
+        if(id < 0) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for(int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+            if(keys[slot] == id) {
+                return values[slot];
+            } else if(keys[slot] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Maps an ID to a value, replacing the value it was mapped to before, if
+     * any.
+     * @param id A statement ID. Must not be negative.
+     * @param value The value. Must not be negative.
+     */
+    public void put(int id, int value) {
+        if(id < 0 || value < 0) {
+            throw new IllegalArgumentException("IDs and values must not be "
+                    + "negative, not " + id + " and " + value);
+        }
+        if((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        if(insert(keys, values, id, value)) {
+            size++;
+        }
+    }
+
+    /**
+     * @return How many IDs are in the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] newKeys = new int[keys.length * 2];
+        Arrays.fill(newKeys, EMPTY);
+        int[] newValues = new int[newKeys.length];
+        for(int slot = 0; slot < keys.length; slot++) {
+            if(keys[slot] != EMPTY) {
+                insert(newKeys, newValues, keys[slot], values[slot]);
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    /**
+     * @return <code>true</code> if the ID wasn't already in the table.
+     */
+    private static boolean insert(int[] keys, int[] values, int id,
+            int value) {
+        int mask = keys.length - 1;
+        for(int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+            if(keys[slot] == EMPTY) {
+                keys[slot] = id;
+                values[slot] = value;
+                return true;
+            } else if(keys[slot] == id) {
+                values[slot] = value;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Spreads consecutive IDs across the table, since IDs handed out for the
+     * same file are usually close together.
+     */
+    private static int hash(int id) {
+        int hash = id * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
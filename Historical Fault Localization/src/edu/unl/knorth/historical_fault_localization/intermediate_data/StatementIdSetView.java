@@ -0,0 +1,55 @@
+package edu.unl.knorth.historical_fault_localization.intermediate_data;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+/**
+ * A read-only <code>Set</code> of statements backed by a set of statement IDs.
+ * This lets <code>TestData</code> and <code>TestExecutionData</code> keep
+ * handing out <code>Set&lt;StatementData&gt;</code>s while only storing
+ * bitmaps internally.
+ */
+abstract class StatementIdSetView extends AbstractSet<StatementData> {
+    private final StatementIndex index;
+
+    StatementIdSetView(StatementIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * @param id A statement ID.
+     * @return <code>true</code> if the backing set contains the ID.
+     */
+    protected abstract boolean containsId(int id);
+
+    /**
+     * @return An iterator over the IDs in the backing set.
+     */
+    protected abstract PrimitiveIterator.OfInt idIterator();
+
+    @Override
+    public boolean contains(Object o) {
+        if(!(o instanceof StatementData)) {
+            return false;
+        }
+        int id = index.lookup((StatementData) o);
+        return id >= 0 && containsId(id);
+    }
+
+    @Override
+    public Iterator<StatementData> iterator() {
+        final PrimitiveIterator.OfInt ids = idIterator();
+        return new Iterator<StatementData>() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public StatementData next() {
+                return index.getStatement(ids.nextInt());
+            }
+        };
+    }
+}
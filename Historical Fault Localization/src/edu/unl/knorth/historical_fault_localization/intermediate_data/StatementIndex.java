@@ -0,0 +1,118 @@
+package edu.unl.knorth.historical_fault_localization.intermediate_data;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns each distinct statement a small, dense integer ID. Coverage is stored
+ * as bitmaps of these IDs (see <code>CoverageBitmap</code>) instead of as sets
+ * of <code>StatementData</code> objects, which keeps the memory used per
+ * (test, statement) pair down to a bit or two.
+ * <p/>
+ * IDs are handed out in the order statements are first seen and are never
+ * reused, so an ID means the same statement for as long as the program runs.
+ * All of the tests and test execution data in the program share the index
+ * returned by <code>getSharedIndex()</code> so that coverage from any two tests
+ * can be compared directly.
+ * <p/>
+ * Because IDs are never reused, the index never shrinks: it holds every
+ * distinct statement seen since the program started, including statements
+ * from files that were later deleted or changed. Across a long history its
+ * size grows with the number of distinct (file, line) pairs in all of the
+ * commits processed, not with the number of commits, since unchanged
+ * statements share their IDs from commit to commit. That is usually small
+ * compared to the coverage of a single commit, but it is not bounded by it.
+ * <p/>
+ * This class is thread-safe.
+ */
+public final class StatementIndex {
+    private static final StatementIndex SHARED_INDEX = new StatementIndex();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<StatementData, Integer> ids;
+    // Only written while holding the lock. Every new statement is stored in the
+    // array before the array is written back to this volatile field, so
+    // getStatement() can read it without locking.
+    private volatile StatementData[] statements;
+    private int size;
+
+    public StatementIndex() {
+        ids = new ConcurrentHashMap<>();
+        statements = new StatementData[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * @return The index shared by every <code>TestData</code> and
+     * <code>TestExecutionData</code> in the program.
+     */
+    public static StatementIndex getSharedIndex() {
+        return SHARED_INDEX;
+    }
+
+    /**
+     * Gets the ID of a statement, assigning it a new ID if it hasn't been seen
+     * before.
+     * @param statement The statement to look up.
+     * @return The statement's ID.
+     */
+    public int intern(StatementData statement) {
+        Integer id = ids.get(statement);
+        if(id != null) {
+            return id;
+        }
+
+        synchronized(this) {
+            id = ids.get(statement);
+            if(id != null) {
+                return id;
+            }
+
+            StatementData[] newStatements = statements;
+            if(size == newStatements.length) {
+                newStatements = Arrays.copyOf(newStatements, size * 2);
+            }
+            int newId = size;
+            newStatements[newId] = statement;
+            // Publishes the new statement, even if the array wasn't replaced
+            statements = newStatements;
+            size++;
+            // Only make the ID visible once the statement can be looked up
+            ids.put(statement, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Gets the ID of a statement without assigning it one.
+     * @param statement The statement to look up.
+     * @return The statement's ID, or -1 if the statement has never been
+     * interned.
+     */
+    public int lookup(StatementData statement) {
+        Integer id = ids.get(statement);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * @param id An ID returned by <code>intern()</code>.
+     * @return The statement with the specified ID.
+     * @throws IndexOutOfBoundsException If no statement has the ID.
+     */
+    public StatementData getStatement(int id) {
+        StatementData statement = statements[id];
+        if(statement == null) {
+            throw new IndexOutOfBoundsException("No statement has ID " + id);
+        }
+        return statement;
+    }
+
+    /**
+     * @return How many statements have been assigned IDs. Every ID is less
+     * than this number.
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -2,15 +2,20 @@ package edu.unl.knorth.historical_fault_localization.intermediate_data;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.PrimitiveIterator;
 import java.util.Set;
 
 /**
  * Represents a single test.
+ * <p/>
+ * The statements the test executed are stored as a <code>CoverageBitmap</code>
+ * of IDs from the shared <code>StatementIndex</code>. The
+ * <code>Set&lt;StatementData&gt;</code> returned by
+ * <code>getStatementsExecuted()</code> is a view over that bitmap.
  */
 public final class TestData {
     private final boolean passed;
+    private final CoverageBitmap coverage;
     private final Set<StatementData> statementsExecuted;
 
     /**
@@ -18,20 +23,54 @@ public final class TestData {
      * @param statementsExecuted The statements that the test executed.
      */
     public TestData(boolean passed, Collection<StatementData> statementsExecuted) {
-        this.passed = passed;
-        this.statementsExecuted =
-                Collections.unmodifiableSet(new HashSet<>(statementsExecuted));
+        this(passed, internStatements(statementsExecuted));
     }
-    
+
     /**
      * @param passed Whether the test passed or failed.
      * @param statementsExecuted The statements that the test executed.
      */
     public TestData(boolean passed, StatementData... statementsExecuted) {
+        this(passed, internStatements(Arrays.asList(statementsExecuted)));
+    }
+
+    /**
+     * @param passed Whether the test passed or failed.
+     * @param coverage The IDs, from the shared <code>StatementIndex</code>, of
+     * the statements that the test executed.
+     */
+    public TestData(boolean passed, final CoverageBitmap coverage) {
         this.passed = passed;
+        this.coverage = coverage;
         this.statementsExecuted =
-            Collections.unmodifiableSet(
-                new HashSet<>(Arrays.asList(statementsExecuted)));
+                new StatementIdSetView(StatementIndex.getSharedIndex()) {
+            @Override
+            protected boolean containsId(int id) {
+                return coverage.contains(id);
+            }
+
+            @Override
+            protected PrimitiveIterator.OfInt idIterator() {
+                return coverage.idIterator();
+            }
+
+            @Override
+            public int size() {
+                return coverage.cardinality();
+            }
+        };
+    }
+
+    private static CoverageBitmap internStatements(
+            Collection<StatementData> statements) {
+        StatementIndex index = StatementIndex.getSharedIndex();
+        int[] ids = new int[statements.size()];
+        int i = 0;
+        for(StatementData statement : statements) {
+            ids[i] = index.intern(statement);
+            i++;
+        }
+        return CoverageBitmap.fromIds(ids, ids.length);
     }
 
     /**
@@ -43,7 +82,7 @@ public final class TestData {
     public boolean executedStatement(StatementData statement) {
         return statementsExecuted.contains(statement);
     }
-    
+
     /**
      * @return Whether this test passed.
      */
@@ -58,9 +97,17 @@ public final class TestData {
         return statementsExecuted;
     }
 
+    /**
+     * @return The IDs, from the shared <code>StatementIndex</code>, of the
+     * statements this test executed.
+     */
+    public CoverageBitmap getCoverage() {
+        return coverage;
+    }
+
     @Override
     public String toString() {
         return "Test{" + "passed=" + passed +
                 ", statementsExecuted=" + statementsExecuted + '}';
     }
-}
\ No newline at end of file
+}
@@ -1,46 +1,115 @@
 package edu.unl.knorth.historical_fault_localization.intermediate_data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
+import java.util.PrimitiveIterator;
 import java.util.Set;
 
 /**
  * Keeps track of the results from running and profiling all of the tests for a
  * single revision of the code under test.
+ * <p/>
+ * Together, the tests' <code>CoverageBitmap</code>s form a coverage matrix with
+ * one row per test and one column per statement ID from the shared
+ * <code>StatementIndex</code>. The statements and tests this class hands out
+ * are views over that matrix.
+ * <p/>
+ * The shared index never shrinks, and its IDs keep growing over the history of
+ * the target program, so nothing here is sized by them. Instead, each of this
+ * revision's statements is given its own number, counting up from 0 in the
+ * order the statements are added, and everything per statement is stored by
+ * that number. A revision's memory use therefore only depends on how many
+ * statements it has.
  */
 public class TestExecutionData {
-    // Statements are in a set because there wil never be identical statements.
-    private final Set<StatementData> statements;
+    // Statement ID -> the statement's number in this revision. Statements are
+    // in a set of IDs because there will never be identical statements.
+    private final StatementIdMap statementNumbers;
+    // The statement's number -> statement ID
+    private int[] statementIds;
+    private int numStatements;
+    // The statement IDs in increasing order, worked out when they are first
+    // needed after a statement is added, or null if they need working out
+    // again. It is volatile so that the threads scoring the statements at the
+    // same time only ever see a fully sorted array.
+    private volatile int[] sortedStatementIds;
     // Tests are in a list because two tests can have identical values, but
-    // still be the results from two different tests, so unlike the Set of
+    // still be the results from two different tests, so unlike the set of
     // statements, we don't want to silently ignore duplicate tests.
     private final List<TestData> tests;
+    // Inverted indexes from each statement's number to the positions of the
+    // tests that executed it. They are kept up to date as tests are added so that looking
+    // up which tests executed a statement doesn't require scanning every test.
+    private final InvertedCoverageIndex passingTestsByStatement;
+    private final InvertedCoverageIndex failingTestsByStatement;
+    private int numPassingTests;
+    private int numFailingTests;
+    private final StatementIndex index;
+    private final Set<StatementData> statementsView;
 
     public TestExecutionData() {
-        statements = new HashSet<>();
+        statementNumbers = new StatementIdMap();
+        statementIds = new int[16];
+        numStatements = 0;
+        sortedStatementIds = null;
         tests = new ArrayList<>();
+        passingTestsByStatement = new InvertedCoverageIndex();
+        failingTestsByStatement = new InvertedCoverageIndex();
+        numPassingTests = 0;
+        numFailingTests = 0;
+        index = StatementIndex.getSharedIndex();
+        statementsView = new StatementIdSetView(index) {
+            @Override
+            protected boolean containsId(int id) {
+                return containsStatementId(id);
+            }
+
+            @Override
+            protected PrimitiveIterator.OfInt idIterator() {
+                return statementIdIterator();
+            }
+
+            @Override
+            public int size() {
+                return numStatements;
+            }
+        };
     }
-    
+
     /**
      * Gets all of the tests that executed the specified statement.
      * @param statement This method returns tests that executed this statement.
-     * @return A List of tests that executed the specified statement.
+     * @return A List of tests that executed the specified statement, in the
+     * order they were added.
      */
     public List<TestData> getTestsThatExecuteStatment(StatementData statement) {
-        List<TestData> selectedTests = new ArrayList<>();
-        
-        for(TestData test : tests) {
-            if(test.executedStatement(statement)) {
-                selectedTests.add(test);
+        int number = statementNumbers.get(index.lookup(statement));
+        int[] passing = passingTestsByStatement.getTestPositions(number);
+        int[] failing = failingTestsByStatement.getTestPositions(number);
+
+        // Both arrays are sorted, so merging them restores the order the tests
+        // were added in
+        List<TestData> selectedTests =
+                new ArrayList<>(passing.length + failing.length);
+        int i = 0;
+        int j = 0;
+        while(i < passing.length || j < failing.length) {
+            if(j == failing.length
+                    || (i < passing.length && passing[i] < failing[j])) {
+                selectedTests.add(tests.get(passing[i]));
+                i++;
+            } else {
+                selectedTests.add(tests.get(failing[j]));
+                j++;
             }
         }
-        
+
         return selectedTests;
     }
-    
+
     /**
      * Gets all of the tests that both executed the specified statement and
      * passed or failed, depending on what arguments are passed in.
@@ -54,36 +123,80 @@ public class TestExecutionData {
      */
     public List<TestData> getTestsThatExecuteStatment(StatementData statement,
             boolean passing) {
-        List<TestData> partialTests = getTestsThatExecuteStatment(statement);
-        List<TestData> selectedTests = new ArrayList<>();
-        
-        for(TestData test : partialTests) {
-            if(test.getPassed() == passing) {
-                selectedTests.add(test);
-            }
+        InvertedCoverageIndex testsByStatement = passing
+                ? passingTestsByStatement : failingTestsByStatement;
+        int[] positions = testsByStatement.getTestPositions(
+                statementNumbers.get(index.lookup(statement)));
+
+        List<TestData> selectedTests = new ArrayList<>(positions.length);
+        for(int position : positions) {
+            selectedTests.add(tests.get(position));
         }
-        
+
         return selectedTests;
     }
-    
+
+    /**
+     * Adds up the weights of the tests that both executed a statement and
+     * passed or failed. Only the tests that executed the statement are looked
+     * at, so this costs time proportional to how many tests executed it.
+     * @param statementId The ID of the statement, as given by
+     * <code>SpectrumSummary.getStatementId()</code>.
+     * @param passing If <code>true</code>, only the weights of passing tests
+     * are added. If <code>false</code>, only the weights of failing tests are
+     * added.
+     * @param weightsByPosition The weight of each test, indexed by the test's
+     * position in <code>getTests()</code>.
+     * @return The sum of the weights, added in the order the tests appear in
+     * <code>getTests()</code>.
+     */
+    public double sumTestWeights(int statementId, boolean passing,
+            double[] weightsByPosition) {
+        InvertedCoverageIndex testsByStatement = passing
+                ? passingTestsByStatement : failingTestsByStatement;
+        return testsByStatement.sumWeights(statementNumbers.get(statementId),
+                weightsByPosition);
+    }
+
+    /**
+     * Adds up the weights of the tests that both executed a statement and
+     * passed or failed.
+     * @param statement The statement.
+     * @param passing If <code>true</code>, only the weights of passing tests
+     * are added. If <code>false</code>, only the weights of failing tests are
+     * added.
+     * @param weightsByPosition The weight of each test, indexed by the test's
+     * position in <code>getTests()</code>.
+     * @return The sum of the weights, added in the order the tests appear in
+     * <code>getTests()</code>.
+     * @see #sumTestWeights(int, boolean, double[])
+     */
+    public double sumTestWeights(StatementData statement, boolean passing,
+            double[] weightsByPosition) {
+        return sumTestWeights(index.lookup(statement), passing,
+                weightsByPosition);
+    }
+
     /**
      * Adds a statement to the statements this TestExecutionData keeps track of.
      * If the statement is already being kept track of, no changes are made.
      * @param statement The statement to add.
      */
     public void addStatement(StatementData statement) {
-        statements.add(statement);
+        addStatementId(index.intern(statement));
     }
-    
+
     /**
      * Adds to the statements this TestExecutionData keeps track of. Any
      * statements that are already being kept track of are ignored.
      * @param statements The statements to add.
      */
     public void addStatements(Collection<StatementData> statements) {
-        this.statements.addAll(statements);
+        for(StatementData statement : statements) {
+            addStatement(statement);
+        }
     }
-    
+
     /**
      * Adds a test to the tests this TestExecutionData keeps track of. Any
      * statements that the test executed are automatically added to the
@@ -91,10 +204,10 @@ public class TestExecutionData {
      * @param test The test to add.
      */
     public void addTest(TestData test) {
-        statements.addAll(test.getStatementsExecuted());
         tests.add(test);
+        indexTest(test, tests.size() - 1);
     }
-    
+
     /**
      * Adds to the tests this TestExecutionData keeps track of. Any statements
      * that the tests executed are automatically added to the statements this
@@ -103,10 +216,97 @@ public class TestExecutionData {
      */
     public void addTests(Collection<TestData> tests) {
         for(TestData test : tests) {
-            statements.addAll(test.getStatementsExecuted());
+            addTest(test);
         }
-        
-        this.tests.addAll(tests);
+    }
+
+    /**
+     * Records a newly added test in the inverted indexes from statements to
+     * the tests that executed them, adding any statements it executed that
+     * aren't being kept track of yet.
+     * @param test The test that was just added.
+     * @param position The test's position in the list of tests.
+     */
+    private void indexTest(TestData test, int position) {
+        InvertedCoverageIndex testsByStatement;
+        if(test.getPassed()) {
+            testsByStatement = passingTestsByStatement;
+            numPassingTests++;
+        } else {
+            testsByStatement = failingTestsByStatement;
+            numFailingTests++;
+        }
+
+        PrimitiveIterator.OfInt ids = test.getCoverage().idIterator();
+        while(ids.hasNext()) {
+            testsByStatement.add(addStatementId(ids.nextInt()), position);
+        }
+    }
+
+    /**
+     * Starts keeping track of a statement, unless it already is.
+     * @param id The statement's ID.
+     * @return The statement's number in this revision.
+     */
+    private int addStatementId(int id) {
+        int number = statementNumbers.get(id);
+        if(number >= 0) {
+            return number;
+        }
+
+        number = numStatements;
+        if(number == statementIds.length) {
+            statementIds = Arrays.copyOf(statementIds, number * 2);
+        }
+        statementIds[number] = id;
+        statementNumbers.put(id, number);
+        numStatements++;
+        sortedStatementIds = null;
+        return number;
+    }
+
+    private boolean containsStatementId(int id) {
+        return statementNumbers.get(id) >= 0;
+    }
+
+    private int[] getSortedStatementIds() {
+        int[] sorted = sortedStatementIds;
+        if(sorted == null) {
+            sorted = Arrays.copyOf(statementIds, numStatements);
+            Arrays.sort(sorted);
+            sortedStatementIds = sorted;
+        }
+        return sorted;
+    }
+
+    /**
+     * Summarizes, in one pass over the statements, how many passing and
+     * failing tests executed each statement. The counts come straight from the
+     * inverted indexes, so no tests need to be looked at.
+     * @return The spectrum summary of every statement this TestExecutionData
+     * keeps track of, in the same order as <code>getStatements()</code>.
+     */
+    public SpectrumSummary getSpectrumSummary() {
+        int[] ids = getSortedStatementIds();
+        int[] executedFailing = new int[ids.length];
+        int[] executedPassing = new int[ids.length];
+        for(int position = 0; position < ids.length; position++) {
+            int number = statementNumbers.get(ids[position]);
+            executedFailing[position] = failingTestsByStatement.count(number);
+            executedPassing[position] = passingTestsByStatement.count(number);
+        }
+
+        return new SpectrumSummary(ids.clone(), executedFailing,
+                executedPassing, numFailingTests, numPassingTests, index);
+    }
+
+    /**
+     * @return An iterator over the IDs, from the shared
+     * <code>StatementIndex</code>, of the statements this TestExecutionData
+     * keeps track of, in the same order as <code>getStatements()</code>.
+     */
+    public PrimitiveIterator.OfInt statementIdIterator() {
+        return Arrays.stream(getSortedStatementIds()).iterator();
     }
 
     /**
@@ -114,7 +314,7 @@ public class TestExecutionData {
      * Set that is returned is read-only.
      */
     public Set<StatementData> getStatements() {
-        return Collections.unmodifiableSet(statements);
+        return statementsView;
     }
 
     /**
@@ -124,7 +324,7 @@ public class TestExecutionData {
     public List<TestData> getTests() {
         return Collections.unmodifiableList(tests);
     }
-    
+
     /**
      * Gets only the passing or failing tests that this TestExecutionData keeps
      * track of.
@@ -136,19 +336,19 @@ public class TestExecutionData {
      */
     public List<TestData> getTests(boolean passing) {
         List<TestData> selectedTests = new ArrayList<>();
-        
+
         for(TestData test : tests) {
             if(test.getPassed() == passing) {
                 selectedTests.add(test);
             }
         }
-        
+
         return Collections.unmodifiableList(selectedTests);
     }
 
     @Override
     public String toString() {
-        return "TestExecutionData{" + "statements=" + statements +
+        return "TestExecutionData{" + "statements=" + statementsView +
                 ", tests=" + tests + '}';
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,6 @@
 package edu.unl.knorth.historical_fault_localization.suspiciousness_calculation;
 
-import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
-import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.SpectrumSummary;
 import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
 import java.util.ArrayList;
 import java.util.List;
@@ -25,32 +24,49 @@ public abstract class SuspiciousnessCalculator {
      */
     public final List<SuspiciousnessScore>
         calculateSuspiciousness(TestExecutionData testExecutionData) {
-        List<TestData> passingTests = testExecutionData.getTests(true);
-        List<TestData> failingTests = testExecutionData.getTests(false);
+        SpectrumSummary spectrum = testExecutionData.getSpectrumSummary();
+        
+        List<SuspiciousnessScore> degenerateScores =
+                calculateDegenerateSuspiciousness(spectrum);
+        if(degenerateScores != null) {
+            return degenerateScores;
+        }
+            
+        return doCalculateSuspiciousness(testExecutionData, spectrum);
+    }
+    
+    /**
+     * Handles the cases where every test passed or every test failed.
+     * @param spectrum The spectrum summary of the tests.
+     * @return If every test passed, a suspiciousness of 0.0 for every
+     * statement. If every test failed, a suspiciousness of 1.0 for every
+     * statement. Otherwise, <code>null</code>.
+     */
+    protected static List<SuspiciousnessScore>
+        calculateDegenerateSuspiciousness(SpectrumSummary spectrum) {
+        double suspiciousness;
         
         // If there aren't any passing tests, or if there aren't any failing
         // test, calculating the suspiciousness would involve some
         // divide-by-zero-type situations. Instead, we mark all statements as
         // highly suspicious or not susicious at all.
-        if(passingTests.isEmpty()) {
+        if(spectrum.getNumPassingTests() == 0) {
             // No passing tests - all statements are suspicious
-            List<SuspiciousnessScore> suspiciousnessScores = new ArrayList<>();
-            for(StatementData statement : testExecutionData.getStatements()) {
-                suspiciousnessScores.add(new SuspiciousnessScore(statement,
-                        1.0));
-            }
-            return suspiciousnessScores;
-        } else if(failingTests.isEmpty()) {
+            suspiciousness = 1.0;
+        } else if(spectrum.getNumFailingTests() == 0) {
             // No failing tests - no statements are suspicious
-            List<SuspiciousnessScore> suspiciousnessScores = new ArrayList<>();
-            for(StatementData statement : testExecutionData.getStatements()) {
-                suspiciousnessScores.add(new SuspiciousnessScore(statement,
-                        0.0));
-            }
-            return suspiciousnessScores;
+            suspiciousness = 0.0;
+        } else {
+            return null;
         }
-            
-        return doCalculateSuspiciousness(testExecutionData);
+        
+        List<SuspiciousnessScore> suspiciousnessScores =
+                new ArrayList<>(spectrum.getNumStatements());
+        for(int i = 0; i < spectrum.getNumStatements(); i++) {
+            suspiciousnessScores.add(new SuspiciousnessScore(
+                    spectrum.getStatement(i), suspiciousness));
+        }
+        return suspiciousnessScores;
     }
     
     /**
@@ -63,9 +79,14 @@ public abstract class SuspiciousnessCalculator {
      * appropriate results before this method is called.
      * @param testExecutionData The TestExecutionData for which suspiciousness
      * should be calculated.
+     * @param spectrum The spectrum summary of <code>testExecutionData</code>.
+     * It is computed once by <code>calculateSuspiciousness()</code> so that
+     * implementations which only need the ef/ep/nf/np counts of each statement
+     * can make a single pass over it instead of looking up tests.
      * @return The suspiciousness score of each statement in the
      * TestExecutionData.
      */
     protected abstract List<SuspiciousnessScore>
-        doCalculateSuspiciousness(TestExecutionData testExecutionData);
+        doCalculateSuspiciousness(TestExecutionData testExecutionData,
+                SpectrumSummary spectrum);
 }
\ No newline at end of file
@@ -0,0 +1,293 @@
+package edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.ochiai;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementIndex;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+
+/**
+ * Calculates the same Ochiai suspiciousness scores as
+ * <code>OchiaiSuspiciousnessCalculator</code>, but carries its work over from
+ * one commit to the next.
+ * <p/>
+ * The calculator remembers the tests of the last commit it scored, the
+ * <code>ef</code> and <code>ep</code> count of every statement, and every
+ * statement's score. When it is given another commit, it works out which
+ * tests changed:
+ * <ol>
+ * <li>Tests are identified by their verdict and their coverage, not by their
+ * position, so a test that was added or removed doesn't affect how the
+ * tests after it are matched. A test that has a match in the last commit is
+ * unchanged. Tests are hashed by the fingerprint of their coverage (see
+ * <code>CoverageBitmap.hasSameFingerprint()</code>), and a match is confirmed
+ * by comparing the coverage exactly, so a fingerprint collision can never make
+ * a changed test look unchanged.</li>
+ * <li>The tests left over from each commit are the change set. Left-over
+ * tests with the same verdict are paired up in the order they were listed,
+ * and each pair is compared a word at a time, so only the statements that
+ * one test executed and the other didn't have their counts updated. Tests
+ * without a partner were added or removed, and have their whole coverage
+ * added to or removed from the counts.</li>
+ * </ol>
+ * Only the statements whose counts changed have their scores recalculated;
+ * every other statement keeps the score it already had. Consecutive commits
+ * usually change only a few tests, so apart from listing the scores, the cost
+ * of scoring a commit depends on how much changed, not on how many tests
+ * there are or how much they cover.
+ * <p/>
+ * A statement's Ochiai score only depends on its own <code>ef</code> and
+ * <code>ep</code> counts and on the total number of failing tests, so when the
+ * number of failing tests changes, every score is recalculated from the
+ * counts. If every test passed or every test failed, every statement gets the
+ * same score, just like with <code>OchiaiSuspiciousnessCalculator</code>.
+ * <p/>
+ * Each commit is compared with whichever commit was scored before it, so the
+ * scores are always correct, but commits should be scored one at a time and
+ * in order for the comparisons to be cheap. The calculator is thread-safe, but
+ * only scores one commit at a time.
+ */
+public class IncrementalOchiaiSuspiciousnessCalculator {
+    private final StatementIndex index;
+
+    // The tests of the last commit that was scored
+    private List<TestData> previousTests;
+    // Statement ID -> ef and ep counts for the last commit that was scored
+    private int[] executedFailing;
+    private int[] executedPassing;
+    private int numFailingTests;
+    private int numPassingTests;
+    // Statement ID -> score, or null if the statement's score needs to be
+    // recalculated
+    private SuspiciousnessScore[] scores;
+    // The number of failing tests the scores in `scores` were calculated with
+    private int scoresNumFailingTests;
+
+    // How many statement scores were recalculated for the last commit
+    private int numRecalculatedScores;
+
+    public IncrementalOchiaiSuspiciousnessCalculator() {
+        this.index = StatementIndex.getSharedIndex();
+        this.previousTests = Collections.emptyList();
+        this.executedFailing = new int[0];
+        this.executedPassing = new int[0];
+        this.numFailingTests = 0;
+        this.numPassingTests = 0;
+        this.scores = new SuspiciousnessScore[0];
+        this.scoresNumFailingTests = -1;
+        this.numRecalculatedScores = 0;
+    }
+
+    /**
+     * Calculates the suspiciousness for each statement in a TestExecutionData.
+     * @param testExecutionData The TestExecutionData for which suspiciousness
+     * should be calculated.
+     * @return The suspiciousness score of each statement in the
+     * TestExecutionData, in the same order as
+     * <code>testExecutionData.getStatements()</code>. The scores are the same
+     * as the ones <code>OchiaiSuspiciousnessCalculator</code> calculates.
+     */
+    public synchronized List<SuspiciousnessScore>
+        calculateSuspiciousness(TestExecutionData testExecutionData) {
+        ensureCapacity(index.size());
+        numRecalculatedScores = 0;
+
+        List<TestData> tests = testExecutionData.getTests();
+        List<TestData> removedTests = findUnmatchedTests(previousTests, tests);
+        List<TestData> addedTests = findUnmatchedTests(tests, previousTests);
+        updateTests(removedTests, addedTests, true);
+        updateTests(removedTests, addedTests, false);
+        previousTests = new ArrayList<>(tests);
+
+        if(numPassingTests == 0 || numFailingTests == 0) {
+            return calculateDegenerateSuspiciousness(testExecutionData);
+        }
+
+        if(numFailingTests != scoresNumFailingTests) {
+            // Every statement's score depends on the number of failing tests
+            Arrays.fill(scores, null);
+            scoresNumFailingTests = numFailingTests;
+        }
+
+        List<SuspiciousnessScore> suspiciousnessScores = new ArrayList<>();
+        PrimitiveIterator.OfInt ids = testExecutionData.statementIdIterator();
+        while(ids.hasNext()) {
+            int id = ids.nextInt();
+            if(scores[id] == null) {
+                scores[id] = new SuspiciousnessScore(index.getStatement(id),
+                        OchiaiSuspiciousnessCalculator.calculateOchiai(
+                                executedFailing[id], executedPassing[id],
+                                numFailingTests));
+                numRecalculatedScores++;
+            }
+            suspiciousnessScores.add(scores[id]);
+        }
+
+        return suspiciousnessScores;
+    }
+
+    /**
+     * Finds the tests in one list that have no match in another, where each
+     * test in <code>others</code> can only match one test in
+     * <code>tests</code>.
+     * @return The unmatched tests, in the order they appear in
+     * <code>tests</code>.
+     */
+    private static List<TestData> findUnmatchedTests(List<TestData> tests,
+            List<TestData> others) {
+        Map<TestKey, Integer> unmatchedOthers = new HashMap<>();
+        for(TestData other : others) {
+            unmatchedOthers.merge(new TestKey(other), 1, Integer::sum);
+        }
+
+        List<TestData> unmatchedTests = new ArrayList<>();
+        for(TestData test : tests) {
+            TestKey key = new TestKey(test);
+            Integer count = unmatchedOthers.get(key);
+            if(count == null) {
+                unmatchedTests.add(test);
+            } else if(count == 1) {
+                unmatchedOthers.remove(key);
+            } else {
+                unmatchedOthers.put(key, count - 1);
+            }
+        }
+        return unmatchedTests;
+    }
+
+    /**
+     * Applies the changed tests with one verdict to the counts. Each removed
+     * test is paired with the added test in the same position among the
+     * changed tests with that verdict, and only the statements that one of the
+     * two executed and the other didn't are touched. The rest are simply
+     * removed or added.
+     */
+    private void updateTests(List<TestData> removedTests,
+            List<TestData> addedTests, boolean passed) {
+        List<TestData> removed = filterByVerdict(removedTests, passed);
+        List<TestData> added = filterByVerdict(addedTests, passed);
+        int numPairs = Math.min(removed.size(), added.size());
+        final int[] counts = passed ? executedPassing : executedFailing;
+        for(int i = 0; i < numPairs; i++) {
+            removed.get(i).getCoverage().forEachDifference(
+                    added.get(i).getCoverage(),
+                    id -> changeCount(counts, id, -1),
+                    id -> changeCount(counts, id, 1));
+        }
+        for(int i = numPairs; i < removed.size(); i++) {
+            removeTest(removed.get(i));
+        }
+        for(int i = numPairs; i < added.size(); i++) {
+            addTest(added.get(i));
+        }
+    }
+
+    private static List<TestData> filterByVerdict(List<TestData> tests,
+            boolean passed) {
+        List<TestData> filtered = new ArrayList<>();
+        for(TestData test : tests) {
+            if(test.getPassed() == passed) {
+                filtered.add(test);
+            }
+        }
+        return filtered;
+    }
+
+    private void addTest(TestData test) {
+        if(test.getPassed()) {
+            numPassingTests++;
+        } else {
+            numFailingTests++;
+        }
+        changeCounts(test, 1);
+    }
+
+    private void removeTest(TestData test) {
+        if(test.getPassed()) {
+            numPassingTests--;
+        } else {
+            numFailingTests--;
+        }
+        changeCounts(test, -1);
+    }
+
+    private void changeCounts(TestData test, int change) {
+        int[] counts = test.getPassed() ? executedPassing : executedFailing;
+        PrimitiveIterator.OfInt ids = test.getCoverage().idIterator();
+        while(ids.hasNext()) {
+            changeCount(counts, ids.nextInt(), change);
+        }
+    }
+
+    private void changeCount(int[] counts, int id, int change) {
+        counts[id] += change;
+        scores[id] = null;
+    }
+
+    private List<SuspiciousnessScore> calculateDegenerateSuspiciousness(
+            TestExecutionData testExecutionData) {
+        // Matches SuspiciousnessCalculator.calculateDegenerateSuspiciousness()
+        double suspiciousness = (numPassingTests == 0) ? 1.0 : 0.0;
+
+        List<SuspiciousnessScore> suspiciousnessScores = new ArrayList<>();
+        PrimitiveIterator.OfInt ids = testExecutionData.statementIdIterator();
+        while(ids.hasNext()) {
+            suspiciousnessScores.add(new SuspiciousnessScore(
+                    index.getStatement(ids.nextInt()), suspiciousness));
+        }
+        return suspiciousnessScores;
+    }
+
+    private void ensureCapacity(int numStatementIds) {
+        if(numStatementIds > scores.length) {
+            int capacity = Math.max(numStatementIds, scores.length * 2);
+            executedFailing = Arrays.copyOf(executedFailing, capacity);
+            executedPassing = Arrays.copyOf(executedPassing, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+        }
+    }
+
+    /**
+     * @return How many statements had their scores recalculated for the last
+     * commit that was scored, instead of reusing their score from an earlier
+     * commit.
+     */
+    public synchronized int getNumRecalculatedScores() {
+        return numRecalculatedScores;
+    }
+
+    /**
+     * Identifies a test from one commit to the next by its verdict and its
+     * coverage, hashed by the coverage's fingerprint.
+     */
+    private static final class TestKey {
+        private final TestData test;
+
+        TestKey(TestData test) {
+            this.test = test;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof TestKey)) {
+                return false;
+            }
+            TestData otherTest = ((TestKey) other).test;
+            return test.getPassed() == otherTest.getPassed()
+                    && test.getCoverage().hasSameIds(
+                            otherTest.getCoverage());
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * test.getCoverage().getFingerprintHash()
+                    + (test.getPassed() ? 1 : 0);
+        }
+    }
+}
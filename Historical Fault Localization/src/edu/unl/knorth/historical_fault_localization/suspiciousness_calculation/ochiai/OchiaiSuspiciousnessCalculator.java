@@ -1,7 +1,6 @@
 package edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.ochiai;
 
-import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
-import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.SpectrumSummary;
 import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
 import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessCalculator;
 import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
@@ -11,34 +10,48 @@ import java.util.List;
 public class OchiaiSuspiciousnessCalculator extends SuspiciousnessCalculator {
     @Override
     protected List<SuspiciousnessScore>
-       doCalculateSuspiciousness(TestExecutionData testExecutionData) {
-        List<SuspiciousnessScore> suspiciousnessScores = new ArrayList<>();
-            
-        int numFailingTests = testExecutionData.getTests(false).size();
-        
-        for(StatementData statement : testExecutionData.getStatements()) {
+       doCalculateSuspiciousness(TestExecutionData testExecutionData,
+               SpectrumSummary spectrum) {
+        List<SuspiciousnessScore> suspiciousnessScores =
+                new ArrayList<>(spectrum.getNumStatements());
+
+        int numFailingTests = spectrum.getNumFailingTests();
+
+        for(int i = 0; i < spectrum.getNumStatements(); i++) {
             suspiciousnessScores.add(calculateIndividualSuspiciousness(
-                    testExecutionData, statement, numFailingTests));
+                    spectrum, i, numFailingTests));
         }
-        
+
         return suspiciousnessScores;
     }
 
     protected SuspiciousnessScore calculateIndividualSuspiciousness(
-        TestExecutionData data, StatementData statement, int numFailingTests) {
-        List<TestData> relevantFailingTests =
-                data.getTestsThatExecuteStatment(statement, false);
-        List<TestData> relevantPassingTests =
-                data.getTestsThatExecuteStatment(statement, true);
-        
-        int totalRelevantTests = relevantFailingTests.size()
-                + relevantPassingTests.size();
-        
-        double numerator = (double) relevantFailingTests.size();
+        SpectrumSummary spectrum, int position, int numFailingTests) {
+        double suspiciousness = calculateOchiai(
+                spectrum.getExecutedFailing(position),
+                spectrum.getExecutedPassing(position), numFailingTests);
+
+        return new SuspiciousnessScore(spectrum.getStatement(position),
+                suspiciousness);
+    }
+
+    /**
+     * Calculates the Ochiai suspiciousness of a single statement from its
+     * spectrum.
+     * @param executedFailing The number of failing tests that executed the
+     * statement.
+     * @param executedPassing The number of passing tests that executed the
+     * statement.
+     * @param numFailingTests The total number of failing tests.
+     * @return The statement's suspiciousness.
+     */
+    static double calculateOchiai(int executedFailing, int executedPassing,
+            int numFailingTests) {
+        int totalRelevantTests = executedFailing + executedPassing;
+
+        double numerator = (double) executedFailing;
         double denominator = StrictMath.sqrt(((double)numFailingTests) *
             ((double) totalRelevantTests));
-        double suspiciousness = numerator/denominator;
-        
-        return new SuspiciousnessScore(statement, suspiciousness);
+        return numerator/denominator;
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,20 @@
 package edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.proximity_based_weighting;
 
+import edu.unl.knorth.historical_fault_localization.intermediate_data.CoverageBitmap;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.SpectrumSummary;
 import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
 import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
 import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
 import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessCalculator;
 import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import edu.unl.knorth.historical_fault_localization.utility.ParallelLoop;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * Implements the proximity-based weighting algorithm described in the paper
@@ -20,11 +24,20 @@ import java.util.Set;
  * <p/>
  * All of the calculation methods with no side effects are protected instead of
  * private to make it easier to test them.
+ * <p/>
+ * The unadjusted weighting of each passing test and the suspiciousness score
+ * of each statement are independent of each other, so those two phases can be
+ * spread across several threads. Every result is computed exactly the same
+ * way and stored in the same position regardless of which thread computes it,
+ * so the scores are bit-for-bit identical for any number of threads. Once the
+ * calculator is no longer needed, <code>close()</code> should be called to
+ * stop its threads.
  */
 public class ProximityBasedWeightingSuspiciousnessCalculator
-        extends SuspiciousnessCalculator {
+        extends SuspiciousnessCalculator implements AutoCloseable {
     private final ThresholdType lowerThresdholdType;
     private final ThresholdType upperThresdholdType;
+    private final ParallelLoop parallelLoop;
 
     /**
      * @param lowerThresdholdType What kind of lower threshold the algorithm
@@ -33,22 +46,47 @@ public class ProximityBasedWeightingSuspiciousnessCalculator
      */
     public ProximityBasedWeightingSuspiciousnessCalculator(ThresholdType
             lowerThresdholdType, ThresholdType upperThresdholdType) {
+        this(lowerThresdholdType, upperThresdholdType, 1);
+    }
+    
+    /**
+     * @param lowerThresdholdType What kind of lower threshold the algorithm
+     * should use for the second step of 
+     * @param upperThresdholdType 
+     * @param threadCount How many threads to use to calculate the unadjusted
+     * weightings and the suspiciousness scores. Must be at least 1.
+     */
+    public ProximityBasedWeightingSuspiciousnessCalculator(ThresholdType
+            lowerThresdholdType, ThresholdType upperThresdholdType,
+            int threadCount) {
         this.lowerThresdholdType = lowerThresdholdType;
         this.upperThresdholdType = upperThresdholdType;
+        this.parallelLoop = new ParallelLoop(threadCount);
+    }
+    
+    /**
+     * Stops the threads used to calculate the scores, if there are any.
+     */
+    @Override
+    public void close() {
+        parallelLoop.close();
     }
     
     @Override
     protected List<SuspiciousnessScore> doCalculateSuspiciousness(
-            TestExecutionData testExecutionData) {
-        List<TestData> passingTests = testExecutionData.getTests(true);
-        List<TestData> failingTests = testExecutionData.getTests(false);
+            final TestExecutionData testExecutionData,
+            final SpectrumSummary spectrum) {
+        final List<TestData> passingTests = testExecutionData.getTests(true);
+        final List<TestData> failingTests = testExecutionData.getTests(false);
         
-        List<Weighting> unadjustedWeightings = new ArrayList<>();
-        for(TestData passingTest : passingTests) {
-            unadjustedWeightings.add(
-                    calculateUnadjustedProximityWeight(passingTest,
-                            failingTests));
-        }
+        final Weighting[] unadjustedWeightingArray =
+                new Weighting[passingTests.size()];
+        parallelLoop.forEachIndex(passingTests.size(), i -> {
+            unadjustedWeightingArray[i] = calculateUnadjustedProximityWeight(
+                    passingTests.get(i), failingTests);
+        });
+        List<Weighting> unadjustedWeightings =
+                new ArrayList<>(Arrays.asList(unadjustedWeightingArray));
         
         double lowerThreshold = calculateThreshold(unadjustedWeightings,
                 lowerThresdholdType, false);
@@ -63,34 +101,42 @@ public class ProximityBasedWeightingSuspiciousnessCalculator
         
         List<Weighting> finalWeightings =
                 calculateFinalWeightings(adjustedWeightings, scalingFactor);
+        final double[] weightsByPosition =
+                calculateWeightsByPosition(testExecutionData, finalWeightings);
         
-        List<SuspiciousnessScore> suspiciousnessScores = new ArrayList<>();
-        int numFailingTests = failingTests.size();
-        for(StatementData statement : testExecutionData.getStatements()) {
-            suspiciousnessScores.add(calculateSuspiciousnessScore(statement,
-                    testExecutionData, numFailingTests, finalWeightings));
-        }
+        final SuspiciousnessScore[] suspiciousnessScores =
+                new SuspiciousnessScore[spectrum.getNumStatements()];
+        final int numFailingTests = spectrum.getNumFailingTests();
+        parallelLoop.forEachIndex(suspiciousnessScores.length, i -> {
+            StatementData statement = spectrum.getStatement(i);
+            double weightedPassingSum = testExecutionData.sumTestWeights(
+                    spectrum.getStatementId(i), true, weightsByPosition);
+            suspiciousnessScores[i] = calculateSuspiciousnessScore(statement,
+                    spectrum.getExecutedFailing(i), numFailingTests,
+                    weightedPassingSum);
+        });
         
-        return suspiciousnessScores;
+        return new ArrayList<>(Arrays.asList(suspiciousnessScores));
     }
     
     /**
-     * Calculates the code-coverage proximity between two tests.
+     * Calculates the code-coverage proximity between two tests. This is the
+     * Jaccard similarity of the sets of statements the tests executed, which
+     * is counted directly on the tests' coverage bitmaps without allocating
+     * any intermediate sets.
      * @param t1 One of the tests to process.
      * @param t2 One of the tests to process.
      * @return The code-coverage proximity between the two tests.
      */
     protected double calculateCodeCoverageProximity(TestData t1, TestData t2) {
-        Set<StatementData> t1Statements = t1.getStatementsExecuted();
-        Set<StatementData> t2Statements = t2.getStatementsExecuted();
-        
-        Set<StatementData> union = new HashSet<>(t1Statements);
-        union.addAll(t2Statements);
+        CoverageBitmap t1Coverage = t1.getCoverage();
+        CoverageBitmap t2Coverage = t2.getCoverage();
         
-        Set<StatementData> intersection = new HashSet<>(t1Statements);
-        intersection.retainAll(t2Statements);
+        int intersectionSize = t1Coverage.intersectionSize(t2Coverage);
+        int unionSize = t1Coverage.cardinality() + t2Coverage.cardinality()
+                - intersectionSize;
         
-        return ((double) intersection.size()) / ((double) union.size());
+        return ((double) intersectionSize) / ((double) unionSize);
     }
     
     /**
@@ -252,37 +298,71 @@ public class ProximityBasedWeightingSuspiciousnessCalculator
     protected SuspiciousnessScore calculateSuspiciousnessScore(
             StatementData statement, TestExecutionData testExecutionData,
             int numFailingTests, List<Weighting> finalWeightings) {
-        List<TestData> relevantFailingTests =
-                testExecutionData.getTestsThatExecuteStatment(statement, false);
-        List<TestData> relevantPassingTests =
-                testExecutionData.getTestsThatExecuteStatment(statement, true);
-        int numRelevantFailingTests = relevantFailingTests.size();
-        
-        double sum = 0D;
-        for(Weighting weighting : finalWeightings) {
-            boolean flag = false;
-            
-            for(TestData passingTest : relevantPassingTests) {
-                if(passingTest == weighting.getTest()) {
-                    flag = true;
-                    break;
-                }
-            }
-            
-            if(flag) {
-                sum += weighting.getWeighitng();
-            }
-        }
+        int numRelevantFailingTests = testExecutionData
+                .getTestsThatExecuteStatment(statement, false).size();
+        double[] weightsByPosition =
+                calculateWeightsByPosition(testExecutionData, finalWeightings);
+        double sum = testExecutionData.sumTestWeights(statement, true,
+                weightsByPosition);
         
+        return calculateSuspiciousnessScore(statement, numRelevantFailingTests,
+                numFailingTests, sum);
+    }
+    
+    /**
+     * Calculates a statement's suspiciousness score from its spectrum counts.
+     * @param statement The statement to calculate the score for.
+     * @param numRelevantFailingTests The number of failing tests that executed
+     * the statement.
+     * @param numFailingTests The total number of failing tests.
+     * @param weightedPassingSum The sum of the final weightings of the passing
+     * tests that executed the statement.
+     * @return The statement's suspiciousness score.
+     */
+    protected SuspiciousnessScore calculateSuspiciousnessScore(
+            StatementData statement, int numRelevantFailingTests,
+            int numFailingTests, double weightedPassingSum) {
         double numerator = (double) numRelevantFailingTests;
         double denominator = StrictMath.sqrt(((double) numFailingTests)
-                * (sum + ((double) numRelevantFailingTests)));
+                * (weightedPassingSum + ((double) numRelevantFailingTests)));
         double suspiciousness = numerator / denominator;
         
         SuspiciousnessScore result =
                 new SuspiciousnessScore(statement, suspiciousness);
         return result;
     }
+    
+    /**
+     * Lays the final weightings out in a dense array indexed by each test's
+     * position in <code>testExecutionData.getTests()</code>, so that the
+     * weighted sum for a statement only has to look at the tests that
+     * executed it. Tests without a weighting, such as failing tests, get a
+     * weight of 0.
+     * @param testExecutionData The tests the weightings belong to.
+     * @param finalWeightings The final weightings, in any order.
+     * @return Each test's final weighting, indexed by its position.
+     */
+    protected double[] calculateWeightsByPosition(
+            TestExecutionData testExecutionData,
+            List<Weighting> finalWeightings) {
+        List<TestData> tests = testExecutionData.getTests();
+        
+        // Tests are matched by identity, just like TestExecutionData does
+        Map<TestData, Integer> positions = new IdentityHashMap<>(tests.size());
+        for(int i = 0; i < tests.size(); i++) {
+            positions.put(tests.get(i), i);
+        }
+        
+        double[] weightsByPosition = new double[tests.size()];
+        for(Weighting weighting : finalWeightings) {
+            Integer position = positions.get(weighting.getTest());
+            if(position != null) {
+                weightsByPosition[position] = weighting.getWeighitng();
+            }
+        }
+        
+        return weightsByPosition;
+    }
 
     public ThresholdType getLowerThresdholdType() {
         return lowerThresdholdType;
@@ -291,4 +371,8 @@ public class ProximityBasedWeightingSuspiciousnessCalculator
     public ThresholdType getUpperThresdholdType() {
         return upperThresdholdType;
     }
+
+    public int getThreadCount() {
+        return parallelLoop.getThreadCount();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+package edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.spectrum_formulas;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.SpectrumSummary;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessCalculator;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates suspiciousness with several spectrum-based formulas at once. All
+ * of the formulas are evaluated in a single sweep over the
+ * <code>SpectrumSummary</code>: each statement's counts are read once and fed
+ * to every formula, so asking for another formula never costs another pass
+ * over the test data.
+ * <p/>
+ * When used as a plain <code>SuspiciousnessCalculator</code>, this class
+ * returns the scores of the first formula it was given.
+ */
+public class MultiFormulaSuspiciousnessCalculator
+        extends SuspiciousnessCalculator {
+    private final List<SpectrumFormula> formulas;
+
+    /**
+     * @param formulas The formulas to calculate, in the order their scores
+     * should be returned. There must be at least one.
+     */
+    public MultiFormulaSuspiciousnessCalculator(
+            List<SpectrumFormula> formulas) {
+        if(formulas.isEmpty()) {
+            throw new IllegalArgumentException("At least one formula is "
+                    + "required.");
+        }
+        this.formulas = Collections.unmodifiableList(new ArrayList<>(formulas));
+    }
+
+    /**
+     * Calculates the suspiciousness for each statement in a TestExecutionData
+     * with every formula.
+     * @param testExecutionData The TestExecutionData for which suspiciousness
+     * should be calculated.
+     * @return One list of suspiciousness scores per formula, in the order the
+     * formulas were given to the constructor. If every test passed or every
+     * test failed, every formula gets the same scores as
+     * <code>calculateSuspiciousness()</code> would give.
+     */
+    public Map<SpectrumFormula, List<SuspiciousnessScore>>
+        calculateSuspiciousnessForAllFormulas(
+                TestExecutionData testExecutionData) {
+        SpectrumSummary spectrum = testExecutionData.getSpectrumSummary();
+        Map<SpectrumFormula, List<SuspiciousnessScore>> results =
+                new LinkedHashMap<>();
+
+        List<SuspiciousnessScore> degenerateScores =
+                calculateDegenerateSuspiciousness(spectrum);
+        if(degenerateScores != null) {
+            for(SpectrumFormula formula : formulas) {
+                results.put(formula, degenerateScores);
+            }
+            return results;
+        }
+
+        double[][] columns = calculateScoreColumns(spectrum);
+        for(int f = 0; f < formulas.size(); f++) {
+            results.put(formulas.get(f), toScores(spectrum, columns[f]));
+        }
+        return results;
+    }
+
+    @Override
+    protected List<SuspiciousnessScore> doCalculateSuspiciousness(
+            TestExecutionData testExecutionData, SpectrumSummary spectrum) {
+        return toScores(spectrum, calculateScoreColumns(spectrum)[0]);
+    }
+
+    /**
+     * Evaluates every formula for every statement in a single pass.
+     * @param spectrum The spectrum to calculate scores for.
+     * @return One array of scores per formula, indexed by each statement's
+     * position in <code>spectrum</code>.
+     */
+    protected double[][] calculateScoreColumns(SpectrumSummary spectrum) {
+        int numStatements = spectrum.getNumStatements();
+        SpectrumFormula[] formulaArray =
+                formulas.toArray(new SpectrumFormula[formulas.size()]);
+        double[][] columns = new double[formulaArray.length][numStatements];
+
+        for(int i = 0; i < numStatements; i++) {
+            double ef = spectrum.getExecutedFailing(i);
+            double ep = spectrum.getExecutedPassing(i);
+            double nf = spectrum.getNotExecutedFailing(i);
+            double np = spectrum.getNotExecutedPassing(i);
+
+            for(int f = 0; f < formulaArray.length; f++) {
+                columns[f][i] = formulaArray[f].calculate(ef, ep, nf, np);
+            }
+        }
+
+        return columns;
+    }
+
+    private List<SuspiciousnessScore> toScores(SpectrumSummary spectrum,
+            double[] column) {
+        List<SuspiciousnessScore> scores = new ArrayList<>(column.length);
+        for(int i = 0; i < column.length; i++) {
+            scores.add(new SuspiciousnessScore(spectrum.getStatement(i),
+                    column[i]));
+        }
+        return scores;
+    }
+
+    /**
+     * Rescales scores from an unbounded formula to lie between 0.0 and 1.0 so
+     * that they can be visualized. The lowest score becomes 0.0 and the
+     * highest becomes 1.0. Scores that aren't numbers are left alone.
+     * @param scores The scores to rescale.
+     * @return The rescaled scores.
+     */
+    public static List<SuspiciousnessScore> normalizeScores(
+            List<SuspiciousnessScore> scores) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for(SuspiciousnessScore score : scores) {
+            double value = score.getSuspiciousness();
+            if(!Double.isNaN(value) && !Double.isInfinite(value)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+
+        List<SuspiciousnessScore> normalized = new ArrayList<>(scores.size());
+        for(SuspiciousnessScore score : scores) {
+            StatementData statement = score.getStatement();
+            double value = score.getSuspiciousness();
+            double newValue;
+
+            if(Double.isNaN(value)) {
+                newValue = value;
+            } else if(value == Double.POSITIVE_INFINITY) {
+                newValue = 1D;
+            } else if(value == Double.NEGATIVE_INFINITY) {
+                newValue = 0D;
+            } else if(max > min) {
+                newValue = (value - min) / (max - min);
+            } else {
+                newValue = 0D;
+            }
+
+            normalized.add(new SuspiciousnessScore(statement, newValue));
+        }
+        return normalized;
+    }
+
+    public List<SpectrumFormula> getFormulas() {
+        return formulas;
+    }
+}
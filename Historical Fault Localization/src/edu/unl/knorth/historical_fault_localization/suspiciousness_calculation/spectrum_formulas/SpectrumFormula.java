@@ -0,0 +1,123 @@
+package edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.spectrum_formulas;
+
+/**
+ * The spectrum-based fault localization formulas that can be calculated from
+ * nothing more than a statement's ef, ep, nf, and np counts. (See
+ * <code>SpectrumSummary</code> for what the counts mean.)
+ * <p/>
+ * Each formula has a name that is used to select it in the configuration
+ * file.
+ */
+public enum SpectrumFormula {
+    /** ef / sqrt((ef + nf) * (ef + ep)) */
+    OCHIAI("ochiai", true) {
+        @Override
+        public double calculate(double ef, double ep, double nf, double np) {
+            return ef / StrictMath.sqrt((ef + nf) * (ef + ep));
+        }
+    },
+    /** (ef / (ef + nf)) / ((ef / (ef + nf)) + (ep / (ep + np))) */
+    TARANTULA("tarantula", true) {
+        @Override
+        public double calculate(double ef, double ep, double nf, double np) {
+            double failRatio = ef / (ef + nf);
+            double passRatio = ep / (ep + np);
+            return failRatio / (failRatio + passRatio);
+        }
+    },
+    /** ef / (ef + nf + ep) */
+    JACCARD("jaccard", true) {
+        @Override
+        public double calculate(double ef, double ep, double nf, double np) {
+            return ef / (ef + nf + ep);
+        }
+    },
+    /** ef^2 / (ep + nf) */
+    DSTAR2("dstar2", false) {
+        @Override
+        public double calculate(double ef, double ep, double nf, double np) {
+            return (ef * ef) / (ep + nf);
+        }
+    },
+    /** ef^3 / (ep + nf) */
+    DSTAR3("dstar3", false) {
+        @Override
+        public double calculate(double ef, double ep, double nf, double np) {
+            return (ef * ef * ef) / (ep + nf);
+        }
+    },
+    /** ef - (ep / (ep + np + 1)) */
+    OP2("op2", false) {
+        @Override
+        public double calculate(double ef, double ep, double nf, double np) {
+            return ef - (ep / (ep + np + 1D));
+        }
+    },
+    /** 1 - (ep / (ep + ef)) */
+    BARINEL("barinel", true) {
+        @Override
+        public double calculate(double ef, double ep, double nf, double np) {
+            return 1D - (ep / (ep + ef));
+        }
+    },
+    /** The Kulczynski2 coefficient, (ef / (ef + nf) + ef / (ef + ep)) / 2 */
+    KULCZYNSKI("kulczynski", true) {
+        @Override
+        public double calculate(double ef, double ep, double nf, double np) {
+            return ((ef / (ef + nf)) + (ef / (ef + ep))) / 2D;
+        }
+    };
+
+    private final String configurationName;
+    private final boolean bounded;
+
+    private SpectrumFormula(String configurationName, boolean bounded) {
+        this.configurationName = configurationName;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Calculates a statement's suspiciousness. The counts are passed as
+     * doubles so that the formulas don't need to cast them.
+     * @param ef The number of failing tests that executed the statement.
+     * @param ep The number of passing tests that executed the statement.
+     * @param nf The number of failing tests that did not execute the
+     * statement.
+     * @param np The number of passing tests that did not execute the
+     * statement.
+     * @return The statement's suspiciousness.
+     */
+    public abstract double calculate(double ef, double ep, double nf,
+            double np);
+
+    /**
+     * @return The name used to select this formula in the configuration file.
+     */
+    public String getConfigurationName() {
+        return configurationName;
+    }
+
+    /**
+     * @return <code>true</code> if this formula's scores are always between
+     * 0.0 and 1.0. Scores from unbounded formulas need to be normalized before
+     * they can be visualized.
+     */
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * @param configurationName A formula's name in the configuration file.
+     * @return The formula with that name, or <code>null</code> if there isn't
+     * one.
+     */
+    public static SpectrumFormula fromConfigurationName(
+            String configurationName) {
+        for(SpectrumFormula formula : values()) {
+            if(formula.configurationName.equalsIgnoreCase(configurationName)) {
+                return formula;
+            }
+        }
+        return null;
+    }
+}
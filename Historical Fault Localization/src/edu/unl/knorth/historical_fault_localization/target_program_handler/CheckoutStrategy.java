@@ -0,0 +1,108 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The ways the target program's working directory can be switched from one
+ * commit to another. Each strategy leaves <code>HEAD</code> detached at the
+ * commit, with the commit's files in the working directory. With every
+ * strategy, git only rewrites the files that differ between the two commits,
+ * and git is killed if it takes longer than the timeout.
+ * <p/>
+ * Each strategy has a name that is used to select it in the configuration
+ * file.
+ */
+public enum CheckoutStrategy {
+    /** <code>git checkout [hash]</code> */
+    CHECKOUT("checkout") {
+        @Override
+        void checkout(File workingDirectory, String commitHash,
+                long timeoutSeconds) throws IOException {
+            GitCommand.run(workingDirectory, timeoutSeconds, "checkout",
+                    "--quiet", "--detach", commitHash);
+        }
+    },
+    /**
+     * <code>git switch --detach [hash]</code>, which skips the path-checkout
+     * mode of <code>git checkout</code>. Needs git 2.23 or newer.
+     */
+    SWITCH("switch") {
+        @Override
+        void checkout(File workingDirectory, String commitHash,
+                long timeoutSeconds) throws IOException {
+            GitCommand.run(workingDirectory, timeoutSeconds, "switch",
+                    "--quiet", "--detach", commitHash);
+        }
+    },
+    /**
+     * <code>git read-tree -m -u HEAD [hash]</code> followed by
+     * <code>git update-ref --no-deref HEAD [hash]</code>. This only updates
+     * the index and the files that differ, and skips everything else
+     * <code>git checkout</code> does, such as running hooks and reporting
+     * what changed. If the index doesn't match <code>HEAD</code>, git refuses
+     * to do this, and <code>git checkout</code> is used instead.
+     */
+    READ_TREE("read-tree") {
+        @Override
+        void checkout(File workingDirectory, String commitHash,
+                long timeoutSeconds) throws IOException {
+            try {
+                GitCommand.run(workingDirectory, timeoutSeconds, "read-tree",
+                        "-m", "-u", "HEAD", commitHash);
+            } catch(IOException err) {
+                System.out.println("Could not switch to commit " + commitHash
+                        + " with `git read-tree`:");
+                System.out.println(err.getMessage());
+                System.out.println("Using `git checkout` instead...");
+                CHECKOUT.checkout(workingDirectory, commitHash,
+                        timeoutSeconds);
+                return;
+            }
+            GitCommand.run(workingDirectory, timeoutSeconds, "update-ref",
+                    "--no-deref", "HEAD", commitHash);
+        }
+    };
+
+    private final String configurationName;
+
+    private CheckoutStrategy(String configurationName) {
+        this.configurationName = configurationName;
+    }
+
+    /**
+     * Switches a working directory to a commit.
+     * @param workingDirectory The working directory of the target program's
+     * repository, or of one of its worktrees.
+     * @param commitHash The hash of the commit to switch to.
+     * @param timeoutSeconds How long to let each git command run before
+     * killing it.
+     * @throws IOException If git failed or timed out.
+     */
+    abstract void checkout(File workingDirectory, String commitHash,
+            long timeoutSeconds) throws IOException;
+
+    /**
+     * @return The name used to select this strategy in the configuration
+     * file.
+     */
+    public String getConfigurationName() {
+        return configurationName;
+    }
+
+    /**
+     * @param configurationName A strategy's name in the configuration file,
+     * ignoring case.
+     * @return The strategy with that name, or <code>null</code> if there
+     * isn't one.
+     */
+    public static CheckoutStrategy fromConfigurationName(
+            String configurationName) {
+        for(CheckoutStrategy strategy : values()) {
+            if(strategy.configurationName.equalsIgnoreCase(configurationName)) {
+                return strategy;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The metadata of one commit in the target program's repository, as reported
+ * by <code>git log</code>.
+ */
+public final class CommitInfo {
+    private final String hash;
+    private final String date;
+    private final List<String> parentHashes;
+    private final List<String> changedFiles;
+
+    /**
+     * @param hash The commit's hash.
+     * @param date The date the commit was committed, in RFC 2822 format.
+     * @param parentHashes The hashes of the commit's parents.
+     * @param changedFiles The paths, relative to the root of the repository,
+     * of the files the commit changed compared to its only parent, or
+     * <code>null</code> if that isn't known, as for merge commits.
+     */
+    public CommitInfo(String hash, String date, List<String> parentHashes,
+            List<String> changedFiles) {
+        this.hash = hash;
+        this.date = date;
+        this.parentHashes = Collections.unmodifiableList(parentHashes);
+        this.changedFiles = (changedFiles == null)
+                ? null : Collections.unmodifiableList(changedFiles);
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * @return The hashes of the commit's parents. Empty for the repository's
+     * first commit. The List is read-only.
+     */
+    public List<String> getParentHashes() {
+        return parentHashes;
+    }
+
+    /**
+     * @return The paths, relative to the root of the repository, of the files
+     * the commit added, changed, or deleted compared to its parent, or
+     * <code>null</code> if that isn't known. A renamed file is listed under
+     * both its old and its new name. The List is read-only.
+     */
+    public List<String> getChangedFiles() {
+        return changedFiles;
+    }
+
+    /**
+     * @param otherHash Another commit's hash.
+     * @return <code>true</code> if the other commit is this commit's only
+     * parent, so that <code>getChangedFiles()</code> lists every file that
+     * differs between the two.
+     */
+    public boolean isOnlyChildOf(String otherHash) {
+        return parentHashes.size() == 1 && parentHashes.get(0).equals(otherHash);
+    }
+
+    @Override
+    public String toString() {
+        return "CommitInfo{" + "hash=" + hash + ", date=" + date
+                + ", parentHashes=" + parentHashes + ", changedFiles="
+                + changedFiles + '}';
+    }
+}
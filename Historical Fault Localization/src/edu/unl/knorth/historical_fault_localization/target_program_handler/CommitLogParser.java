@@ -0,0 +1,94 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Turns the output of <code>git log</code>, run with
+ * <code>FORMAT</code> and <code>--name-status</code>, into
+ * <code>CommitInfo</code>s, one line at a time, so that the output can be
+ * parsed while git is still writing it.
+ * <p/>
+ * Each commit starts with a header line made of a NUL character followed by
+ * the hash, the parent hashes, and the date, separated by NUL characters.
+ * NUL can't appear in commit metadata, so header lines can't be confused with
+ * anything else. The header is followed by one line per changed file, made of
+ * a status letter, a tab, and the file's path, and by blank lines, which are
+ * ignored.
+ * <p/>
+ * Problems with the output are remembered and reported by
+ * <code>finish()</code>, so that the rest of the output is still read and git
+ * never blocks on a full pipe.
+ */
+class CommitLogParser {
+    static final String FORMAT = "--format=format:%x00%H%x00%P%x00%cD";
+
+    private final List<CommitInfo> commits;
+    private String error;
+
+    // The commit currently being read
+    private String hash;
+    private String date;
+    private List<String> parentHashes;
+    private List<String> changedFiles;
+
+    CommitLogParser() {
+        this.commits = new ArrayList<>();
+        this.error = null;
+        this.hash = null;
+    }
+
+    void parseLine(String line) {
+        if(error != null) {
+            return;
+        } else if(line.startsWith("\0")) {
+            endCommit();
+            String[] fields = line.substring(1).split("\0", -1);
+            if(fields.length != 3) {
+                error = "Unexpected git log header: "
+                        + line.replace('\0', ' ');
+                return;
+            }
+            hash = fields[0];
+            parentHashes = fields[1].isEmpty()
+                    ? Collections.<String>emptyList()
+                    : Arrays.asList(fields[1].split(" "));
+            date = fields[2];
+            changedFiles = new ArrayList<>();
+        } else if(hash != null && !line.isEmpty()) {
+            int tab = line.indexOf('\t');
+            if(tab < 0) {
+                error = "Unexpected git log line: " + line;
+                return;
+            }
+            changedFiles.add(GitCommand.unquotePath(line.substring(tab + 1)));
+        }
+    }
+
+    private void endCommit() {
+        if(hash == null) {
+            return;
+        }
+        // git log doesn't list the changes of merge commits, and a list of
+        // changes compared to just one parent wouldn't be the whole story
+        // anyway
+        commits.add(new CommitInfo(hash, date, parentHashes,
+                (parentHashes.size() > 1) ? null : changedFiles));
+        hash = null;
+    }
+
+    /**
+     * @return The commits, in the order <code>git log</code> listed them.
+     * @throws IOException If any of the output couldn't be understood.
+     */
+    List<CommitInfo> finish() throws IOException {
+        if(error != null) {
+            throw new IOException(error);
+        }
+        endCommit();
+        return commits;
+    }
+}
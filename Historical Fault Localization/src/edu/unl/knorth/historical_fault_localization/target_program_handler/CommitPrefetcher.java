@@ -0,0 +1,311 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import edu.unl.knorth.historical_fault_localization.target_program_handler.dependency_cache.DependencyCache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Checks out upcoming commits ahead of time, each in its own worktree from a
+ * <code>WorktreePool</code>, so that checking out the next commits overlaps
+ * with running the test harness on the current one.
+ * <p/>
+ * The commits are still tested one at a time and in order. With a lookahead
+ * depth of <code>n</code>, the pool should have <code>n + 1</code> worktrees:
+ * one for the commit being tested and one for each of the next
+ * <code>n</code> commits. Commits are checked out one after another on a
+ * single background thread, since git would only compete with itself for the
+ * disk otherwise.
+ * <p/>
+ * Usage: call <code>prefetchThrough()</code> before processing each commit.
+ * If the commit needs to be tested, <code>checkout()</code> gives its
+ * worktree, checking it out right away if it wasn't prefetched. Either way,
+ * call <code>release()</code> once the commit is done with, so its worktree
+ * can be used for a later commit.
+ * <p/>
+ * If there is a dependency cache, each commit's dependency key is also worked
+ * out in its worktree as soon as it has been checked out, so
+ * <code>git ls-tree</code> doesn't hold up the test harness. If the key's
+ * directory has already been prepared, it is acquired right away, so it can't
+ * be evicted before the commit is tested. If it hasn't, it is left for the
+ * test harness to prepare when the commit is tested, since only the test
+ * harness can prepare it.
+ * <p/>
+ * Prefetching is speculative: a commit can turn out not to need its checkout,
+ * for example because regression test selection lets it reuse the previous
+ * commit's coverage. Its worktree and dependency directory are simply
+ * released unused.
+ * <p/>
+ * This class is only meant to be used by one thread, apart from its own
+ * background thread.
+ */
+class CommitPrefetcher implements AutoCloseable {
+    // How long close() waits for an interrupted checkout to stop, on top of
+    // the checkout timeout. git is killed as soon as the checkout is
+    // interrupted, so this is only reached if something else is stuck.
+    private static final long CLOSE_GRACE_SECONDS = 10;
+
+    private final WorktreePool worktreePool;
+    private final List<CommitInfo> commits;
+    private final Predicate<String> needsCheckout;
+    private final CheckoutStrategy checkoutStrategy;
+    private final long checkoutTimeoutSeconds;
+    private final DependencyCache dependencyCache;
+    private final DependencyKeyFinder dependencyKeyFinder;
+    private final ExecutorService checkoutThread;
+    // Every commit that has been prefetched or checked out, but not released
+    // yet
+    private final Map<String, Future<PrefetchedCommit>> worktrees;
+    private int nextCommitIndex;
+
+    /**
+     * @param worktreePool The worktrees to check the commits out in.
+     * @param commits Every commit that will be processed, in order.
+     * @param needsCheckout Tells whether a commit will probably need to be
+     * checked out, given its hash. Commits it returns <code>false</code> for,
+     * such as commits whose coverage is cached, aren't prefetched.
+     * @param checkoutStrategy How to check out each commit.
+     * @param checkoutTimeoutSeconds How long to let git run while checking out
+     * a commit before killing it.
+     * @param dependencyCache The cache to acquire each commit's prepared
+     * dependency directory from, or <code>null</code> if there isn't one.
+     * @param dependencyKeyFinder Works out a commit's dependency key. Only used
+     * if there is a dependency cache.
+     */
+    CommitPrefetcher(WorktreePool worktreePool, List<CommitInfo> commits,
+            Predicate<String> needsCheckout, CheckoutStrategy checkoutStrategy,
+            long checkoutTimeoutSeconds, DependencyCache dependencyCache,
+            DependencyKeyFinder dependencyKeyFinder) {
+        this.worktreePool = worktreePool;
+        this.commits = commits;
+        this.needsCheckout = needsCheckout;
+        this.checkoutStrategy = checkoutStrategy;
+        this.checkoutTimeoutSeconds = checkoutTimeoutSeconds;
+        this.dependencyCache = dependencyCache;
+        this.dependencyKeyFinder = dependencyKeyFinder;
+        this.checkoutThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Commit prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.worktrees = new HashMap<>();
+        this.nextCommitIndex = 0;
+    }
+
+    /**
+     * Starts checking out every commit up to and including the one at
+     * <code>lastIndex</code> that hasn't been prefetched yet.
+     * @param lastIndex The index of the last commit to prefetch, in the list
+     * of commits. It may be past the end of the list.
+     */
+    void prefetchThrough(int lastIndex) {
+        while(nextCommitIndex <= lastIndex
+                && nextCommitIndex < commits.size()) {
+            String hash = commits.get(nextCommitIndex).getHash();
+            nextCommitIndex++;
+            if(!worktrees.containsKey(hash) && needsCheckout.test(hash)) {
+                worktrees.put(hash, checkoutThread.submit(
+                        () -> checkoutInWorktree(hash, true)));
+            }
+        }
+    }
+
+    /**
+     * Gets a worktree with a commit checked out in it, waiting for the commit
+     * to be prefetched, or checking it out now if it wasn't.
+     * @param hash The commit's hash.
+     * @return The worktree, along with the commit's dependency key and
+     * directory, if they are known.
+     * @throws IOException If the commit couldn't be checked out, or the
+     * thread was interrupted while waiting.
+     */
+    PrefetchedCommit checkout(String hash) throws IOException {
+        try {
+            Future<PrefetchedCommit> worktree = worktrees.get(hash);
+            if(worktree == null) {
+                worktree = CompletableFuture.completedFuture(
+                        checkoutInWorktree(hash, false));
+                worktrees.put(hash, worktree);
+            }
+            return worktree.get();
+        } catch(ExecutionException err) {
+            // The failed checkout has already given its worktree back
+            worktrees.remove(hash);
+            Throwable cause = err.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not check out commit " + hash + ": "
+                    + cause, cause);
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while checking out commit "
+                    + hash, err);
+        }
+    }
+
+    /**
+     * Gives back the worktree and dependency directory of a commit that has
+     * been processed, whether or not they were used. Does nothing if the
+     * commit has no worktree.
+     * @param hash The commit's hash.
+     */
+    void release(String hash) {
+        Future<PrefetchedCommit> worktree = worktrees.remove(hash);
+        if(worktree == null) {
+            return;
+        }
+        try {
+            PrefetchedCommit commit = worktree.get();
+            releaseDependencyDirectory(commit);
+            worktreePool.release(commit.getWorktree());
+        } catch(ExecutionException err) {
+            // The failed checkout has already given its worktree back
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops prefetching. Checkouts that haven't started yet are cancelled,
+     * and the one in progress, if any, is interrupted, which kills git. This
+     * waits for it to stop, so the worktree pool can be closed right after
+     * without removing a worktree that git is still writing to. The
+     * worktrees and dependency directories of prefetched commits that were
+     * never released are given back, so the directories can be evicted again.
+     */
+    @Override
+    public void close() {
+        checkoutThread.shutdownNow();
+        boolean stopped;
+        try {
+            stopped = checkoutThread.awaitTermination(
+                    checkoutTimeoutSeconds + CLOSE_GRACE_SECONDS,
+                    TimeUnit.SECONDS);
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+            stopped = false;
+        }
+        if(!stopped) {
+            System.out.println("A commit was still being prefetched when "
+                    + "prefetching was stopped.");
+        }
+
+        for(Future<PrefetchedCommit> worktree : worktrees.values()) {
+            // Checkouts that never started are never done
+            if(worktree.isDone() && !worktree.isCancelled()) {
+                try {
+                    PrefetchedCommit commit = worktree.get();
+                    releaseDependencyDirectory(commit);
+                    worktreePool.release(commit.getWorktree());
+                } catch(ExecutionException | InterruptedException err) {
+                    // Nothing was acquired
+                }
+            }
+        }
+        worktrees.clear();
+    }
+
+    private void releaseDependencyDirectory(PrefetchedCommit commit) {
+        if(commit.getDependencyDirectory() != null) {
+            dependencyCache.release(commit.getDependencyKey(), true);
+        }
+    }
+
+    /**
+     * Borrows a worktree and checks a commit out in it, giving the worktree
+     * back if that fails. Then, if there is a dependency cache, works out the
+     * commit's dependency key and acquires its directory if it has been
+     * prepared.
+     */
+    private PrefetchedCommit checkoutInWorktree(String hash,
+            boolean prefetching) throws IOException, InterruptedException {
+        WorktreePool.Worktree worktree = worktreePool.acquire();
+        try {
+            System.out.println((prefetching ? "Prefetching" : "Checking out")
+                    + " commit " + hash + " in worktree "
+                    + worktree.getNumber() + "...");
+            checkoutStrategy.checkout(new File(worktree.getPath()), hash,
+                    checkoutTimeoutSeconds);
+        } catch(IOException | RuntimeException err) {
+            worktreePool.release(worktree);
+            throw err;
+        }
+
+        if(dependencyCache == null) {
+            return new PrefetchedCommit(worktree, null, null);
+        }
+        String dependencyKey;
+        try {
+            dependencyKey = dependencyKeyFinder.findDependencyKey(
+                    worktree.getPath(), hash);
+        } catch(IOException err) {
+            // The key is worked out again when the commit is tested, and the
+            // problem reported then if it happens again
+            return new PrefetchedCommit(worktree, null, null);
+        }
+        return new PrefetchedCommit(worktree, dependencyKey,
+                dependencyCache.acquireIfPrepared(dependencyKey));
+    }
+
+    /**
+     * Works out a commit's dependency key from its checked out files.
+     */
+    interface DependencyKeyFinder {
+        /**
+         * @param directory The directory the commit is checked out in.
+         * @param hash The commit's hash.
+         * @return The commit's dependency key.
+         * @throws IOException If there was a problem working out the key.
+         */
+        String findDependencyKey(String directory, String hash)
+                throws IOException;
+    }
+
+    /**
+     * A commit that has been checked out in a worktree.
+     */
+    static class PrefetchedCommit {
+        private final WorktreePool.Worktree worktree;
+        private final String dependencyKey;
+        private final Path dependencyDirectory;
+
+        PrefetchedCommit(WorktreePool.Worktree worktree, String dependencyKey,
+                Path dependencyDirectory) {
+            this.worktree = worktree;
+            this.dependencyKey = dependencyKey;
+            this.dependencyDirectory = dependencyDirectory;
+        }
+
+        WorktreePool.Worktree getWorktree() {
+            return worktree;
+        }
+
+        /**
+         * @return The commit's dependency key, or <code>null</code> if it
+         * isn't known.
+         */
+        String getDependencyKey() {
+            return dependencyKey;
+        }
+
+        /**
+         * @return The commit's prepared dependency directory, which has been
+         * acquired for it and is released along with the worktree, or
+         * <code>null</code> if it hasn't been acquired.
+         */
+        Path getDependencyDirectory() {
+            return dependencyDirectory;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import edu.unl.knorth.historical_fault_localization.utility.ProcessOutput;
+import edu.unl.knorth.historical_fault_localization.utility.ProcessTree;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs a single git command, either one whose output only needs to be shown to
+ * the end user, such as the commands that create and remove worktrees, or one
+ * whose output is read line by line, such as <code>git diff</code>.
+ */
+final class GitCommand {
+    // How long to wait for git's output to be passed on after git exits
+    private static final long OUTPUT_GRACE_MILLISECONDS = 5000;
+    // How long to wait for a killed git process to exit
+    private static final long KILL_GRACE_SECONDS = 5;
+    // How often to check whether a command with an inactivity timeout is
+    // still printing anything
+    private static final long ACTIVITY_POLL_MILLISECONDS = 200;
+    // The lock files git holds while it updates the index or HEAD. git removes
+    // them when it exits, but not when it's killed, and every later command
+    // that needs them then fails until they're deleted.
+    private static final String[] LOCK_FILE_NAMES = {"index.lock", "HEAD.lock"};
+
+    private GitCommand() {
+        // Only has static methods
+    }
+
+    /**
+     * Runs <code>git [arguments]</code> and waits for it to finish. Anything
+     * git outputs is forwarded to STDOUT.
+     * @param workingDirectory The directory to run git in.
+     * @param timeoutSeconds How long to wait for git to finish. If it takes
+     * longer than this, the git process is killed.
+     * @param arguments The arguments to pass to git.
+     * @throws IOException If git couldn't be started, timed out, or exited
+     * with a non-zero exit code.
+     */
+    static void run(File workingDirectory, long timeoutSeconds,
+            String... arguments) throws IOException {
+        List<String> command = new ArrayList<>(arguments.length + 1);
+        command.add("git");
+        command.addAll(Arrays.asList(arguments));
+        String commandLineString = String.join(" ", command);
+
+        Process pr = Runtime.getRuntime().exec(
+                command.toArray(new String[command.size()]), null,
+                workingDirectory);
+
+        // Output the process's output to STDOUT so the end user can see it
+        ProcessOutput output = new ProcessOutput(null, 1);
+        output.drain(pr.getInputStream());
+        output.drain(pr.getErrorStream());
+
+        try {
+            waitFor(pr, commandLineString, timeoutSeconds, workingDirectory,
+                    null);
+        } finally {
+            finishOutput(output);
+        }
+    }
+
+    /**
+     * Runs <code>git [arguments]</code>, hands each line of its output to
+     * <code>lineConsumer</code> as soon as it is read, and waits for it to
+     * finish. The output is never held in memory all at once, so this can be
+     * used for commands with very long output. Anything git outputs to STDERR
+     * is forwarded to STDOUT.
+     * @param workingDirectory The directory to run git in.
+     * @param timeoutSeconds How long to wait for git to finish. If it takes
+     * longer than this, the git process is killed.
+     * @param lineConsumer Receives each line of git's output, without the line
+     * terminator, in order. It is called from a separate thread, but never
+     * from more than one thread at once, and never after this method returns
+     * normally.
+     * @param arguments The arguments to pass to git.
+     * @throws IOException If git couldn't be started, timed out, exited with a
+     * non-zero exit code, or its output couldn't be read.
+     */
+    static void readOutput(File workingDirectory, long timeoutSeconds,
+            Consumer<String> lineConsumer, String... arguments)
+            throws IOException {
+        readLines(workingDirectory, timeoutSeconds, false, lineConsumer,
+                arguments);
+    }
+
+    /**
+     * Works like <code>readOutput()</code>, except that git is only killed if
+     * it goes too long without outputting anything. This is for commands like
+     * <code>git log</code> on a whole history, which can take any amount of
+     * time on a large enough repository but keep printing as they go.
+     * @param workingDirectory The directory to run git in.
+     * @param idleTimeoutSeconds How long git may go without outputting a line
+     * to STDOUT or anything to STDERR. If it goes longer than this, the git
+     * process is killed. If 0, git is never killed.
+     * @param lineConsumer Receives each line of git's output, as in
+     * <code>readOutput()</code>.
+     * @param arguments The arguments to pass to git.
+     * @throws IOException If git couldn't be started, stopped outputting
+     * anything, exited with a non-zero exit code, or its output couldn't be
+     * read.
+     */
+    static void readOutputWhileActive(File workingDirectory,
+            long idleTimeoutSeconds, Consumer<String> lineConsumer,
+            String... arguments) throws IOException {
+        readLines(workingDirectory, idleTimeoutSeconds, true, lineConsumer,
+                arguments);
+    }
+
+    private static void readLines(File workingDirectory, long timeoutSeconds,
+            boolean idleTimeout, Consumer<String> lineConsumer,
+            String[] arguments) throws IOException {
+        List<String> command = new ArrayList<>(arguments.length + 1);
+        command.add("git");
+        command.addAll(Arrays.asList(arguments));
+        String commandLineString = String.join(" ", command);
+
+        final Process pr = Runtime.getRuntime().exec(
+                command.toArray(new String[command.size()]), null,
+                workingDirectory);
+
+        ProcessOutput errorOutput = new ProcessOutput(null, 1);
+        errorOutput.drain(pr.getErrorStream());
+
+        // Read the output while git is still running so that git never blocks
+        // on a full pipe
+        final IOException[] readError = new IOException[1];
+        final AtomicLong linesRead = new AtomicLong();
+        Future<?> outputReader = ProcessOutput.submitReader(() -> {
+            try(BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(pr.getInputStream(),
+                            StandardCharsets.UTF_8))) {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    linesRead.incrementAndGet();
+                    lineConsumer.accept(line);
+                }
+            } catch(IOException err) {
+                readError[0] = err;
+            }
+        });
+
+        try {
+            waitFor(pr, commandLineString, timeoutSeconds, workingDirectory,
+                    idleTimeout ? () -> linesRead.get()
+                            + errorOutput.getBytesSeen() : null);
+            // git has exited, so the rest of its output is already waiting in
+            // the pipe
+            outputReader.get();
+        } catch(InterruptedException err) {
+            throw new IOException("Interrupted while reading the output of `"
+                    + commandLineString + "`", err);
+        } catch(ExecutionException err) {
+            // lineConsumer threw an unchecked exception
+            throw new IOException("Could not read the output of `"
+                    + commandLineString + "`", err.getCause());
+        } finally {
+            finishOutput(errorOutput);
+        }
+
+        if(readError[0] != null) {
+            throw new IOException("Could not read the output of `"
+                    + commandLineString + "`", readError[0]);
+        }
+    }
+
+    /**
+     * Waits for the rest of a finished git process's output to be passed on.
+     */
+    private static void finishOutput(ProcessOutput output) {
+        try {
+            output.finish(OUTPUT_GRACE_MILLISECONDS);
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for a git process to finish, killing it if it takes too long.
+     * @param activity How much git has output so far, or <code>null</code>.
+     * If given, the timeout only counts the time since it last changed.
+     * @throws IOException If git timed out, exited with a non-zero exit code,
+     * or the thread was interrupted while waiting.
+     */
+    private static void waitFor(Process pr, String commandLineString,
+            long timeoutSeconds, File workingDirectory, LongSupplier activity)
+            throws IOException {
+        try {
+            boolean success;
+            if(activity == null) {
+                success = pr.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+            } else {
+                success = waitWhileActive(pr, timeoutSeconds, activity);
+            }
+
+            if(!success) {
+                kill(pr, workingDirectory);
+                throw new IOException("Timed out while running `"
+                        + commandLineString + "`"
+                        + ((activity == null) ? "" : ", which output nothing "
+                                + "for " + timeoutSeconds + " seconds"));
+            } else if(pr.exitValue() != 0) {
+                throw new IOException("`" + commandLineString + "` exited "
+                        + "with code " + pr.exitValue());
+            }
+        } catch(InterruptedException err) {
+            kill(pr, workingDirectory);
+            throw new IOException("Interrupted while running `"
+                    + commandLineString + "`", err);
+        }
+    }
+
+    /**
+     * Waits for a process to finish for as long as its output keeps growing.
+     * @return <code>false</code> if it went <code>idleTimeoutSeconds</code>
+     * without outputting anything.
+     */
+    private static boolean waitWhileActive(Process pr, long idleTimeoutSeconds,
+            LongSupplier activity) throws InterruptedException {
+        if(idleTimeoutSeconds == 0) {
+            pr.waitFor();
+            return true;
+        }
+        long idleTimeout = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        long lastActivity = activity.getAsLong();
+        long idleSince = System.nanoTime();
+        while(!pr.waitFor(ACTIVITY_POLL_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+            long currentActivity = activity.getAsLong();
+            if(currentActivity != lastActivity) {
+                lastActivity = currentActivity;
+                idleSince = System.nanoTime();
+            } else if(System.nanoTime() - idleSince >= idleTimeout) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Kills a git process and deletes the lock files it left behind, so that
+     * the next git command in the same working directory doesn't fail on
+     * them.
+     * @throws IOException If a lock file couldn't be deleted. Every later
+     * command in the working directory would fail, so this is reported as
+     * loudly as possible.
+     */
+    private static void kill(Process pr, File workingDirectory)
+            throws IOException {
+        ProcessTree.kill(pr);
+        try {
+            // The lock files can only be deleted safely once git is gone
+            if(!pr.waitFor(KILL_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("git didn't exit after being killed, so "
+                        + "its lock files in " + workingDirectory + " were "
+                        + "left in place.");
+            }
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        File gitDirectory = findGitDirectory(workingDirectory);
+        if(gitDirectory == null) {
+            return;
+        }
+        for(String lockFileName : LOCK_FILE_NAMES) {
+            Path lockFile = new File(gitDirectory, lockFileName).toPath();
+            // Commands that update a working directory never run in it at the
+            // same time, so any lock file is the killed command's own
+            if(Files.deleteIfExists(lockFile)) {
+                System.out.println("Deleted " + lockFile + ", which the "
+                        + "killed git process left behind.");
+            }
+        }
+    }
+
+    /**
+     * Finds the git directory of a working directory without running git.
+     * For a worktree, <code>.git</code> is a file pointing at the worktree's
+     * own git directory.
+     * @param workingDirectory The root of a working directory.
+     * @return The git directory, or <code>null</code> if there isn't one.
+     * @throws IOException If <code>.git</code> couldn't be read.
+     */
+    static File findGitDirectory(File workingDirectory) throws IOException {
+        File dotGit = new File(workingDirectory, ".git");
+        if(dotGit.isDirectory()) {
+            return dotGit;
+        } else if(!dotGit.isFile()) {
+            return null;
+        }
+
+        for(String line : Files.readAllLines(dotGit.toPath(),
+                StandardCharsets.UTF_8)) {
+            if(line.startsWith("gitdir: ")) {
+                File gitDirectory = new File(line.substring(8).trim());
+                return gitDirectory.isAbsolute() ? gitDirectory
+                        : new File(workingDirectory, gitDirectory.getPath());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Undoes the quoting git uses for paths with unusual characters in its
+     * output. When git is run with <code>-c core.quotePath=false</code>, only
+     * control characters, quotes, and backslashes are escaped.
+     * @param path A path as git printed it.
+     * @return The path itself.
+     */
+    static String unquotePath(String path) {
+        if(path.length() < 2 || path.charAt(0) != '"'
+                || path.charAt(path.length() - 1) != '"') {
+            return path;
+        }
+
+        StringBuilder unquoted = new StringBuilder(path.length());
+        for(int i = 1; i < path.length() - 1; i++) {
+            char c = path.charAt(i);
+            if(c != '\\' || i + 1 == path.length() - 1) {
+                unquoted.append(c);
+                continue;
+            }
+            i++;
+            switch(path.charAt(i)) {
+                case 'n':
+                    unquoted.append('\n');
+                    break;
+                case 't':
+                    unquoted.append('\t');
+                    break;
+                default:
+                    unquoted.append(path.charAt(i));
+                    break;
+            }
+        }
+        return unquoted.toString();
+    }
+}
@@ -0,0 +1,426 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Translates line numbers in one commit of the target program into the line
+ * numbers of the same lines in another commit, based on
+ * <code>git diff</code>.
+ * <p/>
+ * <code>StatementData</code> identifies a statement by its file and line
+ * number, so inserting a line near the top of a file gives every statement
+ * below it a different identity. A <code>LineMapping</code> undoes that: a
+ * line that wasn't touched by the diff is translated to its new line number,
+ * and to its new file name if the file was renamed. Lines that the diff
+ * changed or removed, and lines in deleted files, have no equivalent in the
+ * other commit and aren't translated at all. Files the diff doesn't mention
+ * are left as they are.
+ * <p/>
+ * Only the hunk headers of <code>git diff -U0</code> are used, so each changed
+ * file is stored as a handful of integers per hunk, no matter how large the
+ * file or the diff is.
+ * <p/>
+ * Test harnesses may report file paths relative to the root of the repository
+ * or with some prefix, such as an absolute path. A statement's file is matched
+ * with a file in the diff if the statement's file is the same as the path in
+ * the diff or ends with <code>"/"</code> followed by that path. The changed
+ * files are indexed by their base names, so only the changed files with the
+ * same base name as a statement's file are checked.
+ * <p/>
+ * Each commit is scored and visualized in its own line numbers. With
+ * <code>translateScores</code> set, <code>ScoreTranslator</code> uses a
+ * mapping to also save each commit's scores in the next commit's line
+ * numbers. Other tools that compare results across commits can use the
+ * hashes in <code>TestExecutionDataFromCommit</code> the same way.
+ */
+public class LineMapping {
+    // How long to wait for `git diff` to finish
+    private static final long GIT_TIMEOUT_SECONDS = 60;
+
+    private static final Pattern HUNK_HEADER =
+            Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@");
+
+    private final String fromCommit;
+    private final String toCommit;
+    // Path in fromCommit -> how the file changed
+    private final Map<String, FileMapping> fileMappings;
+    // Base name -> the paths in fileMappings with that base name
+    private final Map<String, List<String>> pathsByBaseName;
+
+    private LineMapping(String fromCommit, String toCommit,
+            Map<String, FileMapping> fileMappings) {
+        this.fromCommit = fromCommit;
+        this.toCommit = toCommit;
+        this.fileMappings = fileMappings;
+        pathsByBaseName = new HashMap<>();
+        for(String oldPath : fileMappings.keySet()) {
+            pathsByBaseName.computeIfAbsent(getBaseName(oldPath),
+                    baseName -> new ArrayList<>()).add(oldPath);
+        }
+    }
+
+    /**
+     * Runs <code>git diff</code> between two commits and builds the mapping
+     * from the first commit's line numbers to the second's.
+     * @param workingDirectoryPath The path to the root of the target program's
+     * git repository.
+     * @param fromCommit The hash of the commit to translate line numbers from.
+     * @param toCommit The hash of the commit to translate line numbers to.
+     * @return The mapping.
+     * @throws IOException If <code>git diff</code> couldn't be run.
+     */
+    public static LineMapping between(String workingDirectoryPath,
+            String fromCommit, String toCommit) throws IOException {
+        DiffParser parser = new DiffParser();
+        GitCommand.readOutput(new File(workingDirectoryPath),
+                GIT_TIMEOUT_SECONDS, parser::parseLine,
+                "-c", "core.quotePath=false", "diff", "--no-color",
+                "--no-ext-diff", "-M", "-U0",
+                fromCommit, toCommit);
+        return new LineMapping(fromCommit, toCommit, parser.finish());
+    }
+
+    /**
+     * Builds a mapping from the output of
+     * <code>git diff -U0 [fromCommit] [toCommit]</code>.
+     * @param fromCommit The hash of the commit to translate line numbers from.
+     * @param toCommit The hash of the commit to translate line numbers to.
+     * @param diffLines The lines of <code>git diff</code>'s output.
+     * @return The mapping.
+     * @throws IOException If the diff couldn't be understood.
+     */
+    static LineMapping parse(String fromCommit, String toCommit,
+            List<String> diffLines) throws IOException {
+        DiffParser parser = new DiffParser();
+        for(String line : diffLines) {
+            parser.parseLine(line);
+        }
+        return new LineMapping(fromCommit, toCommit, parser.finish());
+    }
+
+    /**
+     * Translates a statement into the coordinates of <code>toCommit</code>.
+     * @param statement A statement in <code>fromCommit</code>.
+     * @return The same statement in <code>toCommit</code>, or
+     * <code>null</code> if the diff changed or removed the statement's line.
+     */
+    public StatementData translate(StatementData statement) {
+        String file = statement.getFile();
+        String oldPath = findChangedPath(file);
+        if(oldPath == null) {
+            return statement;
+        }
+
+        FileMapping mapping = fileMappings.get(oldPath);
+        if(mapping.newPath == null) {
+            return null;
+        }
+        int lineNumber = mapping.translate(statement.getLineNumber());
+        if(lineNumber == FileMapping.REMOVED) {
+            return null;
+        }
+
+        // Keep whatever prefix the test harness put in front of the path
+        String newFile = file.substring(0, file.length() - oldPath.length())
+                + mapping.newPath;
+        if(newFile.equals(file) && lineNumber == statement.getLineNumber()) {
+            return statement;
+        }
+        return new StatementData(lineNumber, newFile);
+    }
+
+    /**
+     * Translates a commit's test coverage data into the coordinates of
+     * <code>toCommit</code>. Statements whose lines the diff changed or
+     * removed are left out, both from the statements and from each test.
+     * @param data Test coverage data collected on <code>fromCommit</code>.
+     * @return The same tests, with each statement translated. If the diff
+     * didn't change any files, this is <code>data</code> itself.
+     */
+    public TestExecutionData translate(TestExecutionData data) {
+        if(fileMappings.isEmpty()) {
+            return data;
+        }
+
+        Map<StatementData, StatementData> translations = new HashMap<>();
+        TestExecutionData translated = new TestExecutionData();
+        for(StatementData statement : data.getStatements()) {
+            StatementData translatedStatement = translate(statement);
+            if(translatedStatement != null) {
+                translations.put(statement, translatedStatement);
+                translated.addStatement(translatedStatement);
+            }
+        }
+
+        for(TestData test : data.getTests()) {
+            List<StatementData> statementsExecuted = new ArrayList<>();
+            for(StatementData statement : test.getStatementsExecuted()) {
+                StatementData translatedStatement = translations.get(statement);
+                if(translatedStatement != null) {
+                    statementsExecuted.add(translatedStatement);
+                }
+            }
+            translated.addTest(new TestData(test.getPassed(),
+                    statementsExecuted));
+        }
+
+        return translated;
+    }
+
+    /**
+     * Translates suspiciousness scores into the coordinates of
+     * <code>toCommit</code>. Scores of statements whose lines the diff changed
+     * or removed are left out.
+     * @param scores Suspiciousness scores calculated for
+     * <code>fromCommit</code>.
+     * @return The remaining scores, in the same order, with each statement
+     * translated.
+     */
+    public List<SuspiciousnessScore> translate(
+            List<SuspiciousnessScore> scores) {
+        List<SuspiciousnessScore> translated = new ArrayList<>(scores.size());
+        for(SuspiciousnessScore score : scores) {
+            StatementData statement = translate(score.getStatement());
+            if(statement == score.getStatement()) {
+                translated.add(score);
+            } else if(statement != null) {
+                translated.add(new SuspiciousnessScore(statement,
+                        score.getSuspiciousness()));
+            }
+        }
+        return translated;
+    }
+
+    /**
+     * @return The path, as it appears in the diff, of the changed file that
+     * <code>file</code> refers to, or <code>null</code> if the diff doesn't
+     * change it.
+     */
+    private String findChangedPath(String file) {
+        if(fileMappings.containsKey(file)) {
+            return file;
+        }
+        // A path that file ends with has the same base name
+        List<String> candidates = pathsByBaseName.get(getBaseName(file));
+        if(candidates == null) {
+            return null;
+        }
+        for(String oldPath : candidates) {
+            if(refersTo(file, oldPath)) {
+                return oldPath;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The part of a path after its last <code>"/"</code>.
+     */
+    private static String getBaseName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Checks whether a file name reported by the test harness refers to a
+     * path in the target program's repository.
+     * @param file A file name from a <code>StatementData</code>.
+     * @param repositoryPath A path relative to the root of the repository, as
+     * printed by git.
+     * @return <code>true</code> if <code>file</code> is
+     * <code>repositoryPath</code> or ends with <code>"/"</code> followed by
+     * <code>repositoryPath</code>.
+     */
+    static boolean refersTo(String file, String repositoryPath) {
+        if(!file.endsWith(repositoryPath)) {
+            return false;
+        }
+        int prefixLength = file.length() - repositoryPath.length();
+        return prefixLength == 0 || file.charAt(prefixLength - 1) == '/';
+    }
+
+    /**
+     * @return How many files the diff changed, renamed, or deleted.
+     */
+    public int getNumChangedFiles() {
+        return fileMappings.size();
+    }
+
+    public String getFromCommit() {
+        return fromCommit;
+    }
+
+    public String getToCommit() {
+        return toCommit;
+    }
+
+    /**
+     * The hunks of the diff of a single file.
+     */
+    private static class FileMapping {
+        static final int REMOVED = Integer.MIN_VALUE;
+
+        // The file's path in toCommit, or null if it was deleted
+        private final String newPath;
+        // The hunks, in order. A hunk replaces oldCounts[i] lines starting at
+        // oldStarts[i] with newCounts[i] lines. When oldCounts[i] is 0, the
+        // new lines are inserted after line oldStarts[i].
+        private final int[] oldStarts;
+        private final int[] oldCounts;
+        private final int[] newCounts;
+
+        FileMapping(String newPath, int[] oldStarts, int[] oldCounts,
+                int[] newCounts) {
+            this.newPath = newPath;
+            this.oldStarts = oldStarts;
+            this.oldCounts = oldCounts;
+            this.newCounts = newCounts;
+        }
+
+        /**
+         * @return The line's number in the new version of the file, or
+         * <code>REMOVED</code> if the diff changed or removed it.
+         */
+        int translate(int lineNumber) {
+            int offset = 0;
+            for(int i = 0; i < oldStarts.length; i++) {
+                if(oldCounts[i] == 0) {
+                    if(lineNumber <= oldStarts[i]) {
+                        break;
+                    }
+                } else if(lineNumber < oldStarts[i]) {
+                    break;
+                } else if(lineNumber < oldStarts[i] + oldCounts[i]) {
+                    return REMOVED;
+                }
+                offset += newCounts[i] - oldCounts[i];
+            }
+            return lineNumber + offset;
+        }
+    }
+
+    /**
+     * Reads <code>git diff</code> output one line at a time, keeping only the
+     * file names and hunk headers. Problems with the output are remembered
+     * and reported by <code>finish()</code>, so that the rest of the output is
+     * still read.
+     */
+    private static class DiffParser {
+        private final Map<String, FileMapping> fileMappings = new HashMap<>();
+        private String error = null;
+
+        // The file currently being read
+        private boolean inFile = false;
+        private String oldPath;
+        private String newPath;
+        private boolean newPathSeen;
+        private int numHunks;
+        private int[] oldStarts = new int[16];
+        private int[] oldCounts = new int[16];
+        private int[] newCounts = new int[16];
+
+        void parseLine(String line) {
+            if(line.startsWith("diff --git ")) {
+                endFile();
+                inFile = true;
+                oldPath = null;
+                newPath = null;
+                newPathSeen = false;
+                numHunks = 0;
+            } else if(!inFile || error != null) {
+                return;
+            } else if(line.startsWith("@@ ")) {
+                addHunk(line);
+            } else if(numHunks > 0) {
+                // Added and removed lines; only the hunk headers matter
+                return;
+            } else if(line.startsWith("--- ")) {
+                oldPath = parsePath(line.substring(4), "a/");
+            } else if(line.startsWith("+++ ")) {
+                newPath = parsePath(line.substring(4), "b/");
+                newPathSeen = true;
+            } else if(line.startsWith("rename from ")) {
+                oldPath = GitCommand.unquotePath(line.substring(12));
+            } else if(line.startsWith("rename to ")) {
+                newPath = GitCommand.unquotePath(line.substring(10));
+                newPathSeen = true;
+            }
+        }
+
+        private void addHunk(String line) {
+            Matcher matcher = HUNK_HEADER.matcher(line);
+            if(!matcher.find()) {
+                error = "Could not understand diff hunk header \"" + line
+                        + "\"";
+                return;
+            }
+
+            if(numHunks == oldStarts.length) {
+                oldStarts = Arrays.copyOf(oldStarts, numHunks * 2);
+                oldCounts = Arrays.copyOf(oldCounts, numHunks * 2);
+                newCounts = Arrays.copyOf(newCounts, numHunks * 2);
+            }
+            try {
+                oldStarts[numHunks] = Integer.parseInt(matcher.group(1));
+                oldCounts[numHunks] = (matcher.group(2) == null)
+                        ? 1 : Integer.parseInt(matcher.group(2));
+                newCounts[numHunks] = (matcher.group(4) == null)
+                        ? 1 : Integer.parseInt(matcher.group(4));
+            } catch(NumberFormatException err) {
+                error = "Line number out of range in diff hunk header \""
+                        + line + "\"";
+                return;
+            }
+            numHunks++;
+        }
+
+        private void endFile() {
+            // Files that were added have no lines to translate, and files
+            // whose mode changed but whose contents and name didn't don't
+            // need translating
+            if(!inFile || oldPath == null || !newPathSeen
+                    || (numHunks == 0 && oldPath.equals(newPath))) {
+                return;
+            }
+
+            fileMappings.put(oldPath, new FileMapping(newPath,
+                    Arrays.copyOf(oldStarts, numHunks),
+                    Arrays.copyOf(oldCounts, numHunks),
+                    Arrays.copyOf(newCounts, numHunks)));
+        }
+
+        Map<String, FileMapping> finish() throws IOException {
+            if(error != null) {
+                throw new IOException(error);
+            }
+            endFile();
+            inFile = false;
+            return fileMappings;
+        }
+
+        /**
+         * @return The path from a <code>---</code> or <code>+++</code> line
+         * without its <code>a/</code> or <code>b/</code> prefix, or
+         * <code>null</code> for <code>/dev/null</code>.
+         */
+        private static String parsePath(String path, String prefix) {
+            path = GitCommand.unquotePath(path);
+            if(path.equals("/dev/null")) {
+                return null;
+            }
+            return path.startsWith(prefix)
+                    ? path.substring(prefix.length()) : path;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides whether the test harness needs to run on a commit at all, or whether
+ * the commit's tests are bound to cover the same statements with the same
+ * results as the commit before it.
+ * <p/>
+ * A commit is compared with the previous commit using the changed files
+ * <code>git log</code> listed for whichever of the two is the other's child,
+ * or using <code>git diff --name-only</code> if neither is. If none of the
+ * files it changed contain a statement from the previous commit's test
+ * coverage data, the changes
+ * can't have been executed by any test, so the previous commit's coverage is
+ * reused. Commits that only change documentation, or code no test reaches,
+ * are skipped this way.
+ * <p/>
+ * This relies on the test harness reporting every file that can affect the
+ * tests' results. Changes to files it doesn't report, such as the tests
+ * themselves or build scripts, are not noticed.
+ * <p/>
+ * This class is not thread-safe.
+ */
+class RegressionTestSelector {
+    // How long to wait for `git diff` to finish
+    private static final long GIT_TIMEOUT_SECONDS = 60;
+
+    private final File repositoryDirectory;
+
+    // The files covered by the most recently checked coverage data. Commits
+    // that inherit coverage share the same TestExecutionData, so the set is
+    // usually reused.
+    private TestExecutionData coveredFilesSource;
+    private Set<String> coveredFiles;
+
+    /**
+     * @param repositoryPath The path to the root of the target program's git
+     * repository.
+     */
+    RegressionTestSelector(String repositoryPath) {
+        this.repositoryDirectory = new File(repositoryPath);
+        this.coveredFilesSource = null;
+        this.coveredFiles = null;
+    }
+
+    /**
+     * Finds a file that a commit changed and that the previous commit's tests
+     * covered.
+     * @param previousCommit The previous commit.
+     * @param previousData The previous commit's test coverage data.
+     * @param commit The commit to check.
+     * @return One of the files, as it appears in the coverage data, or
+     * <code>null</code> if the commit didn't change any covered files and the
+     * previous commit's coverage can be reused.
+     * @throws IOException If <code>git diff</code> had to be run and couldn't
+     * be.
+     */
+    String findChangedCoveredFile(CommitInfo previousCommit,
+            TestExecutionData previousData, CommitInfo commit)
+            throws IOException {
+        return findCoveredFile(getCoveredFiles(previousData),
+                getChangedFiles(previousCommit, commit));
+    }
+
+    /**
+     * @return The files that differ between two commits. When one commit is
+     * the other's only parent, the list <code>git log</code> already gave is
+     * used. Otherwise, <code>git diff</code> is run.
+     */
+    private List<String> getChangedFiles(CommitInfo previousCommit,
+            CommitInfo commit) throws IOException {
+        if(commit.getChangedFiles() != null
+                && commit.isOnlyChildOf(previousCommit.getHash())) {
+            return commit.getChangedFiles();
+        } else if(previousCommit.getChangedFiles() != null
+                && previousCommit.isOnlyChildOf(commit.getHash())) {
+            return previousCommit.getChangedFiles();
+        }
+
+        final List<String> changedPaths = new ArrayList<>();
+        GitCommand.readOutput(repositoryDirectory, GIT_TIMEOUT_SECONDS,
+                line -> {
+                    if(!line.isEmpty()) {
+                        changedPaths.add(GitCommand.unquotePath(line));
+                    }
+                },
+                "-c", "core.quotePath=false", "diff", "--no-color",
+                "--no-ext-diff", "--no-renames", "--name-only",
+                previousCommit.getHash(), commit.getHash());
+        return changedPaths;
+    }
+
+    private Set<String> getCoveredFiles(TestExecutionData data) {
+        if(data != coveredFilesSource) {
+            coveredFiles = new HashSet<>();
+            for(StatementData statement : data.getStatements()) {
+                coveredFiles.add(statement.getFile());
+            }
+            coveredFilesSource = data;
+        }
+        return coveredFiles;
+    }
+
+    /**
+     * @param coveredFiles File names from test coverage data.
+     * @param changedPaths Paths relative to the root of the repository.
+     * @return A file in <code>coveredFiles</code> that refers to one of
+     * <code>changedPaths</code>, or <code>null</code> if there isn't one.
+     */
+    static String findCoveredFile(Set<String> coveredFiles,
+            Collection<String> changedPaths) {
+        for(String changedPath : changedPaths) {
+            if(coveredFiles.contains(changedPath)) {
+                return changedPath;
+            }
+        }
+
+        // The test harness may have put a prefix in front of each path
+        for(String file : coveredFiles) {
+            for(String changedPath : changedPaths) {
+                if(LineMapping.refersTo(file, changedPath)) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,80 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates each commit's suspiciousness scores into the line numbers of the
+ * commit after it, using a <code>LineMapping</code>, so that the scores of
+ * consecutive commits can be compared line by line.
+ * <p/>
+ * Commits must be handed over one at a time and in the order they were
+ * processed. A commit's scores are held until the next commit is handed
+ * over, and are then translated into its line numbers and released. If the
+ * next commit handed over isn't the one after it in the list of commits, for
+ * example because the test harness failed on that one, the held scores are
+ * dropped, since there is no commit to translate them into.
+ * <p/>
+ * A commit may have several sets of scores, such as one per formula. Each set
+ * is handed over under a name, and comes back translated under the same name.
+ * The diff is only run once per commit, however many sets there are.
+ */
+public class ScoreTranslator {
+    private final String workingDirectoryPath;
+
+    // The last commit handed over, and its scores
+    private String heldCommitHash;
+    private Map<String, List<SuspiciousnessScore>> heldScores;
+
+    /**
+     * @param workingDirectoryPath The path to the root of the target program's
+     * git repository.
+     */
+    public ScoreTranslator(String workingDirectoryPath) {
+        this.workingDirectoryPath = workingDirectoryPath;
+        this.heldCommitHash = null;
+        this.heldScores = null;
+    }
+
+    /**
+     * Hands over a commit's scores, and translates the previous commit's
+     * scores into this commit's line numbers.
+     * @param result The commit the scores were calculated for.
+     * @param scores The commit's sets of scores, by name.
+     * @return The previous commit's sets of scores, by the same names, with
+     * each statement translated into <code>result</code>'s line numbers.
+     * Scores of statements whose lines changed are left out. Empty if the
+     * previous commit's scores weren't handed over.
+     * @throws IOException If <code>git diff</code> couldn't be run. This
+     * commit's scores are still held for the next commit.
+     */
+    public synchronized Map<String, List<SuspiciousnessScore>> next(
+            TestExecutionDataFromCommit result,
+            Map<String, List<SuspiciousnessScore>> scores)
+            throws IOException {
+        String previousHash = heldCommitHash;
+        Map<String, List<SuspiciousnessScore>> previousScores = heldScores;
+        heldCommitHash = result.getCommitHash();
+        heldScores = scores;
+
+        if(previousHash == null
+                || !previousHash.equals(result.getPreviousCommitHash())) {
+            return Collections.emptyMap();
+        }
+
+        LineMapping mapping = LineMapping.between(workingDirectoryPath,
+                previousHash, result.getCommitHash());
+        Map<String, List<SuspiciousnessScore>> translated =
+                new LinkedHashMap<>();
+        for(Map.Entry<String, List<SuspiciousnessScore>> entry
+                : previousScores.entrySet()) {
+            translated.put(entry.getKey(),
+                    mapping.translate(entry.getValue()));
+        }
+        return translated;
+    }
+}
@@ -0,0 +1,148 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Restricts a working directory to the parts of the target program's
+ * repository that the test harness needs, using git's cone-mode sparse
+ * checkout. Only the listed directories, and the files directly in the
+ * repository's root directory, are written to disk. Every later checkout only
+ * touches files in those directories, which makes switching between commits of
+ * a large repository much faster.
+ * <p/>
+ * The target program's own working directory may already have a sparse
+ * checkout set up by its owner. <code>save()</code> records how sparse
+ * checkout is set up before <code>enable()</code> changes it, and
+ * <code>restore()</code> puts it back exactly.
+ * <p/>
+ * Needs git 2.35 or newer.
+ */
+final class SparseCheckout {
+    // How long to wait for `git sparse-checkout`, which may have to write or
+    // delete every file in the working directory
+    private static final long GIT_TIMEOUT_SECONDS = 600;
+
+    private SparseCheckout() {
+        // Only has static methods
+    }
+
+    /**
+     * Turns on sparse checkout in a working directory.
+     * @param workingDirectory The working directory of the target program's
+     * repository, or of one of its worktrees.
+     * @param paths The directories to keep, relative to the root of the
+     * repository.
+     * @throws IOException If git failed or timed out.
+     */
+    static void enable(File workingDirectory, List<String> paths)
+            throws IOException {
+        List<String> arguments = new ArrayList<>(Arrays.asList(
+                "sparse-checkout", "set", "--cone"));
+        arguments.addAll(paths);
+        System.out.println("Restricting " + workingDirectory + " to "
+                + String.join(", ", paths) + "...");
+        GitCommand.run(workingDirectory, GIT_TIMEOUT_SECONDS,
+                arguments.toArray(new String[arguments.size()]));
+    }
+
+    /**
+     * Records how sparse checkout is set up in a working directory.
+     * @param workingDirectory The working directory of the target program's
+     * repository.
+     * @return The setup, to pass to <code>restore()</code>.
+     * @throws IOException If git failed or timed out, or the sparse checkout
+     * patterns couldn't be read.
+     */
+    static State save(File workingDirectory) throws IOException {
+        boolean enabled = readBooleanConfig(workingDirectory,
+                "core.sparseCheckout");
+        boolean cone = readBooleanConfig(workingDirectory,
+                "core.sparseCheckoutCone");
+        Path patternsFile = getPatternsFile(workingDirectory);
+        byte[] patterns = Files.exists(patternsFile)
+                ? Files.readAllBytes(patternsFile) : null;
+        return new State(enabled, cone, patterns);
+    }
+
+    /**
+     * Puts sparse checkout back the way it was set up before
+     * <code>enable()</code> was called, writing back the files it had
+     * removed. If sparse checkout was off, every file of the checked out
+     * commit is written back.
+     * @param workingDirectory A working directory that <code>enable()</code>
+     * was called on.
+     * @param state What <code>save()</code> returned before
+     * <code>enable()</code> was called.
+     * @throws IOException If git failed or timed out, or the sparse checkout
+     * patterns couldn't be written.
+     */
+    static void restore(File workingDirectory, State state)
+            throws IOException {
+        System.out.println("Restoring the files in " + workingDirectory
+                + "...");
+        Path patternsFile = getPatternsFile(workingDirectory);
+        if(state.patterns == null) {
+            Files.deleteIfExists(patternsFile);
+        } else {
+            Files.createDirectories(patternsFile.getParent());
+            Files.write(patternsFile, state.patterns);
+        }
+
+        if(!state.enabled) {
+            GitCommand.run(workingDirectory, GIT_TIMEOUT_SECONDS,
+                    "sparse-checkout", "disable");
+            return;
+        }
+        GitCommand.run(workingDirectory, GIT_TIMEOUT_SECONDS, "config",
+                "core.sparseCheckoutCone", Boolean.toString(state.cone));
+        GitCommand.run(workingDirectory, GIT_TIMEOUT_SECONDS, "config",
+                "core.sparseCheckout", "true");
+        GitCommand.run(workingDirectory, GIT_TIMEOUT_SECONDS,
+                "sparse-checkout", "reapply");
+    }
+
+    /**
+     * @return The value of a boolean git configuration option. An option
+     * that isn't set is <code>false</code>, just like git treats it.
+     */
+    private static boolean readBooleanConfig(File workingDirectory,
+            String name) throws IOException {
+        StringBuilder value = new StringBuilder();
+        GitCommand.readOutput(workingDirectory, GIT_TIMEOUT_SECONDS,
+                value::append, "config", "--bool", "--default", "false",
+                name);
+        return Boolean.parseBoolean(value.toString().trim());
+    }
+
+    private static Path getPatternsFile(File workingDirectory)
+            throws IOException {
+        File gitDirectory = GitCommand.findGitDirectory(workingDirectory);
+        if(gitDirectory == null) {
+            throw new IOException(workingDirectory + " is not the root of a "
+                    + "git working directory.");
+        }
+        return new File(gitDirectory, "info/sparse-checkout").toPath();
+    }
+
+    /**
+     * How sparse checkout was set up in a working directory.
+     */
+    static final class State {
+        private final boolean enabled;
+        private final boolean cone;
+        // The contents of the patterns file, or null if there wasn't one
+        private final byte[] patterns;
+
+        private State(boolean enabled, boolean cone, byte[] patterns) {
+            this.enabled = enabled;
+            this.cone = cone;
+            this.patterns = patterns;
+        }
+    }
+}
@@ -1,24 +1,109 @@
 package edu.unl.knorth.historical_fault_localization.target_program_handler;
 
 import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.coverage_cache.CoverageCache;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.dependency_cache.DependencyCache;
 import edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor.TestExecutor;
-import edu.unl.knorth.historical_fault_localization.utility.StreamGobbler;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Interacts with the target program in order to get test coverage data on all
  * of the requested commits. This class is responsible for interacting with the
  * target program's git repository and running the target program's test harness
  * on different versions of the target program.
+ * <p/>
+ * If it is given a <code>CoverageCache</code>, commits whose coverage is
+ * already in the cache are not checked out or tested again, and the coverage
+ * of every commit that is tested is added to the cache.
+ * <p/>
+ * If regression test selection is turned on, commits that didn't change any
+ * of the files covered by the previous commit's tests aren't checked out or
+ * tested either. They inherit the previous commit's coverage instead. See
+ * <code>RegressionTestSelector</code>. Test selection only applies when
+ * commits are processed one at a time, since otherwise the previous commit's
+ * coverage usually isn't known yet.
+ * <p/>
+ * Commits are checked out with the given <code>CheckoutStrategy</code>, and
+ * git is killed if checking out a commit takes longer than the checkout
+ * timeout. If sparse checkout paths are given, the working directory is
+ * restricted to them while the commits are processed, so files the test
+ * harness doesn't need are never rewritten. When commits are processed one at
+ * a time, the target program's own working directory is restored afterwards.
+ * <p/>
+ * When commits are processed one at a time, the next few commits can be
+ * checked out ahead of time in worktrees while the test harness runs on the
+ * current one. See <code>CommitPrefetcher</code>.
+ * <p/>
+ * If it is given a <code>DependencyCache</code>, the test harness is passed
+ * two more flags for each commit: <code>--dependency-key=[key]</code>, a hash
+ * of the commit's dependency files, such as <code>Gemfile.lock</code>, and
+ * <code>--dependency-directory=[path]</code>, a directory shared by every
+ * commit with the same key. The test harness can prepare its dependencies
+ * there once and reuse them for every commit that didn't change them. The
+ * directory is only kept if the test harness succeeds on the commit that
+ * prepares it.
  */
 public class TargetProgramHandler {
+    // How long to wait for `git ls-tree` to find a commit's dependency files
+    private static final long GIT_LS_TREE_TIMEOUT_SECONDS = 30;
+    
+    private final CoverageCache coverageCache;
+    private final boolean selectTests;
+    private final CheckoutStrategy checkoutStrategy;
+    private final long checkoutTimeoutSeconds;
+    private final long gitLogTimeoutSeconds;
+    private final List<String> sparseCheckoutPaths;
+    private final TestExecutor testExecutor;
+    private final int prefetchDepth;
+    private final DependencyCache dependencyCache;
+    private final List<String> dependencyFiles;
+    
+    public TargetProgramHandler() {
+        this(new TargetProgramHandlerOptions());
+    }
+    
+    /**
+     * @param options How to process the commits. See
+     * <code>TargetProgramHandlerOptions</code> for what each option does.
+     */
+    public TargetProgramHandler(TargetProgramHandlerOptions options) {
+        if(options.getPrefetchDepth() < 0) {
+            throw new IllegalArgumentException("prefetchDepth must not be "
+                    + "negative, not " + options.getPrefetchDepth());
+        }
+        if(options.getCheckoutTimeoutSeconds() < 1) {
+            throw new IllegalArgumentException("checkoutTimeoutSeconds must "
+                    + "be at least 1, not "
+                    + options.getCheckoutTimeoutSeconds());
+        }
+        if(options.getGitLogTimeoutSeconds() < 0) {
+            throw new IllegalArgumentException("gitLogTimeoutSeconds must not "
+                    + "be negative, not " + options.getGitLogTimeoutSeconds());
+        }
+        this.coverageCache = options.getCoverageCache();
+        this.selectTests = options.getSelectTests();
+        this.checkoutStrategy = options.getCheckoutStrategy();
+        this.checkoutTimeoutSeconds = options.getCheckoutTimeoutSeconds();
+        this.gitLogTimeoutSeconds = options.getGitLogTimeoutSeconds();
+        this.sparseCheckoutPaths =
+                new ArrayList<>(options.getSparseCheckoutPaths());
+        this.testExecutor = options.getTestExecutor() != null
+                ? options.getTestExecutor()
+                : new TestExecutor();
+        this.prefetchDepth = options.getPrefetchDepth();
+        this.dependencyCache = options.getDependencyCache();
+        this.dependencyFiles = new ArrayList<>(options.getDependencyFiles());
+    }
+    
     /**
      * Collects data from the target program by running the test harness script
      * on it once per requested commit. To do so, this method:
@@ -38,7 +123,7 @@ public class TargetProgramHandler {
      * to STDOUT. This output can be hundreds or thousands of lines long and
      * be megabytes in size!
      * @param gitArguments To get a list of git commits, this method will
-     * execute <code>git log --format=%H-%cD [gitArguments]</code>. Every
+     * execute <code>git log [gitArguments]</code>. Every
      * commit that is returned will have the test harness run against it.
      * @param testHarnessPath The path to the script that will be executed to
      * collect test coverage data.
@@ -56,6 +141,10 @@ public class TargetProgramHandler {
      * null instead. If there were any problems getting test coverage
      * information for a single test, the list this method returns will simply
      * omit that test and any others that have problems.
+     * <p/>
+     * The list holds every commit's test coverage data at once, so for long
+     * histories the <code>handleProgram()</code> method that takes a
+     * <code>Consumer</code> should be used instead.
      */
     public List<TestExecutionDataFromCommit> handleProgram(String gitArguments,
             String testHarnessPath, String workingDirectoryPath,
@@ -84,7 +173,7 @@ public class TargetProgramHandler {
      * to STDOUT. This output can be hundreds or thousands of lines long and
      * be megabytes in size!
      * @param gitArguments To get a list of git commits, this method will
-     * execute <code>git log --format=%H-%cD [gitArguments]</code>. Every
+     * execute <code>git log [gitArguments]</code>. Every
      * commit that is returned will have the test harness run against it.
      * @param testHarnessPath The path to the script that will be executed to
      * collect test coverage data.
@@ -104,137 +193,598 @@ public class TargetProgramHandler {
      * null instead. If there were any problems getting test coverage
      * information for a single test, the list this method returns will simply
      * omit that test and any others that have problems.
+     * <p/>
+     * The list holds every commit's test coverage data at once, so for long
+     * histories the <code>handleProgram()</code> method that takes a
+     * <code>Consumer</code> should be used instead.
      */
     public List<TestExecutionDataFromCommit> handleProgram(String gitArguments,
             String testHarnessPath, String workingDirectoryPath,
             long timeoutLength, String outputPath) {
+        List<TestExecutionDataFromCommit> results = new ArrayList<>();
+        boolean success = handleProgram(gitArguments, testHarnessPath,
+                workingDirectoryPath, timeoutLength, outputPath, results::add);
+        return success ? results : null;
+    }
+    
+    /**
+     * Collects data from the target program by running the test harness script
+     * on it once per requested commit, just like the other
+     * <code>handleProgram()</code> methods. Instead of collecting all of the
+     * results in a list, each commit's result is handed to
+     * <code>resultConsumer</code> as soon as it's ready. This lets the results
+     * be processed while the test harness runs on the next commit, and lets
+     * each result be thrown away once it has been processed.
+     * <p/>
+     * If the handler has a prefetch depth, the commits are checked out in
+     * worktrees instead of the target program's repository, and the test
+     * harness is passed the worktree's directory instead of
+     * <code>workingDirectoryPath</code>. If the worktrees can't be created,
+     * the commits are checked out in the repository as usual.
+     * @param gitArguments To get a list of git commits, this method will
+     * execute <code>git log [gitArguments]</code>. Every
+     * commit that is returned will have the test harness run against it.
+     * @param testHarnessPath The path to the script that will be executed to
+     * collect test coverage data.
+     * @param workingDirectoryPath The path to the root directory of the target
+     * program's git repository.
+     * @param timeoutLength The amount of time, in milliseconds, to allow the
+     * test harness to run before killing it, per commit.
+     * @param outputPath The path to the location the test harness script should
+     * save its output file.
+     * @param resultConsumer Receives each commit's test coverage data, in the
+     * order the commits are processed. It is called on the thread that called
+     * this method. Commits that had problems are skipped.
+     * @return <code>false</code> if there were problems getting the initial
+     * commit list, <code>true</code> otherwise.
+     */
+    public boolean handleProgram(String gitArguments, String testHarnessPath,
+            String workingDirectoryPath, long timeoutLength, String outputPath,
+            Consumer<TestExecutionDataFromCommit> resultConsumer) {
         // First, we run git log to get all of the commits we'll process
-        List<String[]> hashesAndDates;
+        List<CommitInfo> commits;
         try {
-            hashesAndDates = getCommitsList(gitArguments, workingDirectoryPath);
+            commits = getCommitsList(gitArguments, workingDirectoryPath);
         } catch(IOException err) {
             System.out.println("Could not run `git log` to get commits list:");
             System.out.println(err.getMessage());
             err.printStackTrace(System.out);
-            return null;
+            return false;
         }
         
-        int numCommits = hashesAndDates.size();
+        int numCommits = commits.size();
         
         System.out.println("Found " + numCommits + " commits to process.");
         System.out.println();
-
-        TestExecutor testExecutor = new TestExecutor();
-        List<TestExecutionDataFromCommit> results = new ArrayList<>();
+        
+        if(prefetchDepth > 0) {
+            try(WorktreePool worktreePool = new WorktreePool(
+                    workingDirectoryPath, prefetchDepth + 1, outputPath,
+                    sparseCheckoutPaths);
+                    CommitPrefetcher prefetcher = new CommitPrefetcher(
+                            worktreePool, commits, this::isUncached,
+                            checkoutStrategy, checkoutTimeoutSeconds,
+                            dependencyCache, this::findDependencyKey)) {
+                processCommits(commits, testHarnessPath, workingDirectoryPath,
+                        timeoutLength, outputPath, prefetcher, resultConsumer);
+                return true;
+            } catch(IOException err) {
+                System.out.println("Could not create worktrees to prefetch "
+                        + "commits in:");
+                System.out.println(err.getMessage());
+                System.out.println("Checking out each commit in the target "
+                        + "program's repository instead...");
+            }
+        }
+        
+        File workingDirectory = new File(workingDirectoryPath);
+        // How sparse checkout was set up before it was changed, or null if it
+        // wasn't changed
+        SparseCheckout.State previousSparseCheckout = null;
+        if(!sparseCheckoutPaths.isEmpty()) {
+            try {
+                previousSparseCheckout = SparseCheckout.save(workingDirectory);
+                SparseCheckout.enable(workingDirectory, sparseCheckoutPaths);
+            } catch(IOException err) {
+                System.out.println("Could not restrict the target program's "
+                        + "repository to " + sparseCheckoutPaths + ":");
+                System.out.println(err.getMessage());
+                System.out.println("Checking out every file instead...");
+            }
+        }
+        
+        try {
+            processCommits(commits, testHarnessPath, workingDirectoryPath,
+                    timeoutLength, outputPath, null, resultConsumer);
+        } finally {
+            if(previousSparseCheckout != null) {
+                try {
+                    SparseCheckout.restore(workingDirectory,
+                            previousSparseCheckout);
+                } catch(IOException err) {
+                    System.out.println("Could not restore the sparse checkout "
+                            + "setup of the target program's repository:");
+                    System.out.println(err.getMessage());
+                    System.out.println("Run `git sparse-checkout disable`, or "
+                            + "`git sparse-checkout set` with your own "
+                            + "directories, there to restore its files.");
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Processes the commits one at a time, in order, checking each one out
+     * either in the target program's repository or, if there is a prefetcher,
+     * in the worktree it was prefetched in.
+     */
+    private void processCommits(List<CommitInfo> commits,
+            String testHarnessPath, String workingDirectoryPath,
+            long timeoutLength, String outputPath, CommitPrefetcher prefetcher,
+            Consumer<TestExecutionDataFromCommit> resultConsumer) {
+        int numCommits = commits.size();
+        RegressionTestSelector testSelector = selectTests
+                ? new RegressionTestSelector(workingDirectoryPath) : null;
+        // The most recent commit whose coverage is known, for test selection
+        TestExecutionDataFromCommit lastResult = null;
 
         // Now, we repeatedly run get checkout to checkout different commits,
         // then run the test harness script to collect test coverage information
         // for each commit.
         int currentCommitNumber = 1;
-        for(String[] hashAndDate : hashesAndDates) {
-            String hash = hashAndDate[0];
-            String date = hashAndDate[1];
+        String previousHash = null;
+        CommitInfo lastCommit = null;
+        for(CommitInfo commit : commits) {
+            String hash = commit.getHash();
+            String date = commit.getDate();
             
             System.out.println("Getting test coverage information for commit "
                     + hash + " (" + currentCommitNumber + "/" + numCommits +
                     ") ...");
+            if(prefetcher != null) {
+                // Keep the next few commits checked out ahead of this one
+                prefetcher.prefetchThrough(currentCommitNumber - 1
+                        + prefetchDepth);
+            }
 
             try {
-                checkoutGitCommit(hash, workingDirectoryPath);
-            
-                System.out.println("Running test harness");
-                TestExecutionData singleResult =  testExecutor.executeTests(
-                        testHarnessPath, workingDirectoryPath, hash, date,
-                        timeoutLength, outputPath);
+                TestExecutionData singleResult = loadFromCache(hash);
+                String inheritedFrom = null;
+                if(singleResult == null && testSelector != null
+                        && lastResult != null
+                        && canReuseCoverage(testSelector, lastResult,
+                                lastCommit, commit)) {
+                    singleResult = lastResult.getTestExecutionData();
+                    inheritedFrom = lastResult.isInherited()
+                            ? lastResult.getInheritedFrom()
+                            : lastResult.getCommitHash();
+                }
+                if(singleResult == null) {
+                    String directory = workingDirectoryPath;
+                    CommitPrefetcher.PrefetchedCommit prefetched = null;
+                    if(prefetcher == null) {
+                        checkoutGitCommit(hash, workingDirectoryPath);
+                    } else {
+                        prefetched = prefetcher.checkout(hash);
+                        directory = prefetched.getWorktree().getPath();
+                    }
+                
+                    System.out.println("Running test harness");
+                    singleResult = runTestHarness(testHarnessPath, directory,
+                            hash, date, timeoutLength, outputPath,
+                            prefetched);
+                    storeInCache(hash, singleResult);
+                }
                 
-                results.add(new TestExecutionDataFromCommit(singleResult, hash,
-                        currentCommitNumber));
+                TestExecutionDataFromCommit result =
+                        new TestExecutionDataFromCommit(singleResult, hash,
+                                currentCommitNumber, previousHash,
+                                inheritedFrom);
+                if(testSelector != null) {
+                    // Only keep hold of the result if the next commit might
+                    // reuse it. Otherwise, once the consumer is done with it,
+                    // nothing refers to it and it can be garbage collected.
+                    lastResult = result;
+                    lastCommit = commit;
+                }
+                resultConsumer.accept(result);
             } catch(IOException err) {
                 System.out.println("Could not get test coverage information "
                         + "for commit " + hash + ":");
                 System.out.println(err.getMessage());
                 System.out.println("Continuing with the next commit...");
                 err.printStackTrace(System.out);
+            } finally {
+                if(prefetcher != null) {
+                    prefetcher.release(hash);
+                }
             }
 
             System.out.println();
             currentCommitNumber++;
+            previousHash = hash;
+        }
+    }
+    
+    /**
+     * Checks whether a commit can inherit the coverage of the last commit
+     * whose coverage is known. If <code>git diff</code> fails, the problem is
+     * reported and the commit is tested as usual.
+     */
+    private boolean canReuseCoverage(RegressionTestSelector testSelector,
+            TestExecutionDataFromCommit lastResult, CommitInfo lastCommit,
+            CommitInfo commit) {
+        String hash = commit.getHash();
+        String changedFile;
+        try {
+            changedFile = testSelector.findChangedCoveredFile(lastCommit,
+                    lastResult.getTestExecutionData(), commit);
+        } catch(IOException err) {
+            System.out.println("Could not compare commit " + hash + " with "
+                    + "commit " + lastResult.getCommitHash() + ":");
+            System.out.println(err.getMessage());
+            System.out.println("Running the test harness instead...");
+            return false;
         }
         
-        return results;
+        if(changedFile != null) {
+            System.out.println("Commit changed covered file " + changedFile
+                    + ", so its tests need to be run");
+            return false;
+        }
+        System.out.println("Commit didn't change any covered files, so "
+                + "reusing the test coverage information of commit "
+                + lastResult.getCommitHash());
+        return true;
     }
     
     /**
-     * Runs <code>git log</code> to get a list of commit hashes and their dates.
-     * In particular, the function calls
+     * Collects data from the target program by running the test harness script
+     * on it once per requested commit, running the test harness on several
+     * commits at once. Each concurrent run gets its own
+     * <code>git worktree</code> of the target program's repository, so the
+     * runs never interfere with each other. The worktrees are reused from
+     * commit to commit and are removed once every commit has been processed.
      * <p/>
-     * <code>git log  --format=%H-%cD [gitArguments]</code>
+     * The test harness is passed the worktree's directory instead of
+     * <code>workingDirectoryPath</code>, and each worktree is given its own
+     * output file path, made by adding the worktree's number to the end of the
+     * name of the file at <code>outputPath</code>.
+     * @param gitArguments To get a list of git commits, this method will
+     * execute <code>git log [gitArguments]</code>. Every
+     * commit that is returned will have the test harness run against it.
+     * @param testHarnessPath The path to the script that will be executed to
+     * collect test coverage data.
+     * @param workingDirectoryPath The path to the root directory of the target
+     * program's git repository. The worktrees are created from this
+     * repository. Its own working directory is left alone.
+     * @param timeoutLength The amount of time, in milliseconds, to allow the
+     * test harness to run before killing it, per commit.
+     * @param outputPath The path to the location the test harness script should
+     * save its output file, before the worktree's number is added to it.
+     * @param worktreeCount How many commits to test at once. Must be at least
+     * 1.
+     * @param resultConsumer Receives each commit's test coverage data as soon
+     * as it's ready. Because several commits are processed at once, it may be
+     * called from several threads at once and the commits may arrive out of
+     * order. Commits that had problems are skipped.
+     * @return <code>false</code> if there were problems getting the initial
+     * commit list or creating the worktrees, <code>true</code> otherwise.
+     */
+    public boolean handleProgram(String gitArguments, String testHarnessPath,
+            String workingDirectoryPath, long timeoutLength, String outputPath,
+            int worktreeCount,
+            Consumer<TestExecutionDataFromCommit> resultConsumer) {
+        List<CommitInfo> commits;
+        try {
+            commits = getCommitsList(gitArguments, workingDirectoryPath);
+        } catch(IOException err) {
+            System.out.println("Could not run `git log` to get commits list:");
+            System.out.println(err.getMessage());
+            err.printStackTrace(System.out);
+            return false;
+        }
+        
+        final int numCommits = commits.size();
+        
+        System.out.println("Found " + numCommits + " commits to process.");
+        System.out.println();
+        
+        try(WorktreePool worktreePool = new WorktreePool(workingDirectoryPath,
+                worktreeCount, outputPath, sparseCheckoutPaths)) {
+            ExecutorService workers = Executors.newFixedThreadPool(
+                    worktreePool.getWorktreeCount());
+            
+            int currentCommitNumber = 1;
+            String previousHash = null;
+            for(CommitInfo commit : commits) {
+                final String hash = commit.getHash();
+                final String date = commit.getDate();
+                final int commitNumber = currentCommitNumber;
+                final String previousCommitHash = previousHash;
+                
+                workers.execute(() -> processCommitInWorktree(worktreePool,
+                        testHarnessPath, hash, date, commitNumber,
+                        previousCommitHash, numCommits, timeoutLength,
+                        resultConsumer));
+                currentCommitNumber++;
+                previousHash = hash;
+            }
+            
+            workers.shutdown();
+            try {
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException err) {
+                System.out.println("Interrupted while waiting for the test "
+                        + "harness to finish running on every commit.");
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        } catch(IOException err) {
+            System.out.println("Could not create worktrees of the target "
+                    + "program's repository:");
+            System.out.println(err.getMessage());
+            err.printStackTrace(System.out);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Borrows a worktree, checks out a commit in it, and runs the test harness
+     * there. Any problems with the commit are reported and the commit is
+     * skipped.
+     */
+    private void processCommitInWorktree(WorktreePool worktreePool,
+            String testHarnessPath, String hash, String date,
+            int commitNumber, String previousCommitHash, int numCommits,
+            long timeoutLength,
+            Consumer<TestExecutionDataFromCommit> resultConsumer) {
+        // Commits in the cache don't need a worktree at all
+        TestExecutionData cachedResult = loadFromCache(hash);
+        if(cachedResult != null) {
+            resultConsumer.accept(new TestExecutionDataFromCommit(
+                    cachedResult, hash, commitNumber, previousCommitHash));
+            return;
+        }
+        
+        WorktreePool.Worktree worktree;
+        try {
+            worktree = worktreePool.acquire();
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        
+        try {
+            System.out.println("Getting test coverage information for commit "
+                    + hash + " (" + commitNumber + "/" + numCommits +
+                    ") in worktree " + worktree.getNumber() + "...");
+            
+            checkoutGitCommit(hash, worktree.getPath());
+            
+            TestExecutionData singleResult = runTestHarness(testHarnessPath,
+                    worktree.getPath(), hash, date, timeoutLength,
+                    worktree.getOutputPath(), null);
+            storeInCache(hash, singleResult);
+            
+            resultConsumer.accept(new TestExecutionDataFromCommit(
+                    singleResult, hash, commitNumber, previousCommitHash));
+        } catch(IOException err) {
+            System.out.println("Could not get test coverage information "
+                    + "for commit " + hash + ":");
+            System.out.println(err.getMessage());
+            System.out.println("Continuing with the next commit...");
+            err.printStackTrace(System.out);
+        } finally {
+            worktreePool.release(worktree);
+        }
+    }
+    
+    /**
+     * Runs the test harness on a commit that has been checked out, passing it
+     * the commit's dependency key and directory if there is a dependency
+     * cache. If the dependency key can't be worked out, the problem is
+     * reported and the test harness is run without them.
+     * @param prefetched The commit as it was prefetched, whose dependency key
+     * and directory are used if they are known, or <code>null</code> if it
+     * wasn't prefetched.
+     * @throws IOException If there was a problem running the test harness.
+     */
+    private TestExecutionData runTestHarness(String testHarnessPath,
+            String directory, String hash, String date, long timeoutLength,
+            String outputPath, CommitPrefetcher.PrefetchedCommit prefetched)
+            throws IOException {
+        if(dependencyCache == null) {
+            return testExecutor.executeTests(testHarnessPath, directory, hash,
+                    date, timeoutLength, outputPath);
+        }
+        
+        if(prefetched != null && prefetched.getDependencyDirectory() != null) {
+            // Already prepared and acquired by the prefetcher, which releases
+            // it along with the worktree
+            return testExecutor.executeTests(testHarnessPath, directory, hash,
+                    date, timeoutLength, outputPath, Arrays.asList(
+                            "--dependency-key="
+                                    + prefetched.getDependencyKey(),
+                            "--dependency-directory=" + prefetched
+                                    .getDependencyDirectory().toAbsolutePath()));
+        }
+        
+        String dependencyKey;
+        Path dependencyDirectory;
+        try {
+            dependencyKey = prefetched != null
+                    && prefetched.getDependencyKey() != null
+                    ? prefetched.getDependencyKey()
+                    : findDependencyKey(directory, hash);
+            dependencyDirectory = dependencyCache.acquire(dependencyKey);
+        } catch(IOException err) {
+            System.out.println("Could not prepare a dependency directory "
+                    + "for commit " + hash + ":");
+            System.out.println(err.getMessage());
+            System.out.println("Running the test harness without one...");
+            return testExecutor.executeTests(testHarnessPath, directory, hash,
+                    date, timeoutLength, outputPath);
+        }
+        
+        // If the test harness fails, for example because it was killed, the
+        // directory may only be partly prepared, so it isn't kept
+        boolean succeeded = false;
+        try {
+            TestExecutionData result = testExecutor.executeTests(
+                    testHarnessPath, directory, hash, date, timeoutLength,
+                    outputPath, Arrays.asList(
+                            "--dependency-key=" + dependencyKey,
+                            "--dependency-directory="
+                                    + dependencyDirectory.toAbsolutePath()));
+            succeeded = true;
+            return result;
+        } finally {
+            dependencyCache.release(dependencyKey, succeeded);
+        }
+    }
+    
+    /**
+     * Works out a commit's dependency key from the git object IDs of its
+     * dependency files, which git has already hashed, so the files don't
+     * need to be read. It runs
+     * <p/>
+     * <code>git ls-tree [commitHash] -- [dependency files]</code>
+     * <p/>
+     * which leaves out any files the commit doesn't have.
+     * @param repositoryPath The path to the root of the target program's
+     * repository or one of its worktrees.
+     * @param commitHash The commit's hash.
+     * @return The dependency key.
+     * @throws IOException If there was a problem running
+     * <code>git ls-tree</code>.
+     */
+    private String findDependencyKey(String repositoryPath, String commitHash)
+            throws IOException {
+        List<String> files = new ArrayList<>();
+        if(dependencyFiles.isEmpty()) {
+            // Without any paths, `git ls-tree` would list every file instead
+            return DependencyCache.makeKey(files);
+        }
+        
+        List<String> arguments = new ArrayList<>(Arrays.asList("-c",
+                "core.quotePath=false", "ls-tree", commitHash, "--"));
+        arguments.addAll(dependencyFiles);
+        
+        GitCommand.readOutput(new File(repositoryPath),
+                GIT_LS_TREE_TIMEOUT_SECONDS, files::add,
+                arguments.toArray(new String[arguments.size()]));
+        return DependencyCache.makeKey(files);
+    }
+    
+    /**
+     * Looks a commit's test coverage data up in the coverage cache, if there
+     * is one. A cache entry that can't be read is reported and treated as
+     * missing, so the commit is simply tested again.
+     * @param commitHash The commit's hash.
+     * @return The commit's cached coverage data, or <code>null</code> if it
+     * isn't cached.
+     */
+    private TestExecutionData loadFromCache(String commitHash) {
+        if(coverageCache == null) {
+            return null;
+        }
+        
+        try {
+            TestExecutionData data = coverageCache.load(commitHash);
+            if(data != null) {
+                System.out.println("Using cached test coverage information "
+                        + "for commit " + commitHash);
+            }
+            return data;
+        } catch(IOException err) {
+            System.out.println("Could not read cached test coverage "
+                    + "information for commit " + commitHash + ":");
+            System.out.println(err.getMessage());
+            System.out.println("Running the test harness instead...");
+            return null;
+        }
+    }
+    
+    /**
+     * @return <code>false</code> if a commit's test coverage data is in the
+     * coverage cache, so it won't need to be checked out.
+     */
+    private boolean isUncached(String commitHash) {
+        return coverageCache == null || !coverageCache.contains(commitHash);
+    }
+    
+    /**
+     * Saves a commit's test coverage data in the coverage cache, if there is
+     * one. If it can't be saved, the problem is reported but the data can
+     * still be used for this run.
+     * @param commitHash The commit's hash.
+     * @param data The commit's coverage data.
+     */
+    private void storeInCache(String commitHash, TestExecutionData data) {
+        if(coverageCache == null) {
+            return;
+        }
+        
+        try {
+            coverageCache.store(commitHash, data);
+        } catch(IOException err) {
+            System.out.println("Could not cache test coverage information "
+                    + "for commit " + commitHash + ":");
+            System.out.println(err.getMessage());
+        }
+    }
+    
+    /**
+     * Runs <code>git log</code> to get the list of commits to process, along
+     * with each commit's metadata. In particular, the function calls
+     * <p/>
+     * <code>git log --format=[format] --name-status --no-renames
+     * [gitArguments]</code>
      * <p/>
      * where <code>[gitArguments]</code> is the string that is passed to this
      * function. Therefore, you can use the <code>gitArgument</code> command to
      * control which commits are selected and in which order they are presented.
+     * <p/>
+     * Everything is fetched with this one <code>git log</code> process, and
+     * its output is parsed while git is still running, so even histories with
+     * hundreds of thousands of commits never fill up the pipe git writes to.
      * @param gitArguments A string with options to pass to <code>git log</code>
      * in order to control which commits are selected and in which order they
      * are processed.
      * @param workingDirectoryPath The path to the root of the target program's
      * git repository.
-     * @return A List of String arrays. Each array in the list has two elements.
-     * The first is a commit hash, and the second is the timestamp the commit
-     * was committed. The list is in the order the commits were presented by
+     * @return The commits, in the order they were presented by
      * <code>git log</code>.
      * @throws IOException If there was a problem running <code>git log</code>.
      */
-    private List<String[]> getCommitsList(String gitArguments,
+    private List<CommitInfo> getCommitsList(String gitArguments,
             String workingDirectoryPath) throws IOException {
-        List<String[]> hashesAndDates = new LinkedList<>();
-        
-        File workingDirectory = new File(workingDirectoryPath);
-        
-        String commandLineString = "git log --format=%H-%cD " +gitArguments;
-        Runtime rt = Runtime.getRuntime();
-        Process pr = rt.exec(commandLineString.trim().split("\\s+"), null,
-                workingDirectory);
+        List<String> arguments = new ArrayList<>(Arrays.asList("-c",
+                "core.quotePath=false", "log", CommitLogParser.FORMAT,
+                "--name-status", "--no-renames"));
+        if(!gitArguments.trim().isEmpty()) {
+            arguments.addAll(Arrays.asList(gitArguments.trim().split("\\s+")));
+        }
 
-        System.out.println("Running `" + commandLineString + "` in order to "
-                + "find git commits...");
-        
-        // Output the process's output to STDOUT so the end user can see it
-        StreamGobbler errorGobbler = new StreamGobbler(pr.getErrorStream());
-        errorGobbler.start();
-        
-        try {            
-            boolean success = pr.waitFor(10, TimeUnit.SECONDS);
-            
-            if(success) {
-            InputStreamReader isr = new InputStreamReader(pr.getInputStream());
-            BufferedReader br = new BufferedReader(isr);
-            String line;
-            while ( (line = br.readLine()) != null)
-                hashesAndDates.add(line.trim().split("-", 2));
+        System.out.println("Running `git log " + gitArguments + "` in order "
+                + "to find git commits...");
 
-            return hashesAndDates;
-            } else {
-                pr.destroy();
-                throw new IOException("Timed out while getting commits from git");
-            }
-        } catch(InterruptedException err) {
-            throw new IOException("Interrupted while getting commits from git",
-                    err);
-        } finally {
-            try {
-                errorGobbler.join(100);
-            } catch(InterruptedException err) { /* Swallow on purpose */ }
-        }
+        CommitLogParser parser = new CommitLogParser();
+        GitCommand.readOutputWhileActive(new File(workingDirectoryPath),
+                gitLogTimeoutSeconds, parser::parseLine,
+                arguments.toArray(new String[arguments.size()]));
+        return parser.finish();
     }
     
     /**
-     * Runs <code>git checkout</code> in order to checkout a particular commit
-     * in the target program's repository.
-     * <p/>
-     * Notice that if the checkout command takes more than 30 seconds to
-     * complete, this method will throw an exception, but the git process
-     * created will not be killed. You may want to manually inspect what the
-     * process is doing and end it yourself.
+     * Checks out a particular commit in the target program's repository, using
+     * the handler's <code>CheckoutStrategy</code>. If git takes longer than
+     * the checkout timeout, it is killed.
      * @param commitHash The hash of the commit to checkout.
      * @param workingDirectoryPath The path to the root of the target program's
      * git repository.
@@ -242,47 +792,9 @@ public class TargetProgramHandler {
      */
     private void checkoutGitCommit(String commitHash,
             String workingDirectoryPath) throws IOException {
-        File workingDirectory = new File(workingDirectoryPath);
-        
-        String commandLineString = "git checkout " + commitHash;
-        Runtime rt = Runtime.getRuntime();
-        Process pr = rt.exec(commandLineString.trim().split("\\s+"), null,
-                workingDirectory);        
-        System.out.println("Running `"+ commandLineString + "` to checkout "
-                + "commit...");
-        
-        // Output the process's output to STDOUT so the end user can see it
-        StreamGobbler outputGobbler = new StreamGobbler(pr.getInputStream());
-        StreamGobbler errorGobbler = new StreamGobbler(pr.getErrorStream());
-
-        errorGobbler.start();
-        
-        try {            
-            boolean success = pr.waitFor(30, TimeUnit.SECONDS);
-            
-            if(success) {
-                return; // As a side effect of this method running is that
-                // the target program's repository is now checked out to a
-                // different branch. There's no need to return anything once
-                // that's done.
-            } else {
-                // Notice that we do NOT kill the spawned process in this 
-                // method. We let it keep running so that, if 
-                throw new IOException("Timed out while checking out commit "
-                        + commitHash + ". The process that git is running on "
-                        + "has not been killed - it is running! You may need "
-                        + "to kill it manually.");
-            }
-        } catch(InterruptedException err) {
-            throw new IOException("Interrupted while getting commits from git",
-                    err);
-        } finally {
-            try {
-                outputGobbler.join(100);
-            } catch(InterruptedException err) { /* Swallow on purpose */ }
-            try {
-                errorGobbler.join(100);
-            } catch(InterruptedException err) { /* Swallow on purpose */ }
-        }
+        System.out.println("Running `git " + checkoutStrategy
+                .getConfigurationName() + "` to checkout commit...");
+        checkoutStrategy.checkout(new File(workingDirectoryPath), commitHash,
+                checkoutTimeoutSeconds);
     }
-}
\ No newline at end of file
+}
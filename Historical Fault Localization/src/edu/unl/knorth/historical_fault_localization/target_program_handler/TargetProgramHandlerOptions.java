@@ -0,0 +1,171 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import edu.unl.knorth.historical_fault_localization.target_program_handler.coverage_cache.CoverageCache;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.dependency_cache.DependencyCache;
+import edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor.TestExecutor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps track of how a <code>TargetProgramHandler</code> should process
+ * commits. Every option starts out with a default that leaves the feature it
+ * controls turned off, so only the options that are wanted need to be set.
+ * <p/>
+ * The handler copies the options when it is created, so changing them
+ * afterwards has no effect on it.
+ */
+public class TargetProgramHandlerOptions {
+    private CoverageCache coverageCache;
+    private boolean selectTests;
+    private CheckoutStrategy checkoutStrategy;
+    private long checkoutTimeoutSeconds;
+    private long gitLogTimeoutSeconds;
+    private List<String> sparseCheckoutPaths;
+    private TestExecutor testExecutor;
+    private int prefetchDepth;
+    private DependencyCache dependencyCache;
+    private List<String> dependencyFiles;
+
+    public TargetProgramHandlerOptions() {
+        coverageCache = null;
+        selectTests = false;
+        checkoutStrategy = CheckoutStrategy.CHECKOUT;
+        checkoutTimeoutSeconds = 30;
+        gitLogTimeoutSeconds = 0;
+        sparseCheckoutPaths = Collections.emptyList();
+        testExecutor = null;
+        prefetchDepth = 0;
+        dependencyCache = null;
+        dependencyFiles = Collections.emptyList();
+    }
+
+    public CoverageCache getCoverageCache() {
+        return coverageCache;
+    }
+
+    /**
+     * @param coverageCache The cache to look up and save each commit's test
+     * coverage data in, or <code>null</code> to always run the test harness.
+     */
+    public void setCoverageCache(CoverageCache coverageCache) {
+        this.coverageCache = coverageCache;
+    }
+
+    public boolean getSelectTests() {
+        return selectTests;
+    }
+
+    /**
+     * @param selectTests Whether to reuse the previous commit's coverage for
+     * commits that didn't change any covered files, instead of running the
+     * test harness on them.
+     */
+    public void setSelectTests(boolean selectTests) {
+        this.selectTests = selectTests;
+    }
+
+    public CheckoutStrategy getCheckoutStrategy() {
+        return checkoutStrategy;
+    }
+
+    /**
+     * @param checkoutStrategy How to switch the working directory from one
+     * commit to the next.
+     */
+    public void setCheckoutStrategy(CheckoutStrategy checkoutStrategy) {
+        this.checkoutStrategy = checkoutStrategy;
+    }
+
+    public long getCheckoutTimeoutSeconds() {
+        return checkoutTimeoutSeconds;
+    }
+
+    /**
+     * @param checkoutTimeoutSeconds How long to let git run while checking out
+     * a commit before killing it. Must be at least 1.
+     */
+    public void setCheckoutTimeoutSeconds(long checkoutTimeoutSeconds) {
+        this.checkoutTimeoutSeconds = checkoutTimeoutSeconds;
+    }
+
+    public long getGitLogTimeoutSeconds() {
+        return gitLogTimeoutSeconds;
+    }
+
+    /**
+     * @param gitLogTimeoutSeconds How long <code>git log</code> may go without
+     * listing anything before it is killed, or 0 to never kill it. Listing a
+     * large history can take any amount of time in total, so only the time
+     * since it last printed anything counts.
+     */
+    public void setGitLogTimeoutSeconds(long gitLogTimeoutSeconds) {
+        this.gitLogTimeoutSeconds = gitLogTimeoutSeconds;
+    }
+
+    public List<String> getSparseCheckoutPaths() {
+        return sparseCheckoutPaths;
+    }
+
+    /**
+     * @param sparseCheckoutPaths The directories the test harness needs,
+     * relative to the root of the target program's repository, or an empty
+     * list to check out every file.
+     */
+    public void setSparseCheckoutPaths(List<String> sparseCheckoutPaths) {
+        this.sparseCheckoutPaths = new ArrayList<>(sparseCheckoutPaths);
+    }
+
+    public TestExecutor getTestExecutor() {
+        return testExecutor;
+    }
+
+    /**
+     * @param testExecutor Runs the test harness on each commit. It is shared
+     * by every worktree. If it is left <code>null</code>, the handler creates
+     * one with the default settings.
+     */
+    public void setTestExecutor(TestExecutor testExecutor) {
+        this.testExecutor = testExecutor;
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * @param prefetchDepth When commits are processed one at a time, how many
+     * commits to check out ahead of the one being tested, each in its own
+     * worktree, or 0 to check out each commit in the target program's
+     * repository just before testing it. Must not be negative.
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    public DependencyCache getDependencyCache() {
+        return dependencyCache;
+    }
+
+    /**
+     * @param dependencyCache The cache of prepared dependencies to give the
+     * test harness a directory from, or <code>null</code> to not pass the
+     * test harness the dependency flags.
+     */
+    public void setDependencyCache(DependencyCache dependencyCache) {
+        this.dependencyCache = dependencyCache;
+    }
+
+    public List<String> getDependencyFiles() {
+        return dependencyFiles;
+    }
+
+    /**
+     * @param dependencyFiles The files whose contents determine a commit's
+     * dependency key, relative to the root of the target program's
+     * repository. Files a commit doesn't have are left out.
+     */
+    public void setDependencyFiles(List<String> dependencyFiles) {
+        this.dependencyFiles = new ArrayList<>(dependencyFiles);
+    }
+}
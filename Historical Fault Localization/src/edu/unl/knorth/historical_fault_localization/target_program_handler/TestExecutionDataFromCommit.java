@@ -6,11 +6,49 @@ public class TestExecutionDataFromCommit {
     private final TestExecutionData testExecutionData;
     private final String commitHash;
     private final int orderProcessed;
+    private final String previousCommitHash;
+    private final String inheritedFrom;
 
     public TestExecutionDataFromCommit(TestExecutionData testExecutionData, String commitHash, int orderProcessed) {
+        this(testExecutionData, commitHash, orderProcessed, null);
+    }
+
+    /**
+     * @param testExecutionData The commit's test coverage data.
+     * @param commitHash The commit's hash.
+     * @param orderProcessed The commit's position in the list of commits,
+     * starting at 1.
+     * @param previousCommitHash The hash of the commit before this one in the
+     * list of commits, or <code>null</code> if this is the first commit. Pass
+     * both hashes to <code>LineMapping.between()</code> to translate the
+     * previous commit's statements into this commit's line numbers.
+     */
+    public TestExecutionDataFromCommit(TestExecutionData testExecutionData,
+            String commitHash, int orderProcessed, String previousCommitHash) {
+        this(testExecutionData, commitHash, orderProcessed, previousCommitHash,
+                null);
+    }
+
+    /**
+     * @param testExecutionData The commit's test coverage data.
+     * @param commitHash The commit's hash.
+     * @param orderProcessed The commit's position in the list of commits,
+     * starting at 1.
+     * @param previousCommitHash The hash of the commit before this one in the
+     * list of commits, or <code>null</code> if this is the first commit.
+     * @param inheritedFrom If the test harness wasn't run on this commit
+     * because its changes couldn't affect the tests, the hash of the commit
+     * whose coverage data was reused. <code>null</code> if the coverage data
+     * was collected on this commit.
+     */
+    public TestExecutionDataFromCommit(TestExecutionData testExecutionData,
+            String commitHash, int orderProcessed, String previousCommitHash,
+            String inheritedFrom) {
         this.testExecutionData = testExecutionData;
         this.commitHash = commitHash;
         this.orderProcessed = orderProcessed;
+        this.previousCommitHash = previousCommitHash;
+        this.inheritedFrom = inheritedFrom;
     }
 
     public TestExecutionData getTestExecutionData() {
@@ -24,4 +62,20 @@ public class TestExecutionDataFromCommit {
     public int getOrderProcessed() {
         return orderProcessed;
     }
-}
\ No newline at end of file
+
+    public String getPreviousCommitHash() {
+        return previousCommitHash;
+    }
+
+    /**
+     * @return The hash of the commit whose coverage data this commit reused,
+     * or <code>null</code> if the test harness was run on this commit.
+     */
+    public String getInheritedFrom() {
+        return inheritedFrom;
+    }
+
+    public boolean isInherited() {
+        return inheritedFrom != null;
+    }
+}
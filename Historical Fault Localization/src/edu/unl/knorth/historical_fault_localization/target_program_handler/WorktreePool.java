@@ -0,0 +1,237 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A fixed set of <code>git worktree</code>s of the target program's
+ * repository. Each worktree is a separate working directory that can have a
+ * different commit checked out, so the test harness can run on several commits
+ * at once without the runs interfering with each other.
+ * <p/>
+ * Worktrees are borrowed with <code>acquire()</code> and given back with
+ * <code>release()</code>, so the same worktrees are reused for every commit.
+ * <code>close()</code> removes them again. In case the program is stopped
+ * before <code>close()</code> is called, a shutdown hook removes them as well.
+ * <p/>
+ * If the pool is given sparse checkout paths, each worktree is created without
+ * any files and then restricted to those paths before <code>HEAD</code> is
+ * checked out, so files outside of them are never written at all.
+ */
+class WorktreePool implements AutoCloseable {
+    // How long to wait for `git worktree` commands to finish
+    private static final long GIT_TIMEOUT_SECONDS = 60;
+
+    private final File repositoryDirectory;
+    private final File worktreesDirectory;
+    private final List<Worktree> worktrees;
+    private final BlockingQueue<Worktree> availableWorktrees;
+    private final Thread shutdownHook;
+    private boolean closed;
+
+    /**
+     * Creates the worktrees. Each one starts out with the repository's
+     * current <code>HEAD</code> checked out in a detached state.
+     * @param repositoryPath The path to the root of the target program's git
+     * repository.
+     * @param worktreeCount How many worktrees to create. Must be at least 1.
+     * @param outputPath The path the test harness should save its output file
+     * to. Each worktree gets its own variation of this path so that harness
+     * runs in different worktrees don't overwrite each other's output.
+     * @throws IOException If any of the worktrees couldn't be created. Any
+     * worktrees that were created are removed again before this is thrown.
+     */
+    WorktreePool(String repositoryPath, int worktreeCount, String outputPath)
+            throws IOException {
+        this(repositoryPath, worktreeCount, outputPath,
+                Collections.<String>emptyList());
+    }
+
+    /**
+     * Creates the worktrees. Each one starts out with the repository's
+     * current <code>HEAD</code> checked out in a detached state.
+     * @param repositoryPath The path to the root of the target program's git
+     * repository.
+     * @param worktreeCount How many worktrees to create. Must be at least 1.
+     * @param outputPath The path the test harness should save its output file
+     * to. Each worktree gets its own variation of this path so that harness
+     * runs in different worktrees don't overwrite each other's output.
+     * @param sparseCheckoutPaths The directories each worktree should be
+     * restricted to, relative to the root of the repository, or an empty list
+     * to check out every file. See <code>SparseCheckout</code>.
+     * @throws IOException If any of the worktrees couldn't be created. Any
+     * worktrees that were created are removed again before this is thrown.
+     */
+    WorktreePool(String repositoryPath, int worktreeCount, String outputPath,
+            List<String> sparseCheckoutPaths) throws IOException {
+        if(worktreeCount < 1) {
+            throw new IllegalArgumentException("worktreeCount must be at least "
+                    + "1, not " + worktreeCount);
+        }
+
+        this.repositoryDirectory = new File(repositoryPath);
+        this.worktreesDirectory =
+                Files.createTempDirectory("hfl-worktrees-").toFile();
+        this.worktrees = new ArrayList<>(worktreeCount);
+        this.availableWorktrees = new LinkedBlockingQueue<>();
+        this.shutdownHook = new Thread(this::removeWorktrees,
+                "Worktree cleanup");
+        this.closed = false;
+
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        try {
+            for(int i = 1; i <= worktreeCount; i++) {
+                File directory = new File(worktreesDirectory, "worktree-" + i);
+                System.out.println("Creating worktree " + directory + "...");
+                if(sparseCheckoutPaths.isEmpty()) {
+                    GitCommand.run(repositoryDirectory, GIT_TIMEOUT_SECONDS,
+                            "worktree", "add", "--detach",
+                            directory.getAbsolutePath());
+                } else {
+                    GitCommand.run(repositoryDirectory, GIT_TIMEOUT_SECONDS,
+                            "worktree", "add", "--detach", "--no-checkout",
+                            directory.getAbsolutePath());
+                    SparseCheckout.enable(directory, sparseCheckoutPaths);
+                    GitCommand.run(directory, GIT_TIMEOUT_SECONDS, "reset",
+                            "--hard", "--quiet");
+                }
+
+                Worktree worktree = new Worktree(i, directory.getAbsolutePath(),
+                        getWorkerOutputPath(outputPath, i));
+                worktrees.add(worktree);
+                availableWorktrees.add(worktree);
+            }
+        } catch(IOException err) {
+            close();
+            throw err;
+        }
+    }
+
+    /**
+     * Borrows a worktree that isn't being used, waiting for one to be released
+     * if necessary.
+     * @return The borrowed worktree.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    Worktree acquire() throws InterruptedException {
+        return availableWorktrees.take();
+    }
+
+    /**
+     * Gives a worktree back so that it can be used for another commit.
+     * @param worktree A worktree returned by <code>acquire()</code>.
+     */
+    void release(Worktree worktree) {
+        availableWorktrees.add(worktree);
+    }
+
+    /**
+     * Removes all of the worktrees. Calling this more than once does nothing.
+     */
+    @Override
+    public void close() {
+        removeWorktrees();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch(IllegalStateException err) {
+            // The program is already shutting down, so the hook is running
+            // or has run. Either way, there's nothing left to do.
+        }
+    }
+
+    private synchronized void removeWorktrees() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+
+        for(Worktree worktree : worktrees) {
+            try {
+                GitCommand.run(repositoryDirectory, GIT_TIMEOUT_SECONDS,
+                        "worktree", "remove", "--force", worktree.getPath());
+            } catch(IOException err) {
+                System.out.println("Could not remove worktree "
+                        + worktree.getPath() + ":");
+                System.out.println(err.getMessage());
+            }
+        }
+
+        // Clean up the records of any worktrees that couldn't be removed
+        // normally, along with the directory that held the worktrees
+        try {
+            GitCommand.run(repositoryDirectory, GIT_TIMEOUT_SECONDS,
+                    "worktree", "prune");
+        } catch(IOException err) {
+            System.out.println("Could not prune worktrees:");
+            System.out.println(err.getMessage());
+        }
+        worktreesDirectory.delete();
+    }
+
+    /**
+     * Works out a separate output file path for a worker by adding the
+     * worker's number to the end of the file's name, before its extension.
+     * For example, worker 2's version of <code>temp/test_out.txt</code> is
+     * <code>temp/test_out-2.txt</code>.
+     * @param outputPath The output file path that all of the workers share.
+     * @param workerNumber The worker's number.
+     * @return The worker's own output file path.
+     */
+    static String getWorkerOutputPath(String outputPath, int workerNumber) {
+        int nameStart = outputPath.lastIndexOf('/') + 1;
+        int extensionStart = outputPath.lastIndexOf('.');
+        if(extensionStart <= nameStart) {
+            return outputPath + "-" + workerNumber;
+        }
+        return outputPath.substring(0, extensionStart) + "-" + workerNumber
+                + outputPath.substring(extensionStart);
+    }
+
+    int getWorktreeCount() {
+        return worktrees.size();
+    }
+
+    /**
+     * One of the worktrees in a <code>WorktreePool</code>.
+     */
+    static class Worktree {
+        private final int number;
+        private final String path;
+        private final String outputPath;
+
+        Worktree(int number, String path, String outputPath) {
+            this.number = number;
+            this.path = path;
+            this.outputPath = outputPath;
+        }
+
+        /**
+         * @return The worktree's number, starting at 1.
+         */
+        int getNumber() {
+            return number;
+        }
+
+        /**
+         * @return The absolute path to the worktree's directory.
+         */
+        String getPath() {
+            return path;
+        }
+
+        /**
+         * @return The path the test harness should save its output file to
+         * when it runs in this worktree.
+         */
+        String getOutputPath() {
+            return outputPath;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.coverage_cache;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keeps the test coverage data of each commit on disk, so that later runs of
+ * the Historical Fault Localization tool don't need to run the test harness
+ * again on commits that have already been processed.
+ * <p/>
+ * Entries are keyed by the commit's hash and by a fingerprint of the test
+ * harness script: the SHA-256 hash of the script's contents. Changing the
+ * script changes the fingerprint, so coverage that was collected with an
+ * older version of the script is never used. The entries for each fingerprint
+ * are kept in their own subdirectory of the cache directory:
+ * <p/>
+ * <code>[cacheDirectory]/[harness fingerprint]/[commit hash].cov</code>
+ * <p/>
+ * Each entry is written in the format described in
+ * <code>CoverageFileFormat</code> and memory-mapped when it is loaded. Entries
+ * written in an older version of the format can't be read; they are reported
+ * and replaced as if they were missing. Entries are written to a temporary file
+ * and then moved into place, so an entry is never seen half-written, even if
+ * several threads or programs use the same cache at once.
+ */
+public class CoverageCache {
+    private static final String ENTRY_EXTENSION = ".cov";
+
+    private final Path cacheDirectory;
+    private final String harnessFingerprint;
+    private final Path entryDirectory;
+
+    /**
+     * @param cacheDirectoryPath The directory to keep the cache in. It is
+     * created if it doesn't exist.
+     * @param testHarnessPath The path to the test harness script. Its
+     * contents determine which entries can be used.
+     * @throws IOException If the test harness script couldn't be read or the
+     * cache directory couldn't be created.
+     */
+    public CoverageCache(String cacheDirectoryPath, String testHarnessPath)
+            throws IOException {
+        this.cacheDirectory = Paths.get(cacheDirectoryPath);
+        this.harnessFingerprint = fingerprint(Paths.get(testHarnessPath));
+        this.entryDirectory = cacheDirectory.resolve(harnessFingerprint);
+        Files.createDirectories(entryDirectory);
+    }
+
+    /**
+     * Looks up the coverage data for a commit.
+     * @param commitHash The commit's hash.
+     * @return The commit's coverage data, or <code>null</code> if the cache
+     * doesn't have any for this commit and test harness script.
+     * @throws IOException If the entry exists but couldn't be read.
+     */
+    public TestExecutionData load(String commitHash) throws IOException {
+        Path entry = getEntryPath(commitHash);
+        try {
+            return CoverageFileFormat.read(entry);
+        } catch(NoSuchFileException err) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the cache has an entry for a commit, without reading it.
+     * @param commitHash The commit's hash.
+     * @return <code>true</code> if there is an entry for this commit and test
+     * harness script.
+     */
+    public boolean contains(String commitHash) {
+        return Files.isRegularFile(getEntryPath(commitHash));
+    }
+
+    /**
+     * Saves the coverage data for a commit, replacing any that was already
+     * saved.
+     * @param commitHash The commit's hash.
+     * @param data The commit's coverage data.
+     * @throws IOException If the entry couldn't be written.
+     */
+    public void store(String commitHash, TestExecutionData data)
+            throws IOException {
+        Path entry = getEntryPath(commitHash);
+        Path temporaryFile = Files.createTempFile(entryDirectory,
+                commitHash, ".tmp");
+        try {
+            try(OutputStream output = new BufferedOutputStream(
+                    Files.newOutputStream(temporaryFile))) {
+                CoverageFileFormat.write(data, output);
+            }
+            Files.move(temporaryFile, entry,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Deletes every entry in the cache, including entries made with other
+     * versions of the test harness script.
+     * @throws IOException If any of the entries couldn't be deleted.
+     */
+    public void invalidate() throws IOException {
+        try(DirectoryStream<Path> fingerprints =
+                Files.newDirectoryStream(cacheDirectory)) {
+            for(Path fingerprintDirectory : fingerprints) {
+                if(!Files.isDirectory(fingerprintDirectory)) {
+                    continue;
+                }
+                try(DirectoryStream<Path> entries =
+                        Files.newDirectoryStream(fingerprintDirectory)) {
+                    for(Path entry : entries) {
+                        Files.delete(entry);
+                    }
+                }
+                if(!fingerprintDirectory.equals(entryDirectory)) {
+                    Files.delete(fingerprintDirectory);
+                }
+            }
+        }
+    }
+
+    private Path getEntryPath(String commitHash) {
+        // Commit hashes come from git, but make sure one can never point
+        // outside the cache
+        if(commitHash.contains(File.separator) || commitHash.contains("/")) {
+            throw new IllegalArgumentException("Invalid commit hash "
+                    + commitHash);
+        }
+        return entryDirectory.resolve(commitHash + ENTRY_EXTENSION);
+    }
+
+    /**
+     * @return The SHA-256 hash of a file's contents, in hexadecimal.
+     */
+    private static String fingerprint(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException err) {
+            // Every Java platform is required to support SHA-256
+            throw new IOException("SHA-256 is not available", err);
+        }
+
+        try(InputStream input = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while((bytesRead = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for(byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    public String getHarnessFingerprint() {
+        return harnessFingerprint;
+    }
+}
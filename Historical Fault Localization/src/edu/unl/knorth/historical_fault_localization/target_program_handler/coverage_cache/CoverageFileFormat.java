@@ -0,0 +1,353 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.coverage_cache;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.CoverageBitmap;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementIdMap;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementIndex;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+
+/**
+ * Reads and writes a <code>TestExecutionData</code> in a compact binary
+ * format. Unless noted otherwise, every number is written as an unsigned
+ * varint: seven bits per byte, least significant bits first, with the high
+ * bit of each byte set if more bytes follow. The format is:
+ * <ol>
+ * <li>The magic number <code>0x48464C43</code> ("HFLC") and the format
+ * version, as 4-byte big-endian ints.</li>
+ * <li>The string table: the number of distinct file names, followed by each
+ * file name as its length in bytes and its UTF-8 bytes.</li>
+ * <li>The statements, grouped by file in the order of the string table. For
+ * each file, the number of statements in it, followed by their line numbers
+ * in increasing order. The first line number is zigzag-encoded (so that
+ * negative numbers stay short) and each line number after that is written as
+ * its difference from the one before it. The statements are numbered in the
+ * order they are written.</li>
+ * <li>The number of tests, followed by one bit per test that is set if the
+ * test passed, packed eight to a byte, least significant bit first.</li>
+ * <li>The coverage of each test, written in whichever of these two forms is
+ * smaller:
+ * <ol>
+ *   <li>The byte <code>0</code>, followed by a bitmap with one bit per
+ *   statement, packed the same way as the pass/fail bits.</li>
+ *   <li>The byte <code>1</code>, followed by the number of statements the test
+ *   executed and the numbers of those statements in increasing order, each
+ *   written as its difference from the one before it.</li>
+ * </ol></li>
+ * </ol>
+ * File names are only written once, no matter how many statements are in the
+ * file, and statements are only written once, no matter how many tests
+ * executed them.
+ * <p/>
+ * <code>read(Path)</code> memory-maps the file instead of copying it through a
+ * stream, so loading a commit's coverage costs little more than decoding it.
+ */
+public final class CoverageFileFormat {
+    static final int MAGIC_NUMBER = 0x48464C43;
+    static final int VERSION = 2;
+
+    private static final byte DENSE_COVERAGE = 0;
+    private static final byte SPARSE_COVERAGE = 1;
+
+    private CoverageFileFormat() {
+        // Only has static methods
+    }
+
+    /**
+     * Writes test execution data to a stream.
+     * @param data The data to write.
+     * @param output The stream to write to. It should be buffered. It is not
+     * closed.
+     * @throws IOException If there was a problem writing to the stream.
+     */
+    public static void write(TestExecutionData data, OutputStream output)
+            throws IOException {
+        StatementIndex index = StatementIndex.getSharedIndex();
+
+        // Group the statements by file, keeping the files in the order they're
+        // first seen and sorting each file's statements by line number
+        Map<String, List<StatementData>> statementsByFile =
+                new LinkedHashMap<>();
+        for(StatementData statement : data.getStatements()) {
+            List<StatementData> statementsInFile =
+                    statementsByFile.get(statement.getFile());
+            if(statementsInFile == null) {
+                statementsInFile = new ArrayList<>();
+                statementsByFile.put(statement.getFile(), statementsInFile);
+            }
+            statementsInFile.add(statement);
+        }
+
+        // Statement ID -> the statement's number in the file
+        StatementIdMap statementNumbers =
+                new StatementIdMap(data.getStatements().size());
+        int numStatements = 0;
+
+        writeInt(output, MAGIC_NUMBER);
+        writeInt(output, VERSION);
+
+        writeVarint(output, statementsByFile.size());
+        for(String file : statementsByFile.keySet()) {
+            byte[] bytes = file.getBytes(StandardCharsets.UTF_8);
+            writeVarint(output, bytes.length);
+            output.write(bytes);
+        }
+
+        for(List<StatementData> statementsInFile : statementsByFile.values()) {
+            statementsInFile.sort(
+                    Comparator.comparingInt(StatementData::getLineNumber));
+            writeVarint(output, statementsInFile.size());
+
+            int previousLine = 0;
+            for(int i = 0; i < statementsInFile.size(); i++) {
+                StatementData statement = statementsInFile.get(i);
+                int line = statement.getLineNumber();
+                if(i == 0) {
+                    writeVarint(output, (line << 1) ^ (line >> 31));
+                } else {
+                    writeVarint(output, line - previousLine);
+                }
+                previousLine = line;
+
+                statementNumbers.put(index.lookup(statement), numStatements);
+                numStatements++;
+            }
+        }
+
+        List<TestData> tests = data.getTests();
+        writeVarint(output, tests.size());
+        byte[] passedBits = new byte[(tests.size() + 7) / 8];
+        for(int i = 0; i < tests.size(); i++) {
+            if(tests.get(i).getPassed()) {
+                passedBits[i >>> 3] |= 1 << (i & 7);
+            }
+        }
+        output.write(passedBits);
+
+        int[] executed = new int[0];
+        byte[] bitmap = new byte[(numStatements + 7) / 8];
+        for(TestData test : tests) {
+            CoverageBitmap coverage = test.getCoverage();
+            int numExecuted = coverage.cardinality();
+            if(executed.length < numExecuted) {
+                executed = new int[numExecuted];
+            }
+
+            PrimitiveIterator.OfInt ids = coverage.idIterator();
+            for(int i = 0; i < numExecuted; i++) {
+                executed[i] = statementNumbers.get(ids.nextInt());
+            }
+            Arrays.sort(executed, 0, numExecuted);
+
+            int sparseSize = varintSize(numExecuted);
+            int previous = 0;
+            for(int i = 0; i < numExecuted; i++) {
+                sparseSize += varintSize(executed[i] - previous);
+                previous = executed[i];
+            }
+
+            if(bitmap.length < sparseSize) {
+                Arrays.fill(bitmap, (byte) 0);
+                for(int i = 0; i < numExecuted; i++) {
+                    bitmap[executed[i] >>> 3] |= 1 << (executed[i] & 7);
+                }
+                output.write(DENSE_COVERAGE);
+                output.write(bitmap);
+            } else {
+                output.write(SPARSE_COVERAGE);
+                writeVarint(output, numExecuted);
+                previous = 0;
+                for(int i = 0; i < numExecuted; i++) {
+                    writeVarint(output, executed[i] - previous);
+                    previous = executed[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads test execution data from a file that was written by
+     * <code>write()</code>, by memory-mapping the file.
+     * @param file The file to read.
+     * @return The test execution data.
+     * @throws IOException If there was a problem reading the file, or if it
+     * doesn't contain data in this format.
+     */
+    public static TestExecutionData read(Path file) throws IOException {
+        try(FileChannel channel =
+                FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE) {
+                throw new IOException("Coverage data file " + file
+                        + " is too large to read.");
+            }
+            MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return read(buffer);
+        }
+    }
+
+    /**
+     * Reads test execution data that was written by <code>write()</code>.
+     * @param buffer The data to read, starting at the buffer's position.
+     * @return The test execution data.
+     * @throws IOException If the buffer doesn't contain data in this format.
+     */
+    public static TestExecutionData read(ByteBuffer buffer)
+            throws IOException {
+        try {
+            return readUnchecked(buffer);
+        } catch(BufferUnderflowException err) {
+            throw new IOException("Coverage data file is truncated.", err);
+        }
+    }
+
+    private static TestExecutionData readUnchecked(ByteBuffer buffer)
+            throws IOException {
+        if(buffer.getInt() != MAGIC_NUMBER) {
+            throw new IOException("Not a coverage data file.");
+        }
+        int version = buffer.getInt();
+        if(version != VERSION) {
+            throw new IOException("Unsupported coverage data file version "
+                    + version + ".");
+        }
+
+        String[] files = new String[readVarint(buffer)];
+        for(int i = 0; i < files.length; i++) {
+            byte[] bytes = new byte[readVarint(buffer)];
+            buffer.get(bytes);
+            files[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        StatementIndex index = StatementIndex.getSharedIndex();
+        TestExecutionData data = new TestExecutionData();
+        int[] statementIds = new int[16];
+        int numStatements = 0;
+        for(String file : files) {
+            int numStatementsInFile = readVarint(buffer);
+            int line = 0;
+            for(int i = 0; i < numStatementsInFile; i++) {
+                int value = readVarint(buffer);
+                if(i == 0) {
+                    line = (value >>> 1) ^ -(value & 1);
+                } else {
+                    line += value;
+                }
+
+                StatementData statement = new StatementData(line, file);
+                if(numStatements == statementIds.length) {
+                    statementIds = Arrays.copyOf(statementIds,
+                            numStatements * 2);
+                }
+                statementIds[numStatements++] = index.intern(statement);
+                data.addStatement(statement);
+            }
+        }
+
+        int numTests = readVarint(buffer);
+        byte[] passedBits = new byte[(numTests + 7) / 8];
+        buffer.get(passedBits);
+
+        int[] executed = new int[16];
+        byte[] bitmap = new byte[(numStatements + 7) / 8];
+        for(int test = 0; test < numTests; test++) {
+            int numExecuted = 0;
+            byte encoding = buffer.get();
+
+            if(encoding == DENSE_COVERAGE) {
+                buffer.get(bitmap);
+                for(int statement = 0; statement < numStatements;
+                        statement++) {
+                    if((bitmap[statement >>> 3] & (1 << (statement & 7)))
+                            != 0) {
+                        if(numExecuted == executed.length) {
+                            executed = Arrays.copyOf(executed,
+                                    numExecuted * 2);
+                        }
+                        executed[numExecuted++] = statementIds[statement];
+                    }
+                }
+            } else if(encoding == SPARSE_COVERAGE) {
+                numExecuted = readVarint(buffer);
+                if(executed.length < numExecuted) {
+                    executed = new int[numExecuted];
+                }
+                int statement = 0;
+                for(int i = 0; i < numExecuted; i++) {
+                    statement += readVarint(buffer);
+                    if(statement >= numStatements) {
+                        throw new IOException("Corrupt coverage data file: "
+                                + "statement " + statement + " is out of "
+                                + "range.");
+                    }
+                    executed[i] = statementIds[statement];
+                }
+            } else {
+                throw new IOException("Corrupt coverage data file: unknown "
+                        + "coverage encoding " + encoding + ".");
+            }
+
+            boolean passed = (passedBits[test >>> 3] & (1 << (test & 7))) != 0;
+            data.addTest(new TestData(passed,
+                    CoverageBitmap.fromIds(executed, numExecuted)));
+        }
+
+        return data;
+    }
+
+    private static void writeInt(OutputStream output, int value)
+            throws IOException {
+        output.write(value >>> 24);
+        output.write(value >>> 16);
+        output.write(value >>> 8);
+        output.write(value);
+    }
+
+    private static void writeVarint(OutputStream output, int value)
+            throws IOException {
+        while((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt coverage data file: varint is too "
+                + "long.");
+    }
+}
@@ -0,0 +1,464 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.dependency_cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps directories of prepared dependencies and build artifacts, such as
+ * installed gems or a local Maven repository, that the test harness can reuse
+ * from commit to commit instead of preparing them again.
+ * <p/>
+ * Each directory is keyed by a dependency key: a hash of the contents of the
+ * target program's dependency files, such as <code>Gemfile.lock</code> or
+ * <code>pom.xml</code>, at a commit. Consecutive commits that didn't change
+ * any of those files share a key, and therefore a directory:
+ * <p/>
+ * <code>[cacheDirectory]/[dependency key]/</code>
+ * <p/>
+ * The cache only creates the directories; filling them is up to the test
+ * harness. The first time a key is acquired, the caller is given the key's
+ * new, empty directory to prepare the dependencies in. Only once the caller
+ * releases it and says the preparation succeeded is a
+ * <code>COMPLETE_FILE_NAME</code> stamp written to it. If the preparation
+ * failed, for example because the test harness was killed part of the way
+ * through, the directory is deleted instead, and so is any directory without
+ * a stamp found when the cache is opened, so a half-prepared directory is
+ * never used. Anyone else who acquires the key while it is being prepared
+ * waits for the preparation to finish rather than preparing it a second time.
+ * Every directory that has been prepared contains the stamp, so a test
+ * harness can tell from an empty directory that it has to prepare its
+ * dependencies, and from one that isn't empty that they're ready. The
+ * dependencies are prepared where they will be used, so tools that record
+ * absolute paths work as usual.
+ * <p/>
+ * The cache is kept under a size limit. Each directory is measured once, when
+ * it has been prepared, and if the cache is over the limit, the least recently
+ * used directories are deleted until it fits again. Directories that are in
+ * use are never deleted. When each directory was last used is kept as its
+ * modification time, so it carries over from one run of the tool to the next.
+ * <p/>
+ * This class is thread-safe, so the same cache can be shared by test harness
+ * runs in several worktrees. Directories are only measured and deleted outside
+ * the cache's lock, so one large directory doesn't hold up the others.
+ */
+public class DependencyCache {
+    /**
+     * The name of the stamp written to a directory once it has been prepared.
+     */
+    public static final String COMPLETE_FILE_NAME = ".complete";
+    // Directories being deleted are renamed to names starting with this,
+    // which no dependency key can, so they're never mistaken for entries
+    private static final String DELETING_PREFIX = ".deleting-";
+
+    private final Path cacheDirectory;
+    private final long maxBytes;
+    private final Map<String, Entry> entries;
+    // The last time any entry was used. Each use gets a later time than the
+    // last, so entries used in the same millisecond still have an order.
+    private long lastUsed;
+    // How many directories have been renamed to be deleted, for naming them
+    private int deletedCount;
+
+    /**
+     * @param cacheDirectoryPath The directory to keep the cache in. It is
+     * created if it doesn't exist. Any prepared directories already in it are
+     * treated as entries, and any directories left over from an earlier run
+     * that were still being prepared or deleted are deleted.
+     * @param maxBytes The most space the cache's entries may use in total.
+     * Must be at least 0.
+     * @throws IOException If the cache directory couldn't be created or
+     * read.
+     */
+    public DependencyCache(String cacheDirectoryPath, long maxBytes)
+            throws IOException {
+        if(maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be "
+                    + "negative, not " + maxBytes);
+        }
+        this.cacheDirectory = Paths.get(cacheDirectoryPath);
+        this.maxBytes = maxBytes;
+        this.entries = new HashMap<>();
+        this.lastUsed = 0;
+        this.deletedCount = 0;
+        Files.createDirectories(cacheDirectory);
+
+        List<Path> leftovers = new ArrayList<>();
+        try(DirectoryStream<Path> directories =
+                Files.newDirectoryStream(cacheDirectory)) {
+            for(Path directory : directories) {
+                if(!Files.isDirectory(directory)) {
+                    continue;
+                }
+                String key = directory.getFileName().toString();
+                if(key.startsWith(DELETING_PREFIX) || !Files.exists(
+                        directory.resolve(COMPLETE_FILE_NAME))) {
+                    leftovers.add(directory);
+                    continue;
+                }
+                long modified = Files.getLastModifiedTime(directory).toMillis();
+                Entry entry = new Entry(directory, modified, measure(directory));
+                entry.ready = true;
+                entries.put(key, entry);
+                lastUsed = Math.max(lastUsed, modified);
+            }
+        }
+        for(Path leftover : leftovers) {
+            deleteQuietly(leftover);
+        }
+    }
+
+    /**
+     * Works out a dependency key from a description of the dependency files
+     * at a commit. Two commits get the same key only if their descriptions
+     * are the same.
+     * @param dependencyFiles One line per dependency file, for example the
+     * file's path and the hash of its contents.
+     * @return The dependency key: the SHA-256 hash of the lines, in
+     * hexadecimal.
+     */
+    public static String makeKey(List<String> dependencyFiles) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException err) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not available", err);
+        }
+        for(String file : dependencyFiles) {
+            digest.update(file.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for(byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Gets the directory for a dependency key and marks it as in use so that
+     * it isn't deleted. If the key's directory is being prepared by someone
+     * else, this waits for them to finish. If it hasn't been prepared, it is
+     * created empty, and the caller has to prepare it. Every call must be
+     * followed by a call to <code>release()</code>.
+     * @param key The dependency key.
+     * @return The key's directory.
+     * @throws IOException If the directory couldn't be created, or the
+     * thread was interrupted while waiting for someone else to prepare it.
+     */
+    public synchronized Path acquire(String key) throws IOException {
+        Path entryPath = getEntryPath(key);
+        Entry entry = entries.get(key);
+        while(entry != null && !entry.ready) {
+            try {
+                wait();
+            } catch(InterruptedException err) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for "
+                        + "dependency directory " + entryPath
+                        + " to be prepared", err);
+            }
+            entry = entries.get(key);
+        }
+
+        if(entry == null) {
+            if(Files.exists(entryPath)) {
+                // Left behind by a preparation that couldn't be cleaned up.
+                // The caller has to be given an empty directory.
+                deleteQuietly(entryPath);
+            }
+            Files.createDirectory(entryPath);
+            entry = new Entry(entryPath, 0, 0);
+            entries.put(key, entry);
+        }
+        return use(entry);
+    }
+
+    /**
+     * Gets the directory for a dependency key and marks it as in use, but only
+     * if it has already been prepared. Unlike <code>acquire()</code>, this
+     * never waits and never creates a directory, so it can be used to keep a
+     * directory from being deleted before it's needed. A call that returns a
+     * directory must be followed by a call to <code>release()</code>.
+     * @param key The dependency key.
+     * @return The key's directory, or <code>null</code> if it hasn't been
+     * prepared.
+     */
+    public synchronized Path acquireIfPrepared(String key) {
+        Entry entry = entries.get(key);
+        if(entry == null || !entry.ready) {
+            return null;
+        }
+        return use(entry);
+    }
+
+    /**
+     * Marks an entry as in use and as the most recently used entry.
+     * @return The entry's directory.
+     */
+    private Path use(Entry entry) {
+        entry.users++;
+        lastUsed = Math.max(System.currentTimeMillis(), lastUsed + 1);
+        entry.lastUsed = lastUsed;
+        if(entry.ready) {
+            try {
+                Files.setLastModifiedTime(entry.directory,
+                        FileTime.fromMillis(entry.lastUsed));
+            } catch(IOException err) {
+                // Only the order entries are evicted in suffers
+            }
+        }
+        return entry.directory;
+    }
+
+    /**
+     * Stops using a dependency key's directory. If it was being prepared and
+     * <code>prepared</code> is <code>true</code>, it is stamped and measured,
+     * and everyone else can use it from then on. If the preparation failed,
+     * the directory is deleted, and the next caller to acquire the key
+     * prepares it again. Then, if the cache is over its size limit, the least
+     * recently used directories that aren't in use are deleted. Problems
+     * deleting them are reported and otherwise ignored.
+     * @param key A dependency key passed to <code>acquire()</code>.
+     * @param prepared Whether whatever was using the directory finished
+     * successfully. Only matters if the directory was being prepared.
+     */
+    public void release(String key, boolean prepared) {
+        Entry entry;
+        List<Path> evicted;
+        synchronized(this) {
+            entry = entries.get(key);
+            if(entry == null || entry.users == 0) {
+                throw new IllegalStateException("Dependency key " + key
+                        + " is not in use");
+            }
+            if(entry.ready) {
+                entry.users--;
+                evicted = evict();
+            } else {
+                evicted = null;
+            }
+        }
+        if(evicted == null) {
+            evicted = finishPreparing(key, entry, prepared);
+        }
+
+        for(Path directory : evicted) {
+            deleteQuietly(directory);
+        }
+    }
+
+    /**
+     * Stamps and measures a directory that has been prepared, or deletes it
+     * if the preparation failed, then lets anyone waiting for it carry on.
+     * @return The directories evicted to make room for it.
+     */
+    private List<Path> finishPreparing(String key, Entry entry,
+            boolean prepared) {
+        // Anyone else who wants the directory waits until it's ready, so it
+        // can be finished off without holding the lock
+        long size = 0;
+        boolean ready = false;
+        if(prepared) {
+            try {
+                Files.write(entry.directory.resolve(COMPLETE_FILE_NAME),
+                        new byte[0]);
+                size = measure(entry.directory);
+                ready = true;
+            } catch(IOException err) {
+                System.out.println("Could not finish preparing dependency "
+                        + "cache entry " + entry.directory + ":");
+                System.out.println(err.getMessage());
+            }
+        }
+        if(!ready) {
+            System.out.println("Deleting dependency cache entry "
+                    + entry.directory + ", which wasn't fully prepared...");
+            deleteQuietly(entry.directory);
+        }
+
+        synchronized(this) {
+            entry.users--;
+            if(ready) {
+                entry.size = size;
+                entry.ready = true;
+            } else {
+                entries.remove(key);
+            }
+            notifyAll();
+            return evict();
+        }
+    }
+
+    /**
+     * @return The total size of every prepared entry, in bytes, as of when
+     * each was prepared.
+     */
+    public synchronized long getSize() {
+        long size = 0;
+        for(Entry entry : entries.values()) {
+            size += entry.size;
+        }
+        return size;
+    }
+
+    /**
+     * @return Whether the cache has a prepared directory for a dependency
+     * key.
+     */
+    public synchronized boolean contains(String key) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.ready;
+    }
+
+    /**
+     * Removes the least recently used entries that aren't in use until the
+     * cache fits in its size limit. Each one is renamed out of the way, so
+     * that a new directory for its key can be prepared right away, and has to
+     * be deleted by the caller once it has released the lock.
+     * @return The renamed directories to delete.
+     */
+    private List<Path> evict() {
+        List<Path> evicted = new ArrayList<>();
+        long size = getSize();
+        if(size <= maxBytes) {
+            return evicted;
+        }
+
+        List<Map.Entry<String, Entry>> candidates = new ArrayList<>();
+        for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if(entry.getValue().ready && entry.getValue().users == 0) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(a.getValue().lastUsed,
+                b.getValue().lastUsed));
+
+        for(Map.Entry<String, Entry> candidate : candidates) {
+            if(size <= maxBytes) {
+                break;
+            }
+            Entry entry = candidate.getValue();
+            System.out.println("Evicting dependency cache entry "
+                    + entry.directory + " to stay under the size limit...");
+            try {
+                deletedCount++;
+                Path renamed = cacheDirectory.resolve(DELETING_PREFIX
+                        + deletedCount + "-" + candidate.getKey());
+                Files.move(entry.directory, renamed,
+                        StandardCopyOption.ATOMIC_MOVE);
+                evicted.add(renamed);
+            } catch(IOException err) {
+                System.out.println("Could not delete dependency cache entry "
+                        + entry.directory + ":");
+                System.out.println(err.getMessage());
+                continue;
+            }
+            entries.remove(candidate.getKey());
+            size -= entry.size;
+        }
+        return evicted;
+    }
+
+    private Path getEntryPath(String key) {
+        // Keys come from makeKey(), but make sure one can never point outside
+        // the cache or look like a directory being deleted
+        if(!key.matches("[0-9a-zA-Z_-]+")) {
+            throw new IllegalArgumentException("Invalid dependency key "
+                    + key);
+        }
+        return cacheDirectory.resolve(key);
+    }
+
+    /**
+     * @return The total size of the regular files in a directory and its
+     * subdirectories, in bytes. Symbolic links aren't followed.
+     */
+    private static long measure(Path directory) throws IOException {
+        long[] size = {0};
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attributes) {
+                if(attributes.isRegularFile()) {
+                    size[0] += attributes.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file,
+                    IOException err) {
+                // Skip files that can't be read
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size[0];
+    }
+
+    /**
+     * Deletes a directory and everything in it, reporting any problems.
+     * Symbolic links are deleted without deleting what they point to.
+     */
+    private static void deleteQuietly(Path directory) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file,
+                        BasicFileAttributes attributes) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir,
+                        IOException err) throws IOException {
+                    if(err != null) {
+                        throw err;
+                    }
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch(IOException err) {
+            System.out.println("Could not delete dependency cache directory "
+                    + directory + ":");
+            System.out.println(err.getMessage());
+        }
+    }
+
+    /**
+     * One directory in the cache, either prepared or being prepared.
+     */
+    private static class Entry {
+        private final Path directory;
+        private long lastUsed;
+        private long size;
+        private int users;
+        private boolean ready;
+
+        Entry(Path directory, long lastUsed, long size) {
+            this.directory = directory;
+            this.lastUsed = lastUsed;
+            this.size = size;
+            this.users = 0;
+            this.ready = false;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.CoverageBitmap;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementIndex;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import edu.unl.knorth.historical_fault_localization.utility.LongIntHashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses test harness output in the format described in
+ * <code>TestOutputParser</code> straight from a stream of bytes.
+ * <p/>
+ * The output is read through a fixed-size buffer and split into tokens in
+ * place, without ever creating a <code>String</code> per line or per token.
+ * Each file name is decoded once, and each (file, line number) pair is
+ * turned into a statement ID once. Each test's statements go straight into a
+ * <code>CoverageBitmap</code>, so the memory used while parsing depends on
+ * how much coverage there is, not on how large the output is.
+ * <p/>
+ * A parser keeps caches from one test to the next, so it should be used for
+ * a single stream and then thrown away. It is not thread-safe.
+ */
+final class CoverageStreamParser {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] PASSED = {'p', 'a', 's', 's', 'e', 'd'};
+    private static final byte[] FAILED = {'f', 'a', 'i', 'l', 'e', 'd'};
+
+    private final StatementIndex index;
+    private final Charset charset;
+
+    // File names seen so far, numbered in the order they were first seen
+    private final Map<String, Integer> fileNumbers;
+    private final List<String> files;
+    // The encoded bytes of each file name, and a hash of those bytes -> file
+    // number, so that a file name can be found without decoding it
+    private final List<byte[]> fileBytes;
+    private final LongIntHashMap fileNumbersByHash;
+    // (file number, line number) -> statement ID
+    private final LongIntHashMap statementIds;
+
+    // The current token. Tokens are copied here so that a token split across
+    // two reads of the buffer is handled the same way as any other token.
+    private byte[] token;
+    private int tokenLength;
+
+    // The file name from the most recent (file, line number) pair. Test
+    // harnesses usually list many lines from the same file in a row, so this
+    // saves looking the file name up again.
+    private byte[] lastFile;
+    private int lastFileLength;
+    private int lastFileNumber;
+
+    // The state of the line being parsed
+    private int lineNumberInOutput;
+    private int tokensOnLine;
+    private boolean passed;
+    private int currentFileNumber;
+    private int[] lineStatementIds;
+    private int numLineStatementIds;
+
+    CoverageStreamParser() {
+        this.index = StatementIndex.getSharedIndex();
+        this.charset = Charset.defaultCharset();
+        this.fileNumbers = new HashMap<>();
+        this.files = new ArrayList<>();
+        this.fileBytes = new ArrayList<>();
+        this.fileNumbersByHash = new LongIntHashMap();
+        this.statementIds = new LongIntHashMap();
+        this.token = new byte[256];
+        this.tokenLength = 0;
+        this.lastFile = new byte[256];
+        this.lastFileLength = -1;
+        this.lastFileNumber = -1;
+        this.lineStatementIds = new int[1024];
+    }
+
+    /**
+     * Reads the test harness output from a stream until the end of the stream.
+     * The stream is not closed.
+     * @param input The stream to read from.
+     * @return A <code>TestExecutionData</code> containing the output's
+     * information.
+     * @throws IOException If the stream couldn't be read or the output is not
+     * in the right format.
+     */
+    TestExecutionData parse(InputStream input) throws IOException {
+        TestExecutionData data = new TestExecutionData();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        lineNumberInOutput = 1;
+        startLine();
+
+        int bytesRead;
+        while((bytesRead = input.read(buffer)) != -1) {
+            for(int i = 0; i < bytesRead; i++) {
+                byte b = buffer[i];
+                if(b == '\n') {
+                    endToken();
+                    endLine(data);
+                    lineNumberInOutput++;
+                } else if(isWhitespace(b)) {
+                    endToken();
+                } else {
+                    if(tokenLength == token.length) {
+                        token = Arrays.copyOf(token, tokenLength * 2);
+                    }
+                    token[tokenLength++] = b;
+                }
+            }
+        }
+
+        // The last line might not end with a newline
+        endToken();
+        endLine(data);
+
+        return data;
+    }
+
+    private void startLine() {
+        tokensOnLine = 0;
+        numLineStatementIds = 0;
+    }
+
+    /**
+     * Handles the token that has just been read, if there is one.
+     */
+    private void endToken() throws IOException {
+        if(tokenLength == 0) {
+            return;
+        }
+
+        if(tokensOnLine == 0) {
+            if(tokenEqualsIgnoreCase(PASSED)) {
+                passed = true;
+            } else if(tokenEqualsIgnoreCase(FAILED)) {
+                passed = false;
+            } else {
+                throw new IOException("First string on line "
+                        + lineNumberInOutput + ", \"" + decodeToken()
+                        + "\", was not \"passed\" or \"failed\".");
+            }
+        } else if(tokensOnLine % 2 == 1) {
+            currentFileNumber = getFileNumber();
+        } else {
+            addStatement(currentFileNumber, parseLineNumber());
+        }
+
+        tokensOnLine++;
+        tokenLength = 0;
+    }
+
+    /**
+     * Adds the test on the line that has just been read, if there is one, to
+     * <code>data</code>. Like <code>TestOutputParser</code>, a file name at
+     * the end of a line without a line number after it is ignored.
+     */
+    private void endLine(TestExecutionData data) {
+        if(tokensOnLine > 0) {
+            data.addTest(new TestData(passed, CoverageBitmap.fromIds(
+                    lineStatementIds, numLineStatementIds)));
+        }
+        startLine();
+    }
+
+    private int getFileNumber() {
+        if(tokenLength == lastFileLength && tokenMatches(lastFile)) {
+            return lastFileNumber;
+        }
+
+        long hash = hashToken();
+        int fileNumber = fileNumbersByHash.get(hash);
+        if(fileNumber == LongIntHashMap.NOT_FOUND
+                || fileBytes.get(fileNumber).length != tokenLength
+                || !tokenMatches(fileBytes.get(fileNumber))) {
+            // Either a new file or, very rarely, a hash collision. Either way,
+            // fall back to looking the decoded name up.
+            String file = decodeToken();
+            Integer knownFileNumber = fileNumbers.get(file);
+            if(knownFileNumber == null) {
+                fileNumber = files.size();
+                // The same String is shared by every statement in the file
+                files.add(file);
+                fileBytes.add(Arrays.copyOf(token, tokenLength));
+                fileNumbers.put(file, fileNumber);
+                if(fileNumbersByHash.get(hash) == LongIntHashMap.NOT_FOUND) {
+                    fileNumbersByHash.put(hash, fileNumber);
+                }
+            } else {
+                fileNumber = knownFileNumber;
+            }
+        }
+
+        if(lastFile.length < tokenLength) {
+            lastFile = new byte[token.length];
+        }
+        System.arraycopy(token, 0, lastFile, 0, tokenLength);
+        lastFileLength = tokenLength;
+        lastFileNumber = fileNumber;
+
+        return fileNumber;
+    }
+
+    /**
+     * @return The 64-bit FNV-1a hash of the current token.
+     */
+    private long hashToken() {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < tokenLength; i++) {
+            hash ^= token[i] & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Parses the current token as a line number, accepting the same strings
+     * as <code>Integer.parseInt()</code>.
+     */
+    private int parseLineNumber() throws IOException {
+        int i = 0;
+        boolean negative = false;
+        if(token[0] == '-' || token[0] == '+') {
+            negative = (token[0] == '-');
+            i = 1;
+        }
+        if(i == tokenLength) {
+            throw invalidLineNumber();
+        }
+
+        // Accumulate the negative value, which has a larger range
+        long value = 0;
+        for(; i < tokenLength; i++) {
+            int digit = token[i] - '0';
+            if(digit < 0 || digit > 9) {
+                throw invalidLineNumber();
+            }
+            value = value * 10 - digit;
+            if(value < Integer.MIN_VALUE) {
+                throw invalidLineNumber();
+            }
+        }
+
+        if(!negative) {
+            value = -value;
+            if(value > Integer.MAX_VALUE) {
+                throw invalidLineNumber();
+            }
+        }
+        return (int) value;
+    }
+
+    private IOException invalidLineNumber() {
+        return new IOException("Line " + lineNumberInOutput + " contained an "
+                + "invalid line number, \"" + decodeToken() + "\".");
+    }
+
+    private void addStatement(int fileNumber, int lineNumber) {
+        long key = (((long) fileNumber) << 32) | (lineNumber & 0xFFFFFFFFL);
+        int id = statementIds.get(key);
+        if(id == LongIntHashMap.NOT_FOUND) {
+            id = index.intern(new StatementData(lineNumber,
+                    files.get(fileNumber)));
+            statementIds.put(key, id);
+        }
+
+        if(numLineStatementIds == lineStatementIds.length) {
+            lineStatementIds = Arrays.copyOf(lineStatementIds,
+                    numLineStatementIds * 2);
+        }
+        lineStatementIds[numLineStatementIds++] = id;
+    }
+
+    private boolean tokenEqualsIgnoreCase(byte[] lowerCaseWord) {
+        if(tokenLength != lowerCaseWord.length) {
+            return false;
+        }
+        for(int i = 0; i < tokenLength; i++) {
+            byte b = token[i];
+            if(b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if(b != lowerCaseWord[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean tokenMatches(byte[] bytes) {
+        for(int i = 0; i < tokenLength; i++) {
+            if(token[i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decodeToken() {
+        return new String(token, 0, tokenLength, charset);
+    }
+
+    /**
+     * Matches the characters other than newlines that
+     * <code>String.split("\\s+")</code> and <code>String.trim()</code> treat
+     * as whitespace in the test harness output.
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+}
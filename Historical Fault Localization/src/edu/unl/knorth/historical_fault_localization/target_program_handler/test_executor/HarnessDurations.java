@@ -0,0 +1,89 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Keeps track of how long the test harness took on recent commits, and uses
+ * that to work out how long to let it run on the next commit before timing
+ * it out.
+ * <p/>
+ * The adaptive timeout is the 99th percentile of the recent durations
+ * multiplied by a factor. It is never longer than the configured timeout,
+ * which is also used until enough commits have been timed, and never shorter
+ * than <code>MINIMUM_TIMEOUT_MILLISECONDS</code>, so a run of quick commits
+ * can't make the timeout so short that a normal commit trips it. Only runs
+ * that succeeded are recorded, so runs that hang don't stretch the timeout.
+ * <p/>
+ * Since a run that times out isn't recorded, a test suite that suddenly got
+ * slower would otherwise time out on every later commit without the timeout
+ * ever growing to fit it. So <code>TestExecutor</code> runs a commit that
+ * times out under an adaptive timeout again with the configured timeout, and
+ * records that run instead.
+ * <p/>
+ * This class is thread-safe.
+ */
+final class HarnessDurations {
+    // How many durations to keep; older ones are forgotten so the timeout
+    // follows the test suite as it grows
+    static final int WINDOW_SIZE = 100;
+    // How many durations are needed before the timeout adapts
+    static final int MINIMUM_SAMPLES = 5;
+    static final long MINIMUM_TIMEOUT_MILLISECONDS = 10000;
+
+    private final double factor;
+    private final Deque<Long> durations;
+
+    /**
+     * @param factor What to multiply the 99th percentile duration by to get
+     * the timeout, or 0 to always use the configured timeout. Must be 0 or at
+     * least 1.
+     */
+    HarnessDurations(double factor) {
+        if(factor != 0 && !(factor >= 1)) {
+            throw new IllegalArgumentException("factor must be 0 or at least "
+                    + "1, not " + factor);
+        }
+        this.factor = factor;
+        this.durations = new ArrayDeque<>();
+    }
+
+    /**
+     * Records how long a successful run of the test harness took.
+     * @param milliseconds The run's duration.
+     */
+    synchronized void record(long milliseconds) {
+        if(factor == 0) {
+            return;
+        }
+        durations.addLast(milliseconds);
+        if(durations.size() > WINDOW_SIZE) {
+            durations.removeFirst();
+        }
+    }
+
+    /**
+     * @param configuredTimeout The timeout from the configuration file, in
+     * milliseconds.
+     * @return The timeout to use for the next commit, in milliseconds.
+     */
+    synchronized long getTimeout(long configuredTimeout) {
+        if(factor == 0 || durations.size() < MINIMUM_SAMPLES) {
+            return configuredTimeout;
+        }
+
+        long[] sorted = new long[durations.size()];
+        int i = 0;
+        for(long duration : durations) {
+            sorted[i++] = duration;
+        }
+        Arrays.sort(sorted);
+        long percentile99 =
+                sorted[(int) Math.ceil(0.99 * sorted.length) - 1];
+
+        long timeout = (long) Math.ceil(percentile99 * factor);
+        timeout = Math.max(timeout, MINIMUM_TIMEOUT_MILLISECONDS);
+        return Math.min(timeout, configuredTimeout);
+    }
+}
@@ -0,0 +1,57 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor;
+
+/**
+ * The ways the test harness can hand its results, in the format described in
+ * <code>TestOutputParser</code>, to the Historical Fault Localization tool.
+ * <p/>
+ * Each mode has a name that is used to select it in the configuration file.
+ */
+public enum HarnessOutputMode {
+    /**
+     * The test harness writes its results to the file passed with
+     * <code>--output_file</code>, and the file is parsed once the test
+     * harness exits.
+     */
+    FILE("file"),
+    /**
+     * <code>--output_file</code> is a named pipe. Results are parsed as the
+     * test harness writes them, while its tests are still running, and never
+     * touch the disk. Needs the <code>mkfifo</code> command.
+     */
+    FIFO("fifo"),
+    /**
+     * <code>--output_file</code> is <code>/dev/stdout</code>, and results are
+     * parsed from the test harness' STDOUT as it writes them. Anything else the
+     * test harness prints has to go to STDERR.
+     */
+    STDOUT("stdout");
+
+    private final String configurationName;
+
+    private HarnessOutputMode(String configurationName) {
+        this.configurationName = configurationName;
+    }
+
+    /**
+     * @return The name used to select this mode in the configuration file.
+     */
+    public String getConfigurationName() {
+        return configurationName;
+    }
+
+    /**
+     * @param configurationName A mode's name in the configuration file,
+     * ignoring case.
+     * @return The mode with that name, or <code>null</code> if there isn't
+     * one.
+     */
+    public static HarnessOutputMode fromConfigurationName(
+            String configurationName) {
+        for(HarnessOutputMode mode : values()) {
+            if(mode.configurationName.equalsIgnoreCase(configurationName)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
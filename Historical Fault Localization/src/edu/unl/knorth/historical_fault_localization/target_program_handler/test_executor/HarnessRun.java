@@ -0,0 +1,376 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import edu.unl.knorth.historical_fault_localization.utility.ProcessOutput;
+import edu.unl.knorth.historical_fault_localization.utility.ProcessTree;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single run of the test harness script, along with wherever its results
+ * are read from.
+ * <p/>
+ * In <code>HarnessOutputMode.FIFO</code> and
+ * <code>HarnessOutputMode.STDOUT</code>, a reader task parses the results as
+ * soon as the test harness writes them, so parsing overlaps with the tests.
+ * The reader keeps draining the stream even if the results turn out to be
+ * malformed, so the test harness never blocks on a full pipe.
+ * <p/>
+ * The named pipe used in FIFO mode is held open for writing by this class
+ * until the test harness exits. That way the reader never blocks forever
+ * waiting for a test harness that dies without opening the pipe, and it
+ * still sees the end of the stream once every writer is gone. On Linux,
+ * opening a named pipe for both reading and writing never blocks.
+ * <p/>
+ * Everything else the test harness prints is handled by a
+ * <code>ProcessOutput</code>, which can copy it to a log file and sample it to
+ * STDOUT.
+ * <p/>
+ * While waiting, the run can watch for the test harness stalling: if nothing
+ * has been added to its output file, its result stream, or anything else it
+ * prints for too long, it is assumed to be stuck and is killed early instead
+ * of running until the timeout. Killing the test harness always kills every
+ * process it started, too. See <code>ProcessTree</code>.
+ * <p/>
+ * Usage: create the run, pass <code>getHarnessOutputPath()</code> to the test
+ * harness as its output file, <code>start()</code> it, wait for it with
+ * <code>waitFor()</code>, then call <code>readResults()</code>. Always
+ * <code>close()</code> the run, which kills the test harness if it is still
+ * running.
+ */
+final class HarnessRun implements AutoCloseable {
+    // How long to wait for `mkfifo`
+    private static final long MKFIFO_TIMEOUT_SECONDS = 10;
+    // How long to wait for the reader to see the end of the stream after the
+    // test harness has exited, in case a process it started still has the
+    // stream open
+    private static final long READER_GRACE_MILLISECONDS = 5000;
+    // How long to wait for the test harness' console output to be passed on
+    // after it has exited
+    private static final long OUTPUT_GRACE_MILLISECONDS = 5000;
+    // How often to check whether the test harness' output is still growing
+    private static final long STALL_POLL_NANOSECONDS =
+            TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final HarnessOutputMode outputMode;
+    private final String outputFilePath;
+    private final Path fifoDirectory;
+    private final String harnessOutputPath;
+    private final Path logFile;
+    private final int consoleSampleRate;
+    private final AtomicLong streamedBytes;
+
+    private Process process;
+    private ProcessOutput output;
+    private RandomAccessFile fifoHandle;
+    private Future<?> reader;
+    private volatile TestExecutionData streamedData;
+    private volatile IOException streamError;
+    private boolean stalled;
+
+    /**
+     * @param outputMode Where the test harness' results are read from.
+     * @param outputFilePath The output file to use in
+     * <code>HarnessOutputMode.FILE</code>. Ignored otherwise.
+     * @param logFile The file to copy everything the test harness prints to,
+     * or <code>null</code> to not keep a log.
+     * @param consoleSampleRate Echo every <code>consoleSampleRate</code>th
+     * line the test harness prints to STDOUT: 1 to echo everything, 0 to echo
+     * nothing.
+     * @throws IOException If the named pipe couldn't be created.
+     */
+    HarnessRun(HarnessOutputMode outputMode, String outputFilePath,
+            Path logFile, int consoleSampleRate) throws IOException {
+        this.outputMode = outputMode;
+        this.outputFilePath = outputFilePath;
+        this.logFile = logFile;
+        this.consoleSampleRate = consoleSampleRate;
+        this.streamedBytes = new AtomicLong();
+        this.stalled = false;
+        switch(outputMode) {
+            case FIFO:
+                this.fifoDirectory = Files.createTempDirectory("hfl-fifo-");
+                this.harnessOutputPath =
+                        fifoDirectory.resolve("test_out").toString();
+                try {
+                    makeFifo(harnessOutputPath);
+                } catch(IOException err) {
+                    Files.deleteIfExists(fifoDirectory);
+                    throw err;
+                }
+                break;
+            case STDOUT:
+                this.fifoDirectory = null;
+                this.harnessOutputPath = "/dev/stdout";
+                break;
+            default:
+                this.fifoDirectory = null;
+                this.harnessOutputPath = outputFilePath;
+                break;
+        }
+    }
+
+    /**
+     * @return The path to pass to the test harness with
+     * <code>--output_file</code>.
+     */
+    String getHarnessOutputPath() {
+        return harnessOutputPath;
+    }
+
+    /**
+     * Starts the test harness, and the reader if results are streamed.
+     * Anything the test harness outputs that isn't a result is passed to the
+     * log file and STDOUT.
+     * @param command The test harness' command line.
+     * @throws IOException If the test harness couldn't be started or the log
+     * file couldn't be created.
+     */
+    void start(String[] command) throws IOException {
+        output = new ProcessOutput(logFile, consoleSampleRate);
+        if(outputMode == HarnessOutputMode.FIFO) {
+            fifoHandle = new RandomAccessFile(harnessOutputPath, "rw");
+            startReader(new FileInputStream(harnessOutputPath));
+        }
+
+        process = Runtime.getRuntime().exec(command);
+        output.drain(process.getErrorStream());
+        if(outputMode == HarnessOutputMode.STDOUT) {
+            startReader(process.getInputStream());
+        } else {
+            output.drain(process.getInputStream());
+        }
+    }
+
+    /**
+     * Waits for the test harness to exit.
+     * @param deadline The <code>System.nanoTime()</code> to stop waiting at.
+     * @return <code>true</code> if the test harness exited, or
+     * <code>false</code> if it was still running at the deadline, in which case
+     * it is killed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    boolean waitFor(long deadline) throws InterruptedException {
+        return waitFor(deadline, 0);
+    }
+
+    /**
+     * Waits for the test harness to exit, killing it early if its output stops
+     * growing.
+     * @param deadline The <code>System.nanoTime()</code> to stop waiting at.
+     * @param stallTimeout How long, in nanoseconds, the test harness may go
+     * without outputting anything before it is killed, or 0 to never kill it
+     * early.
+     * @return <code>true</code> if the test harness exited, or
+     * <code>false</code> if it was still running at the deadline or stalled,
+     * in which case it is killed. Use <code>hasStalled()</code> to tell which.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    boolean waitFor(long deadline, long stallTimeout)
+            throws InterruptedException {
+        long progress = getProgress();
+        long lastProgressTime = System.nanoTime();
+        while(true) {
+            long now = System.nanoTime();
+            long wait = deadline - now;
+            if(stallTimeout > 0) {
+                wait = Math.min(wait, STALL_POLL_NANOSECONDS);
+            }
+            if(process.waitFor(Math.max(wait, 0), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+
+            now = System.nanoTime();
+            if(now - deadline >= 0) {
+                break;
+            } else if(stallTimeout > 0) {
+                long currentProgress = getProgress();
+                if(currentProgress != progress) {
+                    progress = currentProgress;
+                    lastProgressTime = now;
+                } else if(now - lastProgressTime >= stallTimeout) {
+                    stalled = true;
+                    break;
+                }
+            }
+        }
+        ProcessTree.kill(process);
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if <code>waitFor()</code> killed the test
+     * harness because its output stopped growing, rather than because it
+     * reached the deadline.
+     */
+    boolean hasStalled() {
+        return stalled;
+    }
+
+    /**
+     * Gets the results of a test harness that has exited.
+     * @return The test harness' results.
+     * @throws IOException If the results couldn't be read or aren't in the
+     * right format.
+     * @throws InterruptedException If interrupted while waiting for the
+     * reader.
+     */
+    TestExecutionData readResults() throws IOException, InterruptedException {
+        if(outputMode == HarnessOutputMode.FILE) {
+            return new TestOutputParser().parseTestOutputFile(outputFilePath);
+        }
+
+        closeFifoHandle();
+        try {
+            reader.get(READER_GRACE_MILLISECONDS, TimeUnit.MILLISECONDS);
+        } catch(TimeoutException err) {
+            throw new IOException("The test harness exited, but its output "
+                    + "stream was never closed. A process it started may "
+                    + "still have it open.");
+        } catch(ExecutionException err) {
+            throw new IOException("Problem parsing test harness output: "
+                    + err.getCause(), err.getCause());
+        }
+        if(streamError != null) {
+            throw new IOException("Problem parsing test harness output: "
+                    + streamError.getMessage(), streamError);
+        }
+        return streamedData;
+    }
+
+    /**
+     * Kills the test harness if it is still running, and cleans up the named
+     * pipe.
+     */
+    @Override
+    public void close() {
+        if(process != null && process.isAlive()) {
+            ProcessTree.kill(process);
+        }
+        closeFifoHandle();
+        if(output != null) {
+            try {
+                if(!output.finish(OUTPUT_GRACE_MILLISECONDS)
+                        && logFile != null) {
+                    System.out.println("The test harness' output is still "
+                            + "open after it exited. The rest of it will be "
+                            + "added to " + logFile + " when it closes.");
+                }
+            } catch(InterruptedException err) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if(fifoDirectory != null) {
+            try {
+                Files.deleteIfExists(fifoDirectory.resolve("test_out"));
+                Files.deleteIfExists(fifoDirectory);
+            } catch(IOException err) {
+                System.out.println("Could not delete named pipe "
+                        + harnessOutputPath + ": " + err.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return A number that grows whenever the test harness outputs anything,
+     * to any of its outputs.
+     */
+    private long getProgress() {
+        long progress = output.getBytesSeen() + streamedBytes.get();
+        if(outputMode == HarnessOutputMode.FILE) {
+            try {
+                progress += Files.size(Paths.get(outputFilePath));
+            } catch(IOException err) {
+                // The output file hasn't been created yet
+            }
+        }
+        return progress;
+    }
+
+    private void startReader(InputStream input) {
+        reader = ProcessOutput.submitReader(() -> {
+            try(InputStream stream = new CountingInputStream(input)) {
+                try {
+                    streamedData = new CoverageStreamParser().parse(stream);
+                } catch(IOException err) {
+                    streamError = err;
+                    // Keep reading so the test harness doesn't block
+                    byte[] buffer = new byte[8192];
+                    while(stream.read(buffer) != -1) {
+                        // Discard the rest of the output
+                    }
+                }
+            } catch(IOException err) {
+                if(streamError == null) {
+                    streamError = err;
+                }
+            }
+        });
+    }
+
+    /**
+     * Counts the bytes read from the result stream, so that stalls can be
+     * noticed.
+     */
+    private final class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b != -1) {
+                streamedBytes.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+                throws IOException {
+            int bytesRead = super.read(buffer, offset, length);
+            if(bytesRead > 0) {
+                streamedBytes.addAndGet(bytesRead);
+            }
+            return bytesRead;
+        }
+    }
+
+    private void closeFifoHandle() {
+        if(fifoHandle != null) {
+            try {
+                fifoHandle.close();
+            } catch(IOException err) { /* Nothing useful to do */ }
+            fifoHandle = null;
+        }
+    }
+
+    private static void makeFifo(String path) throws IOException {
+        Process pr = Runtime.getRuntime().exec(new String[] {"mkfifo", path});
+        try {
+            if(!pr.waitFor(MKFIFO_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                pr.destroy();
+                throw new IOException("Timed out creating named pipe "
+                        + path);
+            } else if(pr.exitValue() != 0) {
+                throw new IOException("`mkfifo " + path + "` exited with "
+                        + "code " + pr.exitValue());
+            }
+        } catch(InterruptedException err) {
+            throw new IOException("Interrupted while creating named pipe "
+                    + path, err);
+        }
+    }
+}
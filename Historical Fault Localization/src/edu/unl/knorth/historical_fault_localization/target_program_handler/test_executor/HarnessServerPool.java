@@ -0,0 +1,362 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import edu.unl.knorth.historical_fault_localization.utility.ProcessOutput;
+import edu.unl.knorth.historical_fault_localization.utility.ProcessTree;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of long-lived test harness processes, called harness servers, that
+ * each run the tests of many commits. A test harness that has to start an
+ * interpreter or load its dependencies only pays for that once per server
+ * instead of once per commit.
+ * <p/>
+ * A server is started by running the test harness with just one flag:
+ * <p/>
+ * <code>./[path to test harness] --server</code>
+ * <p/>
+ * For each commit, the server is sent one line on its STDIN with the same
+ * flags the test harness is usually run with, separated by tabs instead of
+ * spaces, since the timestamp contains spaces:
+ * <p/>
+ * <code>--work-directory=[path]\t--commit-hash=[hash]\t--commit-timestamp=[timestamp]\t--output_file=[path]</code>
+ * <p/>
+ * followed by any extra flags for the commit, also separated by tabs.
+ * <p/>
+ * Once it has written the commit's results to the output file, the server
+ * answers with a line on its STDOUT that is either <code>HFL-DONE ok</code>
+ * or <code>HFL-DONE failed [message]</code>. Every other line the server
+ * prints, to STDOUT or STDERR, is passed to the console and a log file the
+ * same way a normal test harness run's output is. When its STDIN is closed,
+ * the server should exit.
+ * <p/>
+ * Servers are started the first time they are needed, and each one handles
+ * one commit at a time. A server that times out, exits, or stops following
+ * the protocol is killed and replaced by a new one for the next commit.
+ * <p/>
+ * This class is thread-safe.
+ */
+final class HarnessServerPool implements AutoCloseable {
+    static final String SERVER_FLAG = "--server";
+    static final String DONE_PREFIX = "HFL-DONE";
+    private static final String DONE_OK = "ok";
+    private static final String DONE_FAILED = "failed";
+
+    // Put on a server's response queue when its STDOUT ends. It is compared
+    // by identity, so it can never be mistaken for a line the server printed.
+    private static final String END_OF_OUTPUT = new String("end of output");
+    // How long to wait for a server to exit after its STDIN is closed
+    private static final long SHUTDOWN_GRACE_MILLISECONDS = 5000;
+    // How often a thread waiting for a server checks whether it may start one
+    private static final long ACQUIRE_POLL_MILLISECONDS = 100;
+
+    private final int serverCount;
+    private final Path logDirectory;
+    private final int consoleSampleRate;
+
+    private final List<Server> servers;
+    private final BlockingQueue<Server> idleServers;
+    private int numServersRunning;
+    private int numServersStarted;
+    private boolean closed;
+
+    /**
+     * @param serverCount The most servers to run at once. Must be at least 1.
+     * @param logDirectory The directory to save everything the servers print
+     * to, apart from their answers, in one log file per server, or
+     * <code>null</code> to not keep logs.
+     * @param consoleSampleRate Echo every <code>consoleSampleRate</code>th
+     * line the servers print: 1 to echo everything, 0 to echo nothing.
+     */
+    HarnessServerPool(int serverCount, Path logDirectory,
+            int consoleSampleRate) {
+        if(serverCount < 1) {
+            throw new IllegalArgumentException("serverCount must be at least "
+                    + "1, not " + serverCount);
+        }
+        this.serverCount = serverCount;
+        this.logDirectory = logDirectory;
+        this.consoleSampleRate = consoleSampleRate;
+        this.servers = new ArrayList<>();
+        this.idleServers = new LinkedBlockingQueue<>();
+        this.numServersRunning = 0;
+        this.numServersStarted = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Has a server run the tests on a commit.
+     * @param testHarnessPath The path to the test harness script. It is only
+     * used if a new server has to be started.
+     * @param workingDirectoryPath The path to the target program repository.
+     * @param commitHash The hash of the commit being processed.
+     * @param timestamp The timestamp of the commit being processed.
+     * @param timeoutLength The amount of time, in milliseconds, to wait for
+     * the server to answer. If it takes longer, the server is killed.
+     * @param outputFilePath The path to the location where the server should
+     * save its output file.
+     * @param extraFlags More flags to send after the usual ones.
+     * @return The commit's test coverage data.
+     * @throws IOException If the server couldn't be started, failed, timed
+     * out, or wrote an output file that couldn't be parsed.
+     */
+    TestExecutionData executeTests(String testHarnessPath,
+            String workingDirectoryPath, String commitHash, String timestamp,
+            long timeoutLength, String outputFilePath, List<String> extraFlags)
+            throws IOException {
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(timeoutLength);
+        Server server = acquire(testHarnessPath);
+        boolean healthy = false;
+        try {
+            // A server that fails before writing its output file mustn't
+            // leave the output of an earlier commit behind
+            Files.deleteIfExists(Paths.get(outputFilePath));
+
+            List<String> flags = new ArrayList<>(Arrays.asList(
+                    "--work-directory=" + workingDirectoryPath,
+                    "--commit-hash=" + commitHash,
+                    "--commit-timestamp=" + timestamp,
+                    "--output_file=" + outputFilePath));
+            flags.addAll(extraFlags);
+            String response = server.request(String.join("\t", flags),
+                    deadline);
+            if(response == null) {
+                throw new HarnessTimeoutException("Test harness server "
+                        + server.getNumber() + " timed out while executing "
+                        + "on commit " + commitHash);
+            } else if(response == END_OF_OUTPUT) {
+                throw new IOException("Test harness server "
+                        + server.getNumber() + " exited while executing on "
+                        + "commit " + commitHash);
+            }
+
+            String status = response.substring(DONE_PREFIX.length()).trim();
+            if(status.equals(DONE_OK)) {
+                healthy = true;
+                return new TestOutputParser()
+                        .parseTestOutputFile(outputFilePath);
+            } else if(status.startsWith(DONE_FAILED)) {
+                healthy = true;
+                throw new IOException("Test harness server "
+                        + server.getNumber() + " failed on commit " + commitHash
+                        + ": " + status.substring(DONE_FAILED.length()).trim());
+            } else {
+                throw new IOException("Test harness server "
+                        + server.getNumber() + " gave the unexpected response "
+                        + "\"" + response + "\" on commit " + commitHash);
+            }
+        } catch(InterruptedException err) {
+            throw new IOException("Interrupted while waiting for test harness "
+                    + "server " + server.getNumber() + " to execute on commit "
+                    + commitHash, err);
+        } finally {
+            release(server, healthy);
+        }
+    }
+
+    /**
+     * Stops every server by closing its STDIN, killing any that don't exit on
+     * their own. Calling this more than once does nothing.
+     */
+    @Override
+    public void close() {
+        List<Server> serversToStop;
+        synchronized(this) {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            serversToStop = new ArrayList<>(servers);
+            servers.clear();
+        }
+        for(Server server : serversToStop) {
+            server.stop();
+        }
+    }
+
+    /**
+     * Borrows an idle server, starting a new one if fewer than
+     * <code>serverCount</code> are running, or waiting for one otherwise.
+     */
+    private Server acquire(String testHarnessPath) throws IOException {
+        int number;
+        try {
+            while(true) {
+                Server server = idleServers.poll();
+                if(server != null) {
+                    return server;
+                }
+                synchronized(this) {
+                    if(closed) {
+                        throw new IOException("The test harness servers have "
+                                + "been stopped.");
+                    } else if(numServersRunning < serverCount) {
+                        numServersRunning++;
+                        numServersStarted++;
+                        number = numServersStarted;
+                        break;
+                    }
+                }
+                // Check again every so often, in case a server was stopped
+                // instead of being released
+                server = idleServers.poll(ACQUIRE_POLL_MILLISECONDS,
+                        TimeUnit.MILLISECONDS);
+                if(server != null) {
+                    return server;
+                }
+            }
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a test "
+                    + "harness server", err);
+        }
+
+        System.out.println("Starting test harness server " + number + "...");
+        Server server;
+        try {
+            server = new Server(number, testHarnessPath);
+        } catch(IOException | RuntimeException err) {
+            synchronized(this) {
+                numServersRunning--;
+            }
+            throw err;
+        }
+        synchronized(this) {
+            servers.add(server);
+        }
+        return server;
+    }
+
+    /**
+     * Gives a server back, or replaces it if it can't be trusted with another
+     * commit.
+     */
+    private void release(Server server, boolean healthy) {
+        if(healthy) {
+            idleServers.add(server);
+            return;
+        }
+
+        System.out.println("Killing test harness server "
+                + server.getNumber() + ". A new one will be started for the "
+                + "next commit.");
+        server.kill();
+        synchronized(this) {
+            servers.remove(server);
+            numServersRunning--;
+        }
+    }
+
+    /**
+     * One running test harness server.
+     */
+    private final class Server {
+        private final int number;
+        private final Process process;
+        private final Writer requests;
+        private final BlockingQueue<String> responses;
+        private final ProcessOutput output;
+
+        Server(int number, String testHarnessPath) throws IOException {
+            this.number = number;
+            this.responses = new LinkedBlockingQueue<>();
+            this.output = new ProcessOutput((logDirectory == null)
+                    ? null : logDirectory.resolve("server-" + number + ".log"),
+                    consoleSampleRate);
+            this.process = Runtime.getRuntime().exec(
+                    new String[] {testHarnessPath, SERVER_FLAG});
+            this.requests = new OutputStreamWriter(process.getOutputStream(),
+                    StandardCharsets.UTF_8);
+
+            output.drain(process.getErrorStream());
+            output.drain(process.getInputStream(), DONE_PREFIX,
+                    responses::add, () -> responses.add(END_OF_OUTPUT));
+        }
+
+        int getNumber() {
+            return number;
+        }
+
+        /**
+         * Sends a request and waits for the response.
+         * @param deadline The <code>System.nanoTime()</code> to stop waiting
+         * at.
+         * @return The response line, <code>END_OF_OUTPUT</code> if the server
+         * exited, or <code>null</code> if it didn't answer in time.
+         */
+        String request(String request, long deadline)
+                throws IOException, InterruptedException {
+            // Throw away anything left over from an earlier request, but
+            // notice if the server exited while it was idle
+            String leftover;
+            while((leftover = responses.poll()) != null) {
+                if(leftover == END_OF_OUTPUT) {
+                    return END_OF_OUTPUT;
+                }
+            }
+            try {
+                requests.write(request);
+                requests.write('\n');
+                requests.flush();
+            } catch(IOException err) {
+                throw new IOException("Could not send a request to test "
+                        + "harness server " + number + ": " + err.getMessage(),
+                        err);
+            }
+            return responses.poll(Math.max(deadline - System.nanoTime(), 0),
+                    TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Closes the server's STDIN, and kills it if it doesn't exit soon
+         * after.
+         */
+        void stop() {
+            try {
+                requests.close();
+            } catch(IOException err) {
+                // The server has already exited
+            }
+            try {
+                if(!process.waitFor(SHUTDOWN_GRACE_MILLISECONDS,
+                        TimeUnit.MILLISECONDS)) {
+                    ProcessTree.kill(process);
+                }
+                output.finish(SHUTDOWN_GRACE_MILLISECONDS);
+            } catch(InterruptedException err) {
+                ProcessTree.kill(process);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Kills the server right away.
+         */
+        void kill() {
+            ProcessTree.kill(process);
+            try {
+                requests.close();
+            } catch(IOException err) {
+                // The server has already exited
+            }
+            try {
+                output.finish(SHUTDOWN_GRACE_MILLISECONDS);
+            } catch(InterruptedException err) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
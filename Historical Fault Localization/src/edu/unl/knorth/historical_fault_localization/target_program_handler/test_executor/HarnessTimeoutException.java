@@ -0,0 +1,15 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the test harness is killed because it ran past its timeout, as
+ * opposed to failing on its own or stalling.
+ */
+public class HarnessTimeoutException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public HarnessTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -1,8 +1,14 @@
 package edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor;
 
 import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
-import edu.unl.knorth.historical_fault_localization.utility.StreamGobbler;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -13,7 +19,7 @@ import java.util.concurrent.TimeUnit;
  * program.
  * <p/>
  * Be aware that every time <code>executeTests</code> is called, this class
- * creates a new process.
+ * creates a new process, unless it uses test harness servers.
  * <p/>
  * When the test harness is executed, it will be called with the following
  * command line:
@@ -37,16 +43,182 @@ import java.util.concurrent.TimeUnit;
  * intended for the Historical Fault Localization tool to receive to STDOUT.
  * Instead, it should be saved to a file formatted as described in
  * <code>TestOutputParser.java</code>.</li></ol>
+ * <p/>
+ * If the executor is given a shard count greater than 1, the test suite is
+ * split into that many shards, and each shard is run by its own test harness
+ * process, all at the same time. Each process is passed two more flags,
+ * <code>--shard-index=[index]</code> and <code>--shard-count=[count]</code>,
+ * where <code>index</code> counts from 0. The test harness should only run
+ * its share of the tests, for example every test whose position in the suite
+ * modulo <code>count</code> equals <code>index</code>. Each shard writes its
+ * own output file, named by adding <code>-shard[index]</code> to the end of
+ * the name of <code>outputFilePath</code>, and the files are parsed and merged
+ * in the order of their indexes. All shards share the same timeout, which
+ * starts when they're started. If any shard fails or times out, each failed
+ * shard is reported separately and the commit's results are discarded, since
+ * missing tests would skew the suspiciousness scores.
+ * <p/>
+ * By default, the output file is parsed once the test harness exits. With
+ * <code>HarnessOutputMode.FIFO</code> or <code>HarnessOutputMode.STDOUT</code>,
+ * <code>--output_file</code> is instead a named pipe or
+ * <code>/dev/stdout</code>, and the results are parsed while the test harness
+ * is still writing them, without ever being written to disk. See
+ * <code>HarnessRun</code>.
+ * <p/>
+ * Everything the test harness prints to its STDOUT and STDERR can also be
+ * saved to a log file per commit, named <code>[commitHash].log</code> (or
+ * <code>[commitHash]-shard[index].log</code> for each shard), and only a
+ * sample of it echoed to STDOUT. See <code>ProcessOutput</code>.
+ * <p/>
+ * Instead of starting the test harness for every commit, the executor can
+ * keep a few test harness servers running and send each commit to one of
+ * them. See <code>HarnessServerPool</code> for the protocol. Executors with
+ * servers should be closed once every commit has been processed.
+ * <p/>
+ * The timeout passed to <code>executeTests</code> can be tightened to fit how
+ * long the test harness usually takes, based on the commits it has already
+ * run on. See <code>HarnessDurations</code>. Test harness processes can also
+ * be killed as soon as their output stops growing, instead of only at the
+ * timeout. Whenever a test harness process is killed, every process it started
+ * is killed with it.
+ * <p/>
+ * Callers can pass more flags to the test harness for a commit, such as
+ * <code>--dependency-key=[key]</code>. They are added to the end of the
+ * command line, or of the request sent to a test harness server.
  */
-public final class TestExecutor {
+public final class TestExecutor implements AutoCloseable {
     public static final String DEFAULT_OUTPUT_FILE_LOCATION
             = System.getProperty("user.dir") + "/temp/test_out.txt";
     
+    private final int shardCount;
+    private final HarnessOutputMode outputMode;
+    private final Path logDirectory;
+    private final int consoleSampleRate;
+    private final HarnessServerPool serverPool;
+    private final HarnessDurations durations;
+    private final long stallTimeout;
+    
+    public TestExecutor() {
+        this(1);
+    }
+    
+    /**
+     * @param shardCount How many test harness processes to split each
+     * commit's tests between. If this is 1, the test harness is run once per
+     * commit, without the shard flags. Must be at least 1.
+     */
+    public TestExecutor(int shardCount) {
+        this(shardCount, HarnessOutputMode.FILE);
+    }
+    
+    /**
+     * @param shardCount How many test harness processes to split each
+     * commit's tests between. If this is 1, the test harness is run once per
+     * commit, without the shard flags. Must be at least 1.
+     * @param outputMode How the test harness hands its results over.
+     */
+    public TestExecutor(int shardCount, HarnessOutputMode outputMode) {
+        this(shardCount, outputMode, null, 1);
+    }
+    
+    /**
+     * @param shardCount How many test harness processes to split each
+     * commit's tests between. If this is 1, the test harness is run once per
+     * commit, without the shard flags. Must be at least 1.
+     * @param outputMode How the test harness hands its results over.
+     * @param logDirectory The directory to save everything the test harness
+     * prints to, in one log file per commit, or <code>null</code> to not keep
+     * logs.
+     * @param consoleSampleRate Echo every <code>consoleSampleRate</code>th
+     * line the test harness prints to STDOUT: 1 to echo everything, 0 to echo
+     * nothing.
+     */
+    public TestExecutor(int shardCount, HarnessOutputMode outputMode,
+            String logDirectory, int consoleSampleRate) {
+        this(shardCount, outputMode, logDirectory, consoleSampleRate, 0);
+    }
+    
+    /**
+     * @param shardCount How many test harness processes to split each
+     * commit's tests between. If this is 1, the test harness is run once per
+     * commit, without the shard flags. Must be at least 1.
+     * @param outputMode How the test harness hands its results over.
+     * @param logDirectory The directory to save everything the test harness
+     * prints to, in one log file per commit, or <code>null</code> to not keep
+     * logs.
+     * @param consoleSampleRate Echo every <code>consoleSampleRate</code>th
+     * line the test harness prints to STDOUT: 1 to echo everything, 0 to echo
+     * nothing.
+     * @param serverCount How many long-lived test harness servers to run
+     * commits on, or 0 to start the test harness from scratch for every
+     * commit. Servers can't be combined with shards, and always hand their
+     * results over in an output file. See <code>HarnessServerPool</code>.
+     */
+    public TestExecutor(int shardCount, HarnessOutputMode outputMode,
+            String logDirectory, int consoleSampleRate, int serverCount) {
+        this(shardCount, outputMode, logDirectory, consoleSampleRate,
+                serverCount, 0, 0);
+    }
+    
+    /**
+     * @param shardCount How many test harness processes to split each
+     * commit's tests between. If this is 1, the test harness is run once per
+     * commit, without the shard flags. Must be at least 1.
+     * @param outputMode How the test harness hands its results over.
+     * @param logDirectory The directory to save everything the test harness
+     * prints to, in one log file per commit, or <code>null</code> to not keep
+     * logs.
+     * @param consoleSampleRate Echo every <code>consoleSampleRate</code>th
+     * line the test harness prints to STDOUT: 1 to echo everything, 0 to echo
+     * nothing.
+     * @param serverCount How many long-lived test harness servers to run
+     * commits on, or 0 to start the test harness from scratch for every
+     * commit. Servers can't be combined with shards, and always hand their
+     * results over in an output file. See <code>HarnessServerPool</code>.
+     * @param adaptiveTimeoutFactor What to multiply the 99th percentile of
+     * recent test harness durations by to get each commit's timeout, or 0 to
+     * always use the timeout passed to <code>executeTests</code>. Must be 0 or
+     * at least 1.
+     * @param stallTimeout How long, in milliseconds, a test harness process
+     * may go without outputting anything before it is killed, or 0 to let it
+     * run until it times out. Not used with test harness servers, which sit
+     * idle between commits.
+     */
+    public TestExecutor(int shardCount, HarnessOutputMode outputMode,
+            String logDirectory, int consoleSampleRate, int serverCount,
+            double adaptiveTimeoutFactor, long stallTimeout) {
+        if(stallTimeout < 0) {
+            throw new IllegalArgumentException("stallTimeout must not be "
+                    + "negative, not " + stallTimeout);
+        }
+        if(serverCount < 0) {
+            throw new IllegalArgumentException("serverCount must not be "
+                    + "negative, not " + serverCount);
+        } else if(serverCount > 0 && shardCount > 1) {
+            throw new IllegalArgumentException("Test harness servers can't be "
+                    + "combined with shards");
+        }
+        if(shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be at least "
+                    + "1, not " + shardCount);
+        }
+        this.shardCount = shardCount;
+        this.outputMode = outputMode;
+        this.logDirectory = (logDirectory == null)
+                ? null : Paths.get(logDirectory);
+        this.consoleSampleRate = consoleSampleRate;
+        this.serverPool = (serverCount == 0) ? null : new HarnessServerPool(
+                serverCount, this.logDirectory, consoleSampleRate);
+        this.durations = new HarnessDurations(adaptiveTimeoutFactor);
+        this.stallTimeout = stallTimeout;
+    }
+    
     /**
      * Executes the test harness script, using a default output file path.
      * <p/>
      * As a side effect, this method will output to STDOUT anything that the
-     * test harness outputs to its STDOUT or STDERR streams.
+     * test harness outputs to its STDOUT or STDERR streams, or a sample of it
+     * if the executor was given a console sample rate other than 1.
      * @param testHarnessPath The path to the test harness script.
      * @param workingDirectoryPath The path to the target program repository
      * that will be passed as a parameter to the test harness script.
@@ -58,7 +230,10 @@ public final class TestExecutor {
      * <code>git show --format="%cD"</code>
      * @param timeoutLength The amount of time, in milliseconds, to allow the
      * test harness to run before timing it out. If the test harness times out,
-     * its process will be killed and an IOException will be thrown.
+     * its process will be killed and a <code>HarnessTimeoutException</code>
+     * will be thrown. If the executor has an adaptive timeout factor, this is
+     * only the longest timeout it will use, and a commit that runs past a
+     * shorter adaptive timeout is run again with this one.
      * @return A <code>TestExecutionData</code> representing data collected from
      * the test harness.
      * @throws IOException If there was a problem running the test harness or
@@ -76,7 +251,8 @@ public final class TestExecutor {
      * Executes the test harness script.
      * <p/>
      * As a side effect, this method will output to STDOUT anything that the
-     * test harness outputs to its STDOUT or STDERR streams.
+     * test harness outputs to its STDOUT or STDERR streams, or a sample of it
+     * if the executor was given a console sample rate other than 1.
      * @param testHarnessPath The path to the test harness script.
      * @param workingDirectoryPath The path to the target program repository
      * that will be passed as a parameter to the test harness script.
@@ -88,7 +264,10 @@ public final class TestExecutor {
      * <code>git show --format="%cD"</code>
      * @param timeoutLength The amount of time, in milliseconds, to allow the
      * test harness to run before timing it out. If the test harness times out,
-     * its process will be killed and an IOException will be thrown.
+     * its process will be killed and a <code>HarnessTimeoutException</code>
+     * will be thrown. If the executor has an adaptive timeout factor, this is
+     * only the longest timeout it will use, and a commit that runs past a
+     * shorter adaptive timeout is run again with this one.
      * @param outputFilePath The path to the location where the test harness
      * should save its output file.
      * @return A <code>TestExecutionData</code> representing data collected from
@@ -99,41 +278,267 @@ public final class TestExecutor {
     public TestExecutionData executeTests(String testHarnessPath,
             String workingDirectoryPath, String commitHash, String timestamp,
             long timeoutLength, String outputFilePath) throws IOException {
-        Runtime rt = Runtime.getRuntime();
-        
-        String[] commandLineString = buildCommandLineStrings(testHarnessPath,
-                workingDirectoryPath, commitHash, timestamp, outputFilePath);
-        Process pr = rt.exec(commandLineString);
-
-        // Output the process's output to STDOUT so the end user can see it
-        StreamGobbler outputGobbler = new StreamGobbler(pr.getInputStream());
-        StreamGobbler errorGobbler = new StreamGobbler(pr.getErrorStream());
-
-        outputGobbler.start();
-        errorGobbler.start();
+        return executeTests(testHarnessPath, workingDirectoryPath, commitHash,
+                timestamp, timeoutLength, outputFilePath,
+                Collections.<String>emptyList());
+    }
+    
+    /**
+     * Executes the test harness script with extra flags.
+     * <p/>
+     * As a side effect, this method will output to STDOUT anything that the
+     * test harness outputs to its STDOUT or STDERR streams, or a sample of it
+     * if the executor was given a console sample rate other than 1.
+     * @param testHarnessPath The path to the test harness script.
+     * @param workingDirectoryPath The path to the target program repository
+     * that will be passed as a parameter to the test harness script.
+     * @param commitHash The hash of the commit being processed in the
+     * target program's git repository. Passed as an argument to the test
+     * harness script.
+     * @param timestamp The timestamp for when the commit being processed was
+     * committed. It should be formatted in the format produced by executing
+     * <code>git show --format="%cD"</code>
+     * @param timeoutLength The amount of time, in milliseconds, to allow the
+     * test harness to run before timing it out. If the test harness times out,
+     * its process will be killed and a <code>HarnessTimeoutException</code>
+     * will be thrown. If the executor has an adaptive timeout factor, this is
+     * only the longest timeout it will use, and a commit that runs past a
+     * shorter adaptive timeout is run again with this one.
+     * @param outputFilePath The path to the location where the test harness
+     * should save its output file.
+     * @param extraFlags More flags to pass to the test harness, after the
+     * usual ones, such as <code>--dependency-key=[key]</code>.
+     * @return A <code>TestExecutionData</code> representing data collected from
+     * the test harness.
+     * @throws IOException If there was a problem running the test harness or
+     * parsing the output file it generates.
+     */
+    public TestExecutionData executeTests(String testHarnessPath,
+            String workingDirectoryPath, String commitHash, String timestamp,
+            long timeoutLength, String outputFilePath, List<String> extraFlags)
+            throws IOException {
+        long timeout = durations.getTimeout(timeoutLength);
+        long startTime = System.nanoTime();
+        TestExecutionData data;
+        try {
+            data = executeTestsOnce(testHarnessPath, workingDirectoryPath,
+                    commitHash, timestamp, timeout, outputFilePath,
+                    extraFlags);
+        } catch(HarnessTimeoutException err) {
+            if(timeout >= timeoutLength) {
+                throw err;
+            }
+            // The test suite may simply have got slower. Only runs that
+            // succeeded are recorded, so unless this commit is given the full
+            // timeout and recorded, the adaptive timeout would never catch up
+            // and every later commit would time out too.
+            System.out.println(err.getMessage());
+            System.out.println("Running the test harness again with the "
+                    + "configured timeout of " + (timeoutLength / 1000.0)
+                    + " seconds...");
+            startTime = System.nanoTime();
+            data = executeTestsOnce(testHarnessPath, workingDirectoryPath,
+                    commitHash, timestamp, timeoutLength, outputFilePath,
+                    extraFlags);
+        }
+        durations.record(TimeUnit.NANOSECONDS.toMillis(
+                System.nanoTime() - startTime));
+        return data;
+    }
+    
+    /**
+     * Runs the test harness on a commit once, with whichever of the servers,
+     * shards, or a single process the executor was set up to use.
+     */
+    private TestExecutionData executeTestsOnce(String testHarnessPath,
+            String workingDirectoryPath, String commitHash, String timestamp,
+            long timeout, String outputFilePath, List<String> extraFlags)
+            throws IOException {
+        if(serverPool != null) {
+            return serverPool.executeTests(testHarnessPath,
+                    workingDirectoryPath, commitHash, timestamp, timeout,
+                    outputFilePath, extraFlags);
+        } else if(shardCount > 1) {
+            return executeShardedTests(testHarnessPath, workingDirectoryPath,
+                    commitHash, timestamp, timeout, outputFilePath,
+                    extraFlags);
+        } else {
+            return executeSingleTest(testHarnessPath, workingDirectoryPath,
+                    commitHash, timestamp, timeout, outputFilePath,
+                    extraFlags);
+        }
+    }
+    
+    /**
+     * Stops any test harness servers. The executor can't be used afterwards
+     * if it has servers. Calling this more than once does nothing.
+     */
+    @Override
+    public void close() {
+        if(serverPool != null) {
+            serverPool.close();
+        }
+    }
+    
+    /**
+     * Runs the test harness once.
+     */
+    private TestExecutionData executeSingleTest(String testHarnessPath,
+            String workingDirectoryPath, String commitHash, String timestamp,
+            long timeoutLength, String outputFilePath, List<String> extraFlags)
+            throws IOException {
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(timeoutLength);
+        try(HarnessRun run = new HarnessRun(outputMode, outputFilePath,
+                getLogFile(commitHash + ".log"), consoleSampleRate)) {
+            run.start(buildCommandLineStrings(testHarnessPath,
+                    workingDirectoryPath, commitHash, timestamp,
+                    run.getHarnessOutputPath(), extraFlags));
+            
+            if(run.waitFor(deadline,
+                    TimeUnit.MILLISECONDS.toNanos(stallTimeout))) {
+                return run.readResults();
+            }
+            String message = "Test harness " + describeKill(run, timeoutLength)
+                    + " while executing on commit " + commitHash;
+            throw run.hasStalled() ? new IOException(message)
+                    : new HarnessTimeoutException(message);
+        } catch(InterruptedException err) {
+            throw new IOException("Test harness was interrupted while executing"
+                    + " on commit " + commitHash, err);
+        }
+    }
+    
+    /**
+     * Runs every shard of the test harness at once, and merges the shards'
+     * results as each shard finishes.
+     */
+    private TestExecutionData executeShardedTests(String testHarnessPath,
+            String workingDirectoryPath, String commitHash, String timestamp,
+            long timeoutLength, String outputFilePath, List<String> extraFlags)
+            throws IOException {
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(timeoutLength);
         
-        try {            
-            boolean success = pr.waitFor(timeoutLength, TimeUnit.MILLISECONDS);
+        HarnessRun[] runs = new HarnessRun[shardCount];
+        try {
+            for(int i = 0; i < shardCount; i++) {
+                // A shard that dies before writing its output file mustn't
+                // leave the output of an earlier commit behind
+                String shardOutputPath = getShardOutputPath(outputFilePath, i);
+                if(outputMode == HarnessOutputMode.FILE) {
+                    Files.deleteIfExists(Paths.get(shardOutputPath));
+                }
+                
+                runs[i] = new HarnessRun(outputMode, shardOutputPath,
+                        getLogFile(commitHash + "-shard" + i + ".log"),
+                        consoleSampleRate);
+                String[] commandLineString = buildCommandLineStrings(
+                        testHarnessPath, workingDirectoryPath, commitHash,
+                        timestamp, runs[i].getHarnessOutputPath(), extraFlags);
+                List<String> command = new ArrayList<>(
+                        Arrays.asList(commandLineString));
+                command.add("--shard-index=" + i);
+                command.add("--shard-count=" + shardCount);
+                runs[i].start(command.toArray(new String[command.size()]));
+            }
+            
+            // Merge the shards in order, so that the tests always end up in
+            // the same order, while the later shards keep running
+            TestExecutionData data = new TestExecutionData();
+            List<String> failures = new ArrayList<>();
+            boolean timedOut = false;
+            for(int i = 0; i < shardCount; i++) {
+                if(!runs[i].waitFor(deadline,
+                        TimeUnit.MILLISECONDS.toNanos(stallTimeout))) {
+                    failures.add(reportShardFailure(i, commitHash,
+                            describeKill(runs[i], timeoutLength)));
+                    timedOut |= !runs[i].hasStalled();
+                    continue;
+                }
+                
+                try {
+                    TestExecutionData shardData = runs[i].readResults();
+                    data.addStatements(shardData.getStatements());
+                    data.addTests(shardData.getTests());
+                } catch(IOException err) {
+                    failures.add(reportShardFailure(i, commitHash,
+                            err.getMessage()));
+                }
+            }
             
-            if(success) {
-                return new TestOutputParser()
-                        .parseTestOutputFile(outputFilePath);
-            } else {
-                pr.destroy();
-                throw new IOException("Test harness timed out while executing"
-                        + " on commit" + commitHash);
+            if(!failures.isEmpty()) {
+                String message = failures.size() + " of " + shardCount
+                        + " test harness shards failed on commit " + commitHash
+                        + ": " + String.join("; ", failures);
+                throw timedOut ? new HarnessTimeoutException(message)
+                        : new IOException(message);
             }
+            return data;
         } catch(InterruptedException err) {
             throw new IOException("Test harness was interrupted while executing"
                     + " on commit " + commitHash, err);
         } finally {
-            try {
-                outputGobbler.join(100);
-            } catch(InterruptedException err) { /* Swallow on purpose */ }
-            try {
-                errorGobbler.join(100);
-            } catch(InterruptedException err) { /* Swallow on purpose */ }
+            // Don't leave any shards running if another shard couldn't be
+            // started or the wait was interrupted
+            for(HarnessRun run : runs) {
+                if(run != null) {
+                    run.close();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reports a shard that failed to STDOUT.
+     * @return A short description of the failure.
+     */
+    private String reportShardFailure(int shardIndex, String commitHash,
+            String problem) {
+        String failure = "shard " + shardIndex + " " + problem;
+        System.out.println("Test harness shard " + shardIndex + " of "
+                + shardCount + " failed on commit " + commitHash + ": "
+                + problem);
+        return failure;
+    }
+    
+    /**
+     * @return Why a run of the test harness was killed, such as
+     * "timed out after 30 seconds".
+     */
+    private String describeKill(HarnessRun run, long timeoutLength) {
+        if(run.hasStalled()) {
+            return "stalled with no new output for "
+                    + (stallTimeout / 1000.0) + " seconds";
+        }
+        return "timed out after " + (timeoutLength / 1000.0) + " seconds";
+    }
+    
+    /**
+     * @return The path to a log file in the log directory, or
+     * <code>null</code> if logs aren't kept.
+     */
+    private Path getLogFile(String name) {
+        return (logDirectory == null) ? null : logDirectory.resolve(name);
+    }
+    
+    /**
+     * Works out the output file path for one shard of the test harness by
+     * adding the shard's index to the end of the file's name, before its
+     * extension. For example, shard 2's version of
+     * <code>temp/test_out.txt</code> is <code>temp/test_out-shard2.txt</code>.
+     * @param outputFilePath The output file path that all of the shards share.
+     * @param shardIndex The shard's index, counting from 0.
+     * @return The shard's own output file path.
+     */
+    static String getShardOutputPath(String outputFilePath, int shardIndex) {
+        int nameStart = outputFilePath.lastIndexOf('/') + 1;
+        int extensionStart = outputFilePath.lastIndexOf('.');
+        if(extensionStart <= nameStart) {
+            return outputFilePath + "-shard" + shardIndex;
         }
+        return outputFilePath.substring(0, extensionStart) + "-shard"
+                + shardIndex + outputFilePath.substring(extensionStart);
     }
     
     /**
@@ -150,19 +555,23 @@ public final class TestExecutor {
      * <code>git show --format="%cD"</code>
      * @param outputFilePath The path to the location where the test harness
      * should save its output file.
+     * @param extraFlags More flags to add to the end of the command line.
      * @return An array of Strings that can be passed to
      * <code>Runtime.exec()</code> to run the test harness.
      */
     private String[] buildCommandLineStrings(String testHarnessPath,
             String workingDirectoryPath, String commitHash, String timestamp,
-            String outputFilePath) {
-        String[] str = new String[5];
+            String outputFilePath, List<String> extraFlags) {
+        String[] str = new String[5 + extraFlags.size()];
         
         str[0] = testHarnessPath;
         str[1] = "--work-directory=" + workingDirectoryPath;
         str[2] = "--commit-hash=" + commitHash;
         str[3] = "--commit-timestamp=" + timestamp;
         str[4] = "--output_file=" + outputFilePath;
+        for(int i = 0; i < extraFlags.size(); i++) {
+            str[5 + i] = extraFlags.get(i);
+        }
         
         return str;
     }
@@ -4,7 +4,7 @@ import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementD
 import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
 import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashSet;
@@ -73,17 +73,30 @@ public final class TestOutputParser {
      */
     public TestExecutionData parseTestOutputFile(String outputFilePath)
             throws IOException {
-        List<String> fileContents = Files.readAllLines(Paths.get(outputFilePath),
-                Charset.defaultCharset());
-        
-        try {
-            return parseTestOutput(fileContents);
+        try(InputStream input = Files.newInputStream(Paths.get(outputFilePath))) {
+            return parseTestOutput(input);
         } catch(IOException err) {
             throw new IOException("Problem parsing output file "
                     + outputFilePath + ": " + err.getMessage(), err);
         }
     }
     
+    /**
+     * Parses the data from a stream containing the test script output. The
+     * stream is read a block at a time and is never held in memory all at
+     * once, so this works even for output that is many gigabytes long.
+     * @param input The stream to read the output from. It is read until its
+     * end, but is not closed.
+     * @return A <code>TestExecutionData</code> containing the output's
+     * information.
+     * @throws IOException If there was a problem reading the stream or the
+     * output is not in the right format.
+     */
+    public TestExecutionData parseTestOutput(InputStream input)
+            throws IOException {
+        return new CoverageStreamParser().parse(input);
+    }
+    
     /**
      * Parses the data from the test script output.
      * @param output The contents of the test script output file.
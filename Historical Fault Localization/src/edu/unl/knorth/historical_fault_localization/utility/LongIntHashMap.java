@@ -0,0 +1,108 @@
+package edu.unl.knorth.historical_fault_localization.utility;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from <code>long</code> keys to non-negative <code>int</code>
+ * values that stores both in plain arrays, so that looking up or adding an
+ * entry never boxes anything or creates any objects.
+ * <p/>
+ * This class is not thread-safe.
+ */
+public final class LongIntHashMap {
+    /** Returned by <code>get()</code> when a key isn't in the map. */
+    public static final int NOT_FOUND = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] keys;
+    // NOT_FOUND marks an empty slot
+    private int[] values;
+    private int size;
+
+    public LongIntHashMap() {
+        keys = new long[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+        Arrays.fill(values, NOT_FOUND);
+        size = 0;
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return The value stored for the key, or <code>NOT_FOUND</code> if there
+     * isn't one.
+     */
+    public int get(long key) {
+        int mask = keys.length - 1;
+        for(int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if(values[slot] == NOT_FOUND) {
+                return NOT_FOUND;
+            } else if(keys[slot] == key) {
+                return values[slot];
+            }
+        }
+    }
+
+    /**
+     * Stores a value for a key, replacing any value that was already stored
+     * for it.
+     * @param key The key.
+     * @param value The value. Must not be negative.
+     */
+    public void put(long key, int value) {
+        if(value < 0) {
+            throw new IllegalArgumentException("value must not be negative, "
+                    + "not " + value);
+        }
+
+        // Keep the table at most half full so that probe sequences stay short
+        if((size + 1) * 2 > keys.length) {
+            resize();
+        }
+
+        int mask = keys.length - 1;
+        for(int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if(values[slot] == NOT_FOUND) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                return;
+            } else if(keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, NOT_FOUND);
+
+        int mask = keys.length - 1;
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldValues[i] != NOT_FOUND) {
+                int slot = hash(oldKeys[i]) & mask;
+                while(values[slot] != NOT_FOUND) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        // Spread the bits around so that keys that differ only in their high
+        // bits don't all land in the same slot
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,111 @@
+package edu.unl.knorth.historical_fault_localization.utility;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the iterations of a loop over the indexes <code>0</code> to
+ * <code>count - 1</code> on a fork-join pool.
+ * <p/>
+ * The iterations may run in any order and on any thread, so the loop body
+ * should only write to its own slot of an output array (or similar). When it
+ * does, the results are exactly the same no matter how many threads are used.
+ * <p/>
+ * With a thread count of 1, the loop simply runs on the calling thread. With a
+ * thread count that matches the common fork-join pool's parallelism, the common
+ * pool is used. Otherwise the loop gets a pool of its own, which is shut down by
+ * <code>close()</code>.
+ */
+public final class ParallelLoop implements AutoCloseable {
+    // How many chunks to split the loop into per thread, so that threads that
+    // finish early can steal work from threads that are behind
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int threadCount;
+    private ForkJoinPool pool;
+
+    /**
+     * @param threadCount How many threads to run loops on. Must be at least 1.
+     */
+    public ParallelLoop(int threadCount) {
+        if(threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least "
+                    + "1, not " + threadCount);
+        }
+        this.threadCount = threadCount;
+        this.pool = null;
+    }
+
+    /**
+     * Runs <code>body</code> once for every index from <code>0</code> to
+     * <code>count - 1</code>, and waits for all of the iterations to finish.
+     * @param count The number of iterations.
+     * @param body The loop body. It receives the index of the iteration.
+     * @throws RuntimeException Any exception thrown by <code>body</code>.
+     */
+    public void forEachIndex(int count, IntConsumer body) {
+        if(threadCount == 1 || count <= 1) {
+            for(int i = 0; i < count; i++) {
+                body.accept(i);
+            }
+            return;
+        }
+
+        int grainSize = Math.max(1, count / (threadCount * CHUNKS_PER_THREAD));
+        getPool().invoke(new RangeAction(0, count, grainSize, body));
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Shuts down the loop's own pool, if it has one. The loop can't be used
+     * afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if(pool != null && pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if(pool == null) {
+            pool = threadCount == ForkJoinPool.getCommonPoolParallelism()
+                    ? ForkJoinPool.commonPool()
+                    : new ForkJoinPool(threadCount);
+        }
+        return pool;
+    }
+
+    private static final class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final int grainSize;
+        private final IntConsumer body;
+
+        RangeAction(int start, int end, int grainSize, IntConsumer body) {
+            this.start = start;
+            this.end = end;
+            this.grainSize = grainSize;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start <= grainSize) {
+                for(int i = start; i < end; i++) {
+                    body.accept(i);
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RangeAction(start, middle, grainSize, body),
+                        new RangeAction(middle, end, grainSize, body));
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package edu.unl.knorth.historical_fault_localization.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * One stage of a pipeline. Items are handed to the stage with
+ * <code>submit()</code> and processed by a fixed number of worker threads.
+ * <p/>
+ * Items wait in a bounded queue until a worker is free. When the queue is
+ * full, <code>submit()</code> blocks, so a fast stage can never get more than
+ * a few items ahead of a slow stage that follows it. This keeps the number of
+ * items held in memory at once small no matter how many items pass through
+ * the pipeline.
+ * <p/>
+ * Usage:
+ * <p/>
+ * <code>
+ * PipelineStage&lt;Item&gt; stage = new PipelineStage&lt;&gt;("Example", 4, 8,
+ * item -&gt; process(item));<br/>
+ * stage.start();<br/>
+ * for(Item item : items) {<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;stage.submit(item);<br/>
+ * }<br/>
+ * stage.finish();<br/>
+ * </code>
+ * <p/>
+ * The worker threads keep running until <code>finish()</code> or
+ * <code>abort()</code> is called, so one of them must always be called, even
+ * if submitting the items fails.
+ * @param <T> The type of item the stage processes.
+ */
+public class PipelineStage<T> {
+    // Placed in the queue once all of the items have been submitted. Each
+    // worker that takes it puts it back for the next worker and then stops.
+    private static final Object END_OF_ITEMS = new Object();
+
+    private final String name;
+    private final int workerCount;
+    private final BlockingQueue<Object> queue;
+    private final Consumer<T> worker;
+    private final List<Thread> threads;
+
+    /**
+     * @param name The name of the stage. It is used to name the worker threads
+     * and in error messages.
+     * @param workerCount How many items the stage may process at once. Must be
+     * at least 1.
+     * @param queueCapacity How many items may wait for a free worker before
+     * <code>submit()</code> blocks. Must be at least 1.
+     * @param worker Processes a single item. It may be called from several
+     * threads at once, so it must be thread-safe.
+     */
+    public PipelineStage(String name, int workerCount, int queueCapacity,
+            Consumer<T> worker) {
+        if(workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be at least "
+                    + "1, not " + workerCount);
+        }
+        this.name = name;
+        this.workerCount = workerCount;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.worker = worker;
+        this.threads = new ArrayList<>(workerCount);
+    }
+
+    /**
+     * Starts the worker threads.
+     */
+    public synchronized void start() {
+        if(!threads.isEmpty()) {
+            throw new IllegalStateException("The " + name + " stage has "
+                    + "already been started.");
+        }
+
+        for(int i = 1; i <= workerCount; i++) {
+            Thread thread = new Thread(this::work, name + " worker " + i);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Hands an item to the stage. If the queue is full, blocks until a worker
+     * takes an item out of it.
+     * @param item The item to process.
+     * @throws InterruptedException If interrupted while waiting for room in
+     * the queue.
+     */
+    public void submit(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    /**
+     * Tells the stage that no more items will be submitted, then waits for the
+     * workers to finish processing the items that were.
+     * @throws InterruptedException If interrupted while waiting for the
+     * workers to finish.
+     */
+    public void finish() throws InterruptedException {
+        queue.put(END_OF_ITEMS);
+        for(Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Stops the workers without waiting for them to process the items in the
+     * queue, which are dropped. Used when the pipeline can't be finished
+     * normally, so that the worker threads don't keep the program running.
+     * A worker in the middle of an item stops once it is done with it.
+     */
+    public synchronized void abort() {
+        queue.clear();
+        for(Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void work() {
+        try {
+            while(true) {
+                Object item = queue.take();
+                if(item == END_OF_ITEMS) {
+                    queue.put(END_OF_ITEMS);
+                    return;
+                }
+
+                try {
+                    worker.accept((T) item);
+                } catch(Throwable err) {
+                    // One bad item shouldn't stop the rest from being
+                    // processed. That includes Errors: an item too large to
+                    // fit in memory throws OutOfMemoryError, and its memory is
+                    // freed once it's dropped. If the worker died instead,
+                    // submit() and finish() would block forever on a full
+                    // queue once every worker was gone.
+                    System.out.println("The " + name + " stage could not "
+                            + "process an item due to error:");
+                    err.printStackTrace(System.out);
+                }
+            }
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+}
@@ -0,0 +1,411 @@
+package edu.unl.knorth.historical_fault_localization.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Drains the STDOUT and STDERR streams of a child process and passes on what
+ * they contain.
+ * <p/>
+ * Every stream is drained by a task on one shared pool of daemon threads, so
+ * threads are reused from process to process instead of being created for
+ * each one. Streams are read in large blocks and passed on a block of whole
+ * lines at a time, never a line at a time:
+ * <ul>
+ * <li>If a log file is given, every block is put on a bounded queue, and a
+ * single writer task appends whatever has queued up to the log file in one
+ * batch. If the log file falls behind, the queue fills up and the streams
+ * stop being read until it catches up, so memory use stays bounded. Both
+ * streams go to the same log file, interleaved a line at a time.</li>
+ * <li>Lines are echoed to STDOUT with one write per block. With a console
+ * sample rate of <code>n</code>, only every <code>n</code>th line of each
+ * stream is echoed; with 0, nothing is.</li>
+ * </ul>
+ * A process that talks to the tool over its STDOUT can mark the lines meant
+ * for the tool with a prefix. Those lines are taken out of the stream and
+ * handed to a callback instead, and everything else is logged and echoed as
+ * usual.
+ * <p/>
+ * <code>finish()</code> waits for the streams to reach their end and for the
+ * log file to be written. If a stream is still open after the grace period,
+ * for example because a process the child started still has it open, it keeps
+ * being drained in the background and the log file is closed once it ends.
+ */
+public final class ProcessOutput {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    // At most this many blocks wait to be written to the log file
+    private static final int LOG_QUEUE_CAPACITY = 64;
+    private static final byte[] END_OF_OUTPUT = new byte[0];
+
+    private static final ExecutorService THREADS =
+            Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "Process output");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final int consoleSampleRate;
+    private final Path logFile;
+    private final BlockingQueue<byte[]> logQueue;
+    // Counted down once every stream has ended and the log file is closed
+    private final CountDownLatch done;
+    private final AtomicLong bytesSeen;
+
+    private int activeDrains;
+    private boolean finishing;
+    private boolean ended;
+
+    /**
+     * @param logFile The file to write everything the process outputs to, or
+     * <code>null</code> to not keep a log. The file is replaced if it exists,
+     * and its directory is created if it doesn't.
+     * @param consoleSampleRate Echo every <code>consoleSampleRate</code>th
+     * line to STDOUT: 1 to echo everything, 0 to echo nothing.
+     * @throws IOException If the log file couldn't be created.
+     */
+    public ProcessOutput(Path logFile, int consoleSampleRate)
+            throws IOException {
+        if(consoleSampleRate < 0) {
+            throw new IllegalArgumentException("consoleSampleRate must not be "
+                    + "negative, not " + consoleSampleRate);
+        }
+        this.consoleSampleRate = consoleSampleRate;
+        this.logFile = logFile;
+        this.done = new CountDownLatch(1);
+        this.bytesSeen = new AtomicLong();
+        this.activeDrains = 0;
+        this.finishing = false;
+        this.ended = false;
+
+        if(logFile == null) {
+            this.logQueue = null;
+        } else {
+            if(logFile.getParent() != null) {
+                Files.createDirectories(logFile.getParent());
+            }
+            OutputStream log = new BufferedOutputStream(
+                    Files.newOutputStream(logFile), BLOCK_SIZE);
+            this.logQueue = new ArrayBlockingQueue<>(LOG_QUEUE_CAPACITY);
+            THREADS.execute(() -> writeLog(log));
+        }
+    }
+
+    /**
+     * Starts draining one of the process's streams.
+     * @param stream The stream to drain. It is closed once it ends.
+     */
+    public void drain(InputStream stream) {
+        drain(stream, null, null, null);
+    }
+
+    /**
+     * Starts draining one of the process's streams, taking out the lines that
+     * are messages to the tool.
+     * @param stream The stream to drain. It is closed once it ends.
+     * @param messagePrefix Lines that start with this are messages. They are
+     * not logged or echoed.
+     * @param messages Called with each message as soon as it is read, without
+     * its line terminator.
+     * @param endOfStream Called once the stream ends, after the last message.
+     */
+    public void drain(InputStream stream, String messagePrefix,
+            Consumer<String> messages, Runnable endOfStream) {
+        byte[] prefix = (messagePrefix == null) ? null
+                : messagePrefix.getBytes(StandardCharsets.UTF_8);
+        synchronized(this) {
+            if(finishing) {
+                throw new IllegalStateException("finish() was already called");
+            }
+            activeDrains++;
+        }
+        THREADS.execute(() -> {
+            try {
+                drainStream(stream, prefix, messages);
+            } finally {
+                try {
+                    if(endOfStream != null) {
+                        endOfStream.run();
+                    }
+                } finally {
+                    drainFinished();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for every stream to end and for the log file to be written. Call
+     * this once the process has exited or been killed. No more streams can be
+     * drained afterwards.
+     * @param graceMilliseconds How long to wait.
+     * @return <code>true</code> if all of the output has been handled, or
+     * <code>false</code> if some of it is still being drained.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean finish(long graceMilliseconds) throws InterruptedException {
+        synchronized(this) {
+            finishing = true;
+            endIfDone();
+        }
+        return done.await(graceMilliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The log file, or <code>null</code> if there isn't one.
+     */
+    public Path getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * @return How many bytes have been read from the process's streams so far.
+     * This can be polled while the process runs to tell whether it is still
+     * printing anything.
+     */
+    public long getBytesSeen() {
+        return bytesSeen.get();
+    }
+
+    /**
+     * Runs a task that reads a process's output on the same threads that
+     * drain streams, for output that is parsed instead of just passed on.
+     * @param reader The task.
+     * @return A future that completes when the task does.
+     */
+    public static Future<?> submitReader(Runnable reader) {
+        return THREADS.submit(reader);
+    }
+
+    private void drainStream(InputStream stream, byte[] prefix,
+            Consumer<String> messages) {
+        byte[] buffer = new byte[BLOCK_SIZE];
+        int length = 0;
+        long linesSeen = 0;
+        // Only a line's first bytes can make it a message, not the middle of
+        // a line that was too long for the buffer
+        boolean atLineStart = true;
+        try(InputStream input = stream) {
+            int bytesRead;
+            while((bytesRead = input.read(buffer, length,
+                    buffer.length - length)) != -1) {
+                length += bytesRead;
+                bytesSeen.addAndGet(bytesRead);
+
+                // Pass on every whole line and keep the partial line at the
+                // end, unless the buffer is full of one long line
+                int end = length;
+                while(end > 0 && buffer[end - 1] != '\n') {
+                    end--;
+                }
+                if(end == 0 && length < buffer.length) {
+                    continue;
+                } else if(end == 0) {
+                    end = length;
+                }
+
+                boolean endsLine = buffer[end - 1] == '\n';
+                int kept = (prefix == null) ? end
+                        : takeMessages(buffer, end, atLineStart, prefix,
+                                messages);
+                linesSeen = handleBlock(buffer, kept, linesSeen);
+                atLineStart = endsLine;
+                System.arraycopy(buffer, end, buffer, 0, length - end);
+                length -= end;
+            }
+            if(length > 0) {
+                int kept = (prefix == null) ? length
+                        : takeMessages(buffer, length, atLineStart, prefix,
+                                messages);
+                handleBlock(buffer, kept, linesSeen);
+            }
+        } catch(IOException err) {
+            // The process was killed or the stream was closed under us, so
+            // there's nothing left to read
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes the messages out of a block of whole lines and passes them on,
+     * moving the lines that are left up to fill the gaps.
+     * @param atLineStart Whether the block starts at the beginning of a line.
+     * @return The length of the block that is left.
+     */
+    private static int takeMessages(byte[] buffer, int length,
+            boolean atLineStart, byte[] prefix, Consumer<String> messages) {
+        int kept = 0;
+        int lineStart = 0;
+        while(lineStart < length) {
+            int lineEnd = lineStart;
+            while(lineEnd < length && buffer[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if(lineEnd < length) {
+                lineEnd++;
+            }
+
+            if((lineStart > 0 || atLineStart)
+                    && startsWith(buffer, lineStart, lineEnd, prefix)) {
+                int textEnd = lineEnd;
+                while(textEnd > lineStart && (buffer[textEnd - 1] == '\n'
+                        || buffer[textEnd - 1] == '\r')) {
+                    textEnd--;
+                }
+                messages.accept(new String(buffer, lineStart,
+                        textEnd - lineStart, StandardCharsets.UTF_8));
+            } else {
+                System.arraycopy(buffer, lineStart, buffer, kept,
+                        lineEnd - lineStart);
+                kept += lineEnd - lineStart;
+            }
+            lineStart = lineEnd;
+        }
+        return kept;
+    }
+
+    private static boolean startsWith(byte[] buffer, int start, int end,
+            byte[] prefix) {
+        if(end - start < prefix.length) {
+            return false;
+        }
+        for(int i = 0; i < prefix.length; i++) {
+            if(buffer[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes a block of whole lines on to the log file and the console.
+     * @return The number of lines seen so far in this stream.
+     */
+    private long handleBlock(byte[] buffer, int length, long linesSeen)
+            throws InterruptedException {
+        if(length == 0) {
+            return linesSeen;
+        }
+        if(logQueue != null) {
+            logQueue.put(Arrays.copyOf(buffer, length));
+        }
+
+        if(consoleSampleRate == 1) {
+            System.out.write(buffer, 0, length);
+            System.out.flush();
+            return linesSeen;
+        } else if(consoleSampleRate == 0) {
+            return linesSeen;
+        }
+
+        ByteArrayOutputStream sample = new ByteArrayOutputStream();
+        int lineStart = 0;
+        for(int i = 0; i < length; i++) {
+            if(buffer[i] == '\n' || i == length - 1) {
+                if(linesSeen % consoleSampleRate == 0) {
+                    sample.write(buffer, lineStart, i + 1 - lineStart);
+                }
+                linesSeen++;
+                lineStart = i + 1;
+            }
+        }
+        if(sample.size() > 0) {
+            System.out.write(sample.toByteArray(), 0, sample.size());
+            System.out.flush();
+        }
+        return linesSeen;
+    }
+
+    private void writeLog(OutputStream log) {
+        List<byte[]> batch = new ArrayList<>();
+        boolean failed = false;
+        try {
+            while(true) {
+                batch.add(logQueue.take());
+                logQueue.drainTo(batch);
+
+                boolean reachedEnd = false;
+                for(byte[] block : batch) {
+                    if(block == END_OF_OUTPUT) {
+                        reachedEnd = true;
+                    } else if(!failed) {
+                        try {
+                            log.write(block);
+                        } catch(IOException err) {
+                            // Keep taking blocks so the streams don't block
+                            failed = reportLogError(err);
+                        }
+                    }
+                }
+                batch.clear();
+
+                if(reachedEnd) {
+                    break;
+                } else if(!failed && logQueue.isEmpty()) {
+                    try {
+                        log.flush();
+                    } catch(IOException err) {
+                        failed = reportLogError(err);
+                    }
+                }
+            }
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                log.close();
+            } catch(IOException err) {
+                if(!failed) {
+                    reportLogError(err);
+                }
+            }
+            done.countDown();
+        }
+    }
+
+    private boolean reportLogError(IOException err) {
+        System.out.println("Could not write to log file " + logFile + ":");
+        System.out.println(err.getMessage());
+        return true;
+    }
+
+    private synchronized void drainFinished() {
+        activeDrains--;
+        endIfDone();
+    }
+
+    private synchronized void endIfDone() {
+        if(ended || !finishing || activeDrains > 0) {
+            return;
+        }
+        ended = true;
+        if(logQueue == null) {
+            done.countDown();
+        } else {
+            // The writer never waits for this lock, so this can't deadlock
+            try {
+                logQueue.put(END_OF_OUTPUT);
+            } catch(InterruptedException err) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package edu.unl.knorth.historical_fault_localization.utility;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Kills a process along with every process it started. Killing only the
+ * process itself, like <code>Process.destroy()</code> does, leaves behind
+ * anything it started, such as the test runner a test harness script
+ * launched, which keeps running and can keep the process's output open.
+ * <p/>
+ * Every process is killed before the process that started it, deepest
+ * first, and the process itself last. A process that is still alive can
+ * start more processes, so killing a parent first would leave a window for
+ * its children to do that, and would leave them orphaned, with nothing
+ * connecting them to the process anymore. The processes the tool starts share
+ * the tool's own process group, so signalling the group isn't an option.
+ * <p/>
+ * On Java 9 and newer, the processes are found with
+ * <code>Process.children()</code> and <code>ProcessHandle.children()</code>,
+ * which are called by reflection so that the tool still runs on Java 8. On
+ * Java 8, they are found with a single <code>ps</code> call on Unix-like
+ * systems, and killed with a single <code>kill</code> call. If neither works,
+ * only the process itself is killed.
+ */
+public final class ProcessTree {
+    // How long to wait for `ps` and `kill`
+    private static final long COMMAND_TIMEOUT_SECONDS = 5;
+
+    private ProcessTree() {
+        // Only has static methods
+    }
+
+    /**
+     * Forcibly kills a process and all of its descendants.
+     * @param process The process to kill.
+     */
+    public static void kill(Process process) {
+        // Find the descendants before killing the process, since they stop
+        // being its descendants once it's gone
+        List<Object> handles = findDescendantHandles(process);
+        if(handles != null) {
+            for(Object handle : handles) {
+                destroyHandle(handle);
+            }
+            process.destroyForcibly();
+            return;
+        }
+
+        long pid = findUnixPid(process);
+        List<Long> descendants = (pid > 0)
+                ? findDescendantPids(pid) : Collections.<Long>emptyList();
+        if(!descendants.isEmpty()) {
+            List<String> command = new ArrayList<>(descendants.size() + 2);
+            command.add("kill");
+            command.add("-KILL");
+            for(long descendant : descendants) {
+                command.add(Long.toString(descendant));
+            }
+            runQuietly(command.toArray(new String[command.size()]));
+        }
+        process.destroyForcibly();
+    }
+
+    /**
+     * @return The <code>ProcessHandle</code>s of the process's descendants,
+     * deepest first, or <code>null</code> if <code>Process.children()</code>
+     * isn't available.
+     */
+    private static List<Object> findDescendantHandles(Process process) {
+        try {
+            Method processChildren = Process.class.getMethod("children");
+            Method handleChildren = Class.forName("java.lang.ProcessHandle")
+                    .getMethod("children");
+            List<Object> handles = new ArrayList<>();
+            collectHandles(processChildren.invoke(process), handleChildren,
+                    handles);
+            return handles;
+        } catch(ReflectiveOperationException | RuntimeException err) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds each child in a stream of <code>ProcessHandle</code>s to a list
+     * after its own descendants.
+     */
+    private static void collectHandles(Object children, Method handleChildren,
+            List<Object> handles) throws ReflectiveOperationException {
+        List<Object> snapshot = new ArrayList<>();
+        try(Stream<?> stream = (Stream<?>) children) {
+            Iterator<?> iterator = stream.iterator();
+            while(iterator.hasNext()) {
+                snapshot.add(iterator.next());
+            }
+        }
+        for(Object child : snapshot) {
+            collectHandles(handleChildren.invoke(child), handleChildren,
+                    handles);
+            handles.add(child);
+        }
+    }
+
+    private static void destroyHandle(Object handle) {
+        try {
+            Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+            handleClass.getMethod("destroyForcibly").invoke(handle);
+        } catch(ReflectiveOperationException | RuntimeException err) {
+            // The process has already exited or can't be killed by us
+        }
+    }
+
+    /**
+     * @return The process ID of a process on a Unix-like system running Java
+     * 8, or -1 if it can't be found.
+     */
+    private static long findUnixPid(Process process) {
+        try {
+            Field pidField = process.getClass().getDeclaredField("pid");
+            pidField.setAccessible(true);
+            return pidField.getLong(process);
+        } catch(ReflectiveOperationException | RuntimeException err) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return The IDs of a process's descendants, deepest first, found by
+     * listing every process once with <code>ps</code>.
+     */
+    private static List<Long> findDescendantPids(long pid) {
+        return orderDescendants(pid,
+                runQuietly("ps", "-A", "-o", "pid=", "-o", "ppid="));
+    }
+
+    /**
+     * Works out the descendants of a process from a list of processes.
+     * @param pid The process's ID.
+     * @param processLines One line per process, each with the process's ID
+     * and its parent's ID, separated by whitespace, as printed by
+     * <code>ps -o pid= -o ppid=</code>. Lines that don't fit are ignored.
+     * @return The IDs of the process's descendants, each one after its own
+     * descendants.
+     */
+    static List<Long> orderDescendants(long pid, List<String> processLines) {
+        Map<Long, List<Long>> childrenByParent = new HashMap<>();
+        for(String line : processLines) {
+            String[] fields = line.trim().split("\\s+");
+            if(fields.length != 2) {
+                continue;
+            }
+            try {
+                long child = Long.parseLong(fields[0]);
+                long parent = Long.parseLong(fields[1]);
+                childrenByParent.computeIfAbsent(parent,
+                        key -> new ArrayList<>()).add(child);
+            } catch(NumberFormatException err) {
+                // Not a process
+            }
+        }
+
+        List<Long> descendants = new ArrayList<>();
+        collectPids(pid, childrenByParent, descendants);
+        return descendants;
+    }
+
+    private static void collectPids(long pid,
+            Map<Long, List<Long>> childrenByParent, List<Long> pids) {
+        List<Long> children = childrenByParent.remove(pid);
+        if(children == null) {
+            return;
+        }
+        for(long child : children) {
+            collectPids(child, childrenByParent, pids);
+            pids.add(child);
+        }
+    }
+
+    /**
+     * Runs a short command, ignoring any problems.
+     * @return The lines it printed to STDOUT.
+     */
+    private static List<String> runQuietly(String... command) {
+        List<String> lines = new ArrayList<>();
+        try {
+            Process pr = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try(BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(pr.getInputStream()))) {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            if(!pr.waitFor(COMMAND_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                pr.destroyForcibly();
+            }
+        } catch(IOException err) {
+            // The command isn't available
+        } catch(InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+        return lines;
+    }
+}
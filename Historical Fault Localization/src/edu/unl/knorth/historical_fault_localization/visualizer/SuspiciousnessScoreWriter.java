@@ -0,0 +1,108 @@
+package edu.unl.knorth.historical_fault_localization.visualizer;
+
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Saves the suspiciousness scores of a commit to a CSV file, so that they can
+ * be analyzed after the tool has finished without keeping them in memory.
+ * Each commit gets its own file, named like the commit's image:
+ * <p/>
+ * <code>[outputDirectory]/[orderProcessed]-[commitHash].csv</code>
+ * <p/>
+ * The file has a header line followed by one line per statement:
+ * <p/>
+ * <code>file,line,suspiciousness</code>
+ * <p/>
+ * A commit's scores can also be saved translated into the line numbers of
+ * another commit, to a file named
+ * <code>[orderProcessed]-[commitHash]-in-[otherCommitHash].csv</code>.
+ * <p/>
+ * File names that contain commas, quotes, or line breaks are quoted, with any
+ * quotes doubled. The file is written to a temporary file and then moved into
+ * place, so a file that exists is always complete.
+ */
+public class SuspiciousnessScoreWriter {
+    /**
+     * Saves the suspiciousness scores for a single commit.
+     * @param outputDirectory The directory to save the CSV file to. It is
+     * created if it doesn't exist.
+     * @param suspiciousnessScores The suspiciousness scores to save.
+     * @throws IOException If there was a problem saving the file.
+     */
+    public void writeScoresForOneCommit(String outputDirectory,
+            SuspiciousnessScoresFromCommit suspiciousnessScores)
+            throws IOException {
+        writeScores(outputDirectory, suspiciousnessScores.getOrderProcessed()
+                + "-" + suspiciousnessScores.getCommitHash() + ".csv",
+                suspiciousnessScores);
+    }
+
+    /**
+     * Saves the suspiciousness scores of a single commit after they have been
+     * translated into the line numbers of another commit.
+     * @param outputDirectory The directory to save the CSV file to. It is
+     * created if it doesn't exist.
+     * @param suspiciousnessScores The translated suspiciousness scores, along
+     * with the commit they were calculated for.
+     * @param otherCommitHash The hash of the commit whose line numbers the
+     * scores were translated into.
+     * @throws IOException If there was a problem saving the file.
+     */
+    public void writeTranslatedScoresForOneCommit(String outputDirectory,
+            SuspiciousnessScoresFromCommit suspiciousnessScores,
+            String otherCommitHash) throws IOException {
+        writeScores(outputDirectory, suspiciousnessScores.getOrderProcessed()
+                + "-" + suspiciousnessScores.getCommitHash() + "-in-"
+                + otherCommitHash + ".csv", suspiciousnessScores);
+    }
+
+    private void writeScores(String outputDirectory, String fileName,
+            SuspiciousnessScoresFromCommit suspiciousnessScores)
+            throws IOException {
+        Path directory = Paths.get(outputDirectory);
+        Files.createDirectories(directory);
+        Path outputFile = directory.resolve(fileName);
+        Path temporaryFile = Files.createTempFile(directory,
+                suspiciousnessScores.getCommitHash(), ".tmp");
+
+        try {
+            try(Writer writer = Files.newBufferedWriter(temporaryFile,
+                    StandardCharsets.UTF_8)) {
+                writer.write("file,line,suspiciousness\n");
+                for(SuspiciousnessScore score
+                        : suspiciousnessScores.getSuspiciousnessScores()) {
+                    writer.write(quote(score.getStatement().getFile()));
+                    writer.write(',');
+                    writer.write(Integer.toString(
+                            score.getStatement().getLineNumber()));
+                    writer.write(',');
+                    writer.write(Double.toString(score.getSuspiciousness()));
+                    writer.write('\n');
+                }
+            }
+            Files.move(temporaryFile, outputFile,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Quotes a CSV field if it needs to be.
+     */
+    static String quote(String field) {
+        if(field.indexOf(',') == -1 && field.indexOf('"') == -1
+                && field.indexOf('\n') == -1 && field.indexOf('\r') == -1) {
+            return field;
+        }
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -47,7 +47,9 @@ public class SuspiciousnessVisualizer {
     }
     
     /**
-     * Creates an image for a single commit.
+     * Creates an image for a single commit. This method only touches the
+     * image it creates, so several commits can be visualized at once from
+     * different threads.
      * @param statementHeight The number of pixels tall that each statement's
      * bar of color should be.
      * @param statementWidth The number of pixels wide that each statement's bar
@@ -59,7 +61,7 @@ public class SuspiciousnessVisualizer {
      * @param suspiciousnessScores The suspiciousness scores to visualize.
      * @throws IOException If there was a problem saving the file.
      */
-    private void visualizeSuspicousnessForOneCommit(int statementHeight,
+    public void visualizeSuspicousnessForOneCommit(int statementHeight,
             int statementWidth, int fileMargin, int fileFontSize,
             String outputDirectory,
             SuspiciousnessScoresFromCommit suspiciousnessScores)
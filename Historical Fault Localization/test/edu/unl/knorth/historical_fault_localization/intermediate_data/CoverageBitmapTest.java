@@ -0,0 +1,154 @@
+package edu.unl.knorth.historical_fault_localization.intermediate_data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CoverageBitmapTest {
+    @Test
+    public void fromIdsIgnoresDuplicatesAndOrder() {
+        CoverageBitmap bitmap = CoverageBitmap.fromIds(
+                new int[] {5, 3, 5, 1, 3}, 5);
+
+        assertEquals(3, bitmap.cardinality());
+        assertTrue(bitmap.contains(1));
+        assertTrue(bitmap.contains(3));
+        assertTrue(bitmap.contains(5));
+        assertFalse(bitmap.contains(2));
+        assertFalse(bitmap.contains(-1));
+
+        PrimitiveIterator.OfInt ids = bitmap.idIterator();
+        assertEquals(1, ids.nextInt());
+        assertEquals(3, ids.nextInt());
+        assertEquals(5, ids.nextInt());
+        assertFalse(ids.hasNext());
+    }
+
+    @Test
+    public void fromIdsOnlyUsesRequestedLength() {
+        CoverageBitmap bitmap = CoverageBitmap.fromIds(
+                new int[] {1, 2, 900}, 2);
+
+        assertEquals(2, bitmap.cardinality());
+        assertFalse(bitmap.contains(900));
+    }
+
+    @Test
+    public void intersectionAndUnionAgreeAcrossRepresentations() {
+        // Many IDs close together produces a bitset, a few spread out IDs
+        // produces a sorted array
+        int[] denseIds = new int[200];
+        for(int i = 0; i < denseIds.length; i++) {
+            denseIds[i] = i;
+        }
+        CoverageBitmap dense = CoverageBitmap.fromIds(denseIds,
+                denseIds.length);
+        CoverageBitmap sparse = CoverageBitmap.fromIds(
+                new int[] {10, 150, 5000, 90000}, 4);
+        CoverageBitmap otherSparse = CoverageBitmap.fromIds(
+                new int[] {150, 90000, 123456}, 3);
+
+        assertEquals(2, dense.intersectionSize(sparse));
+        assertEquals(2, sparse.intersectionSize(dense));
+        assertEquals(202, dense.unionSize(sparse));
+        assertEquals(202, sparse.unionSize(dense));
+
+        assertEquals(2, sparse.intersectionSize(otherSparse));
+        assertEquals(5, sparse.unionSize(otherSparse));
+
+        assertEquals(200, dense.intersectionSize(dense));
+        assertEquals(200, dense.unionSize(dense));
+    }
+
+    @Test
+    public void orIntoSetsEveryId() {
+        CoverageBitmap bitmap = CoverageBitmap.fromIds(
+                new int[] {0, 63, 64, 1000}, 4);
+        long[] words = new long[bitmap.getRequiredWords()];
+        bitmap.orInto(words);
+
+        assertEquals(16, words.length);
+        assertEquals((1L << 63) | 1L, words[0]);
+        assertEquals(1L, words[1]);
+        assertEquals(1L << (1000 - 15 * 64), words[15]);
+    }
+
+    @Test
+    public void emptyBitmap() {
+        CoverageBitmap bitmap = CoverageBitmap.fromIds(new int[0], 0);
+
+        assertEquals(0, bitmap.cardinality());
+        assertEquals(0, bitmap.getRequiredWords());
+        assertFalse(bitmap.idIterator().hasNext());
+        assertEquals(0, bitmap.intersectionSize(bitmap));
+    }
+
+    @Test
+    public void fingerprintsDependOnlyOnIds() {
+        CoverageBitmap bitmap = CoverageBitmap.fromIds(
+                new int[] {3, 1, 2, 1}, 4);
+        assertTrue(bitmap.hasSameFingerprint(
+                CoverageBitmap.fromIds(new int[] {1, 2, 3}, 3)));
+        assertFalse(bitmap.hasSameFingerprint(
+                CoverageBitmap.fromIds(new int[] {1, 2, 4}, 3)));
+        assertFalse(bitmap.hasSameFingerprint(
+                CoverageBitmap.fromIds(new int[] {1, 2}, 2)));
+        assertFalse(CoverageBitmap.fromIds(new int[] {0}, 1)
+                .hasSameFingerprint(CoverageBitmap.fromIds(new int[0], 0)));
+    }
+
+    @Test
+    public void hasSameIdsAcrossRepresentations() {
+        int[] denseIds = new int[200];
+        for(int i = 0; i < denseIds.length; i++) {
+            denseIds[i] = i * 2;
+        }
+        CoverageBitmap dense = CoverageBitmap.fromIds(denseIds, 200);
+        CoverageBitmap sparse = CoverageBitmap.fromIds(
+                new int[] {7, 5000, 100000}, 3);
+
+        assertTrue(dense.hasSameIds(CoverageBitmap.fromIds(denseIds, 200)));
+        assertTrue(sparse.hasSameIds(
+                CoverageBitmap.fromIds(new int[] {100000, 7, 5000, 7}, 4)));
+        assertFalse(dense.hasSameIds(CoverageBitmap.fromIds(denseIds, 199)));
+        assertFalse(sparse.hasSameIds(
+                CoverageBitmap.fromIds(new int[] {7, 5000, 100001}, 3)));
+        assertFalse(dense.hasSameIds(sparse));
+        assertTrue(CoverageBitmap.fromIds(new int[0], 0)
+                .hasSameIds(CoverageBitmap.fromIds(new int[0], 0)));
+    }
+
+    @Test
+    public void forEachDifferenceAcrossRepresentations() {
+        int[] denseIds = new int[200];
+        for(int i = 0; i < denseIds.length; i++) {
+            denseIds[i] = i;
+        }
+        CoverageBitmap dense = CoverageBitmap.fromIds(denseIds,
+                denseIds.length);
+        denseIds[70] = 300;
+        CoverageBitmap otherDense = CoverageBitmap.fromIds(denseIds,
+                denseIds.length);
+        CoverageBitmap sparse = CoverageBitmap.fromIds(
+                new int[] {10, 5000}, 2);
+
+        List<Integer> onlyInThis = new ArrayList<>();
+        List<Integer> onlyInOther = new ArrayList<>();
+        dense.forEachDifference(otherDense, onlyInThis::add,
+                onlyInOther::add);
+        assertEquals(Arrays.asList(70), onlyInThis);
+        assertEquals(Arrays.asList(300), onlyInOther);
+
+        onlyInThis.clear();
+        onlyInOther.clear();
+        sparse.forEachDifference(dense, onlyInThis::add, onlyInOther::add);
+        assertEquals(Arrays.asList(5000), onlyInThis);
+        assertEquals(199, onlyInOther.size());
+        assertFalse(onlyInOther.contains(10));
+    }
+}
@@ -0,0 +1,26 @@
+package edu.unl.knorth.historical_fault_localization.intermediate_data;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class StatementIdMapTest {
+    @Test
+    public void putAndGet() {
+        StatementIdMap map = new StatementIdMap();
+        assertEquals(-1, map.get(5));
+        assertEquals(-1, map.get(-1));
+
+        // Enough IDs, spread far apart, to make the table grow several times
+        for(int i = 0; i < 1000; i++) {
+            map.put(i * 100003, i);
+        }
+        map.put(0, 7);
+
+        assertEquals(1000, map.size());
+        assertEquals(7, map.get(0));
+        for(int i = 1; i < 1000; i++) {
+            assertEquals(i, map.get(i * 100003));
+        }
+        assertEquals(-1, map.get(1));
+    }
+}
@@ -3,6 +3,8 @@ package edu.unl.knorth.historical_fault_localization.intermediate_data;
 import edu.unl.knorth.historical_fault_localization.DummyData;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -192,4 +194,79 @@ public class TestExecutionDataTest {
         assertTrue(failingTests.size() == 1);
         assertTrue(failingTests.contains(allTests.get(2)));
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void getSpectrumSummary() {
+        TestExecutionData data = DummyData.getDummyData();
+        SpectrumSummary spectrum = data.getSpectrumSummary();
+        
+        assertEquals(13, spectrum.getNumStatements());
+        assertEquals(1, spectrum.getNumFailingTests());
+        assertEquals(4, spectrum.getNumPassingTests());
+        
+        for(int i = 0; i < spectrum.getNumStatements(); i++) {
+            StatementData statement = spectrum.getStatement(i);
+            int ef = data.getTestsThatExecuteStatment(statement, false).size();
+            int ep = data.getTestsThatExecuteStatment(statement, true).size();
+            
+            assertEquals(ef, spectrum.getExecutedFailing(i));
+            assertEquals(ep, spectrum.getExecutedPassing(i));
+            assertEquals(1 - ef, spectrum.getNotExecutedFailing(i));
+            assertEquals(4 - ep, spectrum.getNotExecutedPassing(i));
+        }
+    }
+    
+    @Test
+    public void sumTestWeights() {
+        TestExecutionData data = DummyData.getDummyData();
+        List<TestData> tests = data.getTests();
+        
+        // Weight each test by a distinct power of two so the sum shows exactly
+        // which tests were counted
+        double[] weights = new double[tests.size()];
+        for(int i = 0; i < weights.length; i++) {
+            weights[i] = 1 << i;
+        }
+        
+        for(StatementData statement : data.getStatements()) {
+            for(boolean passing : new boolean[] {true, false}) {
+                double expected = 0D;
+                for(TestData test
+                        : data.getTestsThatExecuteStatment(statement, passing)) {
+                    expected += weights[tests.indexOf(test)];
+                }
+                assertEquals(expected,
+                        data.sumTestWeights(statement, passing, weights), 0D);
+            }
+        }
+        
+        assertEquals(0D, data.sumTestWeights(
+                new StatementData(1, "not_executed.c"), true, weights), 0D);
+    }
+    
+    @Test
+    public void statementsAreListedInIdOrder() {
+        StatementIndex index = StatementIndex.getSharedIndex();
+        // Added in the opposite order to their IDs
+        StatementData later = new StatementData(2, "statement_order.c");
+        StatementData earlier = new StatementData(1, "statement_order.c");
+        index.intern(earlier);
+        index.intern(later);
+        
+        TestExecutionData data = new TestExecutionData();
+        data.addTest(new TestData(false, later));
+        data.addStatement(earlier);
+        
+        List<StatementData> statements = new ArrayList<>(data.getStatements());
+        assertEquals(2, statements.size());
+        assertEquals(earlier, statements.get(0));
+        assertEquals(later, statements.get(1));
+        assertTrue(data.getStatements().contains(later));
+        assertEquals(1, data.getTestsThatExecuteStatment(later).size());
+        assertEquals(0, data.getTestsThatExecuteStatment(earlier).size());
+        
+        PrimitiveIterator.OfInt ids = data.statementIdIterator();
+        assertEquals(index.lookup(earlier), ids.nextInt());
+        assertEquals(index.lookup(later), ids.nextInt());
+    }
+}
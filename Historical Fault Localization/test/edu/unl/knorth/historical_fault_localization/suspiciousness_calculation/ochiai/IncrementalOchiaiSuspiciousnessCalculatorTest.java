@@ -0,0 +1,149 @@
+package edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.ochiai;
+
+import edu.unl.knorth.historical_fault_localization.DummyData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class IncrementalOchiaiSuspiciousnessCalculatorTest {
+    @Test
+    public void matchesFullCalculationAcrossCommits() {
+        // Simulate a history where a few tests change from commit to commit,
+        // tests are added and removed, and every test sometimes passes or
+        // fails, and make sure every commit gets exactly the scores a full
+        // calculation gives it
+        Random random = new Random(1234);
+        IncrementalOchiaiSuspiciousnessCalculator incremental =
+                new IncrementalOchiaiSuspiciousnessCalculator();
+        OchiaiSuspiciousnessCalculator full =
+                new OchiaiSuspiciousnessCalculator();
+        
+        List<TestData> tests = new ArrayList<>();
+        for(int i = 0; i < 30; i++) {
+            tests.add(randomTest(random));
+        }
+        
+        for(int commit = 0; commit < 50; commit++) {
+            int numChanges = random.nextInt(4);
+            for(int i = 0; i < numChanges; i++) {
+                int position = random.nextInt(tests.size());
+                switch(random.nextInt(3)) {
+                    case 0:
+                        tests.set(position, randomTest(random));
+                        break;
+                    case 1:
+                        tests.remove(position);
+                        break;
+                    default:
+                        tests.add(randomTest(random));
+                        break;
+                }
+            }
+            if(commit == 20) {
+                // Every test passes
+                for(int i = 0; i < tests.size(); i++) {
+                    tests.set(i, new TestData(true,
+                            tests.get(i).getStatementsExecuted()));
+                }
+            }
+            
+            TestExecutionData data = new TestExecutionData();
+            data.addStatement(new StatementData(1000 + commit, "unrun.c"));
+            data.addTests(tests);
+            assertSameScores(full.calculateSuspiciousness(data),
+                    incremental.calculateSuspiciousness(data));
+        }
+    }
+    
+    @Test
+    public void onlyChangedStatementsAreRecalculated() {
+        IncrementalOchiaiSuspiciousnessCalculator calculator =
+                new IncrementalOchiaiSuspiciousnessCalculator();
+        TestExecutionData data = DummyData.getDummyData();
+        calculator.calculateSuspiciousness(data);
+        assertEquals(data.getStatements().size(),
+                calculator.getNumRecalculatedScores());
+        
+        // The same tests again
+        calculator.calculateSuspiciousness(DummyData.getDummyData());
+        assertEquals(0, calculator.getNumRecalculatedScores());
+        
+        // One passing test stops executing statement 13
+        TestExecutionData changed = new TestExecutionData();
+        List<TestData> tests = DummyData.getDummyData().getTests();
+        for(TestData test : tests) {
+            if(test.getPassed()
+                    && test.executedStatement(new StatementData(13,
+                            "program.c"))) {
+                List<StatementData> statements =
+                        new ArrayList<>(test.getStatementsExecuted());
+                statements.remove(new StatementData(13, "program.c"));
+                changed.addTest(new TestData(true, statements));
+                changed.addTests(tests.subList(tests.indexOf(test) + 1,
+                        tests.size()));
+                break;
+            }
+            changed.addTest(test);
+        }
+        assertSameScores(new OchiaiSuspiciousnessCalculator()
+                .calculateSuspiciousness(changed),
+                calculator.calculateSuspiciousness(changed));
+        assertEquals(1, calculator.getNumRecalculatedScores());
+    }
+    
+    @Test
+    public void testsAreMatchedByContentNotPosition() {
+        IncrementalOchiaiSuspiciousnessCalculator calculator =
+                new IncrementalOchiaiSuspiciousnessCalculator();
+        calculator.calculateSuspiciousness(DummyData.getDummyData());
+        
+        // The same tests in the opposite order
+        List<TestData> tests =
+                new ArrayList<>(DummyData.getDummyData().getTests());
+        Collections.reverse(tests);
+        TestExecutionData reversed = new TestExecutionData();
+        reversed.addTests(tests);
+        calculator.calculateSuspiciousness(reversed);
+        assertEquals(0, calculator.getNumRecalculatedScores());
+        
+        // A passing test inserted at the front only affects the statements it
+        // executed
+        TestExecutionData inserted = new TestExecutionData();
+        inserted.addTest(new TestData(true, new StatementData(1, "program.c"),
+                new StatementData(2, "program.c")));
+        inserted.addTests(DummyData.getDummyData().getTests());
+        assertSameScores(new OchiaiSuspiciousnessCalculator()
+                .calculateSuspiciousness(inserted),
+                calculator.calculateSuspiciousness(inserted));
+        assertEquals(2, calculator.getNumRecalculatedScores());
+    }
+    
+    private static TestData randomTest(Random random) {
+        List<StatementData> statements = new ArrayList<>();
+        for(int line = 1; line <= 40; line++) {
+            if(random.nextInt(3) == 0) {
+                statements.add(new StatementData(line, "random.c"));
+            }
+        }
+        return new TestData(random.nextInt(4) != 0, statements);
+    }
+    
+    private static void assertSameScores(List<SuspiciousnessScore> expected,
+            List<SuspiciousnessScore> actual) {
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            assertTrue(expected.get(i).getStatement().equals(
+                    actual.get(i).getStatement()));
+            assertEquals(expected.get(i).getSuspiciousness(),
+                    actual.get(i).getSuspiciousness(), 0.0);
+        }
+    }
+}
@@ -454,6 +454,31 @@ public class ProximityBasedWeightingSuspiciousnessCalculatorTest {
         assertEquals(0.447D, result.getSuspiciousness(), 0.0005D);
     }
     
+    @Test
+    public void multipleThreadsGiveIdenticalScores() {
+        // The scores should be exactly the same, in the same order, no matter
+        // how many threads calculate them.
+        TestExecutionData data = DummyData.getDummyData();
+        List<SuspiciousnessScore> sequentialScores =
+                new ProximityBasedWeightingSuspiciousnessCalculator(
+                        ThresholdType.QUARTILE, ThresholdType.QUARTILE)
+                .calculateSuspiciousness(data);
+        List<SuspiciousnessScore> parallelScores =
+                new ProximityBasedWeightingSuspiciousnessCalculator(
+                        ThresholdType.QUARTILE, ThresholdType.QUARTILE, 4)
+                .calculateSuspiciousness(data);
+        
+        assertEquals(sequentialScores.size(), parallelScores.size());
+        for(int i = 0; i < sequentialScores.size(); i++) {
+            assertEquals(sequentialScores.get(i).getStatement(),
+                    parallelScores.get(i).getStatement());
+            assertEquals(Double.doubleToLongBits(
+                    sequentialScores.get(i).getSuspiciousness()),
+                    Double.doubleToLongBits(
+                    parallelScores.get(i).getSuspiciousness()));
+        }
+    }
+    
     private List<Weighting> getUnadjustedWeightings(TestExecutionData data,
             ProximityBasedWeightingSuspiciousnessCalculator calculator) {
         List<Weighting> unadjustedWeightings = new ArrayList<>();
@@ -0,0 +1,104 @@
+package edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.spectrum_formulas;
+
+import edu.unl.knorth.historical_fault_localization.DummyData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.ochiai.OchiaiSuspiciousnessCalculator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class MultiFormulaSuspiciousnessCalculatorTest {
+    @Test
+    public void ochiaiColumnMatchesOchiaiCalculator() {
+        TestExecutionData data = DummyData.getDummyData();
+        MultiFormulaSuspiciousnessCalculator calculator =
+                new MultiFormulaSuspiciousnessCalculator(Arrays.asList(
+                        SpectrumFormula.TARANTULA, SpectrumFormula.OCHIAI));
+
+        Map<StatementData, Double> expected = toMap(
+                new OchiaiSuspiciousnessCalculator()
+                        .calculateSuspiciousness(data));
+        Map<StatementData, Double> actual = toMap(calculator
+                .calculateSuspiciousnessForAllFormulas(data)
+                .get(SpectrumFormula.OCHIAI));
+
+        assertEquals(expected.size(), actual.size());
+        for(Map.Entry<StatementData, Double> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), actual.get(entry.getKey()),
+                    0.0000001D);
+        }
+    }
+
+    @Test
+    public void calculatesEveryFormula() {
+        TestExecutionData data = DummyData.getDummyData();
+        MultiFormulaSuspiciousnessCalculator calculator =
+                new MultiFormulaSuspiciousnessCalculator(
+                        Arrays.asList(SpectrumFormula.values()));
+
+        Map<SpectrumFormula, List<SuspiciousnessScore>> results =
+                calculator.calculateSuspiciousnessForAllFormulas(data);
+        assertEquals(SpectrumFormula.values().length, results.size());
+
+        // Statement 1 has ef = 1, ep = 2, nf = 0, np = 2
+        StatementData statement1 = new StatementData(1, "program.c");
+        assertEquals(2D / 3D, toMap(results.get(SpectrumFormula.TARANTULA))
+                .get(statement1), 0.0005D);
+        assertEquals(1D / 3D, toMap(results.get(SpectrumFormula.JACCARD))
+                .get(statement1), 0.0005D);
+        assertEquals(1D / 2D, toMap(results.get(SpectrumFormula.DSTAR2))
+                .get(statement1), 0.0005D);
+        assertEquals(1D - (2D / 5D), toMap(results.get(SpectrumFormula.OP2))
+                .get(statement1), 0.0005D);
+        assertEquals(1D / 3D, toMap(results.get(SpectrumFormula.BARINEL))
+                .get(statement1), 0.0005D);
+        assertEquals(2D / 3D, toMap(results.get(SpectrumFormula.KULCZYNSKI))
+                .get(statement1), 0.0005D);
+
+        // The first formula is used when calculating a single set of scores
+        assertEquals(toMap(results.get(SpectrumFormula.values()[0])),
+                toMap(calculator.calculateSuspiciousness(data)));
+    }
+
+    @Test
+    public void normalizeScores() {
+        List<SuspiciousnessScore> scores = new ArrayList<>();
+        scores.add(new SuspiciousnessScore(new StatementData(1, "a"), -1D));
+        scores.add(new SuspiciousnessScore(new StatementData(2, "a"), 3D));
+        scores.add(new SuspiciousnessScore(new StatementData(3, "a"), 1D));
+        scores.add(new SuspiciousnessScore(new StatementData(4, "a"),
+                Double.POSITIVE_INFINITY));
+
+        List<SuspiciousnessScore> normalized =
+                MultiFormulaSuspiciousnessCalculator.normalizeScores(scores);
+        assertEquals(0D, normalized.get(0).getSuspiciousness(), 0.0000001D);
+        assertEquals(1D, normalized.get(1).getSuspiciousness(), 0.0000001D);
+        assertEquals(0.5D, normalized.get(2).getSuspiciousness(), 0.0000001D);
+        assertEquals(1D, normalized.get(3).getSuspiciousness(), 0.0000001D);
+    }
+
+    @Test
+    public void lookUpFormulaByConfigurationName() {
+        assertTrue(SpectrumFormula.fromConfigurationName("dstar3")
+                == SpectrumFormula.DSTAR3);
+        assertTrue(SpectrumFormula.fromConfigurationName("Ochiai")
+                == SpectrumFormula.OCHIAI);
+        assertTrue(SpectrumFormula.fromConfigurationName("dstar") == null);
+    }
+
+    private Map<StatementData, Double> toMap(
+            List<SuspiciousnessScore> scores) {
+        Map<StatementData, Double> map = new HashMap<>();
+        for(SuspiciousnessScore score : scores) {
+            map.put(score.getStatement(), score.getSuspiciousness());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,64 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.io.File;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CheckoutStrategyTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fromConfigurationName() {
+        for(CheckoutStrategy strategy : CheckoutStrategy.values()) {
+            assertEquals(strategy, CheckoutStrategy.fromConfigurationName(
+                    strategy.getConfigurationName()));
+        }
+        assertEquals(CheckoutStrategy.READ_TREE,
+                CheckoutStrategy.fromConfigurationName("Read-Tree"));
+        assertTrue(CheckoutStrategy.fromConfigurationName("reset") == null);
+    }
+
+    @Test
+    public void everyStrategySwitchesCommits() throws IOException {
+        for(CheckoutStrategy strategy : CheckoutStrategy.values()) {
+            GitTestRepository repository = new GitTestRepository(
+                    folder.newFolder(strategy.getConfigurationName()));
+            String first = repository.commit("a.txt", "one");
+            String second = repository.commit("a.txt", "two");
+            File directory = repository.getDirectory();
+
+            strategy.checkout(directory, first, 30);
+            assertEquals(strategy.getConfigurationName(), "one",
+                    GitTestRepository.readFile(directory, "a.txt"));
+            assertEquals(strategy.getConfigurationName(), first,
+                    repository.revParse("HEAD"));
+
+            strategy.checkout(directory, second, 30);
+            assertEquals(strategy.getConfigurationName(), "two",
+                    GitTestRepository.readFile(directory, "a.txt"));
+            assertEquals(strategy.getConfigurationName(), second,
+                    repository.revParse("HEAD"));
+        }
+    }
+
+    @Test
+    public void readTreeFallsBackToCheckout() throws IOException {
+        GitTestRepository repository =
+                new GitTestRepository(folder.newFolder("repository"));
+        String commit = repository.commit("a.txt", "one");
+        File directory = repository.getDirectory();
+        // With HEAD on a branch that has no commits yet, `git read-tree`
+        // can't read HEAD, but `git checkout` can still switch commits
+        repository.git("checkout", "--quiet", "--orphan", "empty");
+        repository.git("rm", "-r", "--quiet", "--force", ".");
+
+        CheckoutStrategy.READ_TREE.checkout(directory, commit, 30);
+        assertEquals("one", GitTestRepository.readFile(directory, "a.txt"));
+        assertEquals(commit, repository.revParse("HEAD"));
+    }
+}
@@ -0,0 +1,53 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CommitLogParserTest {
+    @Test
+    public void parsesCommits() throws IOException {
+        CommitLogParser parser = new CommitLogParser();
+        for(String line : Arrays.asList(
+                "\0merge\0second first-branch\0Sun, 18 Oct 2015 05:28:14 +0000",
+                "\0second\0first\0Sat, 17 Oct 2015 05:28:14 +0000",
+                "A\tnew file.txt",
+                "M\t\"quoted\\\"name.c\"",
+                "",
+                "\0first\0\0Fri, 16 Oct 2015 05:28:14 +0000",
+                "A\ta.txt")) {
+            parser.parseLine(line);
+        }
+        List<CommitInfo> commits = parser.finish();
+        
+        assertEquals(3, commits.size());
+        
+        CommitInfo merge = commits.get(0);
+        assertEquals("merge", merge.getHash());
+        assertEquals(Arrays.asList("second", "first-branch"),
+                merge.getParentHashes());
+        assertTrue(merge.getChangedFiles() == null);
+        assertTrue(!merge.isOnlyChildOf("second"));
+        
+        CommitInfo second = commits.get(1);
+        assertEquals("Sat, 17 Oct 2015 05:28:14 +0000", second.getDate());
+        assertEquals(Arrays.asList("new file.txt", "quoted\"name.c"),
+                second.getChangedFiles());
+        assertTrue(second.isOnlyChildOf("first"));
+        
+        CommitInfo first = commits.get(2);
+        assertEquals(Collections.emptyList(), first.getParentHashes());
+        assertEquals(Arrays.asList("a.txt"), first.getChangedFiles());
+    }
+    
+    @Test(expected = IOException.class)
+    public void rejectsUnexpectedOutput() throws IOException {
+        CommitLogParser parser = new CommitLogParser();
+        parser.parseLine("\0hash\0Sat, 17 Oct 2015 05:28:14 +0000");
+        parser.finish();
+    }
+}
@@ -0,0 +1,185 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import edu.unl.knorth.historical_fault_localization.target_program_handler.dependency_cache.DependencyCache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CommitPrefetcherTest {
+    private static final long CHECKOUT_TIMEOUT_SECONDS = 30;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void deliversCommitsInOrder() throws Exception {
+        GitTestRepository repository =
+                new GitTestRepository(folder.newFolder("repository"));
+        List<String> hashes = new ArrayList<>();
+        List<CommitInfo> commits = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            String hash = repository.commit("a.txt", "version " + i);
+            hashes.add(hash);
+            commits.add(commit(hash));
+        }
+
+        // Every commit has the same, already prepared, dependency directory
+        DependencyCache dependencyCache = new DependencyCache(
+                folder.newFolder("dependencies").getPath(), Long.MAX_VALUE);
+        Path dependencyDirectory = dependencyCache.acquire("key");
+        Files.write(dependencyDirectory.resolve("installed"), new byte[] {1});
+        dependencyCache.release("key", true);
+
+        try(WorktreePool pool = new WorktreePool(
+                repository.getDirectory().getPath(), 2, "out.txt");
+                CommitPrefetcher prefetcher = new CommitPrefetcher(pool,
+                        commits, hash -> true, CheckoutStrategy.CHECKOUT,
+                        CHECKOUT_TIMEOUT_SECONDS, dependencyCache,
+                        (directory, hash) -> "key")) {
+            for(int i = 0; i < commits.size(); i++) {
+                prefetcher.prefetchThrough(i + 1);
+                CommitPrefetcher.PrefetchedCommit prefetched =
+                        prefetcher.checkout(hashes.get(i));
+                File directory = new File(prefetched.getWorktree().getPath());
+                assertEquals("version " + i,
+                        GitTestRepository.readFile(directory, "a.txt"));
+                assertEquals(hashes.get(i),
+                        repository.revParse(directory, "HEAD"));
+                assertEquals("key", prefetched.getDependencyKey());
+                assertEquals(dependencyDirectory,
+                        prefetched.getDependencyDirectory());
+                prefetcher.release(hashes.get(i));
+            }
+        }
+
+        // Every commit's hold on the dependency directory was given back
+        try {
+            dependencyCache.release("key", true);
+            fail("The dependency directory should not be in use");
+        } catch(IllegalStateException err) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void releasesTheWorktreesOfSkippedCommits() throws Exception {
+        GitTestRepository repository =
+                new GitTestRepository(folder.newFolder("repository"));
+        String first = repository.commit("a.txt", "one");
+        String second = repository.commit("a.txt", "two");
+        String cached = repository.commit("a.txt", "three");
+        String last = repository.commit("a.txt", "four");
+        List<CommitInfo> commits = new ArrayList<>();
+        for(String hash : new String[] {first, second, cached, last}) {
+            commits.add(commit(hash));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try(WorktreePool pool = new WorktreePool(
+                repository.getDirectory().getPath(), 2, "out.txt");
+                CommitPrefetcher prefetcher = new CommitPrefetcher(pool,
+                        commits, hash -> !hash.equals(cached),
+                        CheckoutStrategy.CHECKOUT, CHECKOUT_TIMEOUT_SECONDS,
+                        null, null)) {
+            // Both worktrees go to the first two commits
+            prefetcher.prefetchThrough(1);
+            // The first commit turns out not to need its checkout, so its
+            // worktree has to be given back for the second commit's to be free
+            // once it's done
+            prefetcher.release(first);
+            assertEquals("two", GitTestRepository.readFile(new File(
+                    prefetcher.checkout(second).getWorktree().getPath()),
+                    "a.txt"));
+            prefetcher.release(second);
+
+            // The cached commit is never prefetched, and releasing it does
+            // nothing
+            prefetcher.prefetchThrough(3);
+            prefetcher.release(cached);
+            assertEquals("four", GitTestRepository.readFile(new File(
+                    prefetcher.checkout(last).getWorktree().getPath()),
+                    "a.txt"));
+            prefetcher.release(last);
+
+            // Nothing is holding on to a worktree
+            assertAllAvailable(pool, 2, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void closeStopsAPrefetchInFlight() throws Exception {
+        GitTestRepository repository =
+                new GitTestRepository(folder.newFolder("repository"));
+        String hash = repository.commit("a.txt", "one");
+        DependencyCache dependencyCache = new DependencyCache(
+                folder.newFolder("dependencies").getPath(), Long.MAX_VALUE);
+
+        // Working out the dependency key blocks until it's interrupted
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try(WorktreePool pool = new WorktreePool(
+                repository.getDirectory().getPath(), 2, "out.txt")) {
+            CommitPrefetcher prefetcher = new CommitPrefetcher(pool,
+                    Collections.singletonList(commit(hash)), h -> true,
+                    CheckoutStrategy.CHECKOUT, CHECKOUT_TIMEOUT_SECONDS,
+                    dependencyCache, (directory, h) -> {
+                        started.countDown();
+                        try {
+                            new CountDownLatch(1).await();
+                        } catch(InterruptedException err) {
+                            interrupted.set(true);
+                        }
+                        throw new IOException("Interrupted");
+                    });
+            prefetcher.prefetchThrough(0);
+            assertTrue(started.await(CHECKOUT_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS));
+
+            prefetcher.close();
+            // close() waited for the prefetch to stop, and gave its worktree
+            // back
+            assertTrue(interrupted.get());
+            assertAllAvailable(pool, 2, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CommitInfo commit(String hash) {
+        return new CommitInfo(hash, "Wed, 1 Jan 2020 00:00:00 +0000",
+                Collections.<String>emptyList(),
+                Collections.<String>emptyList());
+    }
+
+    /**
+     * Checks that every worktree in the pool can be acquired without waiting
+     * for one to be released.
+     */
+    private static void assertAllAvailable(WorktreePool pool, int count,
+            ExecutorService executor) throws Exception {
+        for(int i = 0; i < count; i++) {
+            Future<WorktreePool.Worktree> worktree =
+                    executor.submit(pool::acquire);
+            worktree.get(5, TimeUnit.SECONDS);
+        }
+    }
+}
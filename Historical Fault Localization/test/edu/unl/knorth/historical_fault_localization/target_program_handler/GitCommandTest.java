@@ -0,0 +1,91 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitCommandTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void killingGitDeletesItsLockFiles() throws IOException {
+        GitTestRepository repository =
+                new GitTestRepository(folder.newFolder("repository"));
+        String first = repository.commit("a.txt", "one");
+        repository.commit("a.txt", "two");
+        File directory = repository.getDirectory();
+
+        // git holds the index lock while the pre-commit hook runs, so a hook
+        // that never finishes makes git time out holding it
+        File hook = new File(directory, ".git/hooks/pre-commit");
+        Files.write(hook.toPath(), "#!/bin/sh\nsleep 60\n"
+                .getBytes(StandardCharsets.UTF_8));
+        assertTrue(hook.setExecutable(true));
+        repository.writeFile("a.txt", "three");
+        try {
+            GitCommand.run(directory, 1, "-c", "user.name=Test", "-c",
+                    "user.email=test@example.com", "commit", "--quiet",
+                    "--all", "--message", "Never finishes");
+            fail("The commit should have timed out");
+        } catch(IOException err) {
+            assertTrue(err.getMessage().startsWith("Timed out"));
+        }
+        assertFalse(new File(directory, ".git/index.lock").exists());
+
+        // The next checkout isn't blocked by a stale lock
+        repository.git("checkout", "--quiet", "--force", "--detach", first);
+        assertEquals("one", GitTestRepository.readFile(directory, "a.txt"));
+    }
+
+    @Test
+    public void readOutputWhileActiveOnlyTimesOutWhenIdle()
+            throws IOException {
+        File directory = folder.getRoot();
+        // Takes longer than the timeout in total, but never goes a whole
+        // second without printing
+        List<String> lines = new ArrayList<>();
+        GitCommand.readOutputWhileActive(directory, 1, lines::add, "-c",
+                "alias.slow=!for i in 1 2 3 4; do echo $i; sleep 0.5; done",
+                "slow");
+        assertEquals(Arrays.asList("1", "2", "3", "4"), lines);
+
+        try {
+            GitCommand.readOutputWhileActive(directory, 1, line -> {}, "-c",
+                    "alias.stuck=!echo 1; sleep 60", "stuck");
+            fail("The command should have timed out");
+        } catch(IOException err) {
+            assertTrue(err.getMessage().startsWith("Timed out"));
+        }
+    }
+
+    @Test
+    public void findGitDirectory() throws IOException {
+        GitTestRepository repository =
+                new GitTestRepository(folder.newFolder("repository"));
+        repository.commit("a.txt", "one");
+        File worktree = new File(folder.getRoot(), "worktree");
+        repository.git("worktree", "add", "--quiet", "--detach",
+                worktree.getAbsolutePath());
+
+        assertEquals(new File(repository.getDirectory(), ".git"),
+                GitCommand.findGitDirectory(repository.getDirectory()));
+        File worktreeGitDirectory = GitCommand.findGitDirectory(worktree);
+        assertTrue(new File(worktreeGitDirectory, "HEAD").isFile());
+        assertEquals(new File(repository.getDirectory(), ".git/worktrees")
+                .getCanonicalFile(),
+                worktreeGitDirectory.getParentFile().getCanonicalFile());
+        assertEquals(null, GitCommand.findGitDirectory(folder.getRoot()));
+    }
+}
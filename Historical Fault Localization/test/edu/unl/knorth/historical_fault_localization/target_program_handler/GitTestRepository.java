@@ -0,0 +1,74 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A throwaway git repository for tests that need to run real git commands.
+ */
+class GitTestRepository {
+    private static final long GIT_TIMEOUT_SECONDS = 30;
+
+    private final File directory;
+
+    /**
+     * Creates an empty repository.
+     * @param directory An empty directory to create the repository in.
+     */
+    GitTestRepository(File directory) throws IOException {
+        this.directory = directory;
+        git("init", "--quiet");
+    }
+
+    /**
+     * Writes a file and commits it.
+     * @return The new commit's hash.
+     */
+    String commit(String fileName, String contents) throws IOException {
+        writeFile(fileName, contents);
+        git("add", "--", fileName);
+        git("-c", "user.name=Test", "-c", "user.email=test@example.com",
+                "commit", "--quiet", "--message", "Change " + fileName);
+        return revParse("HEAD");
+    }
+
+    void writeFile(String fileName, String contents) throws IOException {
+        Files.write(new File(directory, fileName).toPath(),
+                contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readFile(File workingDirectory, String fileName)
+            throws IOException {
+        return new String(Files.readAllBytes(
+                new File(workingDirectory, fileName).toPath()),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The hash <code>revision</code> refers to in a working
+     * directory of this repository.
+     */
+    String revParse(File workingDirectory, String revision)
+            throws IOException {
+        List<String> lines = new ArrayList<>();
+        GitCommand.readOutput(workingDirectory, GIT_TIMEOUT_SECONDS,
+                lines::add, "rev-parse", "--verify", revision);
+        return lines.get(0);
+    }
+
+    String revParse(String revision) throws IOException {
+        return revParse(directory, revision);
+    }
+
+    void git(String... arguments) throws IOException {
+        GitCommand.run(directory, GIT_TIMEOUT_SECONDS, arguments);
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+}
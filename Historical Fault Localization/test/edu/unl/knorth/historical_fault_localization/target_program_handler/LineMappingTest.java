@@ -0,0 +1,155 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class LineMappingTest {
+    private static final LineMapping MAPPING;
+    static {
+        try {
+            MAPPING = LineMapping.parse("old", "new", Arrays.asList(
+                "diff --git a/src/main.c b/src/main.c",
+                "index 1111111..2222222 100644",
+                "--- a/src/main.c",
+                "+++ b/src/main.c",
+                // Two lines inserted after line 3
+                "@@ -3,0 +4,2 @@ int main() {",
+                "+    int x;",
+                "+    int y;",
+                // Lines 10-12 replaced by a single line
+                "@@ -10,3 +12 @@ int main() {",
+                "-    a();",
+                "-    b();",
+                "--- c();",
+                "+    d();",
+                // Line 20 removed
+                "@@ -20 +19,0 @@",
+                "-    return 0;",
+                "diff --git a/old_name.c b/new_name.c",
+                "similarity index 100%",
+                "rename from old_name.c",
+                "rename to new_name.c",
+                "diff --git a/deleted.c b/deleted.c",
+                "deleted file mode 100644",
+                "index 3333333..0000000",
+                "--- a/deleted.c",
+                "+++ /dev/null",
+                "@@ -1,2 +0,0 @@",
+                "-int f;",
+                "-int g;",
+                "diff --git a/added.c b/added.c",
+                "new file mode 100644",
+                "--- /dev/null",
+                "+++ b/added.c",
+                "@@ -0,0 +1 @@",
+                "+int h;"));
+        } catch(IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+    
+    @Test
+    public void translatesLinesAroundHunks() {
+        assertEquals(new StatementData(1, "src/main.c"),
+                MAPPING.translate(new StatementData(1, "src/main.c")));
+        assertEquals(new StatementData(3, "src/main.c"),
+                MAPPING.translate(new StatementData(3, "src/main.c")));
+        assertEquals(new StatementData(6, "src/main.c"),
+                MAPPING.translate(new StatementData(4, "src/main.c")));
+        assertEquals(new StatementData(11, "src/main.c"),
+                MAPPING.translate(new StatementData(9, "src/main.c")));
+        assertEquals(null,
+                MAPPING.translate(new StatementData(10, "src/main.c")));
+        assertEquals(null,
+                MAPPING.translate(new StatementData(12, "src/main.c")));
+        assertEquals(new StatementData(13, "src/main.c"),
+                MAPPING.translate(new StatementData(13, "src/main.c")));
+        assertEquals(null,
+                MAPPING.translate(new StatementData(20, "src/main.c")));
+        assertEquals(new StatementData(20, "src/main.c"),
+                MAPPING.translate(new StatementData(21, "src/main.c")));
+    }
+    
+    @Test
+    public void handlesRenamesDeletionsAndUnchangedFiles() {
+        assertEquals(new StatementData(7, "new_name.c"),
+                MAPPING.translate(new StatementData(7, "old_name.c")));
+        assertEquals(null,
+                MAPPING.translate(new StatementData(1, "deleted.c")));
+        StatementData unchanged = new StatementData(5, "unchanged.c");
+        assertTrue(MAPPING.translate(unchanged) == unchanged);
+        assertEquals(3, MAPPING.getNumChangedFiles());
+    }
+    
+    @Test
+    public void keepsPathPrefixes() {
+        assertEquals(new StatementData(6, "/home/me/repo/src/main.c"),
+                MAPPING.translate(
+                        new StatementData(4, "/home/me/repo/src/main.c")));
+        assertEquals(new StatementData(1, "/repo/new_name.c"),
+                MAPPING.translate(new StatementData(1, "/repo/old_name.c")));
+        // Only whole path components match
+        StatementData other = new StatementData(4, "other_src/main.c");
+        assertTrue(MAPPING.translate(other) == other);
+    }
+    
+    @Test
+    public void distinguishesFilesWithTheSameBaseName() throws IOException {
+        LineMapping mapping = LineMapping.parse("old", "new", Arrays.asList(
+                "diff --git a/lib/util.rb b/lib/util.rb",
+                "--- a/lib/util.rb",
+                "+++ b/lib/util.rb",
+                "@@ -0,0 +1 @@",
+                "+# one line added",
+                "diff --git a/test/util.rb b/test/util.rb",
+                "--- a/test/util.rb",
+                "+++ b/test/util.rb",
+                "@@ -0,0 +1,2 @@",
+                "+# two lines",
+                "+# added"));
+        assertEquals(new StatementData(6, "/repo/lib/util.rb"),
+                mapping.translate(new StatementData(5, "/repo/lib/util.rb")));
+        assertEquals(new StatementData(7, "/repo/test/util.rb"),
+                mapping.translate(new StatementData(5, "/repo/test/util.rb")));
+        StatementData other = new StatementData(5, "/repo/app/util.rb");
+        assertTrue(mapping.translate(other) == other);
+    }
+    
+    @Test
+    public void translatesTestExecutionData() {
+        TestExecutionData data = new TestExecutionData();
+        data.addTest(new TestData(true, new StatementData(4, "src/main.c"),
+                new StatementData(10, "src/main.c"),
+                new StatementData(2, "old_name.c")));
+        data.addTest(new TestData(false, new StatementData(1, "deleted.c")));
+        
+        TestExecutionData translated = MAPPING.translate(data);
+        
+        assertEquals(new HashSet<>(Arrays.asList(
+                new StatementData(6, "src/main.c"),
+                new StatementData(2, "new_name.c"))),
+                translated.getStatements());
+        assertEquals(2, translated.getTests().size());
+        assertEquals(translated.getStatements(),
+                translated.getTests().get(0).getStatementsExecuted());
+        assertTrue(translated.getTests().get(1).getStatementsExecuted()
+                .isEmpty());
+        assertTrue(!translated.getTests().get(1).getPassed());
+    }
+    
+    @Test(expected = IOException.class)
+    public void rejectsBadHunkHeaders() throws IOException {
+        LineMapping.parse("old", "new", Arrays.asList(
+                "diff --git a/a.c b/a.c",
+                "--- a/a.c",
+                "+++ b/a.c",
+                "@@ nonsense @@"));
+    }
+}
@@ -0,0 +1,28 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class RegressionTestSelectorTest {
+    @Test
+    public void findCoveredFile() {
+        Set<String> coveredFiles = new HashSet<>(Arrays.asList(
+                "src/main.c", "/home/me/repo/src/util.c"));
+        
+        assertEquals(null, RegressionTestSelector.findCoveredFile(coveredFiles,
+                Arrays.asList("README.md", "docs/src/main.c")));
+        assertEquals(null, RegressionTestSelector.findCoveredFile(coveredFiles,
+                Collections.<String>emptyList()));
+        assertEquals("src/main.c", RegressionTestSelector.findCoveredFile(
+                coveredFiles, Arrays.asList("README.md", "src/main.c")));
+        assertEquals("/home/me/repo/src/util.c",
+                RegressionTestSelector.findCoveredFile(coveredFiles,
+                        Arrays.asList("src/util.c")));
+        assertEquals(null, RegressionTestSelector.findCoveredFile(coveredFiles,
+                Arrays.asList("til.c")));
+    }
+}
@@ -0,0 +1,69 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScoreTranslatorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void translatesThePreviousCommitsScores() throws IOException {
+        GitTestRepository repository =
+                new GitTestRepository(folder.newFolder("repository"));
+        String first = repository.commit("a.rb", "one\ntwo\nthree\n");
+        // A line inserted at the top, and the last line changed
+        String second = repository.commit("a.rb", "zero\none\ntwo\nTHREE\n");
+        String third = repository.commit("b.rb", "other\n");
+
+        ScoreTranslator translator = new ScoreTranslator(
+                repository.getDirectory().getPath());
+        assertTrue(translator.next(result(first, 1, null),
+                Collections.singletonMap("scores/", Arrays.asList(
+                        score(1, 0.5), score(2, 1.0), score(3, 0.25))))
+                .isEmpty());
+
+        Map<String, List<SuspiciousnessScore>> translated = translator.next(
+                result(second, 2, first), Collections.singletonMap("scores/",
+                        Collections.singletonList(score(4, 0.75))));
+        assertEquals(Collections.singleton("scores/"), translated.keySet());
+        List<SuspiciousnessScore> scores = translated.get("scores/");
+        assertEquals(2, scores.size());
+        assertEquals(new StatementData(2, "lib/a.rb"),
+                scores.get(0).getStatement());
+        assertEquals(0.5, scores.get(0).getSuspiciousness(), 0);
+        assertEquals(new StatementData(3, "lib/a.rb"),
+                scores.get(1).getStatement());
+        assertEquals(1.0, scores.get(1).getSuspiciousness(), 0);
+
+        // A commit that doesn't follow the held one drops its scores
+        assertTrue(translator.next(result(third, 4, "missing"),
+                Collections.singletonMap("scores/",
+                        Collections.singletonList(score(1, 0.5))))
+                .isEmpty());
+    }
+
+    private static TestExecutionDataFromCommit result(String hash,
+            int orderProcessed, String previousHash) {
+        return new TestExecutionDataFromCommit(new TestExecutionData(), hash,
+                orderProcessed, previousHash);
+    }
+
+    private static SuspiciousnessScore score(int lineNumber,
+            double suspiciousness) {
+        // The test harness reported the file with a prefix
+        return new SuspiciousnessScore(
+                new StatementData(lineNumber, "lib/a.rb"), suspiciousness);
+    }
+}
@@ -0,0 +1,58 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SparseCheckoutTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoresAFullCheckout() throws IOException {
+        GitTestRepository repository = createRepository();
+        File directory = repository.getDirectory();
+
+        SparseCheckout.State state = SparseCheckout.save(directory);
+        SparseCheckout.enable(directory, Arrays.asList("src"));
+        assertTrue(new File(directory, "src/main.rb").exists());
+        assertFalse(new File(directory, "docs/guide.md").exists());
+
+        SparseCheckout.restore(directory, state);
+        assertTrue(new File(directory, "src/main.rb").exists());
+        assertTrue(new File(directory, "docs/guide.md").exists());
+    }
+
+    @Test
+    public void restoresTheOwnersSparseCheckout() throws IOException {
+        GitTestRepository repository = createRepository();
+        File directory = repository.getDirectory();
+        // The owner only works on the documentation
+        SparseCheckout.enable(directory, Arrays.asList("docs"));
+
+        SparseCheckout.State state = SparseCheckout.save(directory);
+        SparseCheckout.enable(directory, Arrays.asList("src"));
+        assertTrue(new File(directory, "src/main.rb").exists());
+        assertFalse(new File(directory, "docs/guide.md").exists());
+
+        SparseCheckout.restore(directory, state);
+        assertFalse(new File(directory, "src/main.rb").exists());
+        assertTrue(new File(directory, "docs/guide.md").exists());
+    }
+
+    private GitTestRepository createRepository() throws IOException {
+        GitTestRepository repository =
+                new GitTestRepository(folder.newFolder("repository"));
+        File directory = repository.getDirectory();
+        assertTrue(new File(directory, "src").mkdir());
+        assertTrue(new File(directory, "docs").mkdir());
+        repository.commit("src/main.rb", "puts 1");
+        repository.commit("docs/guide.md", "# Guide");
+        return repository;
+    }
+}
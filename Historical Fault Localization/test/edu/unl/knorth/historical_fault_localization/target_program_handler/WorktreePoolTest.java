@@ -0,0 +1,90 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorktreePoolTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void getWorkerOutputPath() {
+        assertEquals("temp/test_out-2.txt",
+                WorktreePool.getWorkerOutputPath("temp/test_out.txt", 2));
+        assertEquals("/tmp/out.dir/output-1",
+                WorktreePool.getWorkerOutputPath("/tmp/out.dir/output", 1));
+        assertEquals("temp/.out-3",
+                WorktreePool.getWorkerOutputPath("temp/.out", 3));
+    }
+
+    @Test
+    public void eachWorktreeHasItsOwnCheckoutAndOutputPath()
+            throws IOException, InterruptedException {
+        GitTestRepository repository =
+                new GitTestRepository(folder.newFolder("repository"));
+        String head = repository.commit("a.txt", "one");
+
+        File first;
+        File second;
+        try(WorktreePool pool = new WorktreePool(
+                repository.getDirectory().getPath(), 2, "temp/out.txt")) {
+            WorktreePool.Worktree worktree1 = pool.acquire();
+            WorktreePool.Worktree worktree2 = pool.acquire();
+            assertNotEquals(worktree1.getPath(), worktree2.getPath());
+
+            for(WorktreePool.Worktree worktree
+                    : new WorktreePool.Worktree[] {worktree1, worktree2}) {
+                File directory = new File(worktree.getPath());
+                assertEquals("one",
+                        GitTestRepository.readFile(directory, "a.txt"));
+                assertEquals(head, repository.revParse(directory, "HEAD"));
+                // The output path goes with the worktree's own number
+                assertEquals(WorktreePool.getWorkerOutputPath("temp/out.txt",
+                        worktree.getNumber()), worktree.getOutputPath());
+            }
+            assertNotEquals(worktree1.getOutputPath(),
+                    worktree2.getOutputPath());
+
+            first = new File(worktree1.getPath());
+            second = new File(worktree2.getPath());
+        }
+        // Closing the pool removes the worktrees
+        assertFalse(first.exists());
+        assertFalse(second.exists());
+    }
+
+    @Test
+    public void acquireWaitsForARelease() throws Exception {
+        GitTestRepository repository =
+                new GitTestRepository(folder.newFolder("repository"));
+        repository.commit("a.txt", "one");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try(WorktreePool pool = new WorktreePool(
+                repository.getDirectory().getPath(), 1, "out.txt")) {
+            WorktreePool.Worktree worktree = pool.acquire();
+            Future<WorktreePool.Worktree> waiting =
+                    executor.submit(pool::acquire);
+            Thread.sleep(200);
+            assertFalse(waiting.isDone());
+
+            pool.release(worktree);
+            WorktreePool.Worktree reused = waiting.get(5, TimeUnit.SECONDS);
+            assertTrue(reused == worktree);
+            assertEquals("out-1.txt", reused.getOutputPath());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.coverage_cache;
+
+import edu.unl.knorth.historical_fault_localization.DummyData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CoverageCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void storeAndLoad() throws IOException {
+        Path harness = writeHarness("#!/bin/sh\necho version 1\n");
+        CoverageCache cache = new CoverageCache(
+                folder.getRoot().getPath() + "/cache", harness.toString());
+        TestExecutionData data = DummyData.getDummyData();
+        data.addStatement(new StatementData(99, "never_executed.c"));
+        
+        assertTrue(cache.load("abc123") == null);
+        cache.store("abc123", data);
+        TestExecutionData loaded = cache.load("abc123");
+        
+        assertEquals(data.getStatements(), loaded.getStatements());
+        List<TestData> tests = data.getTests();
+        List<TestData> loadedTests = loaded.getTests();
+        assertEquals(tests.size(), loadedTests.size());
+        for(int i = 0; i < tests.size(); i++) {
+            assertEquals(tests.get(i).getPassed(),
+                    loadedTests.get(i).getPassed());
+            assertEquals(tests.get(i).getStatementsExecuted(),
+                    loadedTests.get(i).getStatementsExecuted());
+        }
+    }
+    
+    @Test
+    public void changingTheHarnessInvalidatesEntries() throws IOException {
+        String cacheDirectory = folder.getRoot().getPath() + "/cache";
+        Path harness = writeHarness("#!/bin/sh\necho version 1\n");
+        new CoverageCache(cacheDirectory, harness.toString())
+                .store("abc123", DummyData.getDummyData());
+        
+        assertTrue(new CoverageCache(cacheDirectory, harness.toString())
+                .load("abc123") != null);
+        
+        Files.write(harness, Arrays.asList("#!/bin/sh", "echo version 2"),
+                Charset.defaultCharset());
+        assertTrue(new CoverageCache(cacheDirectory, harness.toString())
+                .load("abc123") == null);
+    }
+    
+    @Test
+    public void invalidate() throws IOException {
+        Path harness = writeHarness("#!/bin/sh\n");
+        CoverageCache cache = new CoverageCache(
+                folder.getRoot().getPath() + "/cache", harness.toString());
+        cache.store("abc123", DummyData.getDummyData());
+        
+        cache.invalidate();
+        assertTrue(cache.load("abc123") == null);
+        
+        // The cache can still be used afterwards
+        cache.store("abc123", DummyData.getDummyData());
+        assertTrue(cache.load("abc123") != null);
+    }
+    
+    private Path writeHarness(String contents) throws IOException {
+        Path harness = folder.newFile().toPath();
+        Files.write(harness, contents.getBytes(Charset.defaultCharset()));
+        return harness;
+    }
+}
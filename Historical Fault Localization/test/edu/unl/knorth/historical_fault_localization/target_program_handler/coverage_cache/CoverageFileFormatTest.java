@@ -0,0 +1,123 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.coverage_cache;
+
+import edu.unl.knorth.historical_fault_localization.DummyData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.CoverageBitmap;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementIndex;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class CoverageFileFormatTest {
+    @Test
+    public void roundTrip() throws IOException {
+        TestExecutionData data = DummyData.getDummyData();
+        data.addStatement(new StatementData(-5, "negative.c"));
+        data.addStatement(new StatementData(Integer.MAX_VALUE, "negative.c"));
+        data.addStatement(new StatementData(Integer.MIN_VALUE, "negative.c"));
+        data.addStatement(new StatementData(99, "never_executed.c"));
+        
+        assertRoundTrips(data);
+    }
+    
+    @Test
+    public void roundTripDenseAndSparseCoverage() throws IOException {
+        StatementIndex index = StatementIndex.getSharedIndex();
+        TestExecutionData data = new TestExecutionData();
+        int[] allIds = new int[1000];
+        for(int line = 0; line < 1000; line++) {
+            StatementData statement = new StatementData(line * 3, "big.c");
+            data.addStatement(statement);
+            allIds[line] = index.intern(statement);
+        }
+        
+        // Executes nearly everything, so it's written as a bitmap
+        data.addTest(new TestData(true,
+                CoverageBitmap.fromIds(allIds, 900)));
+        // Executes only a few statements, so it's written as a list
+        data.addTest(new TestData(false,
+                CoverageBitmap.fromIds(new int[]{allIds[4], allIds[500]}, 2)));
+        data.addTest(new TestData(true, CoverageBitmap.fromIds(allIds, 0)));
+        
+        assertRoundTrips(data);
+    }
+    
+    @Test
+    public void smallerThanTestHarnessOutput() throws IOException {
+        TestExecutionData data = new TestExecutionData();
+        StatementIndex index = StatementIndex.getSharedIndex();
+        int[] ids = new int[200];
+        for(int line = 0; line < ids.length; line++) {
+            StatementData statement = new StatementData(line + 1,
+                    "src/some/directory/file.c");
+            data.addStatement(statement);
+            ids[line] = index.intern(statement);
+        }
+        
+        StringBuilder text = new StringBuilder();
+        for(int test = 0; test < 50; test++) {
+            data.addTest(new TestData(test % 2 == 0,
+                    CoverageBitmap.fromIds(ids, ids.length)));
+            text.append(test % 2 == 0 ? "passed" : "failed");
+            for(int line = 1; line <= ids.length; line++) {
+                text.append(" src/some/directory/file.c ").append(line);
+            }
+            text.append('\n');
+        }
+        
+        byte[] bytes = write(data);
+        assertTrue(bytes.length * 100 < text.length());
+    }
+    
+    @Test
+    public void truncatedDataIsRejected() throws IOException {
+        byte[] bytes = write(DummyData.getDummyData());
+        for(int length = 0; length < bytes.length; length++) {
+            try {
+                CoverageFileFormat.read(
+                        ByteBuffer.wrap(Arrays.copyOf(bytes, length)));
+                fail("Read data truncated to " + length + " bytes");
+            } catch(IOException err) {
+                // Expected
+            }
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void otherVersionsAreRejected() throws IOException {
+        byte[] bytes = write(DummyData.getDummyData());
+        bytes[7] = (byte) (CoverageFileFormat.VERSION + 1);
+        CoverageFileFormat.read(ByteBuffer.wrap(bytes));
+    }
+    
+    private static void assertRoundTrips(TestExecutionData data)
+            throws IOException {
+        TestExecutionData loaded =
+                CoverageFileFormat.read(ByteBuffer.wrap(write(data)));
+        
+        assertEquals(data.getStatements(), loaded.getStatements());
+        List<TestData> tests = data.getTests();
+        List<TestData> loadedTests = loaded.getTests();
+        assertEquals(tests.size(), loadedTests.size());
+        for(int i = 0; i < tests.size(); i++) {
+            assertEquals(tests.get(i).getPassed(),
+                    loadedTests.get(i).getPassed());
+            assertEquals(tests.get(i).getStatementsExecuted(),
+                    loadedTests.get(i).getStatementsExecuted());
+        }
+    }
+    
+    private static byte[] write(TestExecutionData data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CoverageFileFormat.write(data, output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,173 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.dependency_cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencyCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void makeKey() {
+        String key = DependencyCache.makeKey(Arrays.asList(
+                "100644 blob 587be6b\tGemfile.lock"));
+        assertEquals(key, DependencyCache.makeKey(Arrays.asList(
+                "100644 blob 587be6b\tGemfile.lock")));
+        assertNotEquals(key, DependencyCache.makeKey(Arrays.asList(
+                "100644 blob 47e5d40\tGemfile.lock")));
+        assertTrue(key.matches("[0-9a-f]{64}"));
+    }
+
+    @Test
+    public void reusesDirectories() throws IOException {
+        String cacheDirectory = folder.getRoot().getPath() + "/cache";
+        DependencyCache cache = new DependencyCache(cacheDirectory, 1000);
+
+        Path directory = cache.acquire("abc");
+        Files.write(directory.resolve("gem"), new byte[10]);
+        cache.release("abc", true);
+
+        assertEquals(directory, cache.acquire("abc"));
+        assertTrue(Files.exists(directory.resolve("gem")));
+        cache.release("abc", true);
+
+        // The entry is still there for the next run of the tool
+        DependencyCache reopened = new DependencyCache(cacheDirectory, 1000);
+        assertTrue(reopened.contains("abc"));
+        assertEquals(10, reopened.getSize());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        DependencyCache cache = new DependencyCache(
+                folder.getRoot().getPath() + "/cache", 25);
+        fill(cache, "first", 10);
+        fill(cache, "second", 10);
+        cache.acquire("first");
+        cache.release("first", true);
+
+        // "second" was used least recently
+        fill(cache, "third", 10);
+        assertTrue(cache.contains("first"));
+        assertFalse(cache.contains("second"));
+        assertTrue(cache.contains("third"));
+        assertEquals(20, cache.getSize());
+    }
+
+    @Test
+    public void neverEvictsDirectoriesInUse() throws IOException {
+        DependencyCache cache = new DependencyCache(
+                folder.getRoot().getPath() + "/cache", 15);
+        fill(cache, "first", 10);
+        Path inUse = cache.acquire("first");
+
+        fill(cache, "second", 10);
+        assertTrue(Files.isDirectory(inUse));
+        assertFalse(cache.contains("second"));
+
+        cache.release("first", true);
+        assertTrue(cache.contains("first"));
+    }
+
+    @Test
+    public void acquireIfPreparedOnlyReturnsPreparedDirectories()
+            throws IOException {
+        DependencyCache cache = new DependencyCache(
+                folder.getRoot().getPath() + "/cache", 15);
+        assertNull(cache.acquireIfPrepared("first"));
+        Path preparing = cache.acquire("first");
+        assertNull(cache.acquireIfPrepared("first"));
+        Files.write(preparing.resolve("artifact"), new byte[10]);
+        cache.release("first", true);
+
+        // Acquired ahead of time, so it can't be evicted while it waits
+        assertEquals(preparing, cache.acquireIfPrepared("first"));
+        fill(cache, "second", 10);
+        assertTrue(cache.contains("first"));
+        assertFalse(cache.contains("second"));
+        cache.release("first", true);
+        assertTrue(cache.contains("first"));
+    }
+
+    @Test
+    public void failedPreparationIsDeleted() throws IOException {
+        DependencyCache cache = new DependencyCache(
+                folder.getRoot().getPath() + "/cache", 1000);
+        Path directory = cache.acquire("abc");
+        Files.write(directory.resolve("half-installed"), new byte[10]);
+        cache.release("abc", false);
+
+        assertFalse(cache.contains("abc"));
+        assertFalse(Files.exists(directory));
+        // The next user prepares it from scratch
+        assertEquals(directory, cache.acquire("abc"));
+        assertEquals(0, directory.toFile().list().length);
+        cache.release("abc", true);
+        assertTrue(Files.exists(directory.resolve(
+                DependencyCache.COMPLETE_FILE_NAME)));
+    }
+
+    @Test
+    public void reopeningDeletesUnpreparedDirectories() throws IOException {
+        Path cacheDirectory = folder.newFolder("cache").toPath();
+        Path unprepared = Files.createDirectory(cacheDirectory.resolve("abc"));
+        Files.write(unprepared.resolve("half-installed"), new byte[10]);
+
+        DependencyCache cache = new DependencyCache(cacheDirectory.toString(),
+                1000);
+        assertFalse(cache.contains("abc"));
+        assertFalse(Files.exists(unprepared));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void waitsForAnotherPreparation() throws Exception {
+        final DependencyCache cache = new DependencyCache(
+                folder.getRoot().getPath() + "/cache", 1000);
+        Path directory = cache.acquire("abc");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Path> waiting = executor.submit(() -> {
+                Path path = cache.acquire("abc");
+                // Everything the first user prepared is already there
+                assertTrue(Files.exists(path.resolve("gem")));
+                cache.release("abc", true);
+                return path;
+            });
+            Thread.sleep(200);
+            assertFalse(waiting.isDone());
+
+            Files.write(directory.resolve("gem"), new byte[10]);
+            cache.release("abc", true);
+            assertEquals(directory, waiting.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Acquires a key's directory, writes a file of the given size to it, and
+     * releases it again.
+     */
+    private void fill(DependencyCache cache, String key, int size)
+            throws IOException {
+        Path directory = cache.acquire(key);
+        Files.write(directory.resolve("artifact"), new byte[size]);
+        cache.release(key, true);
+    }
+}
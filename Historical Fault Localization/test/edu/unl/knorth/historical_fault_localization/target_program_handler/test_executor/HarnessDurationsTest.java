@@ -0,0 +1,53 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HarnessDurationsTest {
+    @Test
+    public void usesConfiguredTimeoutUntilEnoughSamples() {
+        HarnessDurations durations = new HarnessDurations(2);
+        for(int i = 1; i < HarnessDurations.MINIMUM_SAMPLES; i++) {
+            durations.record(20000);
+            Assert.assertEquals(60000, durations.getTimeout(60000));
+        }
+        durations.record(20000);
+        Assert.assertEquals(40000, durations.getTimeout(60000));
+    }
+    
+    @Test
+    public void clampsAdaptiveTimeout() {
+        HarnessDurations durations = new HarnessDurations(3);
+        for(int i = 0; i < HarnessDurations.MINIMUM_SAMPLES; i++) {
+            durations.record(100);
+        }
+        Assert.assertEquals(HarnessDurations.MINIMUM_TIMEOUT_MILLISECONDS,
+                durations.getTimeout(60000));
+        Assert.assertEquals(5000, durations.getTimeout(5000));
+        
+        for(int i = 0; i < HarnessDurations.MINIMUM_SAMPLES; i++) {
+            durations.record(50000);
+        }
+        Assert.assertEquals(60000, durations.getTimeout(60000));
+    }
+    
+    @Test
+    public void followsRecentDurations() {
+        HarnessDurations durations = new HarnessDurations(1.5);
+        durations.record(100000);
+        for(int i = 0; i < HarnessDurations.WINDOW_SIZE; i++) {
+            durations.record(20000);
+        }
+        // The slow run has left the window
+        Assert.assertEquals(30000, durations.getTimeout(600000));
+    }
+    
+    @Test
+    public void factorOfZeroDisablesAdaptiveTimeout() {
+        HarnessDurations durations = new HarnessDurations(0);
+        for(int i = 0; i < HarnessDurations.MINIMUM_SAMPLES; i++) {
+            durations.record(100);
+        }
+        Assert.assertEquals(60000, durations.getTimeout(60000));
+    }
+}
@@ -3,9 +3,13 @@ package edu.unl.knorth.historical_fault_localization.target_program_handler.test
 import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -42,6 +46,215 @@ public class TestExecutorTest {
 
     }
 
+    @Test
+    public void executeShardedTests() throws IOException {
+        // Shard 0 runs two tests and shard 1 runs one
+        Path directory = Files.createTempDirectory("hfl-shards");
+        String harness = writeHarness(directory,
+                "if [ \"$index\" = 0 ]; then\n"
+                + "  echo 'passed app.rb 1 app.rb 2' > \"$out\"\n"
+                + "  echo 'failed app.rb 1 app.rb 10' >> \"$out\"\n"
+                + "else\n"
+                + "  echo 'passed app.rb 3' > \"$out\"\n"
+                + "fi\n");
+        
+        TestExecutionData results = new TestExecutor(2).executeTests(harness,
+                directory.toString(), "asdf", "asdf", 30000L,
+                directory.resolve("out.txt").toString());
+        
+        Assert.assertEquals(3, results.getTests().size());
+        Assert.assertEquals(4, results.getStatements().size());
+        Assert.assertTrue(results.getTests().get(0).getPassed());
+        Assert.assertTrue(!results.getTests().get(1).getPassed());
+        Assert.assertTrue(results.getTests().get(2).getPassed());
+    }
+    
+    @Test
+    public void reportsFailedShards() throws IOException {
+        // Shard 1 never writes its output file
+        Path directory = Files.createTempDirectory("hfl-shards");
+        String harness = writeHarness(directory,
+                "if [ \"$index\" != 1 ]; then\n"
+                + "  echo 'passed app.rb 1' > \"$out\"\n"
+                + "fi\n");
+        
+        try {
+            new TestExecutor(3).executeTests(harness, directory.toString(),
+                    "asdf", "asdf", 30000L,
+                    directory.resolve("out.txt").toString());
+            Assert.fail("A shard without output should fail the commit");
+        } catch(IOException err) {
+            Assert.assertTrue(err.getMessage().startsWith("1 of 3"));
+            Assert.assertTrue(err.getMessage().contains("shard 1 "));
+        }
+    }
+    
+    @Test
+    public void executeStreamedTests() throws IOException {
+        Path directory = Files.createTempDirectory("hfl-streamed");
+        String harness = writeHarness(directory,
+                "echo 'Running tests...' >&2\n"
+                + "echo 'passed app.rb 1 app.rb 2' > \"$out\"\n"
+                + "echo 'failed app.rb 1 app.rb 10' >> \"$out\"\n");
+        
+        for(HarnessOutputMode mode : new HarnessOutputMode[] {
+                HarnessOutputMode.FIFO, HarnessOutputMode.STDOUT}) {
+            TestExecutionData results = new TestExecutor(1, mode)
+                    .executeTests(harness, directory.toString(), "asdf",
+                            "asdf", 30000L,
+                            directory.resolve("out.txt").toString());
+            
+            Assert.assertEquals(2, results.getTests().size());
+            Assert.assertEquals(3, results.getStatements().size());
+            Assert.assertTrue(!Files.exists(directory.resolve("out.txt")));
+        }
+    }
+    
+    @Test
+    public void harnessThatNeverOpensFifo() throws IOException {
+        Path directory = Files.createTempDirectory("hfl-streamed");
+        String harness = writeHarness(directory, "exit 0\n");
+        
+        TestExecutionData results = new TestExecutor(1,
+                HarnessOutputMode.FIFO).executeTests(harness,
+                        directory.toString(), "asdf", "asdf", 30000L,
+                        directory.resolve("out.txt").toString());
+        Assert.assertEquals(0, results.getTests().size());
+    }
+    
+    @Test
+    public void executeTestsOnServers() throws IOException {
+        // The server records each time it starts, fails when asked to test
+        // commit "fail", and exits when asked to test commit "crash"
+        Path directory = Files.createTempDirectory("hfl-servers");
+        String harness = writeHarness(directory,
+                "echo started >> \"$(dirname \"$0\")/starts\"\n"
+                + "while IFS= read -r line; do\n"
+                + "  flags=$(printf '%s\\n' \"$line\" | tr '\\t' '\\n')\n"
+                + "  out=$(printf '%s\\n' \"$flags\" "
+                + "| sed -n 's/^--output_file=//p')\n"
+                + "  hash=$(printf '%s\\n' \"$flags\" "
+                + "| sed -n 's/^--commit-hash=//p')\n"
+                + "  case \"$hash\" in\n"
+                + "    fail) echo 'HFL-DONE failed no tests' ;;\n"
+                + "    crash) exit 1 ;;\n"
+                + "    *) echo 'Testing...'\n"
+                + "       echo 'passed app.rb 1' > \"$out\"\n"
+                + "       echo 'HFL-DONE ok' ;;\n"
+                + "  esac\n"
+                + "done\n");
+        String outputPath = directory.resolve("out.txt").toString();
+        Path starts = directory.resolve("starts");
+        
+        try(TestExecutor executor = new TestExecutor(1,
+                HarnessOutputMode.FILE, null, 1, 1)) {
+            for(String commit : new String[] {"first", "second"}) {
+                Assert.assertEquals(1, executor.executeTests(harness,
+                        directory.toString(), commit, "Sat, 17 Oct 2015",
+                        30000L, outputPath).getTests().size());
+            }
+            Assert.assertEquals(1, Files.readAllLines(starts).size());
+            
+            try {
+                executor.executeTests(harness, directory.toString(), "fail",
+                        "asdf", 30000L, outputPath);
+                Assert.fail("A failed response should fail the commit");
+            } catch(IOException err) {
+                Assert.assertTrue(err.getMessage().endsWith("no tests"));
+            }
+            try {
+                executor.executeTests(harness, directory.toString(), "crash",
+                        "asdf", 30000L, outputPath);
+                Assert.fail("A server that exits should fail the commit");
+            } catch(IOException err) {
+                Assert.assertTrue(err.getMessage().contains("exited"));
+            }
+            Assert.assertEquals(1, Files.readAllLines(starts).size());
+            
+            // The server that exited is replaced
+            Assert.assertEquals(1, executor.executeTests(harness,
+                    directory.toString(), "third", "asdf", 30000L,
+                    outputPath).getTests().size());
+            Assert.assertEquals(2, Files.readAllLines(starts).size());
+        }
+    }
+    
+    @Test
+    public void killsStalledHarnessAndItsChildren()
+            throws IOException, InterruptedException {
+        // The harness writes part of its output, then waits on a child that
+        // never finishes
+        Path directory = Files.createTempDirectory("hfl-stalled");
+        String harness = writeHarness(directory,
+                "echo 'passed app.rb 1' > \"$out\"\n"
+                + "sleep 60 &\n"
+                + "echo $! > \"$(dirname \"$0\")/child\"\n"
+                + "wait\n");
+        
+        long start = System.nanoTime();
+        try(TestExecutor executor = new TestExecutor(1,
+                HarnessOutputMode.FILE, null, 1, 0, 0, 1000L)) {
+            executor.executeTests(harness, directory.toString(), "asdf",
+                    "asdf", 30000L, directory.resolve("out.txt").toString());
+            Assert.fail("A stalled test harness should fail the commit");
+        } catch(IOException err) {
+            Assert.assertTrue(err.getMessage().contains("stalled"));
+        }
+        Assert.assertTrue(System.nanoTime() - start
+                < TimeUnit.SECONDS.toNanos(20));
+        
+        String child = Files.readAllLines(directory.resolve("child")).get(0);
+        Assert.assertTrue("The harness' child should have been killed",
+                waitForExit(child));
+    }
+    
+    @Test
+    public void getShardOutputPath() {
+        Assert.assertEquals("temp/test_out-shard2.txt",
+                TestExecutor.getShardOutputPath("temp/test_out.txt", 2));
+        Assert.assertEquals("/tmp/out.dir/output-shard0",
+                TestExecutor.getShardOutputPath("/tmp/out.dir/output", 0));
+    }
+    
+    /**
+     * Waits a few seconds for a process to exit.
+     * @return <code>true</code> if the process is gone or is a zombie.
+     */
+    private boolean waitForExit(String pid)
+            throws IOException, InterruptedException {
+        for(int i = 0; i < 50; i++) {
+            Process ps = new ProcessBuilder("ps", "-o", "stat=", "-p", pid)
+                    .start();
+            byte[] state = new byte[16];
+            int length = ps.getInputStream().read(state);
+            ps.waitFor();
+            if(length <= 0 || state[0] == 'Z') {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+    
+    /**
+     * Writes a shell script that reads the shard flags into
+     * <code>$index</code> and the output file flag into <code>$out</code>,
+     * then runs <code>body</code>.
+     */
+    private String writeHarness(Path directory, String body)
+            throws IOException {
+        Path harness = directory.resolve("harness.sh");
+        Files.write(harness, ("#!/bin/sh\n"
+                + "for arg in \"$@\"; do\n"
+                + "  case \"$arg\" in\n"
+                + "    --output_file=*) out=\"${arg#--output_file=}\" ;;\n"
+                + "    --shard-index=*) index=\"${arg#--shard-index=}\" ;;\n"
+                + "  esac\n"
+                + "done\n" + body).getBytes(StandardCharsets.UTF_8));
+        harness.toFile().setExecutable(true);
+        return harness.toString();
+    }
+
     private TestExecutionData generateExpectedResults() throws IOException {
         String str = "failed app.rb 3 app.rb 9 app.rb 10 app.rb 11 app.rb 25 app.rb 41 app.rb 55 app.rb 69 app.rb 88 app.rb 123 app.rb 128 app.rb 130 app.rb 132 app.rb 133 app.rb 136 app.rb 140 app.rb 144 app.rb 148 app.rb 152 app.rb 156 app.rb 161 app.rb 162 app.rb 164 app.rb 167 app.rb 169 app.rb 170 app.rb 173 app.rb 175 app.rb 176 app.rb 179 app.rb 183 app.rb 187 app.rb 191 app.rb 195 app.rb 201 \n"
                 + "passed app.rb 3 app.rb 9 app.rb 25 app.rb 26 app.rb 27 app.rb 41 app.rb 55 app.rb 69 app.rb 88 app.rb 123 app.rb 128 app.rb 130 app.rb 132 app.rb 136 app.rb 137 app.rb 140 app.rb 144 app.rb 148 app.rb 152 app.rb 156 app.rb 161 app.rb 162 app.rb 164 app.rb 167 app.rb 169 app.rb 170 app.rb 173 app.rb 175 app.rb 179 app.rb 180 app.rb 183 app.rb 187 app.rb 191 app.rb 195 app.rb 201 \n"
@@ -0,0 +1,76 @@
+package edu.unl.knorth.historical_fault_localization.target_program_handler.test_executor;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestData;
+import edu.unl.knorth.historical_fault_localization.intermediate_data.TestExecutionData;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class TestOutputParserTest {
+    private static final String OUTPUT =
+            "passed app.rb 1 app.rb 2 app.rb 4 app.rb 6 utility.rb 23 utility.rb 24 utility.rb 26 app.rb 11\n"
+            + "  \n"
+            + "PASSED app.rb 1 app.rb 1\tapp.rb 2 app.rb 3 app.rb 6 utility.rb 23 utility.rb 25 app.rb 11\r\n"
+            + "  failed app.rb 1 app.rb 2 app.rb 4 app.rb 5 utility.rb 23 utility.rb 24 utility.rb 25 app.rb +11 dangling.rb";
+    
+    @Test
+    public void streamMatchesLines() throws IOException {
+        TestOutputParser parser = new TestOutputParser();
+        TestExecutionData expected = parser.parseTestOutput(
+                Arrays.asList(OUTPUT.split("\n")));
+        TestExecutionData actual = parser.parseTestOutput(toStream(OUTPUT));
+        
+        assertEquals(expected.getStatements(), actual.getStatements());
+        
+        List<TestData> expectedTests = expected.getTests();
+        List<TestData> actualTests = actual.getTests();
+        assertEquals(3, actualTests.size());
+        for(int i = 0; i < expectedTests.size(); i++) {
+            assertEquals(expectedTests.get(i).getPassed(),
+                    actualTests.get(i).getPassed());
+            assertEquals(expectedTests.get(i).getStatementsExecuted(),
+                    actualTests.get(i).getStatementsExecuted());
+        }
+        
+        assertTrue(actualTests.get(1).getStatementsExecuted().contains(
+                new StatementData(3, "app.rb")));
+        assertTrue(!actualTests.get(2).getPassed());
+    }
+    
+    @Test
+    public void rejectsBadStatus() {
+        try {
+            new TestOutputParser().parseTestOutput(
+                    toStream("passed a.rb 1\nskipped a.rb 2\n"));
+            fail("Should have thrown IOException");
+        } catch(IOException err) {
+            assertTrue(err.getMessage().contains("line 2"));
+        }
+    }
+    
+    @Test
+    public void rejectsBadLineNumbers() {
+        for(String lineNumber : new String[] {"x", "-", "12a", "99999999999"}) {
+            try {
+                new TestOutputParser().parseTestOutput(
+                        toStream("passed a.rb " + lineNumber));
+                fail("Should have rejected line number " + lineNumber);
+            } catch(IOException err) {
+                // Expected
+            }
+        }
+    }
+    
+    private InputStream toStream(String output) {
+        return new ByteArrayInputStream(
+                output.getBytes(Charset.defaultCharset()));
+    }
+}
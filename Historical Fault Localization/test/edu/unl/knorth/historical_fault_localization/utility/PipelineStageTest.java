@@ -0,0 +1,100 @@
+package edu.unl.knorth.historical_fault_localization.utility;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class PipelineStageTest {
+    @Test
+    public void processesEveryItem() throws InterruptedException {
+        final ConcurrentLinkedQueue<Integer> processed =
+                new ConcurrentLinkedQueue<>();
+        PipelineStage<Integer> stage = new PipelineStage<>("Test", 3, 2,
+                item -> processed.add(item));
+        
+        stage.start();
+        for(int i = 0; i < 100; i++) {
+            stage.submit(i);
+        }
+        stage.finish();
+        
+        assertEquals(100, processed.size());
+        for(int i = 0; i < 100; i++) {
+            assertTrue(processed.contains(i));
+        }
+    }
+    
+    @Test
+    public void keepsGoingAfterAnItemFails() throws InterruptedException {
+        final AtomicInteger processed = new AtomicInteger();
+        PipelineStage<Integer> stage = new PipelineStage<>("Test", 1, 1,
+                item -> {
+                    if(item == 0) {
+                        throw new IllegalStateException("Expected failure");
+                    }
+                    processed.incrementAndGet();
+                });
+        
+        stage.start();
+        for(int i = 0; i < 5; i++) {
+            stage.submit(i);
+        }
+        stage.finish();
+        
+        assertEquals(4, processed.get());
+    }
+
+    @Test(timeout = 10000)
+    public void keepsGoingAfterAnItemThrowsAnError()
+            throws InterruptedException {
+        final AtomicInteger processed = new AtomicInteger();
+        PipelineStage<Integer> stage = new PipelineStage<>("Test", 1, 1,
+                item -> {
+                    if(item % 2 == 0) {
+                        throw new AssertionError("Expected error");
+                    }
+                    processed.incrementAndGet();
+                });
+
+        // If the worker died on the first item, these would block forever on
+        // the full queue
+        stage.start();
+        for(int i = 0; i < 10; i++) {
+            stage.submit(i);
+        }
+        stage.finish();
+
+        assertEquals(5, processed.get());
+    }
+
+    @Test
+    public void abortStopsIdleWorkers() throws InterruptedException {
+        PipelineStage<Integer> stage = new PipelineStage<>("Aborted", 2, 2,
+                item -> {});
+        
+        stage.start();
+        stage.submit(1);
+        stage.abort();
+        
+        // The workers were waiting for items that will never come
+        long deadline = System.currentTimeMillis() + 5000;
+        while(isRunning("Aborted worker")
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(isRunning("Aborted worker"));
+    }
+    
+    private static boolean isRunning(String threadNamePrefix) {
+        for(Thread thread : Thread.getAllStackTraces().keySet()) {
+            if(thread.getName().startsWith(threadNamePrefix)
+                    && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+package edu.unl.knorth.historical_fault_localization.utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ProcessOutputTest {
+    @Test
+    public void logsEverything() throws IOException, InterruptedException {
+        // Many lines, a line longer than a block, and a last line without a
+        // line terminator
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 20000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        char[] longLine = new char[200 * 1024];
+        Arrays.fill(longLine, 'x');
+        text.append(longLine).append('\n');
+        text.append("tail");
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        
+        Path logFile = Files.createTempDirectory("hfl-logs")
+                .resolve("logs").resolve("commit.log");
+        ProcessOutput output = new ProcessOutput(logFile, 0);
+        output.drain(new ByteArrayInputStream(bytes));
+        assertTrue(output.finish(10000));
+        
+        assertArrayEquals(bytes, Files.readAllBytes(logFile));
+    }
+    
+    @Test
+    public void interleavesWholeLines()
+            throws IOException, InterruptedException {
+        StringBuilder first = new StringBuilder();
+        StringBuilder second = new StringBuilder();
+        for(int i = 0; i < 10000; i++) {
+            first.append("first ").append(i).append('\n');
+            second.append("second ").append(i).append('\n');
+        }
+        
+        Path logFile = Files.createTempFile("hfl", ".log");
+        ProcessOutput output = new ProcessOutput(logFile, 0);
+        output.drain(new ByteArrayInputStream(
+                first.toString().getBytes(StandardCharsets.UTF_8)));
+        output.drain(new ByteArrayInputStream(
+                second.toString().getBytes(StandardCharsets.UTF_8)));
+        assertTrue(output.finish(10000));
+        
+        int numFirst = 0;
+        int numSecond = 0;
+        for(String line : Files.readAllLines(logFile)) {
+            if(line.equals("first " + numFirst)) {
+                numFirst++;
+            } else {
+                assertEquals("second " + numSecond, line);
+                numSecond++;
+            }
+        }
+        assertEquals(10000, numFirst);
+        assertEquals(10000, numSecond);
+    }
+    
+    @Test
+    public void takesOutMessages() throws IOException, InterruptedException {
+        // The last message has no line terminator, and a line that only
+        // contains the prefix in the middle isn't a message
+        String text = "before\nHFL-DONE ok\r\nnot HFL-DONE\nafter\n"
+                + "HFL-DONE failed why";
+        final List<String> messages =
+                Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch ended = new CountDownLatch(1);
+        
+        Path logFile = Files.createTempFile("hfl", ".log");
+        ProcessOutput output = new ProcessOutput(logFile, 0);
+        output.drain(new ByteArrayInputStream(
+                text.getBytes(StandardCharsets.UTF_8)), "HFL-DONE",
+                messages::add, ended::countDown);
+        assertTrue(output.finish(10000));
+        
+        assertEquals(0, ended.getCount());
+        assertEquals(Arrays.asList("HFL-DONE ok", "HFL-DONE failed why"),
+                messages);
+        assertEquals(Arrays.asList("before", "not HFL-DONE", "after"),
+                Files.readAllLines(logFile));
+    }
+}
@@ -0,0 +1,74 @@
+package edu.unl.knorth.historical_fault_localization.utility;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ProcessTreeTest {
+    @Test
+    public void orderDescendantsPutsChildrenBeforeParents() {
+        List<String> processes = Arrays.asList(
+                "    1     0",
+                "   10     1",
+                "   11    10",
+                "   12    11",
+                "   13    10",
+                "   20     1",
+                "not a process",
+                "   30    99");
+
+        assertEquals(Arrays.asList(12L, 11L, 13L),
+                ProcessTree.orderDescendants(10, processes));
+        assertEquals(Arrays.asList(12L, 11L, 13L, 10L, 20L),
+                ProcessTree.orderDescendants(1, processes));
+        assertTrue(ProcessTree.orderDescendants(12, processes).isEmpty());
+    }
+
+    @Test
+    public void killsEveryDescendant()
+            throws IOException, InterruptedException {
+        // A child and a grandchild, which each print their process ID
+        Process process = new ProcessBuilder("sh", "-c",
+                "sleep 60 & echo $!; "
+                + "sh -c 'sleep 60 & echo $!; wait' & wait").start();
+        List<Long> pids = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream()));
+        for(int i = 0; i < 2; i++) {
+            pids.add(Long.parseLong(reader.readLine().trim()));
+        }
+
+        ProcessTree.kill(process);
+        assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+        for(long pid : pids) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while(isRunning(pid) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse("Process " + pid + " is still running",
+                    isRunning(pid));
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the process exists and isn't a zombie
+     * waiting to be reaped.
+     */
+    private static boolean isRunning(long pid) throws IOException {
+        Process ps = new ProcessBuilder("ps", "-o", "stat=", "-p",
+                Long.toString(pid)).start();
+        try(BufferedReader reader = new BufferedReader(
+                new InputStreamReader(ps.getInputStream()))) {
+            String state = reader.readLine();
+            return state != null && !state.trim().startsWith("Z");
+        }
+    }
+}
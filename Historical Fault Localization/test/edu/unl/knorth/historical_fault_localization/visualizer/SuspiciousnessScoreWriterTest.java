@@ -0,0 +1,64 @@
+package edu.unl.knorth.historical_fault_localization.visualizer;
+
+import edu.unl.knorth.historical_fault_localization.intermediate_data.StatementData;
+import edu.unl.knorth.historical_fault_localization.suspiciousness_calculation.SuspiciousnessScore;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SuspiciousnessScoreWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesOneFilePerCommit() throws IOException {
+        String outputDirectory = folder.getRoot().getPath() + "/scores/";
+        new SuspiciousnessScoreWriter().writeScoresForOneCommit(
+                outputDirectory, new SuspiciousnessScoresFromCommit("abc123", 7,
+                        new SuspiciousnessScore(
+                                new StatementData(3, "lib/a.rb"), 0.5),
+                        new SuspiciousnessScore(
+                                new StatementData(12, "lib/a, b.rb"), 1.0)));
+
+        File outputFile = new File(outputDirectory, "7-abc123.csv");
+        assertEquals(Arrays.asList(
+                "file,line,suspiciousness",
+                "lib/a.rb,3,0.5",
+                "\"lib/a, b.rb\",12,1.0"),
+                Files.readAllLines(outputFile.toPath(),
+                        StandardCharsets.UTF_8));
+        // Only the finished file is left behind
+        assertEquals(1, new File(outputDirectory).list().length);
+    }
+
+    @Test
+    public void namesTranslatedFilesAfterBothCommits() throws IOException {
+        String outputDirectory = folder.getRoot().getPath() + "/scores/";
+        new SuspiciousnessScoreWriter().writeTranslatedScoresForOneCommit(
+                outputDirectory, new SuspiciousnessScoresFromCommit("abc123", 7,
+                        new SuspiciousnessScore(
+                                new StatementData(4, "lib/a.rb"), 0.5)),
+                "def456");
+
+        File outputFile = new File(outputDirectory, "7-abc123-in-def456.csv");
+        assertEquals(Arrays.asList(
+                "file,line,suspiciousness",
+                "lib/a.rb,4,0.5"),
+                Files.readAllLines(outputFile.toPath(),
+                        StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void quote() {
+        assertEquals("plain.rb", SuspiciousnessScoreWriter.quote("plain.rb"));
+        assertEquals("\"a,b.rb\"", SuspiciousnessScoreWriter.quote("a,b.rb"));
+        assertEquals("\"say \"\"hi\"\".rb\"",
+                SuspiciousnessScoreWriter.quote("say \"hi\".rb"));
+    }
+}